@@ -0,0 +1,343 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.transaction.UserTransaction;
+
+/**
+ * Query service for the audit log (see {@link JPAProcessInstanceDbLog}) that is meant to be used
+ * on large log tables:
+ * <ul>
+ * <li>process instances can be retrieved page by page, or streamed to a {@link LogHandler}
+ * (in batches, so only one batch is kept in memory)</li>
+ * <li>counts are calculated by the database, and durations are calculated from streamed
+ * (start, end) projections, so no log entities are loaded</li>
+ * <li>old logs are deleted using bulk delete statements</li>
+ * </ul>
+ * All queries use the indexes declared on the log entities. Like {@link JPAProcessInstanceDbLog},
+ * every method uses a new entity manager, and joins or starts a transaction.
+ */
+public class AuditLogQueryService {
+
+    /**
+     * The number of rows retrieved by one query when streaming results
+     */
+    public static final int BATCH_SIZE = 500;
+
+    /**
+     * Handles the results of a streaming query.
+     */
+    public interface LogHandler<T> {
+
+        void handle(T log);
+
+    }
+
+    /**
+     * @param processId the process id, or <code>null</code> for the instances of all processes
+     * @param firstResult the index of the first process instance to return
+     * @param maxResults the maximum number of process instances to return
+     * @return the process instances, ordered by the order in which they were started
+     */
+    @SuppressWarnings("unchecked")
+    public static List<ProcessInstanceLog> findProcessInstances(String processId, int firstResult, int maxResults) {
+        EntityManager em = JPAProcessInstanceDbLog.getEntityManager();
+        UserTransaction ut = JPAProcessInstanceDbLog.joinTransaction(em);
+        try {
+            Query query = em.createQuery("FROM ProcessInstanceLog p"
+                + (processId == null ? "" : " WHERE p.processId = :processId") + " ORDER BY p.id");
+            if (processId != null) {
+                query.setParameter("processId", processId);
+            }
+            return query.setFirstResult(firstResult).setMaxResults(maxResults).getResultList();
+        } finally {
+            JPAProcessInstanceDbLog.closeEntityManager(em, ut);
+        }
+    }
+
+    /**
+     * Returns the next page of process instances, after the given one. Unlike paging by index
+     * (see {@link #findProcessInstances(String, int, int)}), the cost of this query does not
+     * depend on the number of preceding pages.
+     *
+     * @param processId the process id, or <code>null</code> for the instances of all processes
+     * @param afterId the id of the last log of the previous page (see {@link ProcessInstanceLog#getId()}),
+     * or 0 for the first page
+     * @param maxResults the maximum number of process instances to return
+     */
+    @SuppressWarnings("unchecked")
+    public static List<ProcessInstanceLog> findProcessInstancesAfter(String processId, long afterId, int maxResults) {
+        EntityManager em = JPAProcessInstanceDbLog.getEntityManager();
+        UserTransaction ut = JPAProcessInstanceDbLog.joinTransaction(em);
+        try {
+            return createProcessInstancePageQuery(em, processId, afterId, maxResults).getResultList();
+        } finally {
+            JPAProcessInstanceDbLog.closeEntityManager(em, ut);
+        }
+    }
+
+    /**
+     * Passes all process instances of the given process to the handler, ordered by the order in which they
+     * were started. The process instances are retrieved in batches of {@link #BATCH_SIZE}, and are detached
+     * after they have been handled.
+     *
+     * @param processId the process id, or <code>null</code> for the instances of all processes
+     * @return the number of process instances
+     */
+    @SuppressWarnings("unchecked")
+    public static long forEachProcessInstance(String processId, LogHandler<ProcessInstanceLog> handler) {
+        EntityManager em = JPAProcessInstanceDbLog.getEntityManager();
+        UserTransaction ut = JPAProcessInstanceDbLog.joinTransaction(em);
+        try {
+            long count = 0;
+            long lastId = 0;
+            List<ProcessInstanceLog> batch;
+            do {
+                batch = createProcessInstancePageQuery(em, processId, lastId, BATCH_SIZE).getResultList();
+                for (ProcessInstanceLog processInstance: batch) {
+                    handler.handle(processInstance);
+                    lastId = processInstance.getId();
+                    count++;
+                }
+                em.clear();
+            } while (batch.size() == BATCH_SIZE);
+            return count;
+        } finally {
+            JPAProcessInstanceDbLog.closeEntityManager(em, ut);
+        }
+    }
+
+    private static Query createProcessInstancePageQuery(EntityManager em, String processId, long afterId, int maxResults) {
+        Query query = em.createQuery("FROM ProcessInstanceLog p WHERE p.id > :afterId"
+            + (processId == null ? "" : " AND p.processId = :processId") + " ORDER BY p.id");
+        query.setParameter("afterId", afterId);
+        if (processId != null) {
+            query.setParameter("processId", processId);
+        }
+        return query.setMaxResults(maxResults);
+    }
+
+    /**
+     * @return the number of process instances of every process
+     */
+    public static Map<String, Long> countProcessInstances() {
+        return count("SELECT p.processId, COUNT(p) FROM ProcessInstanceLog p GROUP BY p.processId", null);
+    }
+
+    /**
+     * @return the number of process instances of every process that have not completed yet
+     */
+    public static Map<String, Long> countActiveProcessInstances() {
+        return count("SELECT p.processId, COUNT(p) FROM ProcessInstanceLog p WHERE p.end IS NULL GROUP BY p.processId", null);
+    }
+
+    /**
+     * @return the number of times every node of the given process has been triggered
+     */
+    public static Map<String, Long> countNodeInstances(String processId) {
+        return count("SELECT n.nodeId, COUNT(n) FROM NodeInstanceLog n WHERE n.processId = :processId"
+            + " AND n.type = " + NodeInstanceLog.TYPE_ENTER + " GROUP BY n.nodeId", processId);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Long> count(String queryString, String processId) {
+        EntityManager em = JPAProcessInstanceDbLog.getEntityManager();
+        UserTransaction ut = JPAProcessInstanceDbLog.joinTransaction(em);
+        try {
+            Query query = em.createQuery(queryString);
+            if (processId != null) {
+                query.setParameter("processId", processId);
+            }
+            Map<String, Long> result = new LinkedHashMap<String, Long>();
+            for (Object[] row: (List<Object[]>) query.getResultList()) {
+                result.put((String) row[0], ((Number) row[1]).longValue());
+            }
+            return result;
+        } finally {
+            JPAProcessInstanceDbLog.closeEntityManager(em, ut);
+        }
+    }
+
+    /**
+     * @param processId the process id
+     * @param from the start of the period (inclusive), or <code>null</code>
+     * @param to the end of the period (exclusive), or <code>null</code>
+     * @return the durations of the completed instances of the given process that were started in the given period
+     */
+    public static DurationStatistics getProcessInstanceDurations(String processId, Date from, Date to) {
+        SortedMap<Date, DurationStatistics> result = getProcessInstanceDurations(processId, from, to, 0);
+        return result.isEmpty() ? new DurationStatistics() : result.get(result.firstKey());
+    }
+
+    /**
+     * Returns the durations of the completed instances of the given process, grouped by the time bucket
+     * in which they were started.
+     *
+     * @param processId the process id
+     * @param from the start of the period (inclusive), or <code>null</code>
+     * @param to the end of the period (exclusive), or <code>null</code>
+     * @param bucketSize the size of the time buckets, in milliseconds (or 0 to group all durations)
+     * @return the durations by the start of the time bucket
+     */
+    @SuppressWarnings("unchecked")
+    public static SortedMap<Date, DurationStatistics> getProcessInstanceDurations(String processId, Date from, Date to, long bucketSize) {
+        EntityManager em = JPAProcessInstanceDbLog.getEntityManager();
+        UserTransaction ut = JPAProcessInstanceDbLog.joinTransaction(em);
+        try {
+            SortedMap<Date, DurationStatistics> result = new TreeMap<Date, DurationStatistics>();
+            Query query = em.createQuery("SELECT p.id, p.start, p.end FROM ProcessInstanceLog p"
+                + " WHERE p.id > :afterId AND p.processId = :processId AND p.end IS NOT NULL"
+                + (from == null ? "" : " AND p.start >= :from")
+                + (to == null ? "" : " AND p.start < :to") + " ORDER BY p.id");
+            query.setParameter("processId", processId);
+            setPeriod(query, from, to);
+            long lastId = 0;
+            List<Object[]> batch;
+            do {
+                batch = query.setParameter("afterId", lastId).setMaxResults(BATCH_SIZE).getResultList();
+                for (Object[] row: batch) {
+                    lastId = ((Number) row[0]).longValue();
+                    Date start = (Date) row[1];
+                    Date end = (Date) row[2];
+                    getBucket(result, start, bucketSize).add(end.getTime() - start.getTime());
+                }
+            } while (batch.size() == BATCH_SIZE);
+            return result;
+        } finally {
+            JPAProcessInstanceDbLog.closeEntityManager(em, ut);
+        }
+    }
+
+    /**
+     * @param processId the process id
+     * @param from the start of the period (inclusive), or <code>null</code>
+     * @param to the end of the period (exclusive), or <code>null</code>
+     * @return the durations of the node instances of the given process that were triggered in the
+     * given period and have completed, by node id
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, DurationStatistics> getNodeInstanceDurations(String processId, Date from, Date to) {
+        EntityManager em = JPAProcessInstanceDbLog.getEntityManager();
+        UserTransaction ut = JPAProcessInstanceDbLog.joinTransaction(em);
+        try {
+            Map<String, DurationStatistics> result = new HashMap<String, DurationStatistics>();
+            Query query = em.createQuery("SELECT e.id, e.nodeId, e.date, x.date FROM NodeInstanceLog e, NodeInstanceLog x"
+                + " WHERE e.id > :afterId AND e.processId = :processId"
+                + " AND e.type = " + NodeInstanceLog.TYPE_ENTER + " AND x.type = " + NodeInstanceLog.TYPE_EXIT
+                + " AND x.processInstanceId = e.processInstanceId AND x.nodeInstanceId = e.nodeInstanceId"
+                + (from == null ? "" : " AND e.date >= :from")
+                + (to == null ? "" : " AND e.date < :to") + " ORDER BY e.id");
+            query.setParameter("processId", processId);
+            setPeriod(query, from, to);
+            long lastId = 0;
+            List<Object[]> batch;
+            do {
+                batch = query.setParameter("afterId", lastId).setMaxResults(BATCH_SIZE).getResultList();
+                for (Object[] row: batch) {
+                    lastId = ((Number) row[0]).longValue();
+                    String nodeId = (String) row[1];
+                    DurationStatistics statistics = result.get(nodeId);
+                    if (statistics == null) {
+                        statistics = new DurationStatistics();
+                        result.put(nodeId, statistics);
+                    }
+                    statistics.add(((Date) row[3]).getTime() - ((Date) row[2]).getTime());
+                }
+            } while (batch.size() == BATCH_SIZE);
+            return result;
+        } finally {
+            JPAProcessInstanceDbLog.closeEntityManager(em, ut);
+        }
+    }
+
+    private static void setPeriod(Query query, Date from, Date to) {
+        if (from != null) {
+            query.setParameter("from", from);
+        }
+        if (to != null) {
+            query.setParameter("to", to);
+        }
+    }
+
+    private static DurationStatistics getBucket(SortedMap<Date, DurationStatistics> buckets, Date start, long bucketSize) {
+        Date bucket = new Date(bucketSize <= 0 ? 0 : start.getTime() - start.getTime() % bucketSize);
+        DurationStatistics statistics = buckets.get(bucket);
+        if (statistics == null) {
+            statistics = new DurationStatistics();
+            buckets.put(bucket, statistics);
+        }
+        return statistics;
+    }
+
+    /**
+     * Returns the statistics written by the {@link ProcessStatisticsAggregator}, for the process
+     * instances and for every node, ordered by window.
+     *
+     * @param processId the process id
+     * @param from the start of the period (inclusive), or <code>null</code>
+     * @param to the end of the period (exclusive), or <code>null</code>
+     */
+    @SuppressWarnings("unchecked")
+    public static List<ProcessStatisticsLog> findProcessStatistics(String processId, Date from, Date to) {
+        EntityManager em = JPAProcessInstanceDbLog.getEntityManager();
+        UserTransaction ut = JPAProcessInstanceDbLog.joinTransaction(em);
+        try {
+            Query query = em.createQuery("FROM ProcessStatisticsLog s WHERE s.processId = :processId"
+                + (from == null ? "" : " AND s.windowStart >= :from")
+                + (to == null ? "" : " AND s.windowStart < :to") + " ORDER BY s.windowStart, s.id");
+            query.setParameter("processId", processId);
+            setPeriod(query, from, to);
+            return query.getResultList();
+        } finally {
+            JPAProcessInstanceDbLog.closeEntityManager(em, ut);
+        }
+    }
+
+    /**
+     * Deletes the logs of all process instances that completed before the given date, including
+     * their node and variable logs, using bulk delete statements. Logs that should be archived
+     * can first be exported using {@link #forEachProcessInstance(String, LogHandler)}.
+     *
+     * @return the number of process instance logs that have been deleted
+     */
+    public static int deleteProcessInstanceLogs(Date endedBefore) {
+        EntityManager em = JPAProcessInstanceDbLog.getEntityManager();
+        UserTransaction ut = JPAProcessInstanceDbLog.joinTransaction(em);
+        try {
+            String completedInstances = "SELECT p.processInstanceId FROM ProcessInstanceLog p WHERE p.end < :date";
+            em.createQuery("DELETE FROM NodeInstanceLog n WHERE n.processInstanceId IN (" + completedInstances + ")")
+                .setParameter("date", endedBefore).executeUpdate();
+            em.createQuery("DELETE FROM VariableInstanceLog v WHERE v.processInstanceId IN (" + completedInstances + ")")
+                .setParameter("date", endedBefore).executeUpdate();
+            return em.createQuery("DELETE FROM ProcessInstanceLog p WHERE p.end < :date")
+                .setParameter("date", endedBefore).executeUpdate();
+        } finally {
+            JPAProcessInstanceDbLog.closeEntityManager(em, ut);
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Statistics (count, minimum, maximum, average and percentiles) of a number of durations,
+ * in milliseconds.
+ * </p>
+ * The durations themselves are not kept: they are counted in a histogram of which the buckets
+ * have a relative width of less than 2%, so percentiles are approximate (but never outside the
+ * range of the recorded durations) and the memory used does not depend on the number of durations.
+ */
+public class DurationStatistics implements Serializable {
+
+    private static final long serialVersionUID = 510l;
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private long count;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+    private final TreeMap<Integer, long[]> histogram = new TreeMap<Integer, long[]>();
+
+    public void add(long duration) {
+        if (duration < 0) {
+            duration = 0;
+        }
+        count++;
+        total += duration;
+        min = Math.min(min, duration);
+        max = Math.max(max, duration);
+        int bucket = getBucket(duration);
+        long[] bucketCount = histogram.get(bucket);
+        if (bucketCount == null) {
+            histogram.put(bucket, new long[] { 1 });
+        } else {
+            bucketCount[0]++;
+        }
+    }
+
+    public void add(DurationStatistics statistics) {
+        count += statistics.count;
+        total += statistics.total;
+        min = Math.min(min, statistics.min);
+        max = Math.max(max, statistics.max);
+        for (Map.Entry<Integer, long[]> entry: statistics.histogram.entrySet()) {
+            long[] bucketCount = histogram.get(entry.getKey());
+            if (bucketCount == null) {
+                histogram.put(entry.getKey(), new long[] { entry.getValue()[0] });
+            } else {
+                bucketCount[0] += entry.getValue()[0];
+            }
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return count == 0 ? 0 : max;
+    }
+
+    public double getAverage() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the (approximate) duration below which the given percentage of the durations falls
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * count);
+        if (rank <= 1) {
+            return min;
+        }
+        if (rank >= count) {
+            return max;
+        }
+        long seen = 0;
+        for (Map.Entry<Integer, long[]> entry: histogram.entrySet()) {
+            seen += entry.getValue()[0];
+            if (seen >= rank) {
+                return Math.max(min, Math.min(max, getBucketValue(entry.getKey())));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Durations below 64ms have their own bucket, larger durations are grouped
+     * in 64 buckets for every power of two.
+     */
+    private static int getBucket(long duration) {
+        if (duration < SUB_BUCKETS) {
+            return (int) duration;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(duration);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (duration >> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    private static long getBucketValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        // the middle of the bucket
+        return ((long) (SUB_BUCKETS + subBucket) << shift) + ((1L << shift) >> 1);
+    }
+
+    public String toString() {
+        return "DurationStatistics [count=" + count + ", min=" + getMin() + ", max=" + getMax()
+            + ", average=" + getAverage() + ", median=" + getPercentile(50)
+            + ", 95%=" + getPercentile(95) + "]";
+    }
+
+}
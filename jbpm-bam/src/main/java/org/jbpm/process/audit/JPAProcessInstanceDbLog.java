@@ -174,23 +174,13 @@ public class JPAProcessInstanceDbLog {
         return result;
     }
 
-    @SuppressWarnings("unchecked")
     public static void clear() {
             EntityManager em = getEntityManager();
             UserTransaction ut = joinTransaction(em);
             
-            List<ProcessInstanceLog> processInstances = em.createQuery("FROM ProcessInstanceLog").getResultList();
-            for (ProcessInstanceLog processInstance: processInstances) {
-                em.remove(processInstance);
-            }
-            List<NodeInstanceLog> nodeInstances = em.createQuery("FROM NodeInstanceLog").getResultList();
-            for (NodeInstanceLog nodeInstance: nodeInstances) {
-                em.remove(nodeInstance);
-            }
-            List<VariableInstanceLog> variableInstances = em.createQuery("FROM VariableInstanceLog").getResultList();
-            for (VariableInstanceLog variableInstance: variableInstances) {
-                em.remove(variableInstance);
-            }           
+            em.createQuery("DELETE FROM ProcessInstanceLog").executeUpdate();
+            em.createQuery("DELETE FROM NodeInstanceLog").executeUpdate();
+            em.createQuery("DELETE FROM VariableInstanceLog").executeUpdate();
             closeEntityManager(em, ut);
     }
 
@@ -217,7 +207,7 @@ public class JPAProcessInstanceDbLog {
      * @throws SystemException 
      * @throws Exception if something goes wrong. 
      */
-    private static UserTransaction joinTransaction(EntityManager em) {
+    static UserTransaction joinTransaction(EntityManager em) {
         boolean newTx = false;
         UserTransaction ut = null;
         try { 
@@ -248,7 +238,7 @@ public class JPAProcessInstanceDbLog {
      * @param em The entity manager.
      * @param ut The (user) transaction.
      */
-    private static void closeEntityManager(EntityManager em, UserTransaction ut) {
+    static void closeEntityManager(EntityManager em, UserTransaction ut) {
         em.flush(); // This saves any changes made
         em.clear(); // This makes sure that any returned entities are no longer attached to this entity manager/persistence context
         em.close(); // and this closes the entity manager
@@ -271,7 +261,7 @@ public class JPAProcessInstanceDbLog {
      * and use that to build the entity manager factory. 
      * @return an entity manager
      */
-    private static EntityManager getEntityManager() {
+    static EntityManager getEntityManager() {
         EntityManager em = null;
         if (env == null) {
             em = emf.createEntityManager();
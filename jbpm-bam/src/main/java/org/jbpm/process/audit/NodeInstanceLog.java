@@ -27,6 +27,8 @@ import javax.persistence.Id;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 
+import org.hibernate.annotations.Index;
+
 @Entity
 public class NodeInstanceLog implements Serializable {
     
@@ -39,9 +41,12 @@ public class NodeInstanceLog implements Serializable {
     @GeneratedValue(strategy = GenerationType.AUTO)
 	private long id;
     private int type;
+    @Index(name = "IDX_NInstLog_pInstId")
     private long processInstanceId;
+    @Index(name = "IDX_NInstLog_pId_node")
     private String processId;
     private String nodeInstanceId;
+    @Index(name = "IDX_NInstLog_pId_node")
     private String nodeId;
     private String nodeName;
     @Temporal(TemporalType.TIMESTAMP)
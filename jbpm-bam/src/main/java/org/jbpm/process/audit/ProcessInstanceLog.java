@@ -27,6 +27,8 @@ import javax.persistence.Id;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 
+import org.hibernate.annotations.Index;
+
 @Entity
 public class ProcessInstanceLog implements Serializable {
     
@@ -35,13 +37,17 @@ public class ProcessInstanceLog implements Serializable {
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
 	private long id;
+    @Index(name = "IDX_PInstLog_pInstId")
     private long processInstanceId;
+    @Index(name = "IDX_PInstLog_pId_start")
     private String processId;
     @Temporal(TemporalType.TIMESTAMP)
     @Column(name = "start_date")
+    @Index(name = "IDX_PInstLog_pId_start")
     private Date start;
     @Temporal(TemporalType.TIMESTAMP)
     @Column(name = "end_date")
+    @Index(name = "IDX_PInstLog_end")
     private Date end;
     
     ProcessInstanceLog() {
@@ -0,0 +1,514 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.persistence.EntityManager;
+import javax.transaction.UserTransaction;
+
+import org.drools.definition.process.Node;
+import org.drools.event.KnowledgeRuntimeEventManager;
+import org.drools.event.process.DefaultProcessEventListener;
+import org.drools.event.process.ProcessCompletedEvent;
+import org.drools.event.process.ProcessNodeLeftEvent;
+import org.drools.event.process.ProcessNodeTriggeredEvent;
+import org.drools.event.process.ProcessStartedEvent;
+import org.drools.runtime.process.NodeInstance;
+import org.drools.runtime.process.ProcessInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process event listener that maintains statistics (counts and durations) of process and node
+ * instances in memory, so they can be read in constant time instead of by scanning the audit log.
+ * </p>
+ * Statistics are kept in total (since the aggregator was registered) and per time window.
+ * Windows that have ended are written to the database as {@link ProcessStatisticsLog}s by
+ * {@link #flush()}, either explicitly or periodically (see {@link #start(long)}), after which
+ * they can be retrieved using {@link AuditLogQueryService#findProcessStatistics(String, Date, Date)}.
+ * The database is accessed like {@link JPAProcessInstanceDbLog} does (so its environment must
+ * have been set).
+ * </p>
+ * Only process instances started after the aggregator was registered are taken into account
+ * for the active instance counts and durations. The start times of process and node instances
+ * are forgotten after the maximum instance age (see {@link #setMaxInstanceAge(long)}), so that
+ * instances that never complete in this JVM do not use memory forever; the durations of such
+ * instances are not known either.
+ */
+public class ProcessStatisticsAggregator extends DefaultProcessEventListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessStatisticsAggregator.class);
+
+    /**
+     * The default maximum instance age: one day.
+     */
+    public static final long DEFAULT_MAX_INSTANCE_AGE = 24 * 60 * 60 * 1000L;
+
+    private final long windowSize;
+
+    private final ConcurrentMap<Key, Statistics> totals = new ConcurrentHashMap<Key, Statistics>();
+    private final ConcurrentMap<Key, Statistics> windows = new ConcurrentHashMap<Key, Statistics>();
+
+    private final ConcurrentMap<Long, Long> processInstanceStarts = new ConcurrentHashMap<Long, Long>();
+    private final ConcurrentMap<Long, ConcurrentMap<Long, Long>> nodeInstanceStarts =
+        new ConcurrentHashMap<Long, ConcurrentMap<Long, Long>>();
+
+    /**
+     * Events take the read lock to update a window, a flush takes the write lock to close the
+     * windows that have ended, so that no statistics are added to a window after it has been flushed.
+     */
+    private final ReadWriteLock windowLock = new ReentrantReadWriteLock();
+    /**
+     * The start of the first window that has not been flushed, guarded by the window lock.
+     */
+    private long flushedUntil;
+
+    private volatile long maxInstanceAge = DEFAULT_MAX_INSTANCE_AGE;
+    private volatile long nextExpiry;
+
+    private Timer timer;
+
+    /**
+     * @param windowSize the size of the time windows, in milliseconds
+     */
+    public ProcessStatisticsAggregator(long windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+        }
+        this.windowSize = windowSize;
+    }
+
+    public ProcessStatisticsAggregator(KnowledgeRuntimeEventManager session, long windowSize) {
+        this(windowSize);
+        session.addEventListener(this);
+    }
+
+    /**
+     * Sets the time after which the start time of a process or node instance that has not completed
+     * is forgotten, in milliseconds. Start times are removed between once and twice this age.
+     * Such instances still count as active until they complete, but their duration is not known.
+     */
+    public void setMaxInstanceAge(long maxInstanceAge) {
+        if (maxInstanceAge <= 0) {
+            throw new IllegalArgumentException("Maximum instance age must be positive: " + maxInstanceAge);
+        }
+        this.maxInstanceAge = maxInstanceAge;
+        this.nextExpiry = 0;
+    }
+
+    public long getMaxInstanceAge() {
+        return maxInstanceAge;
+    }
+
+    public void beforeProcessStarted(ProcessStartedEvent event) {
+        ProcessInstance processInstance = event.getProcessInstance();
+        long now = getCurrentTime();
+        expireInstanceStartsIfDue(now);
+        processInstanceStarts.put(processInstance.getId(), now);
+        started(new Key(processInstance.getProcessId(), null, 0), now);
+    }
+
+    public void afterProcessCompleted(ProcessCompletedEvent event) {
+        ProcessInstance processInstance = event.getProcessInstance();
+        long now = getCurrentTime();
+        Long start = processInstanceStarts.remove(processInstance.getId());
+        nodeInstanceStarts.remove(processInstance.getId());
+        completed(new Key(processInstance.getProcessId(), null, 0), now, start);
+    }
+
+    public void beforeNodeTriggered(ProcessNodeTriggeredEvent event) {
+        NodeInstance nodeInstance = event.getNodeInstance();
+        long processInstanceId = event.getProcessInstance().getId();
+        long now = getCurrentTime();
+        ConcurrentMap<Long, Long> starts = nodeInstanceStarts.get(processInstanceId);
+        if (starts == null) {
+            starts = new ConcurrentHashMap<Long, Long>();
+            ConcurrentMap<Long, Long> existing = nodeInstanceStarts.putIfAbsent(processInstanceId, starts);
+            if (existing != null) {
+                starts = existing;
+            }
+        }
+        starts.put(nodeInstance.getId(), now);
+        started(new Key(event.getProcessInstance().getProcessId(), getNodeId(nodeInstance), 0), now);
+    }
+
+    public void beforeNodeLeft(ProcessNodeLeftEvent event) {
+        NodeInstance nodeInstance = event.getNodeInstance();
+        long now = getCurrentTime();
+        ConcurrentMap<Long, Long> starts = nodeInstanceStarts.get(event.getProcessInstance().getId());
+        Long start = starts == null ? null : starts.remove(nodeInstance.getId());
+        completed(new Key(event.getProcessInstance().getProcessId(), getNodeId(nodeInstance), 0), now, start);
+    }
+
+    /**
+     * Uses the same node ids as the audit log (see {@link NodeInstanceLog#getNodeId()}).
+     */
+    private static String getNodeId(NodeInstance nodeInstance) {
+        Node node = nodeInstance.getNode();
+        Object uniqueId = node.getMetaData().get("UniqueId");
+        return uniqueId == null ? Long.toString(node.getId()) : (String) uniqueId;
+    }
+
+    private void started(Key total, long now) {
+        getStatistics(totals, total).started();
+        windowLock.readLock().lock();
+        try {
+            getStatistics(windows, total.getWindow(getWindowStart(now))).started();
+        } finally {
+            windowLock.readLock().unlock();
+        }
+    }
+
+    private void completed(Key total, long now, Long start) {
+        long duration = start == null ? -1 : now - start;
+        getStatistics(totals, total).completed(duration);
+        windowLock.readLock().lock();
+        try {
+            getStatistics(windows, total.getWindow(getWindowStart(now))).completed(duration);
+        } finally {
+            windowLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Must be called while holding the window lock.
+     *
+     * @return the start of the window of the given time, or of the first window that has not been
+     * flushed if the window of the given time has been flushed already (for events that raced with
+     * a flush)
+     */
+    private long getWindowStart(long now) {
+        return Math.max(now - now % windowSize, flushedUntil);
+    }
+
+    private static Statistics getStatistics(ConcurrentMap<Key, Statistics> statistics, Key key) {
+        Statistics result = statistics.get(key);
+        if (result == null) {
+            result = new Statistics();
+            Statistics existing = statistics.putIfAbsent(key, result);
+            if (existing != null) {
+                result = existing;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of instances of the given process that have been started
+     */
+    public long getStartedCount(String processId) {
+        Statistics statistics = totals.get(new Key(processId, null, 0));
+        return statistics == null ? 0 : statistics.getStarted();
+    }
+
+    /**
+     * @return the number of instances of the given process that have completed
+     */
+    public long getCompletedCount(String processId) {
+        Statistics statistics = totals.get(new Key(processId, null, 0));
+        return statistics == null ? 0 : statistics.getCompleted();
+    }
+
+    /**
+     * @return the number of instances of the given process that have been started but not completed yet
+     */
+    public long getActiveCount(String processId) {
+        Statistics statistics = totals.get(new Key(processId, null, 0));
+        return statistics == null ? 0 : statistics.getActive();
+    }
+
+    /**
+     * @return the durations of the completed instances of the given process
+     */
+    public DurationStatistics getProcessDurations(String processId) {
+        Statistics statistics = totals.get(new Key(processId, null, 0));
+        return statistics == null ? new DurationStatistics() : statistics.getDurations();
+    }
+
+    /**
+     * @return the durations of the instances of the given node that have been left
+     */
+    public DurationStatistics getNodeDurations(String processId, String nodeId) {
+        Statistics statistics = totals.get(new Key(processId, nodeId, 0));
+        return statistics == null ? new DurationStatistics() : statistics.getDurations();
+    }
+
+    /**
+     * @return the statistics of the windows that have not been flushed yet (including the current window)
+     */
+    public List<ProcessStatisticsLog> getWindows() {
+        List<ProcessStatisticsLog> result = new ArrayList<ProcessStatisticsLog>();
+        for (Map.Entry<Key, Statistics> entry: windows.entrySet()) {
+            result.add(entry.getValue().createLog(entry.getKey(), windowSize));
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of process instances of which the start time is known
+     */
+    int getTrackedInstanceCount() {
+        return processInstanceStarts.size();
+    }
+
+    /**
+     * Writes the statistics of all windows that have ended to the database. If writing fails,
+     * the statistics are kept and written by the next flush.
+     *
+     * @return the number of statistics written
+     */
+    public int flush() {
+        return flush(false);
+    }
+
+    private int flush(boolean all) {
+        long now = getCurrentTime();
+        expireInstanceStartsIfDue(now);
+        long end = now - now % windowSize;
+        if (all) {
+            end += windowSize;
+        }
+        Map<Key, Statistics> ended = new HashMap<Key, Statistics>();
+        windowLock.writeLock().lock();
+        try {
+            flushedUntil = Math.max(flushedUntil, end);
+            for (Iterator<Map.Entry<Key, Statistics>> iterator = windows.entrySet().iterator(); iterator.hasNext(); ) {
+                Map.Entry<Key, Statistics> entry = iterator.next();
+                if (entry.getKey().getWindowStart() < flushedUntil) {
+                    ended.put(entry.getKey(), entry.getValue());
+                    iterator.remove();
+                }
+            }
+        } finally {
+            windowLock.writeLock().unlock();
+        }
+        if (ended.isEmpty()) {
+            return 0;
+        }
+        List<ProcessStatisticsLog> logs = new ArrayList<ProcessStatisticsLog>();
+        for (Map.Entry<Key, Statistics> entry: ended.entrySet()) {
+            logs.add(entry.getValue().createLog(entry.getKey(), windowSize));
+        }
+        boolean persisted = false;
+        try {
+            persist(logs);
+            persisted = true;
+        } finally {
+            if (!persisted) {
+                // no events are added to flushed windows, so they can simply be put back
+                windows.putAll(ended);
+            }
+        }
+        return logs.size();
+    }
+
+    /**
+     * Writes the given statistics to the database, committing the transaction if there is
+     * no transaction yet.
+     *
+     * @throws RuntimeException if the statistics could not be written
+     */
+    protected void persist(List<ProcessStatisticsLog> logs) {
+        EntityManager em = JPAProcessInstanceDbLog.getEntityManager();
+        UserTransaction ut = JPAProcessInstanceDbLog.joinTransaction(em);
+        try {
+            try {
+                for (ProcessStatisticsLog log: logs) {
+                    em.persist(log);
+                }
+                em.flush();
+            } finally {
+                em.clear();
+                em.close();
+            }
+            if (ut != null) {
+                ut.commit();
+            }
+        } catch (Exception e) {
+            if (ut != null) {
+                try {
+                    ut.rollback();
+                } catch (Exception re) {
+                    logger.debug("Could not roll back transaction: " + re.getMessage());
+                }
+            }
+            throw new RuntimeException("Could not write process statistics: " + e.getMessage(), e);
+        }
+    }
+
+    private void expireInstanceStartsIfDue(long now) {
+        if (now >= nextExpiry) {
+            nextExpiry = now + maxInstanceAge;
+            expireInstanceStarts(now - maxInstanceAge);
+        }
+    }
+
+    private void expireInstanceStarts(long expired) {
+        for (Iterator<Long> iterator = processInstanceStarts.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next() < expired) {
+                iterator.remove();
+            }
+        }
+        for (Iterator<ConcurrentMap<Long, Long>> iterator = nodeInstanceStarts.values().iterator(); iterator.hasNext(); ) {
+            ConcurrentMap<Long, Long> starts = iterator.next();
+            for (Iterator<Long> startIterator = starts.values().iterator(); startIterator.hasNext(); ) {
+                if (startIterator.next() < expired) {
+                    startIterator.remove();
+                }
+            }
+            if (starts.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Starts flushing the windows that have ended periodically.
+     *
+     * @param interval the flush interval, in milliseconds
+     */
+    public synchronized void start(long interval) {
+        if (timer != null) {
+            throw new IllegalStateException("Aggregator already started");
+        }
+        timer = new Timer("ProcessStatisticsAggregator", true);
+        timer.schedule(new TimerTask() {
+            public void run() {
+                try {
+                    flush();
+                } catch (Throwable t) {
+                    logger.error("Could not flush process statistics: " + t.getMessage(), t);
+                }
+            }
+        }, interval, interval);
+    }
+
+    /**
+     * Stops flushing periodically, and writes the statistics of all windows (including the current
+     * window) to the database.
+     */
+    public synchronized void dispose() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        flush(true);
+    }
+
+    protected long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    private static class Key {
+
+        private final String processId;
+        private final String nodeId;
+        private final long windowStart;
+
+        Key(String processId, String nodeId, long windowStart) {
+            this.processId = processId;
+            this.nodeId = nodeId;
+            this.windowStart = windowStart;
+        }
+
+        Key getWindow(long windowStart) {
+            return new Key(processId, nodeId, windowStart);
+        }
+
+        long getWindowStart() {
+            return windowStart;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return windowStart == other.windowStart && processId.equals(other.processId)
+                && (nodeId == null ? other.nodeId == null : nodeId.equals(other.nodeId));
+        }
+
+        public int hashCode() {
+            int result = processId.hashCode();
+            result = 31 * result + (nodeId == null ? 0 : nodeId.hashCode());
+            return 31 * result + (int) (windowStart ^ (windowStart >>> 32));
+        }
+    }
+
+    private static class Statistics {
+
+        private long started;
+        private long completed;
+        private long active;
+        private final DurationStatistics durations = new DurationStatistics();
+
+        synchronized void started() {
+            started++;
+            active++;
+        }
+
+        /**
+         * @param duration the duration, or -1 if the start time is not known
+         */
+        synchronized void completed(long duration) {
+            completed++;
+            // instances started before this aggregator was registered were never counted as active
+            if (active > 0) {
+                active--;
+            }
+            if (duration >= 0) {
+                durations.add(duration);
+            }
+        }
+
+        synchronized long getStarted() {
+            return started;
+        }
+
+        synchronized long getCompleted() {
+            return completed;
+        }
+
+        synchronized long getActive() {
+            return active;
+        }
+
+        synchronized DurationStatistics getDurations() {
+            DurationStatistics result = new DurationStatistics();
+            result.add(durations);
+            return result;
+        }
+
+        synchronized ProcessStatisticsLog createLog(Key key, long windowSize) {
+            return new ProcessStatisticsLog(key.processId, key.nodeId, new Date(key.windowStart),
+                new Date(key.windowStart + windowSize), started, completed, durations);
+        }
+    }
+
+}
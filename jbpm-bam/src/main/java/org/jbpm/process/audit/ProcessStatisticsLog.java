@@ -0,0 +1,164 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import org.hibernate.annotations.Index;
+
+/**
+ * Summary of the instances of a process, or of a node in a process, during a time window,
+ * as maintained by the {@link ProcessStatisticsAggregator}.
+ * </p>
+ * A process instance is counted as started in the window it was started in, and as completed
+ * (with its duration) in the window it completed in. Node instances are counted the same way,
+ * using the time they were triggered and left.
+ */
+@Entity
+public class ProcessStatisticsLog implements Serializable {
+
+	private static final long serialVersionUID = 510l;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+	private long id;
+    @Index(name = "IDX_PStatLog_pId_window")
+    private String processId;
+    private String nodeId;
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "window_start")
+    @Index(name = "IDX_PStatLog_pId_window")
+    private Date windowStart;
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "window_end")
+    private Date windowEnd;
+    private long started;
+    private long completed;
+    private long durationCount;
+    private long durationTotal;
+    private long durationMin;
+    private long durationMax;
+    private long durationMedian;
+    private long duration95;
+
+    ProcessStatisticsLog() {
+    }
+
+    public ProcessStatisticsLog(String processId, String nodeId, Date windowStart, Date windowEnd,
+                                long started, long completed, DurationStatistics durations) {
+        this.processId = processId;
+        this.nodeId = nodeId;
+        this.windowStart = windowStart;
+        this.windowEnd = windowEnd;
+        this.started = started;
+        this.completed = completed;
+        this.durationCount = durations.getCount();
+        this.durationTotal = durations.getTotal();
+        this.durationMin = durations.getMin();
+        this.durationMax = durations.getMax();
+        this.durationMedian = durations.getPercentile(50);
+        this.duration95 = durations.getPercentile(95);
+    }
+
+    public long getId() {
+    	return id;
+    }
+
+    void setId(long id) {
+		this.id = id;
+	}
+
+    public String getProcessId() {
+        return processId;
+    }
+
+    /**
+     * @return the id of the node, or <code>null</code> if this is a summary of the process instances
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public Date getWindowStart() {
+        return windowStart;
+    }
+
+    public Date getWindowEnd() {
+        return windowEnd;
+    }
+
+    /**
+     * @return the number of instances that were started (or triggered) in this window
+     */
+    public long getStarted() {
+        return started;
+    }
+
+    /**
+     * @return the number of instances that completed (or were left) in this window
+     */
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return the number of completed instances of which the duration is known
+     */
+    public long getDurationCount() {
+        return durationCount;
+    }
+
+    public long getDurationTotal() {
+        return durationTotal;
+    }
+
+    public long getDurationMin() {
+        return durationMin;
+    }
+
+    public long getDurationMax() {
+        return durationMax;
+    }
+
+    public double getDurationAverage() {
+        return durationCount == 0 ? 0 : (double) durationTotal / durationCount;
+    }
+
+    public long getDurationMedian() {
+        return durationMedian;
+    }
+
+    public long getDuration95() {
+        return duration95;
+    }
+
+    public String toString() {
+        return "ProcessStatistics '" + processId + "'" + (nodeId == null ? "" : " node " + nodeId)
+            + " [" + windowStart + " - " + windowEnd + "] started=" + started + ", completed=" + completed
+            + ", average=" + getDurationAverage() + ", median=" + durationMedian + ", 95%=" + duration95;
+    }
+
+}
@@ -27,6 +27,8 @@ import javax.persistence.Id;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 
+import org.hibernate.annotations.Index;
+
 @Entity
 public class VariableInstanceLog implements Serializable {
     
@@ -35,6 +37,7 @@ public class VariableInstanceLog implements Serializable {
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
 	private long id;
+    @Index(name = "IDX_VInstLog_pInstId")
     private long processInstanceId;
     private String processId;
     private String variableInstanceId;
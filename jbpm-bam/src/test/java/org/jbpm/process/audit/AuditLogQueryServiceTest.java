@@ -0,0 +1,212 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import static org.drools.persistence.util.PersistenceUtil.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import javax.naming.InitialContext;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.transaction.UserTransaction;
+
+import org.drools.persistence.util.PersistenceUtil;
+import org.drools.runtime.Environment;
+import org.drools.runtime.EnvironmentName;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AuditLogQueryServiceTest extends JbpmTestCase {
+
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final long START = 1000 * HOUR;
+
+    private HashMap<String, Object> context;
+    private Environment env;
+
+    @Before
+    public void setUp() throws Exception {
+        context = setupWithPoolingDataSource(JBPM_PERSISTENCE_UNIT_NAME);
+        env = createEnvironment(context);
+        JPAProcessInstanceDbLog.setEnvironment(env);
+        JPAProcessInstanceDbLog.clear();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        PersistenceUtil.tearDown(context);
+    }
+
+    /**
+     * Creates 10 instances of process "p1", started every hour, of which the ones with an
+     * even number took (number + 1) minutes to complete and the other ones are still active,
+     * and 3 active instances of process "p2". Every completed instance of "p1" passed node "1",
+     * which took (number + 1) seconds.
+     */
+    private void createLogs() throws Exception {
+        EntityManagerFactory emf = (EntityManagerFactory) env.get(EnvironmentName.ENTITY_MANAGER_FACTORY);
+        UserTransaction ut = (UserTransaction) new InitialContext().lookup("java:comp/UserTransaction");
+        ut.begin();
+        EntityManager em = emf.createEntityManager();
+        for (int i = 0; i < 10; i++) {
+            long start = START + i * HOUR;
+            ProcessInstanceLog processInstance = new ProcessInstanceLog(i, "p1");
+            processInstance.setStart(new Date(start));
+            if (i % 2 == 0) {
+                processInstance.setEnd(new Date(start + (i + 1) * 60 * 1000));
+                NodeInstanceLog enter = new NodeInstanceLog(NodeInstanceLog.TYPE_ENTER, i, "p1", "1", "1", "Task");
+                enter.setDate(new Date(start));
+                em.persist(enter);
+                NodeInstanceLog exit = new NodeInstanceLog(NodeInstanceLog.TYPE_EXIT, i, "p1", "1", "1", "Task");
+                exit.setDate(new Date(start + (i + 1) * 1000));
+                em.persist(exit);
+                em.persist(new VariableInstanceLog(i, "p1", "x", "x", "value" + i));
+            }
+            em.persist(processInstance);
+        }
+        for (int i = 10; i < 13; i++) {
+            em.persist(new ProcessInstanceLog(i, "p2"));
+        }
+        em.close();
+        ut.commit();
+    }
+
+    @Test
+    public void testPaging() throws Exception {
+        createLogs();
+        List<ProcessInstanceLog> page = AuditLogQueryService.findProcessInstances("p1", 2, 3);
+        assertEquals(3, page.size());
+        assertEquals(2, page.get(0).getProcessInstanceId());
+        assertEquals(4, page.get(2).getProcessInstanceId());
+        assertEquals(13, AuditLogQueryService.findProcessInstances(null, 0, 100).size());
+
+        List<Long> processInstanceIds = new ArrayList<Long>();
+        long lastId = 0;
+        List<ProcessInstanceLog> next;
+        while (!(next = AuditLogQueryService.findProcessInstancesAfter("p1", lastId, 4)).isEmpty()) {
+            for (ProcessInstanceLog processInstance: next) {
+                processInstanceIds.add(processInstance.getProcessInstanceId());
+            }
+            lastId = next.get(next.size() - 1).getId();
+        }
+        assertEquals(10, processInstanceIds.size());
+        assertEquals(Long.valueOf(9), processInstanceIds.get(9));
+    }
+
+    @Test
+    public void testStreaming() throws Exception {
+        createLogs();
+        final List<Long> processInstanceIds = new ArrayList<Long>();
+        long count = AuditLogQueryService.forEachProcessInstance(null,
+            new AuditLogQueryService.LogHandler<ProcessInstanceLog>() {
+                public void handle(ProcessInstanceLog log) {
+                    processInstanceIds.add(log.getProcessInstanceId());
+                }
+            });
+        assertEquals(13, count);
+        assertEquals(13, processInstanceIds.size());
+    }
+
+    @Test
+    public void testCounts() throws Exception {
+        createLogs();
+        Map<String, Long> counts = AuditLogQueryService.countProcessInstances();
+        assertEquals(Long.valueOf(10), counts.get("p1"));
+        assertEquals(Long.valueOf(3), counts.get("p2"));
+        counts = AuditLogQueryService.countActiveProcessInstances();
+        assertEquals(Long.valueOf(5), counts.get("p1"));
+        assertEquals(Long.valueOf(3), counts.get("p2"));
+        counts = AuditLogQueryService.countNodeInstances("p1");
+        assertEquals(1, counts.size());
+        assertEquals(Long.valueOf(5), counts.get("1"));
+    }
+
+    @Test
+    public void testDurations() throws Exception {
+        createLogs();
+        DurationStatistics durations = AuditLogQueryService.getProcessInstanceDurations("p1", null, null);
+        assertEquals(5, durations.getCount());
+        assertEquals(1 * 60 * 1000, durations.getMin());
+        assertEquals(9 * 60 * 1000, durations.getMax());
+        assertEquals(5 * 60 * 1000, durations.getAverage(), 0.1);
+        // percentiles are approximated within 2%
+        assertEquals(5 * 60 * 1000, durations.getPercentile(50), 5 * 60 * 1000 / 50);
+        assertEquals(9 * 60 * 1000, durations.getPercentile(100));
+
+        durations = AuditLogQueryService.getProcessInstanceDurations("p1",
+            new Date(START + 2 * HOUR), new Date(START + 6 * HOUR));
+        assertEquals(2, durations.getCount());
+        assertEquals(3 * 60 * 1000, durations.getMin());
+
+        SortedMap<Date, DurationStatistics> buckets =
+            AuditLogQueryService.getProcessInstanceDurations("p1", null, null, 4 * HOUR);
+        assertEquals(3, buckets.size());
+        assertEquals(new Date(START), buckets.firstKey());
+        assertEquals(2, buckets.get(new Date(START)).getCount());
+        assertEquals(2, buckets.get(new Date(START + 4 * HOUR)).getCount());
+        assertEquals(1, buckets.get(new Date(START + 8 * HOUR)).getCount());
+
+        Map<String, DurationStatistics> nodeDurations = AuditLogQueryService.getNodeInstanceDurations("p1", null, null);
+        assertEquals(1, nodeDurations.size());
+        assertEquals(5, nodeDurations.get("1").getCount());
+        assertEquals(1000, nodeDurations.get("1").getMin());
+        assertEquals(9000, nodeDurations.get("1").getMax());
+    }
+
+    @Test
+    public void testDelete() throws Exception {
+        createLogs();
+        int deleted = AuditLogQueryService.deleteProcessInstanceLogs(new Date(START + 5 * HOUR));
+        assertEquals(3, deleted);
+        assertEquals(Long.valueOf(7), AuditLogQueryService.countProcessInstances().get("p1"));
+        assertTrue(JPAProcessInstanceDbLog.findNodeInstances(0).isEmpty());
+        assertTrue(JPAProcessInstanceDbLog.findVariableInstances(4).isEmpty());
+        assertEquals(2, JPAProcessInstanceDbLog.findNodeInstances(6).size());
+        assertEquals(1, JPAProcessInstanceDbLog.findVariableInstances(6).size());
+    }
+
+    @Test
+    public void testDurationStatistics() {
+        DurationStatistics statistics = new DurationStatistics();
+        for (int i = 1; i <= 100000; i++) {
+            statistics.add(i);
+        }
+        assertEquals(100000, statistics.getCount());
+        assertEquals(1, statistics.getMin());
+        assertEquals(100000, statistics.getMax());
+        assertEquals(50000.5, statistics.getAverage(), 0.001);
+        assertEquals(50000, statistics.getPercentile(50), 50000 / 50);
+        assertEquals(95000, statistics.getPercentile(95), 95000 / 50);
+        assertEquals(99000, statistics.getPercentile(99), 99000 / 50);
+
+        DurationStatistics other = new DurationStatistics();
+        other.add(200000);
+        statistics.add(other);
+        assertEquals(100001, statistics.getCount());
+        assertEquals(200000, statistics.getMax());
+        assertEquals(200000, statistics.getPercentile(100));
+    }
+
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.audit;
+
+import static org.drools.persistence.util.PersistenceUtil.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import org.drools.KnowledgeBase;
+import org.drools.KnowledgeBaseFactory;
+import org.drools.builder.KnowledgeBuilder;
+import org.drools.builder.KnowledgeBuilderFactory;
+import org.drools.builder.ResourceType;
+import org.drools.io.impl.ClassPathResource;
+import org.drools.persistence.util.PersistenceUtil;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.WorkItem;
+import org.drools.runtime.process.WorkItemHandler;
+import org.drools.runtime.process.WorkItemManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProcessStatisticsAggregatorTest extends JbpmTestCase {
+
+    private static final long WINDOW = 60 * 1000;
+
+    private HashMap<String, Object> context;
+    private StatefulKnowledgeSession session;
+    private TestAggregator aggregator;
+    private List<WorkItem> workItems = new ArrayList<WorkItem>();
+
+    @Before
+    public void setUp() throws Exception {
+        context = setupWithPoolingDataSource(JBPM_PERSISTENCE_UNIT_NAME);
+        JPAProcessInstanceDbLog.setEnvironment(createEnvironment(context));
+
+        KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+        kbuilder.add(new ClassPathResource("ruleflow.rf"), ResourceType.DRF);
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        kbase.addKnowledgePackages(kbuilder.getKnowledgePackages());
+        session = kbase.newStatefulKnowledgeSession();
+        session.getWorkItemManager().registerWorkItemHandler("Human Task", new WorkItemHandler() {
+            public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
+                workItems.add(workItem);
+            }
+            public void abortWorkItem(WorkItem workItem, WorkItemManager manager) {
+            }
+        });
+        aggregator = new TestAggregator();
+        session.addEventListener(aggregator);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        session.dispose();
+        PersistenceUtil.tearDown(context);
+    }
+
+    @Test
+    public void testStatistics() {
+        aggregator.time = 10 * WINDOW;
+        session.startProcess("com.sample.ruleflow");
+        session.startProcess("com.sample.ruleflow");
+        assertEquals(2, aggregator.getStartedCount("com.sample.ruleflow"));
+        assertEquals(2, aggregator.getActiveCount("com.sample.ruleflow"));
+        assertEquals(0, aggregator.getCompletedCount("com.sample.ruleflow"));
+
+        aggregator.time += 5000;
+        session.getWorkItemManager().completeWorkItem(workItems.get(0).getId(), null);
+        aggregator.time += 10000;
+        session.getWorkItemManager().completeWorkItem(workItems.get(1).getId(), null);
+        assertEquals(0, aggregator.getActiveCount("com.sample.ruleflow"));
+        assertEquals(2, aggregator.getCompletedCount("com.sample.ruleflow"));
+
+        DurationStatistics durations = aggregator.getProcessDurations("com.sample.ruleflow");
+        assertEquals(2, durations.getCount());
+        assertEquals(5000, durations.getMin());
+        assertEquals(15000, durations.getMax());
+        // the work item node (with id 2) is where the time was spent
+        assertEquals(5000, aggregator.getNodeDurations("com.sample.ruleflow", "2").getMin());
+        assertEquals(0, aggregator.getNodeDurations("com.sample.ruleflow", "1").getMax());
+        assertEquals(0, aggregator.getStartedCount("unknown"));
+    }
+
+    @Test
+    public void testFlush() {
+        aggregator.time = 10 * WINDOW;
+        session.startProcess("com.sample.ruleflow");
+        aggregator.time = 11 * WINDOW + 1000;
+        session.getWorkItemManager().completeWorkItem(workItems.get(0).getId(), null);
+        session.startProcess("com.sample.ruleflow");
+
+        // only the first window has ended: the process, the start node and the work item node
+        assertEquals(3, aggregator.flush());
+        assertEquals(0, aggregator.flush());
+        List<ProcessStatisticsLog> logs = AuditLogQueryService.findProcessStatistics("com.sample.ruleflow", null, null);
+        assertEquals(3, logs.size());
+        ProcessStatisticsLog processLog = null;
+        for (ProcessStatisticsLog log: logs) {
+            assertEquals(new Date(10 * WINDOW), log.getWindowStart());
+            assertEquals(new Date(11 * WINDOW), log.getWindowEnd());
+            if (log.getNodeId() == null) {
+                processLog = log;
+            }
+        }
+        assertNotNull(processLog);
+        assertEquals(1, processLog.getStarted());
+        assertEquals(0, processLog.getCompleted());
+
+        aggregator.dispose();
+        logs = AuditLogQueryService.findProcessStatistics("com.sample.ruleflow", new Date(11 * WINDOW), null);
+        processLog = null;
+        for (ProcessStatisticsLog log: logs) {
+            if (log.getNodeId() == null) {
+                processLog = log;
+            }
+        }
+        assertNotNull(processLog);
+        assertEquals(1, processLog.getStarted());
+        assertEquals(1, processLog.getCompleted());
+        assertEquals(WINDOW + 1000, processLog.getDurationMax());
+        assertTrue(aggregator.getWindows().isEmpty());
+    }
+
+    @Test
+    public void testFlushFailureKeepsWindows() {
+        aggregator.time = 10 * WINDOW;
+        session.startProcess("com.sample.ruleflow");
+        aggregator.time = 11 * WINDOW;
+        aggregator.failPersist = true;
+        try {
+            aggregator.flush();
+            fail("Flush should have failed");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        assertEquals(3, aggregator.getWindows().size());
+        assertTrue(AuditLogQueryService.findProcessStatistics("com.sample.ruleflow", null, null).isEmpty());
+
+        aggregator.failPersist = false;
+        assertEquals(3, aggregator.flush());
+        assertEquals(3, AuditLogQueryService.findProcessStatistics("com.sample.ruleflow", null, null).size());
+    }
+
+    @Test
+    public void testLateEventCountedInOpenWindow() {
+        aggregator.time = 10 * WINDOW;
+        session.startProcess("com.sample.ruleflow");
+        aggregator.time = 11 * WINDOW;
+        assertEquals(3, aggregator.flush());
+
+        // an event of the flushed window that raced with the flush
+        aggregator.time = 10 * WINDOW + 5000;
+        session.startProcess("com.sample.ruleflow");
+        for (ProcessStatisticsLog log: aggregator.getWindows()) {
+            assertEquals(new Date(11 * WINDOW), log.getWindowStart());
+        }
+
+        aggregator.dispose();
+        List<ProcessStatisticsLog> logs = AuditLogQueryService.findProcessStatistics("com.sample.ruleflow", null, null);
+        assertEquals(6, logs.size());
+        int windowStarts = 0;
+        for (ProcessStatisticsLog log: logs) {
+            if (log.getWindowStart().equals(new Date(10 * WINDOW))) {
+                windowStarts++;
+            }
+        }
+        assertEquals(3, windowStarts);
+    }
+
+    @Test
+    public void testInstanceStartsExpire() {
+        aggregator.setMaxInstanceAge(WINDOW);
+        aggregator.time = 10 * WINDOW;
+        session.startProcess("com.sample.ruleflow");
+        assertEquals(1, aggregator.getTrackedInstanceCount());
+
+        aggregator.time = 12 * WINDOW;
+        aggregator.flush();
+        assertEquals(0, aggregator.getTrackedInstanceCount());
+        // the instance is still running, only its start time has been forgotten
+        assertEquals(1, aggregator.getActiveCount("com.sample.ruleflow"));
+
+        // the duration of an instance that completes after its start time was forgotten is not known
+        session.getWorkItemManager().completeWorkItem(workItems.get(0).getId(), null);
+        assertEquals(1, aggregator.getCompletedCount("com.sample.ruleflow"));
+        assertEquals(0, aggregator.getProcessDurations("com.sample.ruleflow").getCount());
+        assertEquals(0, aggregator.getActiveCount("com.sample.ruleflow"));
+    }
+
+    private static class TestAggregator extends ProcessStatisticsAggregator {
+
+        private long time;
+        private boolean failPersist;
+
+        TestAggregator() {
+            super(WINDOW);
+        }
+
+        protected long getCurrentTime() {
+            return time;
+        }
+
+        protected void persist(List<ProcessStatisticsLog> logs) {
+            if (failPersist) {
+                throw new RuntimeException("Database not available");
+            }
+            super.persist(logs);
+        }
+    }
+
+}
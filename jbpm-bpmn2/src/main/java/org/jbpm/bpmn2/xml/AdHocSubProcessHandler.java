@@ -17,6 +17,7 @@
 package org.jbpm.bpmn2.xml;
 
 import java.util.List;
+import java.util.Map;
 
 import org.drools.definition.process.Connection;
 import org.drools.xml.ExtensibleXmlParser;
@@ -65,8 +66,9 @@ public class AdHocSubProcessHandler extends CompositeContextNodeHandler {
         }
     	List<SequenceFlow> connections = (List<SequenceFlow>)
 			dynamicNode.getMetaData(ProcessHandler.CONNECTIONS);
-    	ProcessHandler.linkConnections(dynamicNode, connections);
-    	ProcessHandler.linkBoundaryEvents(dynamicNode);
+    	Map<String, org.drools.definition.process.Node> nodesByUniqueId = ProcessHandler.getNodesByUniqueId(dynamicNode);
+    	ProcessHandler.linkConnections(dynamicNode, connections, nodesByUniqueId);
+    	ProcessHandler.linkBoundaryEvents(dynamicNode, nodesByUniqueId);
     }
     
     public void writeNode(Node node, StringBuilder xmlDump, int metaDataType) {
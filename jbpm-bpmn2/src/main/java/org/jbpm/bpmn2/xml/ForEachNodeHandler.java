@@ -24,6 +24,7 @@ import org.drools.definition.process.Connection;
 import org.jbpm.workflow.core.Node;
 import org.jbpm.workflow.core.node.CompositeNode;
 import org.jbpm.workflow.core.node.ForEachNode;
+import org.w3c.dom.Element;
 import org.xml.sax.Attributes;
 
 public class ForEachNodeHandler extends AbstractNodeHandler {
@@ -62,8 +63,15 @@ public class ForEachNodeHandler extends AbstractNodeHandler {
                 "      </dataInputAssociation>" + EOL);
         }
         // multiInstanceLoopCharacteristics
+        int maxConcurrency = forEachNode.getMaxConcurrency();
+        String concurrency = "";
+        if (maxConcurrency == 1) {
+        	concurrency = " isSequential=\"true\"";
+        } else if (maxConcurrency > 1) {
+        	concurrency = " tns:maxConcurrency=\"" + maxConcurrency + "\"";
+        }
         xmlDump.append(
-    		"      <multiInstanceLoopCharacteristics>" + EOL +
+    		"      <multiInstanceLoopCharacteristics" + concurrency + ">" + EOL +
             "        <loopDataInputRef>" + XmlBPMNProcessDumper.getUniqueNodeId(forEachNode) + "_input</loopDataInputRef>" + EOL);
         if (parameterName != null) {
         	xmlDump.append("        <inputDataItem id=\"" + XmlBPMNProcessDumper.replaceIllegalCharsAttribute(parameterName) + "\" itemSubjectRef=\"" + XmlBPMNProcessDumper.getUniqueNodeId(forEachNode) + "_multiInstanceItemType\"/>" + EOL);
@@ -84,6 +92,27 @@ public class ForEachNodeHandler extends AbstractNodeHandler {
 		endNode("subProcess", xmlDump);
 	}
 	
+	/**
+	 * Reads the number of iterations that can be active at the same time from the 
+	 * multiInstanceLoopCharacteristics: isSequential="true" limits it to 1, the 
+	 * tns:maxConcurrency extension attribute to the given number.
+	 */
+	public static void readMaxConcurrency(Element multiInstanceLoopCharacteristics, ForEachNode forEachNode) {
+		if ("true".equals(multiInstanceLoopCharacteristics.getAttribute("isSequential"))) {
+			forEachNode.setMaxConcurrency(1);
+			return;
+		}
+		String maxConcurrency = multiInstanceLoopCharacteristics.getAttribute("maxConcurrency");
+		if (maxConcurrency != null && maxConcurrency.trim().length() > 0) {
+			try {
+				forEachNode.setMaxConcurrency(Integer.parseInt(maxConcurrency.trim()));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid maxConcurrency for multi-instance activity " 
+					+ forEachNode.getName() + ": " + maxConcurrency);
+			}
+		}
+	}
+	
 	protected List<Node> getSubNodes(ForEachNode forEachNode) {
     	List<Node> subNodes =
     		new ArrayList<Node>();
@@ -19,6 +19,7 @@ package org.jbpm.bpmn2.xml;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -127,13 +128,14 @@ public class ProcessHandler extends BaseAbstractHandler implements Handler {
 		parser.endElementBuilder();
 		
 		RuleFlowProcess process = (RuleFlowProcess) parser.getCurrent();
+		Map<String, Node> nodesByUniqueId = getNodesByUniqueId(process);
 		 List<IntermediateLink> throwLinks = (List<IntermediateLink>) process
          .getMetaData(LINKS);
-        linkIntermediateLinks(process, throwLinks);
+        linkIntermediateLinks(process, throwLinks, nodesByUniqueId);
 
  		List<SequenceFlow> connections = (List<SequenceFlow>) process.getMetaData(CONNECTIONS);
- 		linkConnections(process, connections);
-		linkBoundaryEvents(process);
+ 		linkConnections(process, connections, nodesByUniqueId);
+		linkBoundaryEvents(process, nodesByUniqueId);
         List<Lane> lanes = (List<Lane>)
             process.getMetaData(LaneHandler.LANES);
         assignLanes(process, lanes);
@@ -141,45 +143,71 @@ public class ProcessHandler extends BaseAbstractHandler implements Handler {
 		return process;
 	}
 	
+	/**
+	 * Creates an index of the nodes in the given node container by their "UniqueId" (in metadata),
+	 * so that the references of connections, links and boundary events can be resolved without
+	 * scanning all the nodes of the container for each of them.
+	 * The index is only valid as long as no nodes are added to or removed from the container.
+	 */
+	public static Map<String, Node> getNodesByUniqueId(NodeContainer nodeContainer) {
+		Node[] nodes = nodeContainer.getNodes();
+		Map<String, Node> result = new HashMap<String, Node>(nodes.length * 2);
+		for (Node node: nodes) {
+			String uniqueId = (String) node.getMetaData().get("UniqueId");
+			if (uniqueId != null && !result.containsKey(uniqueId)) {
+				result.put(uniqueId, node);
+			}
+		}
+		return result;
+	}
+
+	public static void linkIntermediateLinks(NodeContainer process,
+	        List<IntermediateLink> links) {
+	    linkIntermediateLinks(process, links, getNodesByUniqueId(process));
+	}
+
 	 public static void linkIntermediateLinks(NodeContainer process,
-	            List<IntermediateLink> links) {
+	            List<IntermediateLink> links, Map<String, Node> nodesByUniqueId) {
 
 	        if (null != links) {
 
-	            // Search throw links
+	            // Group links by name and search throw links
+	            Map<String, List<IntermediateLink>> linksByName = new LinkedHashMap<String, List<IntermediateLink>>();
 	            ArrayList<IntermediateLink> throwLinks = new ArrayList<IntermediateLink>();
-	            for (IntermediateLink aLinks : links) {
-	                if (aLinks.isThrowLink()) {
-	                    throwLinks.add(aLinks);
+	            for (IntermediateLink aLink : links) {
+	                List<IntermediateLink> linksWithSharedName = linksByName.get(aLink.getName());
+	                if (linksWithSharedName == null) {
+	                    linksWithSharedName = new ArrayList<IntermediateLink>();
+	                    linksByName.put(aLink.getName(), linksWithSharedName);
+	                }
+	                linksWithSharedName.add(aLink);
+	                if (aLink.isThrowLink()) {
+	                    throwLinks.add(aLink);
 	                }
 	            }
 
 	            // Look for catch links for a throw link
 	            for (IntermediateLink throwLink : throwLinks) {
 
-	                ArrayList<IntermediateLink> linksWithSharedNames = new ArrayList<IntermediateLink>();
-	                for (IntermediateLink aLink : links) {
-	                    if (throwLink.getName().equals(aLink.getName())) {
-	                        linksWithSharedNames.add(aLink);
-	                    }
-	                }
+	                List<IntermediateLink> linksWithSharedNames = linksByName.remove(throwLink.getName());
 
-	                if (linksWithSharedNames.size() < 2) {
+	                if (linksWithSharedNames == null || linksWithSharedNames.size() < 2) {
 	                    throw new IllegalArgumentException(
 	                            "There should be at least 2 link events to make a connection");
 	                }
 
-	                linksWithSharedNames.remove(throwLink);
-
 	                // Make the connections
-	                Node t = findNodeByIdOrUniqueIdInMetadata(process,
-	                        throwLink.getUniqueId());
+	                Node t = findNodeByIdOrUniqueIdInMetadata(process, nodesByUniqueId,
+	                        throwLink.getUniqueId(), "Could not find target node for connection:");
 
 	                // connect throw to catch
 	                for (IntermediateLink catchLink : linksWithSharedNames) {
+	                    if (catchLink == throwLink) {
+	                        continue;
+	                    }
 
-	                    Node c = findNodeByIdOrUniqueIdInMetadata(process,
-	                            catchLink.getUniqueId());
+	                    Node c = findNodeByIdOrUniqueIdInMetadata(process, nodesByUniqueId,
+	                            catchLink.getUniqueId(), "Could not find target node for connection:");
 	                    if (t != null && c != null) {
 	                        Connection result = new ConnectionImpl(t,
 	                                NodeImpl.CONNECTION_DEFAULT_TYPE, c,
@@ -187,24 +215,32 @@ public class ProcessHandler extends BaseAbstractHandler implements Handler {
 	                        result.setMetaData("linkNodeHidden", "yes");
 	                    }
 	                }
-
-	                // Remove processed links
-	                links.remove(throwLink);
-	                links.removeAll(linksWithSharedNames);
 	            }
 
-	            if (links.size() > 0) {
-	                throw new IllegalArgumentException(links.size()
+	            int unprocessedLinks = 0;
+	            for (List<IntermediateLink> linksWithSharedName : linksByName.values()) {
+	                unprocessedLinks += linksWithSharedName.size();
+	            }
+	            if (unprocessedLinks > 0) {
+	                throw new IllegalArgumentException(unprocessedLinks
 	                        + " links were not processed");
 	            }
 
+	            // All links have been processed
+	            links.clear();
 	        }
 	    }
 	 
 	 
 	  private static Node findNodeByIdOrUniqueIdInMetadata(
-	            NodeContainer nodeContainer, String targetRef) {
+	            NodeContainer nodeContainer, Map<String, Node> nodesByUniqueId,
+	            String targetRef, String errorMessage) {
 
+	        // try looking for a node with same "UniqueId" (in metadata)
+	        Node targetNode = nodesByUniqueId.get(targetRef);
+	        if (targetNode != null) {
+	            return targetNode;
+	        }
 	        try {
 	            // remove starting _
 	            String targetId = targetRef.substring(1);
@@ -212,22 +248,7 @@ public class ProcessHandler extends BaseAbstractHandler implements Handler {
 	            targetId = targetId.substring(targetId.lastIndexOf("-") + 1);
 	            return nodeContainer.getNode(new Integer(targetId));
 	        } catch (NumberFormatException e) {
-	            // try looking for a node with same "UniqueId" (in metadata)
-	            Node targetNode = null;
-	            for (Node node : nodeContainer.getNodes()) {
-	                if (targetRef.equals(node.getMetaData().get("UniqueId"))) {
-	                    targetNode = node;
-	                    break;
-	                }
-	            }
-
-	            if (targetNode != null) {
-	                return targetNode;
-	            } else {
-	                throw new IllegalArgumentException(
-	                        "Could not find target node for connection:"
-	                                + targetRef);
-	            }
+	            throw new IllegalArgumentException(errorMessage + targetRef);
 	        }
 
 	    }
@@ -238,48 +259,17 @@ public class ProcessHandler extends BaseAbstractHandler implements Handler {
 	}
 	
 	public static void linkConnections(NodeContainer nodeContainer, List<SequenceFlow> connections) {
+		linkConnections(nodeContainer, connections, getNodesByUniqueId(nodeContainer));
+	}
+
+	public static void linkConnections(NodeContainer nodeContainer, List<SequenceFlow> connections,
+			Map<String, Node> nodesByUniqueId) {
 		if (connections != null) {
 			for (SequenceFlow connection: connections) {
-				String sourceRef = connection.getSourceRef();
-				String targetRef = connection.getTargetRef();
-				Node source = null;
-				Node target = null;
-				try {
-    				// remove starting _
-    				sourceRef = sourceRef.substring(1);
-    				// remove ids of parent nodes
-    				sourceRef = sourceRef.substring(sourceRef.lastIndexOf("-") + 1);
-    				source = nodeContainer.getNode(new Integer(sourceRef));
-				} catch (NumberFormatException e) {
-				    // try looking for a node with same "UniqueId" (in metadata)
-				    for (Node node: nodeContainer.getNodes()) {
-				        if (connection.getSourceRef().equals(node.getMetaData().get("UniqueId"))) {
-				            source = node;
-				            break;
-				        }
-				    }
-                    if (source == null) {
-                        throw new IllegalArgumentException("Could not find source node for connection:" + connection.getSourceRef());
-                    }
-				}
-				try {
-    				// remove starting _
-    				targetRef = targetRef.substring(1);
-    		        // remove ids of parent nodes
-    				targetRef = targetRef.substring(targetRef.lastIndexOf("-") + 1);
-    				target = nodeContainer.getNode(new Integer(targetRef));
-				} catch (NumberFormatException e) {
-				    // try looking for a node with same "UniqueId" (in metadata)
-                    for (Node node: nodeContainer.getNodes()) {
-                        if (connection.getTargetRef().equals(node.getMetaData().get("UniqueId"))) {
-                            target = node;
-                            break;
-                        }
-                    }
-                    if (target == null) {
-                        throw new IllegalArgumentException("Could not find target node for connection:" + connection.getTargetRef());
-                    }
-				}
+				Node source = findNodeByIdOrUniqueIdInMetadata(nodeContainer, nodesByUniqueId,
+					connection.getSourceRef(), "Could not find source node for connection:");
+				Node target = findNodeByIdOrUniqueIdInMetadata(nodeContainer, nodesByUniqueId,
+					connection.getTargetRef(), "Could not find target node for connection:");
 				Connection result = new ConnectionImpl(
 					source, NodeImpl.CONNECTION_DEFAULT_TYPE, 
 					target, NodeImpl.CONNECTION_DEFAULT_TYPE);
@@ -318,31 +308,18 @@ public class ProcessHandler extends BaseAbstractHandler implements Handler {
 	}
 	
     public static void linkBoundaryEvents(NodeContainer nodeContainer) {
+        linkBoundaryEvents(nodeContainer, getNodesByUniqueId(nodeContainer));
+    }
+
+    public static void linkBoundaryEvents(NodeContainer nodeContainer, Map<String, Node> nodesByUniqueId) {
         for (Node node: nodeContainer.getNodes()) {
             if (node instanceof EventNode) {
                 String attachedTo = (String) node.getMetaData().get("AttachedTo");
                 if (attachedTo != null) {
                 	String type = ((EventTypeFilter)
                         ((EventNode) node).getEventFilters().get(0)).getType();
-                    Node attachedNode = null;
-                    try {
-                        // remove starting _
-                        String attachedToString = attachedTo.substring(1);
-                        // remove ids of parent nodes
-                        attachedToString = attachedToString.substring(attachedToString.lastIndexOf("-") + 1);
-                        attachedNode = nodeContainer.getNode(new Integer(attachedToString));
-                    } catch (NumberFormatException e) {
-                        // try looking for a node with same "UniqueId" (in metadata)
-                        for (Node subnode: nodeContainer.getNodes()) {
-                            if (attachedTo.equals(subnode.getMetaData().get("UniqueId"))) {
-                                attachedNode = subnode;
-                                break;
-                            }
-                        }
-                        if (attachedNode == null) {
-                            throw new IllegalArgumentException("Could not find node to attach to: " + attachedTo);
-                        }
-                    }
+                    Node attachedNode = findNodeByIdOrUniqueIdInMetadata(nodeContainer, nodesByUniqueId,
+                        attachedTo, "Could not find node to attach to: ");
                     if (type.startsWith("Escalation-")) {
                         boolean cancelActivity = (Boolean) node.getMetaData().get("CancelActivity");
                         CompositeContextNode compositeNode = (CompositeContextNode) attachedNode;
@@ -94,13 +94,14 @@ public class SubProcessHandler extends AbstractNodeHandler {
     	CompositeContextNode compositeNode = (CompositeContextNode) node;
     	List<SequenceFlow> connections = (List<SequenceFlow>)
 			compositeNode.getMetaData(ProcessHandler.CONNECTIONS);
-    	ProcessHandler.linkConnections(compositeNode, connections);
+    	Map<String, org.drools.definition.process.Node> nodesByUniqueId = ProcessHandler.getNodesByUniqueId(compositeNode);
+    	ProcessHandler.linkConnections(compositeNode, connections, nodesByUniqueId);
     	
     	List<IntermediateLink> throwLinks = (List<IntermediateLink>) compositeNode
 		.getMetaData(ProcessHandler.LINKS);
-    	ProcessHandler.linkIntermediateLinks(compositeNode, throwLinks);	
+    	ProcessHandler.linkIntermediateLinks(compositeNode, throwLinks, nodesByUniqueId);	
     	
-    	ProcessHandler.linkBoundaryEvents(compositeNode);
+    	ProcessHandler.linkBoundaryEvents(compositeNode, nodesByUniqueId);
     }
     
     @SuppressWarnings("unchecked")
@@ -120,8 +121,9 @@ public class SubProcessHandler extends AbstractNodeHandler {
         }
     	List<SequenceFlow> connections = (List<SequenceFlow>)
 			forEachNode.getMetaData(ProcessHandler.CONNECTIONS);
-    	ProcessHandler.linkConnections(forEachNode, connections);
-    	ProcessHandler.linkBoundaryEvents(forEachNode);
+    	Map<String, org.drools.definition.process.Node> nodesByUniqueId = ProcessHandler.getNodesByUniqueId(forEachNode);
+    	ProcessHandler.linkConnections(forEachNode, connections, nodesByUniqueId);
+    	ProcessHandler.linkBoundaryEvents(forEachNode, nodesByUniqueId);
     }
     
     protected void readDataInputAssociation(org.w3c.dom.Node xmlNode, ForEachNode forEachNode) {
@@ -135,6 +137,7 @@ public class SubProcessHandler extends AbstractNodeHandler {
     
     @SuppressWarnings("unchecked")
 	protected void readMultiInstanceLoopCharacteristics(org.w3c.dom.Node xmlNode, ForEachNode forEachNode, ExtensibleXmlParser parser) {
+        ForEachNodeHandler.readMaxConcurrency((Element) xmlNode, forEachNode);
         // sourceRef
         org.w3c.dom.Node subNode = xmlNode.getFirstChild();
         while (subNode != null) {
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.bpmn2;
+
+import java.io.StringReader;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.drools.definition.process.Node;
+import org.drools.definition.process.Process;
+import org.drools.xml.SemanticModules;
+import org.jbpm.bpmn2.xml.BPMNSemanticModule;
+import org.jbpm.compiler.xml.XmlProcessReader;
+import org.jbpm.ruleflow.core.RuleFlowProcess;
+import org.jbpm.workflow.core.impl.NodeImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses generated processes with a large number of nodes that use (non-numeric) unique ids,
+ * to check that all connections are linked and to log the parse time for each size.
+ */
+public class BPMN2ParseLargeProcessTest extends TestCase {
+
+    private Logger logger = LoggerFactory.getLogger(BPMN2ParseLargeProcessTest.class);
+
+    private static final int[] SIZES = { 100, 1000, 2000, 5000 };
+
+    public void testParseLargeProcesses() throws Exception {
+        SemanticModules modules = new SemanticModules();
+        modules.addSemanticModule(new BPMNSemanticModule());
+        XmlProcessReader processReader = new XmlProcessReader(modules, getClass().getClassLoader());
+        for (int size: SIZES) {
+            String xml = generateProcess(size);
+            long start = System.currentTimeMillis();
+            List<Process> processes = processReader.read(new StringReader(xml));
+            long time = System.currentTimeMillis() - start;
+            logger.info("Parsing process with " + size + " tasks took " + time + "ms");
+
+            assertEquals(1, processes.size());
+            RuleFlowProcess process = (RuleFlowProcess) processes.get(0);
+            Node[] nodes = process.getNodes();
+            assertEquals(size + 2, nodes.length);
+            for (Node node: nodes) {
+                String uniqueId = (String) node.getMetaData().get("UniqueId");
+                if (!"End".equals(uniqueId)) {
+                    assertEquals(uniqueId, 1, node.getOutgoingConnections(NodeImpl.CONNECTION_DEFAULT_TYPE).size());
+                }
+                if (!"Start".equals(uniqueId)) {
+                    assertEquals(uniqueId, 1, node.getIncomingConnections(NodeImpl.CONNECTION_DEFAULT_TYPE).size());
+                }
+            }
+        }
+    }
+
+    private String generateProcess(int size) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<definitions id=\"Definition\" targetNamespace=\"http://www.example.org/Large\"\n");
+        xml.append("             xmlns=\"http://www.omg.org/spec/BPMN/20100524/MODEL\"\n");
+        xml.append("             xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n");
+        xml.append("             xmlns:tns=\"http://www.jboss.org/drools\">\n");
+        xml.append("  <process id=\"Large\" name=\"Large Process\" tns:packageName=\"org.jbpm\">\n");
+        xml.append("    <startEvent id=\"Start\" />\n");
+        for (int i = 0; i < size; i++) {
+            xml.append("    <task id=\"Task").append(i).append("\" name=\"Task ").append(i)
+                .append("\" tns:taskName=\"Task\" />\n");
+        }
+        xml.append("    <endEvent id=\"End\" />\n");
+        String previous = "Start";
+        for (int i = 0; i <= size; i++) {
+            String next = i == size ? "End" : "Task" + i;
+            xml.append("    <sequenceFlow id=\"Flow").append(i).append("\" sourceRef=\"").append(previous)
+                .append("\" targetRef=\"").append(next).append("\" />\n");
+            previous = next;
+        }
+        xml.append("  </process>\n");
+        xml.append("</definitions>\n");
+        return xml.toString();
+    }
+
+}
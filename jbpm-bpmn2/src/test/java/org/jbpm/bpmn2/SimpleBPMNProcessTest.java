@@ -819,6 +819,69 @@ public class SimpleBPMNProcessTest extends JbpmJUnitTestCase {
 		assertTrue(processInstance.getState() == ProcessInstance.STATE_COMPLETED);
 	}
 
+	public void testMultiInstanceLoopCharacteristicsTaskMaxConcurrency() throws Exception {
+		KnowledgeBase kbase = createKnowledgeBase("BPMN2-MultiInstanceLoopCharacteristicsTaskMaxConcurrency.bpmn2");
+		StatefulKnowledgeSession ksession = createKnowledgeSession(kbase);
+		TestWorkItemHandler workItemHandler = new TestWorkItemHandler();
+		ksession.getWorkItemManager().registerWorkItemHandler("Human Task",
+				workItemHandler);
+		Map<String, Object> params = new HashMap<String, Object>();
+		List<String> myList = new ArrayList<String>();
+		myList.add("First Item");
+		myList.add("Second Item");
+		myList.add("Third Item");
+		params.put("list", myList);
+		ProcessInstance processInstance = ksession.startProcess(
+				"MultiInstanceLoopCharacteristicsTaskMaxConcurrency", params);
+		assertTrue(processInstance.getState() == ProcessInstance.STATE_ACTIVE);
+		List<WorkItem> workItems = workItemHandler.getWorkItems();
+		assertEquals(2, workItems.size());
+		assertEquals("First Item", workItems.get(0).getParameter("Item"));
+		assertEquals("Second Item", workItems.get(1).getParameter("Item"));
+		ksession = restoreSession(ksession, true);
+		ksession.getWorkItemManager().registerWorkItemHandler("Human Task",
+				workItemHandler);
+		ksession.getWorkItemManager().completeWorkItem(workItems.get(0).getId(), null);
+		WorkItem workItem = workItemHandler.getWorkItem();
+		assertNotNull(workItem);
+		assertEquals("Third Item", workItem.getParameter("Item"));
+		ksession.getWorkItemManager().completeWorkItem(workItems.get(1).getId(), null);
+		ksession.getWorkItemManager().completeWorkItem(workItem.getId(), null);
+		assertProcessInstanceCompleted(processInstance.getId(), ksession);
+	}
+
+	public void testMultiInstanceLoopCharacteristicsTaskMaxConcurrencyCollectionChanged() throws Exception {
+		KnowledgeBase kbase = createKnowledgeBase("BPMN2-MultiInstanceLoopCharacteristicsTaskMaxConcurrency.bpmn2");
+		StatefulKnowledgeSession ksession = createKnowledgeSession(kbase);
+		TestWorkItemHandler workItemHandler = new TestWorkItemHandler();
+		ksession.getWorkItemManager().registerWorkItemHandler("Human Task",
+				workItemHandler);
+		Map<String, Object> params = new HashMap<String, Object>();
+		List<String> myList = new ArrayList<String>();
+		myList.add("First Item");
+		myList.add("Second Item");
+		myList.add("Third Item");
+		params.put("list", myList);
+		ProcessInstance processInstance = ksession.startProcess(
+				"MultiInstanceLoopCharacteristicsTaskMaxConcurrency", params);
+		List<WorkItem> workItems = workItemHandler.getWorkItems();
+		assertEquals(2, workItems.size());
+		// the pending iterations use the items of the collection when the node was triggered
+		List<String> otherList = new ArrayList<String>();
+		otherList.add("Other Item");
+		((org.jbpm.workflow.instance.impl.WorkflowProcessInstanceImpl) processInstance).setVariable("list", otherList);
+		ksession = restoreSession(ksession, true);
+		ksession.getWorkItemManager().registerWorkItemHandler("Human Task",
+				workItemHandler);
+		ksession.getWorkItemManager().completeWorkItem(workItems.get(0).getId(), null);
+		WorkItem workItem = workItemHandler.getWorkItem();
+		assertNotNull(workItem);
+		assertEquals("Third Item", workItem.getParameter("Item"));
+		ksession.getWorkItemManager().completeWorkItem(workItems.get(1).getId(), null);
+		ksession.getWorkItemManager().completeWorkItem(workItem.getId(), null);
+		assertProcessInstanceCompleted(processInstance.getId(), ksession);
+	}
+
 	public void testEscalationBoundaryEvent() throws Exception {
 		KnowledgeBase kbase = createKnowledgeBase("BPMN2-EscalationBoundaryEvent.bpmn2");
 		StatefulKnowledgeSession ksession = createKnowledgeSession(kbase);
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.compiler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The time (in milliseconds) spent in each phase of a batch build of processes
+ * (see {@link ProcessBuilderImpl#addProcessesFromXml(java.util.List)}).
+ * </p>
+ * Reading and validating is done by multiple threads, so the read and validation times are
+ * the sum of the time spent by all threads and can be larger than the total time.
+ */
+public class ProcessBuildMetrics {
+
+    private final AtomicLong readTime = new AtomicLong();
+    private final AtomicLong validationTime = new AtomicLong();
+    private final AtomicInteger cachedCount = new AtomicInteger();
+    private long ruleGenerationTime;
+    private long nodeBuildTime;
+    private long compileTime;
+    private long totalTime;
+    private int processCount;
+
+    void addReadTime(long time) {
+        readTime.addAndGet(time);
+    }
+
+    void addValidationTime(long time) {
+        validationTime.addAndGet(time);
+    }
+
+    void incrementCachedCount() {
+        cachedCount.incrementAndGet();
+    }
+
+    void addRuleGenerationTime(long time) {
+        ruleGenerationTime += time;
+    }
+
+    void addNodeBuildTime(long time) {
+        nodeBuildTime += time;
+    }
+
+    void addCompileTime(long time) {
+        compileTime += time;
+    }
+
+    void setTotalTime(long totalTime) {
+        this.totalTime = totalTime;
+    }
+
+    void incrementProcessCount() {
+        processCount++;
+    }
+
+    public long getReadTime() {
+        return readTime.get();
+    }
+
+    public long getValidationTime() {
+        return validationTime.get();
+    }
+
+    /**
+     * @return the number of resources of which the processes were found in the {@link ProcessCache}
+     */
+    public int getCachedCount() {
+        return cachedCount.get();
+    }
+
+    public long getRuleGenerationTime() {
+        return ruleGenerationTime;
+    }
+
+    public long getNodeBuildTime() {
+        return nodeBuildTime;
+    }
+
+    public long getCompileTime() {
+        return compileTime;
+    }
+
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * @return the number of (valid) processes that were built
+     */
+    public int getProcessCount() {
+        return processCount;
+    }
+
+    public String toString() {
+        return "ProcessBuildMetrics [processes=" + processCount + ", cached=" + cachedCount
+            + ", read=" + readTime + "ms, validation=" + validationTime
+            + "ms, ruleGeneration=" + ruleGenerationTime + "ms, nodeBuild=" + nodeBuildTime
+            + "ms, compile=" + compileTime + "ms, total=" + totalTime + "ms]";
+    }
+
+}
@@ -20,8 +20,17 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.parsers.FactoryConfigurationError;
 
@@ -29,6 +38,7 @@ import org.drools.RuntimeDroolsException;
 import org.drools.compiler.Dialect;
 import org.drools.compiler.DialectCompiletimeRegistry;
 import org.drools.compiler.DroolsError;
+import org.drools.compiler.DrlParser;
 import org.drools.compiler.DroolsParserException;
 import org.drools.compiler.PackageBuilder;
 import org.drools.compiler.PackageBuilderConfiguration;
@@ -44,8 +54,15 @@ import org.drools.definition.process.WorkflowProcess;
 import org.drools.io.Resource;
 import org.drools.io.internal.InternalResource;
 import org.drools.lang.descr.ActionDescr;
+import org.drools.lang.descr.FunctionImportDescr;
+import org.drools.lang.descr.GlobalDescr;
+import org.drools.lang.descr.ImportDescr;
+import org.drools.lang.descr.PackageDescr;
 import org.drools.lang.descr.ProcessDescr;
+import org.drools.lang.descr.RuleDescr;
+import org.drools.rule.JavaDialectRuntimeData;
 import org.drools.rule.builder.dialect.java.JavaDialect;
+import org.jbpm.compiler.ProcessCache.CompiledProcess;
 import org.jbpm.compiler.xml.ProcessSemanticModule;
 import org.jbpm.compiler.xml.XmlProcessReader;
 import org.jbpm.compiler.xml.processes.RuleFlowMigrator;
@@ -84,6 +101,11 @@ public class ProcessBuilderImpl implements ProcessBuilder {
     private PackageBuilder                packageBuilder;
     private final List<DroolsError>       errors                         = new ArrayList<DroolsError>();
     private Map<String, ProcessValidator> processValidators              = new HashMap<String, ProcessValidator>();
+    private ProcessCache                  processCache;
+    private boolean                       processCacheConfigured;
+    private int                           buildThreads                   = Integer.getInteger( "jbpm.process.build.threads",
+                                                                                               Runtime.getRuntime().availableProcessors() );
+    private ProcessBuildMetrics           lastBuildMetrics;
 
     public ProcessBuilderImpl(PackageBuilder packageBuilder) {
         this.packageBuilder = packageBuilder;
@@ -103,29 +125,177 @@ public class ProcessBuilderImpl implements ProcessBuilder {
         return errors;
     }
 
+    /**
+     * @return the process cache, by default created from the system properties the first time it is used
+     * (see {@link ProcessCache#createFromSystemProperties()}), or <code>null</code> if caching is disabled
+     */
+    public synchronized ProcessCache getProcessCache() {
+        if ( !processCacheConfigured ) {
+            processCacheConfigured = true;
+            try {
+                processCache = ProcessCache.createFromSystemProperties();
+            } catch ( RuntimeException e ) {
+                // an unusable cache directory should not prevent building processes
+                System.err.println( "Process cache disabled: " + e.getMessage() );
+            }
+        }
+        return processCache;
+    }
+
+    /**
+     * Sets the cache used to avoid reading, validating and compiling the same process XML again,
+     * <code>null</code> disables caching.
+     */
+    public synchronized void setProcessCache(ProcessCache processCache) {
+        this.processCache = processCache;
+        this.processCacheConfigured = true;
+    }
+
+    public int getBuildThreads() {
+        return buildThreads;
+    }
+
+    /**
+     * Sets the number of threads used to read and validate processes in
+     * {@link #addProcessesFromXml(List)}, defaults to the number of processors.
+     */
+    public void setBuildThreads(int buildThreads) {
+        this.buildThreads = buildThreads;
+    }
+
+    /**
+     * @return the metrics of the last {@link #addProcessesFromXml(List)} call, or <code>null</code>
+     */
+    public ProcessBuildMetrics getLastBuildMetrics() {
+        return lastBuildMetrics;
+    }
+
     public void buildProcess(final Process process, Resource resource) {
+        if ( validateProcess( process, resource, this.errors ) ) {
+            ProcessBuildContext buildContext = buildProcessDefinition( process, resource, generateRules( process ), null, null );
+            if ( buildContext != null ) {
+                compile( getPackageRegistry( buildContext ) );
+            }
+        }
+    }
+
+    private void compile(PackageRegistry pkgRegistry) {
+        pkgRegistry.compileAll();                
+        pkgRegistry.getDialectRuntimeRegistry().onBeforeExecute();
+    }
+
+    private PackageRegistry getPackageRegistry(ProcessBuildContext buildContext) {
+        return this.packageBuilder.getPackageRegistry( buildContext.getPkg().getName() );
+    }
+
+    /**
+     * Validates the given process, adding any validation errors to the given list.
+     * This method does not modify the state of this builder, so it can be used by multiple threads.
+     * @return whether the process is valid
+     */
+    private boolean validateProcess(final Process process, Resource resource, List<DroolsError> errors) {
         if ( resource != null && ((InternalResource)resource).hasURL() ) {
             ((org.jbpm.process.core.Process) process).setResource( resource );
         }
-        boolean hasErrors = false;
         ProcessValidator validator = processValidators.get(((Process)process).getType());
         if (validator == null) {
             System.out.println("Could not find validator for process " + ((Process)process).getType() + ".");
             System.out.println("Continuing without validation of the process " + process.getName() + "[" + process.getId() + "]");
-        } else {
-            ProcessValidationError[] errors = validator.validateProcess( (WorkflowProcess) process );
-            if ( errors.length != 0 ) {
-                hasErrors = true;
-                for ( int i = 0; i < errors.length; i++ ) {
-                    this.errors.add( new ParserError( errors[i].toString(),
-                                                      -1,
-                                                      -1 ) );
-                }
-            }
+            return true;
+        }
+        ProcessValidationError[] validationErrors = validator.validateProcess( (WorkflowProcess) process );
+        for ( int i = 0; i < validationErrors.length; i++ ) {
+            errors.add( new ParserError( validationErrors[i].toString(),
+                                         -1,
+                                         -1 ) );
+        }
+        return validationErrors.length == 0;
+    }
+
+    /**
+     * Builds the process with the given index of the given XML, using its cached rules and
+     * compiled actions and constraints if the processes come from the process cache.
+     * @param addRules whether the rules of the process should be added, or have already been added
+     * (see {@link #addRules(Map, String, Resource)})
+     * @return the build context of the process, or <code>null</code> if it could not be built
+     */
+    private ProcessBuildContext buildProcessDefinition(ProcessXml processXml, int index, boolean addRules, ProcessBuildMetrics metrics) {
+        CompiledProcess compiledProcess = processXml.cached ? processXml.cacheEntry.getCompiledProcesses().get( index ) : null;
+        processXml.buildContexts[index] = buildProcessDefinition( processXml.processes.get( index ), processXml.resource,
+            addRules ? getRules( processXml, index ) : null, compiledProcess, metrics );
+        return processXml.buildContexts[index];
+    }
+
+    /**
+     * @return the (generated or cached) rules of the process with the given index of the given XML
+     */
+    private String getRules(ProcessXml processXml, int index) {
+        if ( processXml.rules[index] == null ) {
+            processXml.rules[index] = processXml.cached
+                ? processXml.cacheEntry.getCompiledProcesses().get( index ).getRules()
+                : generateRules( processXml.processes.get( index ) );
+        }
+        return processXml.rules[index];
+    }
+
+    /**
+     * Adds the rules of a process to the description of its package, so that the rules of all the
+     * processes of a batch can be added at once, as adding rules compiles the whole package.
+     */
+    private void addRules(Map<String, PackageDescr> packageDescrs, String rules, Resource resource) {
+        if ( rules.length() == 0 ) {
+            return;
+        }
+        DrlParser parser = new DrlParser();
+        PackageDescr descr;
+        try {
+            descr = parser.parse( rules );
+        } catch ( DroolsParserException e ) {
+            // should never occur
+            e.printStackTrace( System.err );
+            return;
+        }
+        if ( parser.hasErrors() ) {
+            this.errors.addAll( parser.getErrors() );
+            return;
         }
-        if ( !hasErrors ) {
-            // generate and add rule for process
-            String rules = generateRules( process );
+        PackageDescr packageDescr = packageDescrs.get( descr.getName() );
+        if ( packageDescr == null ) {
+            packageDescr = new PackageDescr( descr.getName() );
+            packageDescrs.put( descr.getName(), packageDescr );
+        }
+        for ( ImportDescr importDescr: descr.getImports() ) {
+            packageDescr.addImport( importDescr );
+        }
+        for ( FunctionImportDescr functionImportDescr: descr.getFunctionImports() ) {
+            packageDescr.addFunctionImport( functionImportDescr );
+        }
+        for ( GlobalDescr globalDescr: descr.getGlobals() ) {
+            packageDescr.addGlobal( globalDescr );
+        }
+        for ( RuleDescr ruleDescr: descr.getRules() ) {
+            // the rules still belong to the resource of their process
+            ruleDescr.setResource( resource );
+            packageDescr.addRule( ruleDescr );
+        }
+    }
+
+    /**
+     * Adds the given rules for the given (valid) process and builds its actions and constraints,
+     * without compiling them. If a compiled process is given, its Java actions and constraints
+     * are added to the package instead of being compiled again.
+     * @param rules the rules of the process, or <code>null</code> if they have already been added
+     * @return the build context of the process, whose package should be compiled afterwards,
+     * or <code>null</code> if the package of the process could not be built
+     */
+    private ProcessBuildContext buildProcessDefinition(final Process process, Resource resource, String rules,
+                                                       CompiledProcess compiledProcess, ProcessBuildMetrics metrics) {
+        if ( resource != null && ((InternalResource)resource).hasURL() ) {
+            ((org.jbpm.process.core.Process) process).setResource( resource );
+        }
+        long start = System.currentTimeMillis();
+        if ( rules != null ) {
+            // add rule for process
 //            System.out.println(rules);
             try {
                 packageBuilder.addPackageFromDrl( new StringReader( rules ), resource );
@@ -136,43 +306,114 @@ public class ProcessBuilderImpl implements ProcessBuilder {
                 // should never occur
                 e.printStackTrace( System.err );
             }
+            if ( metrics != null ) {
+                metrics.addRuleGenerationTime( System.currentTimeMillis() - start );
+                start = System.currentTimeMillis();
+            }
+        }
+        
+        PackageRegistry pkgRegistry = this.packageBuilder.getPackageRegistry(process.getPackageName());
+		if (pkgRegistry == null) {
+			// invalid package registry..there is an issue with the package
+			// name of the process
+			throw new RuntimeDroolsException("invalid package name");
+		}
+		org.drools.rule.Package p = pkgRegistry.getPackage();
+		if (p == null) {
+			return null;
+		}
             
-            PackageRegistry pkgRegistry = this.packageBuilder.getPackageRegistry(process.getPackageName());
-			if (pkgRegistry != null) {
-				org.drools.rule.Package p = pkgRegistry.getPackage();
-            
-	            if (p != null) {
-	            
-		            ProcessDescr processDescr = new ProcessDescr();
-		            processDescr.setName(process.getPackageName() + "." + process.getName());
-		            processDescr.setResource( resource );
-		            DialectCompiletimeRegistry dialectRegistry = pkgRegistry.getDialectCompiletimeRegistry();           
-		            Dialect dialect = dialectRegistry.getDialect( "java" );
-		            dialect.init(processDescr);
-		
-		            ProcessBuildContext buildContext = new ProcessBuildContext(
-		        		this.packageBuilder,
-		                p,
-		                process,
-		                processDescr,
-		                dialectRegistry,
-		                dialect);
-		
-		            buildContexts( ( ContextContainer ) process, buildContext );
-		            if (process instanceof WorkflowProcess) {
-		            	buildNodes( (WorkflowProcess) process, buildContext );
-		            }
-		            p.addProcess( process );
-		
-		            pkgRegistry.compileAll();                
-		            pkgRegistry.getDialectRuntimeRegistry().onBeforeExecute();
-	            }
-	        } else {
-				// invalid package registry..there is an issue with the package
-				// name of the process
-				throw new RuntimeDroolsException("invalid package name");
-			}
+        ProcessDescr processDescr = new ProcessDescr();
+        processDescr.setName(process.getPackageName() + "." + process.getName());
+        processDescr.setResource( resource );
+        DialectCompiletimeRegistry dialectRegistry = pkgRegistry.getDialectCompiletimeRegistry();           
+        Dialect dialect = dialectRegistry.getDialect( "java" );
+        dialect.init(processDescr);
+        if ( compiledProcess != null ) {
+            // the cached actions and constraints refer to the process class they were compiled with
+            processDescr.setClassName( compiledProcess.getClassName() );
+        }
+
+        ProcessBuildContext buildContext = new ProcessBuildContext(
+    		this.packageBuilder,
+            p,
+            process,
+            processDescr,
+            dialectRegistry,
+            dialect);
+
+        buildContexts( ( ContextContainer ) process, buildContext );
+        if (process instanceof WorkflowProcess) {
+            if ( compiledProcess == null ) {
+                buildNodes( (WorkflowProcess) process, buildContext );
+            } else {
+                buildCompiledNodes( (WorkflowProcess) process, buildContext, compiledProcess );
+            }
+        }
+        p.addProcess( process );
+        if ( metrics != null ) {
+            metrics.addNodeBuildTime( System.currentTimeMillis() - start );
+        }
+        return buildContext;
+    }
+
+    /**
+     * Builds the nodes of a process from the process cache, adding the cached classes of its Java actions
+     * and constraints to the package instead of compiling them. MVEL actions and constraints are built
+     * as usual.
+     */
+    private void buildCompiledNodes(WorkflowProcess process, ProcessBuildContext context, CompiledProcess compiledProcess) {
+        processNodes(process.getNodes(), process, context.getProcessDescr(), context);
+        if ( !context.getErrors().isEmpty() ) {
+            this.errors.addAll( context.getErrors() );
+        }
+        Map<String, byte[]> classes = compiledProcess.getClasses();
+        for ( Object className: context.getInvokers().keySet() ) {
+            if ( !classes.containsKey( toResourceName( (String) className ) ) ) {
+                // not compiled the same way as the cached process, compile it again
+                ProcessDialectRegistry.getDialect(JavaDialect.ID).addProcess( context );
+                return;
+            }
+        }
+        JavaDialectRuntimeData data = (JavaDialectRuntimeData)
+            context.getPkg().getDialectRuntimeRegistry().getDialectData( JavaDialect.ID );
+        for ( Map.Entry<String, byte[]> entry: classes.entrySet() ) {
+            data.write( entry.getKey(), entry.getValue() );
+        }
+        // the invokers are wired to the cached classes when the package is executed
+        for ( Object className: context.getInvokers().keySet() ) {
+            Object invoker = context.getInvokerLookups().get( className );
+            if ( invoker != null ) {
+                data.putInvoker( (String) className, invoker );
+            }
+        }
+    }
+
+    /**
+     * @return the rules and the compiled Java classes of the given (compiled) process
+     */
+    private CompiledProcess getCompiledProcess(ProcessBuildContext context, String rules) {
+        Set<String> classNames = new HashSet<String>();
+        classNames.add( toResourceName( context.getPkg().getName() + "." + context.getProcessDescr().getClassName() ) );
+        for ( Object className: context.getInvokers().keySet() ) {
+            classNames.add( toResourceName( (String) className ) );
+        }
+        JavaDialectRuntimeData data = (JavaDialectRuntimeData)
+            context.getPkg().getDialectRuntimeRegistry().getDialectData( JavaDialect.ID );
+        Map<String, byte[]> classes = new HashMap<String, byte[]>();
+        for ( Map.Entry<String, byte[]> entry: data.getStore().entrySet() ) {
+            // include the inner classes of the process and invoker classes
+            String resourceName = entry.getKey();
+            int index = resourceName.indexOf( '$' );
+            if ( classNames.contains( index < 0 ? resourceName : resourceName.substring( 0, index ) + ".class" ) ) {
+                classes.put( resourceName, entry.getValue() );
+            }
         }
+        return new CompiledProcess( context.getProcessDescr().getClassName(), rules, classes );
+    }
+
+    private static String toResourceName(String className) {
+        return className.replace( '.', '/' ) + ".class";
     }
 
     public void buildContexts(ContextContainer contextContainer, ProcessBuildContext buildContext) {
@@ -230,26 +471,27 @@ public class ProcessBuilderImpl implements ProcessBuilder {
 
     public List<DroolsError> addProcessFromXml(final Resource resource) throws IOException {
     	Reader reader = resource.getReader();
-        PackageBuilderConfiguration configuration = packageBuilder.getPackageBuilderConfiguration();
-        XmlProcessReader xmlReader = new XmlProcessReader( configuration.getSemanticModules(), packageBuilder.getRootClassLoader() );
-        
         final ClassLoader oldLoader = Thread.currentThread().getContextClassLoader();
         final ClassLoader newLoader = this.getClass().getClassLoader();
         try {
             Thread.currentThread().setContextClassLoader( newLoader );
-            String portRuleFlow = System.getProperty( "drools.ruleflow.port", "false" );
-            Reader portedReader = null;
-            if ( portRuleFlow.equalsIgnoreCase( "true" ) ) {
-                portedReader = portToCurrentVersion( reader );
-            } else {
-                portedReader = reader;
-            }
-            List<Process> processes = xmlReader.read(portedReader);
-            if (processes != null) {
+            ProcessXml processXml = readProcesses( reader );
+            processXml.resource = resource;
+            if (processXml.processes != null) {
+                int errorCount = this.errors.size();
                 // it is possible an xml file could not be parsed, so we need to
                 // stop null pointers
-                for (Process process : processes) {
-                    buildProcess(process, resource);
+                for (int i = 0; i < processXml.processes.size(); i++) {
+                    // processes from the process cache have already been validated
+                    if ( processXml.cached || validateProcess( processXml.processes.get( i ), resource, this.errors ) ) {
+                        ProcessBuildContext buildContext = buildProcessDefinition( processXml, i, true, null );
+                        if ( buildContext != null ) {
+                            compile( getPackageRegistry( buildContext ) );
+                        }
+                    }
+                }
+                if ( this.errors.size() == errorCount && !packageBuilder.hasErrors() ) {
+                    cacheProcesses( processXml );
                 }
             } else {
                 // @TODO could we maybe add something a bit more informative about what is wrong with the XML ?
@@ -266,6 +508,225 @@ public class ProcessBuilderImpl implements ProcessBuilder {
         reader.close();
         return this.errors;
     }
+
+    /**
+     * Builds the processes in the given XML resources in one batch. The resources are read and the
+     * processes are validated in parallel (using {@link #getBuildThreads()} threads), after which the
+     * rules of all the processes are added once for each package, and the actions and constraints of
+     * all the processes are compiled once for each package.
+     * </p>
+     * Errors are reported in the order of the resources, as if they were added one by one.
+     * The time spent in each phase is available in {@link #getLastBuildMetrics()} afterwards.
+     */
+    public List<DroolsError> addProcessesFromXml(final List<Resource> resources) {
+        final ProcessBuildMetrics metrics = new ProcessBuildMetrics();
+        long start = System.currentTimeMillis();
+
+        // read and validate the processes in parallel
+        List<Future<ProcessXml>> futures = new ArrayList<Future<ProcessXml>>(resources.size());
+        ExecutorService executor = Executors.newFixedThreadPool( Math.max( 1, Math.min( buildThreads, resources.size() ) ) );
+        try {
+            for (final Resource resource: resources) {
+                futures.add( executor.submit( new Callable<ProcessXml>() {
+                    public ProcessXml call() throws Exception {
+                        return readAndValidateProcesses( resource, metrics );
+                    }
+                } ) );
+            }
+            // generate the rules of the processes in the order of the resources
+            List<ProcessXml> processXmls = new ArrayList<ProcessXml>(resources.size());
+            Map<String, PackageDescr> packageDescrs = new LinkedHashMap<String, PackageDescr>();
+            for (Future<ProcessXml> future: futures) {
+                ProcessXml processXml;
+                try {
+                    processXml = future.get();
+                } catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    processXml = new ProcessXml();
+                    processXml.errors.add( new ProcessLoadError( "interrupted while reading processes", e ) );
+                    processXmls.add( processXml );
+                    break;
+                } catch ( ExecutionException e ) {
+                    Throwable cause = e.getCause();
+                    processXml = new ProcessXml();
+                    if ( cause instanceof FactoryConfigurationError ) {
+                        processXml.errors.add( new ProcessLoadError( "FactoryConfigurationError ", ((FactoryConfigurationError) cause).getException()) );
+                    } else {
+                        processXml.errors.add( new ProcessLoadError( "unable to parse xml", cause instanceof Exception ? (Exception) cause : e ) );
+                    }
+                    processXmls.add( processXml );
+                    continue;
+                }
+                if (processXml.processes == null) {
+                    processXml.errors.add( new ProcessLoadError( "unable to parse xml", null ) );
+                } else {
+                    long rulesStart = System.currentTimeMillis();
+                    for (int i = 0; i < processXml.processes.size(); i++) {
+                        if ( processXml.valid[i] ) {
+                            addRules( packageDescrs, getRules( processXml, i ), processXml.resource );
+                        }
+                    }
+                    metrics.addRuleGenerationTime( System.currentTimeMillis() - rulesStart );
+                }
+                processXmls.add( processXml );
+            }
+            // adding rules compiles the package, so the rules are added once for each package
+            long rulesStart = System.currentTimeMillis();
+            for (PackageDescr packageDescr: packageDescrs.values()) {
+                packageBuilder.addPackage( packageDescr );
+            }
+            metrics.addRuleGenerationTime( System.currentTimeMillis() - rulesStart );
+
+            // build the processes in the order of the resources
+            Set<PackageRegistry> pkgRegistries = new LinkedHashSet<PackageRegistry>();
+            List<ProcessXml> processesToCache = new ArrayList<ProcessXml>();
+            for (ProcessXml processXml: processXmls) {
+                this.errors.addAll( processXml.errors );
+                if (processXml.processes == null) {
+                    continue;
+                }
+                int errorCount = this.errors.size();
+                for (int i = 0; i < processXml.processes.size(); i++) {
+                    if ( processXml.valid[i] ) {
+                        ProcessBuildContext buildContext = buildProcessDefinition( processXml, i, false, metrics );
+                        if ( buildContext != null ) {
+                            pkgRegistries.add( getPackageRegistry( buildContext ) );
+                        }
+                        metrics.incrementProcessCount();
+                    }
+                }
+                if ( processXml.errors.isEmpty() && this.errors.size() == errorCount ) {
+                    processesToCache.add( processXml );
+                }
+            }
+
+            // compile all actions and constraints once for each package
+            long compileStart = System.currentTimeMillis();
+            int errorCount = this.errors.size();
+            for (PackageRegistry pkgRegistry: pkgRegistries) {
+                compile( pkgRegistry );
+            }
+            metrics.addCompileTime( System.currentTimeMillis() - compileStart );
+            // the compiled classes of the processes can only be cached after compilation
+            if ( this.errors.size() == errorCount && !packageBuilder.hasErrors() ) {
+                for (ProcessXml processXml: processesToCache) {
+                    cacheProcesses( processXml );
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        metrics.setTotalTime( System.currentTimeMillis() - start );
+        this.lastBuildMetrics = metrics;
+        return this.errors;
+    }
+
+    private ProcessXml readAndValidateProcesses(Resource resource, ProcessBuildMetrics metrics) throws Exception {
+        final ClassLoader oldLoader = Thread.currentThread().getContextClassLoader();
+        Reader reader = resource.getReader();
+        try {
+            Thread.currentThread().setContextClassLoader( this.getClass().getClassLoader() );
+            long start = System.currentTimeMillis();
+            ProcessXml processXml = readProcesses( reader );
+            metrics.addReadTime( System.currentTimeMillis() - start );
+            processXml.resource = resource;
+            if ( processXml.processes != null ) {
+                start = System.currentTimeMillis();
+                processXml.valid = new boolean[processXml.processes.size()];
+                for (int i = 0; i < processXml.processes.size(); i++) {
+                    // processes from the process cache have already been validated
+                    processXml.valid[i] = processXml.cached
+                        || validateProcess( processXml.processes.get( i ), resource, processXml.errors );
+                }
+                metrics.addValidationTime( System.currentTimeMillis() - start );
+                if ( processXml.cached ) {
+                    metrics.incrementCachedCount();
+                }
+            }
+            return processXml;
+        } finally {
+            Thread.currentThread().setContextClassLoader( oldLoader );
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the processes from the given XML, using the process cache if possible.
+     * This method does not modify the state of this builder, so it can be used by multiple threads.
+     */
+    private ProcessXml readProcesses(Reader reader) throws Exception {
+        ProcessXml result = new ProcessXml();
+        String portRuleFlow = System.getProperty( "drools.ruleflow.port", "false" );
+        Reader portedReader = null;
+        if ( portRuleFlow.equalsIgnoreCase( "true" ) ) {
+            portedReader = portToCurrentVersion( reader );
+        } else {
+            portedReader = reader;
+        }
+        ProcessCache processCache = getProcessCache();
+        if ( processCache != null ) {
+            String xml = RuleFlowMigrator.convertReaderToString( portedReader );
+            result.cacheEntry = processCache.get( xml, packageBuilder.getRootClassLoader() );
+            result.cached = result.cacheEntry != null;
+            if ( result.cached ) {
+                result.processes = result.cacheEntry.getProcesses();
+            } else {
+                result.processes = readXml( new StringReader( xml ) );
+                if ( result.processes != null ) {
+                    // processes are serialized before building, as building adds the compiled actions
+                    result.cacheEntry = processCache.createEntry( xml, packageBuilder.getRootClassLoader(), result.processes );
+                }
+            }
+        } else {
+            result.processes = readXml( portedReader );
+        }
+        if ( result.processes != null ) {
+            result.rules = new String[result.processes.size()];
+            result.buildContexts = new ProcessBuildContext[result.processes.size()];
+        }
+        return result;
+    }
+
+    private List<Process> readXml(Reader reader) throws Exception {
+        PackageBuilderConfiguration configuration = packageBuilder.getPackageBuilderConfiguration();
+        XmlProcessReader xmlReader = new XmlProcessReader( configuration.getSemanticModules(), packageBuilder.getRootClassLoader() );
+        return xmlReader.read(reader);
+    }
+
+    /**
+     * Stores the processes of the given XML, and their compiled actions and constraints, in the process cache.
+     * This must be done after the processes have been compiled.
+     */
+    private void cacheProcesses(ProcessXml processXml) {
+        if ( processXml.cached || processXml.cacheEntry == null ) {
+            return;
+        }
+        for (int i = 0; i < processXml.processes.size(); i++) {
+            if ( processXml.buildContexts[i] == null ) {
+                // the process has not been built
+                return;
+            }
+            processXml.cacheEntry.addCompiledProcess( getCompiledProcess( processXml.buildContexts[i], processXml.rules[i] ) );
+        }
+        ProcessCache processCache = getProcessCache();
+        if ( processCache != null ) {
+            processCache.put( processXml.cacheEntry );
+        }
+    }
+
+    /**
+     * The processes read from one XML resource.
+     */
+    private static class ProcessXml {
+        private Resource resource;
+        private List<Process> processes;
+        private boolean cached;
+        private ProcessCache.Entry cacheEntry;
+        private boolean[] valid;
+        private String[] rules;
+        private ProcessBuildContext[] buildContexts;
+        private final List<DroolsError> errors = new ArrayList<DroolsError>();
+    }
                                    
   
     /*************************************************************************
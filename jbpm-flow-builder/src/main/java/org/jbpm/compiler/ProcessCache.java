@@ -0,0 +1,411 @@
+/*
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.drools.definition.process.Process;
+import org.jbpm.ruleflow.core.RuleFlowProcess;
+
+/**
+ * On-disk cache of the processes that were built by the {@link ProcessBuilderImpl}, so that (re)building a
+ * knowledge base does not need to parse, validate and compile the same process files again.
+ * </p>
+ * An entry contains the process definitions as read from the XML, and for each process the generated rules
+ * and the bytecode of its compiled Java actions and constraints. MVEL actions and constraints, and the
+ * generated rules themselves, are still compiled into the package of the package builder.
+ * </p>
+ * Entries are keyed by a hash of the process XML, combined with the jBPM version and the classpath of the
+ * class loader used to build the processes (the URLs of its jars and class directories and their timestamps),
+ * so that upgrading jBPM or changing a library or a model class invalidates the cache.
+ * Entries that cannot be read (for example because a class has changed in an incompatible way) are
+ * discarded and the process is read from XML again.
+ * </p>
+ * The cache is enabled by setting the <code>jbpm.process.cache.dir</code> system property to a directory.
+ */
+public class ProcessCache {
+
+    public static final String CACHE_DIR_PROPERTY = "jbpm.process.cache.dir";
+
+    private static final String CACHE_FILE_EXTENSION = ".process";
+
+    private static final Map<ClassLoader, String> classpathFingerprints = new WeakHashMap<ClassLoader, String>();
+
+    private final File directory;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ProcessCache(File directory) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Could not create process cache directory " + directory);
+        }
+        if (!directory.isDirectory()) {
+            throw new IllegalArgumentException(directory + " is not a directory");
+        }
+        this.directory = directory;
+    }
+
+    /**
+     * Creates a cache based on the <code>jbpm.process.cache.dir</code> system property.
+     *
+     * @return the cache, or <code>null</code> if caching has not been enabled
+     */
+    public static ProcessCache createFromSystemProperties() {
+        String directory = System.getProperty(CACHE_DIR_PROPERTY);
+        if (directory == null || directory.trim().length() == 0) {
+            return null;
+        }
+        return new ProcessCache(new File(directory.trim()));
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @param xml the XML the processes would be read from
+     * @param classLoader the class loader used to build the processes
+     * @return the cached entry for the given XML, or <code>null</code> if it is not (or no longer) cached
+     */
+    @SuppressWarnings("unchecked")
+    public Entry get(String xml, ClassLoader classLoader) {
+        File file = getFile(xml, classLoader);
+        if (!file.exists()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                ObjectInputStream stream = new ClassLoaderObjectInputStream(in, classLoader);
+                List<Process> processes = (List<Process>) stream.readObject();
+                List<CompiledProcess> compiledProcesses = (List<CompiledProcess>) stream.readObject();
+                if (processes.size() != compiledProcesses.size()) {
+                    throw new IOException("Inconsistent cache entry");
+                }
+                hits.incrementAndGet();
+                return new Entry(file, processes, compiledProcesses);
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            // stale or corrupt entry
+            file.delete();
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Starts a new entry for the given processes, this should be done before they are built by the process
+     * builder, as building adds the compiled actions to the processes. The compiled processes must be added
+     * to the entry (see {@link Entry#addCompiledProcess(CompiledProcess)}) before it is stored.
+     *
+     * @return the new entry, or <code>null</code> if the processes cannot be cached
+     */
+    public Entry createEntry(String xml, ClassLoader classLoader, List<Process> processes) {
+        Entry entry = new Entry(getFile(xml, classLoader), processes, new ArrayList<CompiledProcess>());
+        try {
+            // the processes are written now, and the compiled processes when the entry is stored
+            entry.bytes = new ByteArrayOutputStream();
+            entry.stream = new ObjectOutputStream(entry.bytes);
+            entry.stream.writeObject(new ArrayList<Process>(processes));
+            return entry;
+        } catch (IOException e) {
+            // the processes contain objects that cannot be serialized, they will not be cached
+            return null;
+        }
+    }
+
+    /**
+     * Stores a new entry (see {@link #createEntry(String, ClassLoader, List)}).
+     */
+    public void put(Entry entry) {
+        if (entry.stream == null) {
+            throw new IllegalArgumentException("Entry has already been stored");
+        }
+        if (entry.compiledProcesses.size() != entry.processes.size()) {
+            throw new IllegalArgumentException("Entry contains " + entry.compiledProcesses.size()
+                + " compiled processes instead of " + entry.processes.size());
+        }
+        File file = entry.file;
+        File tempFile = new File(directory, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            entry.stream.writeObject(new ArrayList<CompiledProcess>(entry.compiledProcesses));
+            entry.stream.close();
+            OutputStream out = new FileOutputStream(tempFile);
+            try {
+                entry.bytes.writeTo(out);
+            } finally {
+                out.close();
+            }
+            if (!tempFile.renameTo(file)) {
+                // another builder has cached the same processes in the meantime
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            System.err.println("Could not cache processes in " + file + ": " + e.getMessage());
+        } finally {
+            entry.stream = null;
+            entry.bytes = null;
+        }
+    }
+
+    public void clear() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file: files) {
+                if (file.getName().endsWith(CACHE_FILE_EXTENSION)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private File getFile(String xml, ClassLoader classLoader) {
+        return new File(directory, hash(getClasspathFingerprint(classLoader) + "\n" + xml) + CACHE_FILE_EXTENSION);
+    }
+
+    /**
+     * The fingerprint of a class loader is computed once, as a class loader does not pick up
+     * changes to its jars or class directories anyway.
+     */
+    static String getClasspathFingerprint(ClassLoader classLoader) {
+        synchronized (classpathFingerprints) {
+            String fingerprint = classpathFingerprints.get(classLoader);
+            if (fingerprint == null) {
+                fingerprint = createClasspathFingerprint(classLoader);
+                classpathFingerprints.put(classLoader, fingerprint);
+            }
+            return fingerprint;
+        }
+    }
+
+    private static String createClasspathFingerprint(ClassLoader classLoader) {
+        Set<File> files = new LinkedHashSet<File>();
+        for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent()) {
+            if (loader instanceof URLClassLoader) {
+                for (URL url: ((URLClassLoader) loader).getURLs()) {
+                    File file = toFile(url);
+                    if (file != null) {
+                        files.add(file);
+                    }
+                }
+            }
+        }
+        // class loaders that do not expose their URLs, for example those of application servers
+        for (Class<?> clazz: new Class<?>[] { ProcessCache.class, RuleFlowProcess.class, Process.class }) {
+            CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+            File file = codeSource == null ? null : toFile(codeSource.getLocation());
+            if (file != null) {
+                files.add(file);
+            }
+        }
+        String classPath = System.getProperty("java.class.path");
+        if (classPath != null) {
+            for (String path: classPath.split(File.pathSeparator)) {
+                if (path.length() > 0) {
+                    files.add(new File(path).getAbsoluteFile());
+                }
+            }
+        }
+
+        StringBuilder fingerprint = new StringBuilder();
+        Package jbpmPackage = ProcessCache.class.getPackage();
+        fingerprint.append(jbpmPackage == null ? null : jbpmPackage.getImplementationVersion());
+        for (File file: files) {
+            fingerprint.append(';').append(file.getPath());
+            if (file.isDirectory()) {
+                // class directories (e.g. WEB-INF/classes) change when one of their classes changes
+                long[] lastModifiedAndCount = new long[2];
+                addLastModified(file, lastModifiedAndCount);
+                fingerprint.append(':').append(lastModifiedAndCount[0]).append(':').append(lastModifiedAndCount[1]);
+            } else {
+                fingerprint.append(':').append(file.lastModified()).append(':').append(file.length());
+            }
+        }
+        return fingerprint.toString();
+    }
+
+    private static void addLastModified(File directory, long[] lastModifiedAndCount) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file: files) {
+            if (file.isDirectory()) {
+                addLastModified(file, lastModifiedAndCount);
+            } else {
+                lastModifiedAndCount[0] = Math.max(lastModifiedAndCount[0], file.lastModified());
+                lastModifiedAndCount[1]++;
+            }
+        }
+    }
+
+    private static File toFile(URL url) {
+        if (url == null || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            return new File(url.getPath());
+        } catch (IllegalArgumentException e) {
+            return new File(url.getPath());
+        }
+    }
+
+    private static String hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes("UTF-8"));
+            StringBuilder result = new StringBuilder(digest.length * 2);
+            for (byte b: digest) {
+                result.append(Character.forDigit((b >> 4) & 0xF, 16));
+                result.append(Character.forDigit(b & 0xF, 16));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The processes read from one XML resource, and their compiled actions and constraints.
+     */
+    public static class Entry {
+
+        private final File file;
+        private final List<Process> processes;
+        private final List<CompiledProcess> compiledProcesses;
+        private ByteArrayOutputStream bytes;
+        private ObjectOutputStream stream;
+
+        private Entry(File file, List<Process> processes, List<CompiledProcess> compiledProcesses) {
+            this.file = file;
+            this.processes = processes;
+            this.compiledProcesses = compiledProcesses;
+        }
+
+        public List<Process> getProcesses() {
+            return processes;
+        }
+
+        /**
+         * @return the compiled processes, in the same order as the processes
+         */
+        public List<CompiledProcess> getCompiledProcesses() {
+            return Collections.unmodifiableList(compiledProcesses);
+        }
+
+        /**
+         * Adds the compiled form of the next process of a new entry.
+         */
+        public void addCompiledProcess(CompiledProcess compiledProcess) {
+            compiledProcesses.add(compiledProcess);
+        }
+    }
+
+    /**
+     * The rules generated for a process, and the bytecode of the Java classes generated for its
+     * actions and constraints, by resource name (e.g. <code>org/jbpm/Process_org_jbpm_test0.class</code>).
+     */
+    public static class CompiledProcess implements Serializable {
+
+        private static final long serialVersionUID = 510l;
+
+        private final String className;
+        private final String rules;
+        private final Map<String, byte[]> classes;
+
+        public CompiledProcess(String className, String rules, Map<String, byte[]> classes) {
+            this.className = className;
+            this.rules = rules;
+            this.classes = new HashMap<String, byte[]>(classes);
+        }
+
+        /**
+         * @return the (unqualified) name of the process class the actions and constraints were compiled into
+         */
+        public String getClassName() {
+            return className;
+        }
+
+        public String getRules() {
+            return rules;
+        }
+
+        public Map<String, byte[]> getClasses() {
+            return Collections.unmodifiableMap(classes);
+        }
+    }
+
+    private static class ClassLoaderObjectInputStream extends ObjectInputStream {
+
+        private final ClassLoader classLoader;
+
+        ClassLoaderObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return Class.forName(desc.getName(), false, classLoader);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package org.jbpm.compiler;
+
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.drools.RuleBase;
+import org.drools.RuleBaseFactory;
+import org.drools.StatefulSession;
+import org.drools.compiler.DroolsError;
+import org.drools.compiler.PackageBuilder;
+import org.drools.io.Resource;
+import org.drools.io.ResourceFactory;
+import org.drools.lang.descr.PackageDescr;
+import org.jbpm.JbpmTestCase;
+
+public class ProcessBatchBuildTest extends JbpmTestCase {
+
+    private Resource getResource(String name) {
+        return ResourceFactory.newReaderResource(new InputStreamReader(
+            getClass().getResourceAsStream("/org/jbpm/integrationtests/" + name)));
+    }
+
+    public void testBatchBuild() throws Exception {
+        CountingPackageBuilder packageBuilder = new CountingPackageBuilder();
+        ProcessBuilderImpl processBuilder = new ProcessBuilderImpl(packageBuilder);
+        processBuilder.setProcessCache(null);
+        processBuilder.setBuildThreads(4);
+
+        List<Resource> resources = new ArrayList<Resource>();
+        resources.add(getResource("test_ActionDialects.rfm"));
+        resources.add(getResource("test_ProcessMultithreadEvent.rf"));
+        resources.add(getResource("test_ConstraintDialects.rfm"));
+        List<DroolsError> errors = processBuilder.addProcessesFromXml(resources);
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertFalse(packageBuilder.getErrors().toString(), packageBuilder.hasErrors());
+
+        ProcessBuildMetrics metrics = processBuilder.getLastBuildMetrics();
+        assertNotNull(metrics);
+        assertEquals(3, metrics.getProcessCount());
+        assertEquals(0, metrics.getCachedCount());
+        // the rules are added (and compiled) once for each of the two packages
+        assertEquals(2, packageBuilder.addPackageCount);
+
+        RuleBase ruleBase = RuleBaseFactory.newRuleBase();
+        ruleBase.addPackages(packageBuilder.getPackages());
+        StatefulSession session = ruleBase.newStatefulSession();
+        List<String> list = new ArrayList<String>();
+        session.setGlobal("list", list);
+        session.startProcess("ActionDialects");
+        assertEquals(2, list.size());
+        assertEquals("mvel was here", list.get(0));
+        assertEquals("java was here", list.get(1));
+    }
+
+    public void testBatchBuildWithErrors() throws Exception {
+        PackageBuilder packageBuilder = new PackageBuilder();
+        ProcessBuilderImpl processBuilder = new ProcessBuilderImpl(packageBuilder);
+        processBuilder.setProcessCache(null);
+
+        List<Resource> resources = new ArrayList<Resource>();
+        resources.add(getResource("error_ruleflow.rfm"));
+        resources.add(getResource("test_ActionDialects.rfm"));
+        List<DroolsError> errors = processBuilder.addProcessesFromXml(resources);
+        assertEquals(1, errors.size());
+        assertEquals(1, processBuilder.getLastBuildMetrics().getProcessCount());
+    }
+
+    private static class CountingPackageBuilder extends PackageBuilder {
+
+        private int addPackageCount;
+
+        public void addPackage(PackageDescr packageDescr) {
+            addPackageCount++;
+            super.addPackage(packageDescr);
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+package org.jbpm.compiler;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.drools.RuleBase;
+import org.drools.RuleBaseFactory;
+import org.drools.StatefulSession;
+import org.drools.compiler.PackageBuilder;
+import org.drools.io.ResourceFactory;
+import org.jbpm.JbpmTestCase;
+
+public class ProcessCacheTest extends JbpmTestCase {
+
+    private static final String PROCESS = "/org/jbpm/integrationtests/test_ProcessMultithreadEvent.rf";
+    private static final String PROCESS_ID = "org.drools.integrationtests.multithread";
+
+    private File directory;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = File.createTempFile("jbpm-process-cache", "");
+        directory.delete();
+    }
+
+    protected void tearDown() throws Exception {
+        new ProcessCache(directory).clear();
+        directory.delete();
+        super.tearDown();
+    }
+
+    private PackageBuilder build(ProcessCache cache) throws IOException {
+        PackageBuilder packageBuilder = build(cache, PROCESS);
+        assertNotNull(packageBuilder.getPackage().getRuleFlows().get(PROCESS_ID));
+        return packageBuilder;
+    }
+
+    private PackageBuilder build(ProcessCache cache, String process) throws IOException {
+        PackageBuilder packageBuilder = new PackageBuilder();
+        ProcessBuilderImpl processBuilder = new ProcessBuilderImpl(packageBuilder);
+        processBuilder.setProcessCache(cache);
+        processBuilder.addProcessFromXml(ResourceFactory.newReaderResource(
+            new InputStreamReader(getClass().getResourceAsStream(process))));
+        assertTrue(processBuilder.getErrors().toString(), processBuilder.getErrors().isEmpty());
+        assertFalse(packageBuilder.getErrors().toString(), packageBuilder.hasErrors());
+        return packageBuilder;
+    }
+
+    public void testCachedProcess() throws Exception {
+        ProcessCache cache = new ProcessCache(directory);
+        build(cache);
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, directory.listFiles().length);
+
+        build(cache);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    public void testCachedCompiledActions() throws Exception {
+        ProcessCache cache = new ProcessCache(directory);
+        build(cache, "/org/jbpm/integrationtests/test_ActionDialects.rfm");
+        PackageBuilder packageBuilder = build(cache, "/org/jbpm/integrationtests/test_ActionDialects.rfm");
+        assertEquals(1, cache.getHitCount());
+
+        // the java action is wired to the cached class instead of being compiled again
+        RuleBase ruleBase = RuleBaseFactory.newRuleBase();
+        ruleBase.addPackages(packageBuilder.getPackages());
+        StatefulSession session = ruleBase.newStatefulSession();
+        List<String> list = new ArrayList<String>();
+        session.setGlobal("list", list);
+        session.startProcess("ActionDialects");
+        assertEquals(2, list.size());
+        assertEquals("mvel was here", list.get(0));
+        assertEquals("java was here", list.get(1));
+    }
+
+    public void testCorruptEntryIsDiscarded() throws Exception {
+        ProcessCache cache = new ProcessCache(directory);
+        build(cache);
+        File entry = directory.listFiles()[0];
+        FileWriter writer = new FileWriter(entry);
+        writer.write("corrupt");
+        writer.close();
+
+        build(cache);
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        // the entry has been replaced
+        build(cache);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    public void testUnusableCacheDirectoryDisablesCache() throws Exception {
+        // a file instead of a directory
+        directory.createNewFile();
+        System.setProperty(ProcessCache.CACHE_DIR_PROPERTY, directory.getPath());
+        try {
+            ProcessBuilderImpl processBuilder = new ProcessBuilderImpl(new PackageBuilder());
+            assertNull(processBuilder.getProcessCache());
+        } finally {
+            System.clearProperty(ProcessCache.CACHE_DIR_PROPERTY);
+            directory.delete();
+        }
+    }
+
+}
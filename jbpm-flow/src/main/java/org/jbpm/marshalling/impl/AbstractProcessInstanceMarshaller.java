@@ -69,6 +69,13 @@ import org.jbpm.workflow.instance.node.WorkItemNodeInstance;
 public abstract class AbstractProcessInstanceMarshaller implements
         ProcessInstanceMarshaller {
 
+    // marks the pending iterations of a for each node instance (only written when the 
+    // for each node has a maximum concurrency), chosen to not clash with PersisterEnums
+    protected static final short FOR_EACH_PENDING_ITERATIONS = 1000;
+    // marks the pending items of a for each node instance, replaces FOR_EACH_PENDING_ITERATIONS
+    // so that the remaining iterations do not depend on the current value of the collection
+    protected static final short FOR_EACH_PENDING_ITEMS = 1001;
+
     // Output methods
     public void writeProcessInstance(MarshallerWriteContext context,
             ProcessInstance processInstance) throws IOException {        
@@ -359,6 +366,14 @@ public abstract class AbstractProcessInstanceMarshaller implements
                             subNodeInstance);
                 }
             }
+            if (forEachNodeInstance.hasPendingIterations()) {
+                List<?> pendingItems = forEachNodeInstance.getPendingItems();
+                stream.writeShort(FOR_EACH_PENDING_ITEMS);
+                stream.writeInt(pendingItems.size());
+                for (Object item: pendingItems) {
+                    stream.writeObject(item);
+                }
+            }
             stream.writeShort(PersisterEnums.END);
         } else {
             throw new IllegalArgumentException("Unknown node instance type: " + nodeInstance);
@@ -521,11 +536,28 @@ public abstract class AbstractProcessInstanceMarshaller implements
 
                 break;
             case PersisterEnums.FOR_EACH_NODE_INSTANCE:
-                while (stream.readShort() == PersisterEnums.NODE_INSTANCE) {
+                short forEachType;
+                while ((forEachType = stream.readShort()) == PersisterEnums.NODE_INSTANCE) {
                     readNodeInstance(context,
                             (ForEachNodeInstance) nodeInstance,
                             processInstance);
                 }
+                if (forEachType == FOR_EACH_PENDING_ITEMS) {
+                    int count = stream.readInt();
+                    List<Object> pendingItems = new ArrayList<Object>(count);
+                    for (int i = 0; i < count; i++) {
+                        try {
+                            pendingItems.add(stream.readObject());
+                        } catch (ClassNotFoundException e) {
+                            throw new IllegalArgumentException("Could not reload pending item " + i + " of for each node instance " + id);
+                        }
+                    }
+                    ((ForEachNodeInstance) nodeInstance).internalSetPendingItems(pendingItems);
+                    stream.readShort(); // END
+                } else if (forEachType == FOR_EACH_PENDING_ITERATIONS) {
+                    ((ForEachNodeInstance) nodeInstance).internalSetNextIteration(stream.readInt());
+                    stream.readShort(); // END
+                }
                 break;
             default:
             // do nothing
@@ -34,6 +34,7 @@ import org.jbpm.process.core.event.EventTypeFilter;
 import org.jbpm.process.instance.event.SignalManager;
 import org.jbpm.process.instance.event.SignalManagerFactory;
 import org.jbpm.process.instance.timer.TimerManager;
+import org.jbpm.process.metrics.EngineMetrics;
 import org.jbpm.ruleflow.core.RuleFlowProcess;
 import org.jbpm.workflow.core.node.EventTrigger;
 import org.jbpm.workflow.core.node.StartNode;
@@ -365,11 +366,17 @@ public class ProcessRuntimeImpl implements InternalProcessRuntime {
 	}
 
 	public void signalEvent(String type, Object event) {
+		EngineMetrics metrics = EngineMetrics.getInstance();
+		long start = metrics.startTiming();
 		signalManager.signalEvent(type, event);
+		metrics.recordSignal(start);
 	}
 
 	public void signalEvent(String type, Object event, long processInstanceId) {
+		EngineMetrics metrics = EngineMetrics.getInstance();
+		long start = metrics.startTiming();
 		signalManager.signalEvent(processInstanceId, type, event);
+		metrics.recordSignal(start);
 	}
 	
 	public void setProcessEventSupport(ProcessEventSupport processEventSupport) {
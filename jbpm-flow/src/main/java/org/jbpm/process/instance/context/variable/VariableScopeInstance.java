@@ -70,15 +70,20 @@ public class VariableScopeInstance extends AbstractContextInstance {
         }
         ProcessEventSupport processEventSupport = ((InternalProcessRuntime) getProcessInstance()
     		.getKnowledgeRuntime().getProcessRuntime()).getProcessEventSupport();
+        if (processEventSupport.isEmpty()) {
+        	// no listeners, so don't build the variable ids
+        	internalSetVariable(name, value);
+        	return;
+        }
+        String variableId = (variableIdPrefix == null ? "" : variableIdPrefix + ":") + name;
+        String variableInstanceId = (variableInstanceIdPrefix == null? "" : variableInstanceIdPrefix + ":") + name;
     	processEventSupport.fireBeforeVariableChanged(
-			(variableIdPrefix == null ? "" : variableIdPrefix + ":") + name,
-			(variableInstanceIdPrefix == null? "" : variableInstanceIdPrefix + ":") + name,
+			variableId, variableInstanceId,
 			oldValue, value, getProcessInstance(),
 			getProcessInstance().getKnowledgeRuntime());
         internalSetVariable(name, value);
         processEventSupport.fireAfterVariableChanged(
-			(variableIdPrefix == null ? "" : variableIdPrefix + ":") + name,
-			(variableInstanceIdPrefix == null? "" : variableInstanceIdPrefix + ":") + name,
+			variableId, variableInstanceId,
     		oldValue, value, getProcessInstance(),
 			getProcessInstance().getKnowledgeRuntime());
     }
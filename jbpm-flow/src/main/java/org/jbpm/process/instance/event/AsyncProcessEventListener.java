@@ -0,0 +1,644 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jbpm.process.instance.event;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.drools.definition.process.Node;
+import org.drools.definition.process.Process;
+import org.drools.event.process.ProcessCompletedEvent;
+import org.drools.event.process.ProcessEvent;
+import org.drools.event.process.ProcessEventListener;
+import org.drools.event.process.ProcessNodeEvent;
+import org.drools.event.process.ProcessNodeLeftEvent;
+import org.drools.event.process.ProcessNodeTriggeredEvent;
+import org.drools.event.process.ProcessStartedEvent;
+import org.drools.event.process.ProcessVariableChangedEvent;
+import org.drools.runtime.KnowledgeRuntime;
+import org.drools.runtime.process.NodeInstance;
+import org.drools.runtime.process.NodeInstanceContainer;
+import org.drools.runtime.process.ProcessInstance;
+import org.drools.runtime.process.WorkflowProcessInstance;
+
+/**
+ * Process event listener that dispatches the events to other (slow) listeners asynchronously,
+ * so that these listeners do not slow down the engine.
+ * <pre>
+ * AsyncProcessEventListener listener = new AsyncProcessEventListener(4096, 2, new MyAuditListener());
+ * listener.setEventMask(AsyncProcessEventListener.PROCESS_EVENTS | AsyncProcessEventListener.NODE_EVENTS);
+ * ksession.addEventListener(listener);
+ * ...
+ * listener.dispose();
+ * </pre>
+ * The wrapped listeners must not be registered with the session themselves (as loggers that take
+ * the session in their constructor do), or they receive every event twice.
+ * </p>
+ * Events are published in a ring buffer of pre-allocated slots, and are consumed by a number of
+ * dispatcher threads. All events of one process instance are handled by the same thread, so the
+ * listeners receive them in the order in which they happened. The live process and node instances
+ * cannot be used outside the engine thread, so the data of an event (the process, process instance
+ * id and state, node instance id and node, variable id and values) is copied when it is published,
+ * and the listeners receive immutable events with this data. Their process and node instances
+ * do not support any operation that reads or changes the state of the instance, like reading
+ * variables or signalling events.
+ * </p>
+ * Only the event types in the event mask are published. When the ring buffer is full, the engine
+ * thread waits (without holding the lock of the ring buffer) until a slot is free, or drops the
+ * event when {@link #setDropWhenFull(boolean)} is set. Events published after {@link #dispose()}
+ * are dropped as well.
+ */
+public class AsyncProcessEventListener implements ProcessEventListener {
+
+    public static final int BEFORE_PROCESS_STARTED = 1;
+    public static final int AFTER_PROCESS_STARTED = 1 << 1;
+    public static final int BEFORE_PROCESS_COMPLETED = 1 << 2;
+    public static final int AFTER_PROCESS_COMPLETED = 1 << 3;
+    public static final int BEFORE_NODE_TRIGGERED = 1 << 4;
+    public static final int AFTER_NODE_TRIGGERED = 1 << 5;
+    public static final int BEFORE_NODE_LEFT = 1 << 6;
+    public static final int AFTER_NODE_LEFT = 1 << 7;
+    public static final int BEFORE_VARIABLE_CHANGED = 1 << 8;
+    public static final int AFTER_VARIABLE_CHANGED = 1 << 9;
+
+    public static final int PROCESS_EVENTS = BEFORE_PROCESS_STARTED | AFTER_PROCESS_STARTED
+        | BEFORE_PROCESS_COMPLETED | AFTER_PROCESS_COMPLETED;
+    public static final int NODE_EVENTS = BEFORE_NODE_TRIGGERED | AFTER_NODE_TRIGGERED
+        | BEFORE_NODE_LEFT | AFTER_NODE_LEFT;
+    public static final int VARIABLE_EVENTS = BEFORE_VARIABLE_CHANGED | AFTER_VARIABLE_CHANGED;
+    public static final int ALL_EVENTS = PROCESS_EVENTS | NODE_EVENTS | VARIABLE_EVENTS;
+
+    private static final int IDLE_SPINS = 100;
+    private static final long IDLE_WAIT = 1000000;
+    private static final long FULL_WAIT = 100000;
+
+    private final ProcessEventListener[] listeners;
+    private final Slot[] slots;
+    private final int indexMask;
+    private final Dispatcher[] dispatchers;
+
+    private volatile int eventMask = ALL_EVENTS;
+    private volatile boolean dropWhenFull = false;
+    private volatile boolean running = true;
+
+    // guarded by this
+    private long nextSequence = 0;
+    private long cachedMinSequence = -1;
+    private final AtomicLong published = new AtomicLong(-1);
+
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * @param capacity the number of events that can be waiting to be dispatched, rounded up to
+     * a power of two
+     * @param threads the number of dispatcher threads
+     * @param listeners the listeners that will receive the events
+     */
+    public AsyncProcessEventListener(int capacity, int threads, ProcessEventListener... listeners) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity should be larger than 0: " + capacity);
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads should be larger than 0: " + threads);
+        }
+        this.listeners = listeners.clone();
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.indexMask = size - 1;
+        this.dispatchers = new Dispatcher[threads];
+        for (int i = 0; i < threads; i++) {
+            dispatchers[i] = new Dispatcher(i);
+            dispatchers[i].start();
+        }
+    }
+
+    /**
+     * @param eventMask the event types (a combination of the event type constants of this class)
+     * that are dispatched to the listeners, {@link #ALL_EVENTS} by default
+     */
+    public void setEventMask(int eventMask) {
+        this.eventMask = eventMask;
+    }
+
+    public int getEventMask() {
+        return eventMask;
+    }
+
+    /**
+     * @param dropWhenFull whether events are dropped when all slots are in use, instead of waiting
+     * until the dispatcher threads have freed a slot
+     */
+    public void setDropWhenFull(boolean dropWhenFull) {
+        this.dropWhenFull = dropWhenFull;
+    }
+
+    public void beforeProcessStarted(ProcessStartedEvent event) {
+        publish(BEFORE_PROCESS_STARTED, event);
+    }
+
+    public void afterProcessStarted(ProcessStartedEvent event) {
+        publish(AFTER_PROCESS_STARTED, event);
+    }
+
+    public void beforeProcessCompleted(ProcessCompletedEvent event) {
+        publish(BEFORE_PROCESS_COMPLETED, event);
+    }
+
+    public void afterProcessCompleted(ProcessCompletedEvent event) {
+        publish(AFTER_PROCESS_COMPLETED, event);
+    }
+
+    public void beforeNodeTriggered(ProcessNodeTriggeredEvent event) {
+        publish(BEFORE_NODE_TRIGGERED, event);
+    }
+
+    public void afterNodeTriggered(ProcessNodeTriggeredEvent event) {
+        publish(AFTER_NODE_TRIGGERED, event);
+    }
+
+    public void beforeNodeLeft(ProcessNodeLeftEvent event) {
+        publish(BEFORE_NODE_LEFT, event);
+    }
+
+    public void afterNodeLeft(ProcessNodeLeftEvent event) {
+        publish(AFTER_NODE_LEFT, event);
+    }
+
+    public void beforeVariableChanged(ProcessVariableChangedEvent event) {
+        publish(BEFORE_VARIABLE_CHANGED, event);
+    }
+
+    public void afterVariableChanged(ProcessVariableChangedEvent event) {
+        publish(AFTER_VARIABLE_CHANGED, event);
+    }
+
+    private void publish(int type, ProcessEvent event) {
+        if ((eventMask & type) == 0) {
+            return;
+        }
+        ProcessInstance processInstance = event.getProcessInstance();
+        int partition = (int) (processInstance.getId() % dispatchers.length);
+        if (partition < 0) {
+            partition += dispatchers.length;
+        }
+        while (!tryPublish(type, partition, processInstance, event)) {
+            // the dispatchers are stopped once they have dispatched the events published before
+            if (dropWhenFull || !running) {
+                dropped.incrementAndGet();
+                return;
+            }
+            // wait for the dispatchers to free a slot, while other engine threads can still take the lock
+            LockSupport.parkNanos(FULL_WAIT);
+        }
+    }
+
+    /**
+     * @return false if all slots are in use, or the listener has been disposed
+     */
+    private synchronized boolean tryPublish(int type, int partition, ProcessInstance processInstance, ProcessEvent event) {
+        if (!running) {
+            return false;
+        }
+        long sequence = nextSequence;
+        long wrapPoint = sequence - slots.length;
+        if (wrapPoint > cachedMinSequence) {
+            cachedMinSequence = getMinimumSequence();
+            if (wrapPoint > cachedMinSequence) {
+                return false;
+            }
+        }
+        Slot slot = slots[(int) sequence & indexMask];
+        slot.type = type;
+        slot.partition = partition;
+        slot.kruntime = event.getKnowledgeRuntime();
+        slot.process = processInstance.getProcess();
+        slot.processId = processInstance.getProcessId();
+        slot.processInstanceId = processInstance.getId();
+        slot.state = processInstance.getState();
+        if (event instanceof ProcessNodeEvent) {
+            NodeInstance nodeInstance = ((ProcessNodeEvent) event).getNodeInstance();
+            slot.nodeInstanceId = nodeInstance.getId();
+            slot.nodeId = nodeInstance.getNodeId();
+            slot.node = nodeInstance.getNode();
+            slot.nodeName = nodeInstance.getNodeName();
+        }
+        if (event instanceof ProcessVariableChangedEvent) {
+            ProcessVariableChangedEvent variableEvent = (ProcessVariableChangedEvent) event;
+            slot.variableId = variableEvent.getVariableId();
+            slot.variableInstanceId = variableEvent.getVariableInstanceId();
+            slot.oldValue = variableEvent.getOldValue();
+            slot.newValue = variableEvent.getNewValue();
+        }
+        nextSequence = sequence + 1;
+        published.set(sequence);
+        return true;
+    }
+
+    private long getMinimumSequence() {
+        long minimum = Long.MAX_VALUE;
+        for (Dispatcher dispatcher: dispatchers) {
+            minimum = Math.min(minimum, dispatcher.sequence);
+        }
+        return minimum;
+    }
+
+    private void dispatch(Slot slot) {
+        int type = slot.type;
+        AsyncEvent event = slot.copy();
+        for (ProcessEventListener listener: listeners) {
+            try {
+                switch (type) {
+                    case BEFORE_PROCESS_STARTED:
+                        listener.beforeProcessStarted((ProcessStartedEvent) event);
+                        break;
+                    case AFTER_PROCESS_STARTED:
+                        listener.afterProcessStarted((ProcessStartedEvent) event);
+                        break;
+                    case BEFORE_PROCESS_COMPLETED:
+                        listener.beforeProcessCompleted((ProcessCompletedEvent) event);
+                        break;
+                    case AFTER_PROCESS_COMPLETED:
+                        listener.afterProcessCompleted((ProcessCompletedEvent) event);
+                        break;
+                    case BEFORE_NODE_TRIGGERED:
+                        listener.beforeNodeTriggered((ProcessNodeTriggeredEvent) event);
+                        break;
+                    case AFTER_NODE_TRIGGERED:
+                        listener.afterNodeTriggered((ProcessNodeTriggeredEvent) event);
+                        break;
+                    case BEFORE_NODE_LEFT:
+                        listener.beforeNodeLeft((ProcessNodeLeftEvent) event);
+                        break;
+                    case AFTER_NODE_LEFT:
+                        listener.afterNodeLeft((ProcessNodeLeftEvent) event);
+                        break;
+                    case BEFORE_VARIABLE_CHANGED:
+                        listener.beforeVariableChanged((ProcessVariableChangedEvent) event);
+                        break;
+                    case AFTER_VARIABLE_CHANGED:
+                        listener.afterVariableChanged((ProcessVariableChangedEvent) event);
+                        break;
+                }
+            } catch (Throwable t) {
+                // errors must not stop the dispatcher, or the engine threads would wait for it forever
+                errors.incrementAndGet();
+                System.err.println("Process event listener " + listener.getClass().getName() + " failed: " + t);
+            }
+        }
+        dispatched.incrementAndGet();
+    }
+
+    /**
+     * Waits until all events that have been published have been dispatched.
+     *
+     * @return false if the timeout (in milliseconds) expired first
+     */
+    public boolean flush(long timeout) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeout;
+        long sequence = published.get();
+        while (getMinimumSequence() < sequence) {
+            if (System.currentTimeMillis() >= end) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * Dispatches the events that have already been published and stops the dispatcher threads.
+     * Events published afterwards are dropped.
+     */
+    public void dispose() {
+        // an event is either published before this or dropped
+        synchronized (this) {
+            running = false;
+        }
+        for (Dispatcher dispatcher: dispatchers) {
+            LockSupport.unpark(dispatcher);
+        }
+        for (Dispatcher dispatcher: dispatchers) {
+            try {
+                dispatcher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the number of events that have been published but not dispatched yet
+     */
+    public long getPendingCount() {
+        long sequence = published.get();
+        long pending = 0;
+        for (Dispatcher dispatcher: dispatchers) {
+            pending = Math.max(pending, sequence - dispatcher.sequence);
+        }
+        return pending;
+    }
+
+    public long getDispatchedCount() {
+        return dispatched.get();
+    }
+
+    /**
+     * @return the number of events that have been dropped because all slots were in use (see
+     * {@link #setDropWhenFull(boolean)}) or because the listener had been disposed
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    /**
+     * The data of an event, copied on the engine thread.
+     */
+    private static final class Slot {
+        private int type;
+        private int partition;
+        private KnowledgeRuntime kruntime;
+        private Process process;
+        private String processId;
+        private long processInstanceId;
+        private int state;
+        private long nodeInstanceId;
+        private long nodeId;
+        private Node node;
+        private String nodeName;
+        private String variableId;
+        private String variableInstanceId;
+        private Object oldValue;
+        private Object newValue;
+
+        /**
+         * @return an immutable event with the data of this slot, which is cleared so that it does
+         * not keep the objects of the event alive
+         */
+        AsyncEvent copy() {
+            EventProcessInstance processInstance = new EventProcessInstance(process, processId, processInstanceId, state);
+            EventNodeInstance nodeInstance = (type & NODE_EVENTS) == 0 ? null
+                : new EventNodeInstance(processInstance, nodeInstanceId, nodeId, node, nodeName);
+            AsyncEvent event = new AsyncEvent(kruntime, processInstance, nodeInstance,
+                variableId, variableInstanceId, oldValue, newValue);
+            kruntime = null;
+            process = null;
+            node = null;
+            nodeName = null;
+            variableId = null;
+            variableInstanceId = null;
+            oldValue = null;
+            newValue = null;
+            return event;
+        }
+    }
+
+    /**
+     * Event given to the listeners, implementing all event types.
+     */
+    private static final class AsyncEvent implements ProcessStartedEvent, ProcessCompletedEvent,
+            ProcessNodeTriggeredEvent, ProcessNodeLeftEvent, ProcessVariableChangedEvent {
+
+        private final KnowledgeRuntime kruntime;
+        private final EventProcessInstance processInstance;
+        private final EventNodeInstance nodeInstance;
+        private final String variableId;
+        private final String variableInstanceId;
+        private final Object oldValue;
+        private final Object newValue;
+
+        AsyncEvent(KnowledgeRuntime kruntime, EventProcessInstance processInstance, EventNodeInstance nodeInstance,
+                   String variableId, String variableInstanceId, Object oldValue, Object newValue) {
+            this.kruntime = kruntime;
+            this.processInstance = processInstance;
+            this.nodeInstance = nodeInstance;
+            this.variableId = variableId;
+            this.variableInstanceId = variableInstanceId;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+
+        public KnowledgeRuntime getKnowledgeRuntime() {
+            return kruntime;
+        }
+
+        public ProcessInstance getProcessInstance() {
+            return processInstance;
+        }
+
+        public NodeInstance getNodeInstance() {
+            return nodeInstance;
+        }
+
+        public String getVariableId() {
+            return variableId;
+        }
+
+        public String getVariableInstanceId() {
+            return variableInstanceId;
+        }
+
+        public Object getOldValue() {
+            return oldValue;
+        }
+
+        public Object getNewValue() {
+            return newValue;
+        }
+    }
+
+    private static final class EventProcessInstance implements WorkflowProcessInstance {
+
+        private final Process process;
+        private final String processId;
+        private final long id;
+        private final int state;
+
+        EventProcessInstance(Process process, String processId, long id, int state) {
+            this.process = process;
+            this.processId = processId;
+            this.id = id;
+            this.state = state;
+        }
+
+        public String getProcessId() {
+            return processId;
+        }
+
+        public Process getProcess() {
+            return process;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getProcessName() {
+            return process == null ? null : process.getName();
+        }
+
+        public int getState() {
+            return state;
+        }
+
+        public Object getVariable(String name) {
+            throw unsupported();
+        }
+
+        public void setVariable(String name, Object value) {
+            throw unsupported();
+        }
+
+        public Collection<NodeInstance> getNodeInstances() {
+            throw unsupported();
+        }
+
+        public NodeInstance getNodeInstance(long nodeInstanceId) {
+            throw unsupported();
+        }
+
+        public void signalEvent(String type, Object event) {
+            throw unsupported();
+        }
+
+        public String[] getEventTypes() {
+            throw unsupported();
+        }
+
+        public String toString() {
+            return "ProcessInstance " + id + " [processId=" + processId + ",state=" + state + "]";
+        }
+    }
+
+    private static final class EventNodeInstance implements NodeInstance {
+
+        private final EventProcessInstance processInstance;
+        private final long id;
+        private final long nodeId;
+        private final Node node;
+        private final String nodeName;
+
+        EventNodeInstance(EventProcessInstance processInstance, long id, long nodeId, Node node, String nodeName) {
+            this.processInstance = processInstance;
+            this.id = id;
+            this.nodeId = nodeId;
+            this.node = node;
+            this.nodeName = nodeName;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getNodeId() {
+            return nodeId;
+        }
+
+        public Node getNode() {
+            return node;
+        }
+
+        public String getNodeName() {
+            return nodeName;
+        }
+
+        public WorkflowProcessInstance getProcessInstance() {
+            return processInstance;
+        }
+
+        public NodeInstanceContainer getNodeInstanceContainer() {
+            throw unsupported();
+        }
+
+        public Object getVariable(String variableName) {
+            throw unsupported();
+        }
+
+        public void setVariable(String variableName, Object value) {
+            throw unsupported();
+        }
+
+        public String toString() {
+            return "NodeInstance " + id + " [nodeId=" + nodeId + ",nodeName=" + nodeName + "]";
+        }
+    }
+
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("Not available in asynchronous process events");
+    }
+
+    /**
+     * Thread that dispatches the events of one partition of the process instances, and keeps
+     * track of the sequence of the last event it has seen.
+     */
+    private class Dispatcher extends Thread {
+
+        private final int partition;
+        private volatile long sequence = -1;
+
+        Dispatcher(int partition) {
+            super("jbpm-process-events-" + partition);
+            this.partition = partition;
+            setDaemon(true);
+        }
+
+        public void run() {
+            long next = sequence + 1;
+            int idle = 0;
+            while (true) {
+                long available = published.get();
+                if (next > available) {
+                    // events published before the listener was disposed are still dispatched
+                    if (!running && next > published.get()) {
+                        return;
+                    }
+                    // yield for a while before parking, so bursts of events are handled quickly
+                    if (++idle < IDLE_SPINS) {
+                        Thread.yield();
+                    } else {
+                        LockSupport.parkNanos(IDLE_WAIT);
+                    }
+                    continue;
+                }
+                idle = 0;
+                for (; next <= available; next++) {
+                    Slot slot = slots[(int) next & indexMask];
+                    if (slot.partition == partition) {
+                        dispatch(slot);
+                    }
+                }
+                sequence = available;
+            }
+        }
+
+    }
+
+}
@@ -30,6 +30,7 @@ import org.jbpm.process.core.ContextContainer;
 import org.jbpm.process.instance.ContextInstance;
 import org.jbpm.process.instance.InternalProcessRuntime;
 import org.jbpm.process.instance.ProcessInstance;
+import org.jbpm.process.metrics.EngineMetrics;
 
 /**
  * Default implementation of a process instance.
@@ -185,6 +186,7 @@ public abstract class ProcessInstanceImpl implements ProcessInstance, Serializab
                 throw new IllegalArgumentException( "A process instance can only be started once" );
             }
             setState( ProcessInstanceImpl.STATE_ACTIVE );
+            EngineMetrics.getInstance().processStarted( getProcessId() );
             internalStart();
 		}
     }
@@ -42,6 +42,7 @@ import org.drools.time.impl.IntervalTrigger;
 import org.jbpm.marshalling.impl.ProcessMarshallerImpl;
 import org.jbpm.process.instance.InternalProcessRuntime;
 import org.jbpm.process.instance.ProcessInstance;
+import org.jbpm.process.metrics.EngineMetrics;
 
 /**
  * 
@@ -59,6 +60,7 @@ public class TimerManager {
                         TimerService timerService) {
         this.kruntime = kruntime;
         this.timerService = timerService;
+        EngineMetrics.getInstance().addTimerManager( this );
     }
 
     public void registerTimer(final TimerInstance timer,
@@ -149,6 +151,7 @@ public class TimerManager {
             it.remove();
         }
         timerService.shutdown();
+        EngineMetrics.getInstance().removeTimerManager( this );
     }
 
     public TimerService getTimerService() {
@@ -229,6 +232,7 @@ public class TimerManager {
                 throw new IllegalArgumentException( "Could not find process instance for timer " );
             }
 
+            EngineMetrics.getInstance().timerTriggered( ctx.getTimer() );
             ctx.getTimer().setLastTriggered( new Date( ctx.getKnowledgeRuntime().<SessionClock>getSessionClock().getCurrentTime() ) );
 
             ((InternalProcessRuntime) kruntime.getProcessRuntime())
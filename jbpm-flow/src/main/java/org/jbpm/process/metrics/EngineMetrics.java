@@ -0,0 +1,413 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jbpm.process.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.jbpm.process.instance.timer.TimerInstance;
+import org.jbpm.process.instance.timer.TimerManager;
+
+/**
+ * Built-in metrics of the process engine of this VM: process instance counts and node
+ * execution times per process, signal latency, the time and size of (un)marshalling process
+ * instances and the delay and backlog of timers.
+ * </p>
+ * Metrics are disabled by default, in which case the engine only checks a volatile flag. They
+ * are enabled by setting the <code>jbpm.metrics.enabled</code> system property to
+ * <code>true</code>, or by calling {@link #setEnabled(boolean)} (also through JMX). Enabling
+ * the metrics registers them as MBeans on the platform MBean server, see
+ * {@link EngineMetricsMXBean} and {@link ProcessMetricsMXBean}.
+ * </p>
+ * To keep the overhead low, node execution times can be sampled: with a sampling rate of n
+ * (the <code>jbpm.metrics.samplingRate</code> system property, 1 by default) only one in n
+ * top-level node triggers is timed, together with all nodes it triggers in turn. The recorded
+ * node times exclude the time spent in the nodes triggered by the node.
+ */
+public class EngineMetrics implements EngineMetricsMXBean {
+
+    public static final String ENABLED_PROPERTY = "jbpm.metrics.enabled";
+    public static final String SAMPLING_RATE_PROPERTY = "jbpm.metrics.samplingRate";
+    public static final String OBJECT_NAME = "org.jbpm:type=EngineMetrics";
+    public static final String PROCESS_OBJECT_NAME = "org.jbpm:type=ProcessMetrics,processId=";
+
+    private static final EngineMetrics INSTANCE = new EngineMetrics(
+        Boolean.getBoolean(ENABLED_PROPERTY), Math.max(1, Integer.getInteger(SAMPLING_RATE_PROPERTY, 1)));
+
+    static {
+        if (INSTANCE.isEnabled()) {
+            INSTANCE.registerMBeans();
+        }
+    }
+
+    private volatile boolean enabled;
+    private volatile int samplingRate;
+    private volatile boolean mbeansRegistered;
+    private final ConcurrentMap<String, ProcessMetrics> processes = new ConcurrentHashMap<String, ProcessMetrics>();
+    private final Statistic signalTimes = new Statistic();
+    private final Statistic marshalTimes = new Statistic();
+    private final Statistic marshalSizes = new Statistic();
+    private final Statistic unmarshalTimes = new Statistic();
+    private final Statistic unmarshalSizes = new Statistic();
+    private final Statistic timerDelays = new Statistic();
+    private final AtomicLong timerTriggered = new AtomicLong();
+    private final Map<TimerManager, Boolean> timerManagers = Collections.synchronizedMap(new WeakHashMap<TimerManager, Boolean>());
+    private final ThreadLocal<NodeTimer> nodeTimers = new ThreadLocal<NodeTimer>() {
+        protected NodeTimer initialValue() {
+            return new NodeTimer();
+        }
+    };
+
+    public static EngineMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    EngineMetrics(boolean enabled, int samplingRate) {
+        setSamplingRate(samplingRate);
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        if (enabled && this == INSTANCE) {
+            registerMBeans();
+        }
+        this.enabled = enabled;
+    }
+
+    public int getSamplingRate() {
+        return samplingRate;
+    }
+
+    /**
+     * @param samplingRate time one in every <code>samplingRate</code> top-level node triggers
+     */
+    public void setSamplingRate(int samplingRate) {
+        if (samplingRate < 1) {
+            throw new IllegalArgumentException("Sampling rate must be at least 1: " + samplingRate);
+        }
+        this.samplingRate = samplingRate;
+    }
+
+    /**
+     * @return the metrics of the given process, or null when none have been recorded
+     */
+    public ProcessMetrics getProcessMetrics(String processId) {
+        return processes.get(processId);
+    }
+
+    public Collection<ProcessMetrics> getProcessMetrics() {
+        return processes.values();
+    }
+
+    private ProcessMetrics getOrCreateProcessMetrics(String processId) {
+        ProcessMetrics metrics = processes.get(processId);
+        if (metrics == null) {
+            metrics = new ProcessMetrics(processId, this);
+            ProcessMetrics existing = processes.putIfAbsent(processId, metrics);
+            if (existing != null) {
+                return existing;
+            }
+            if (mbeansRegistered) {
+                registerMBean(metrics, PROCESS_OBJECT_NAME + ObjectName.quote(processId));
+            }
+        }
+        return metrics;
+    }
+
+    // engine hooks
+
+    /**
+     * @return the current time in nanoseconds when metrics are enabled, or -1
+     */
+    public long startTiming() {
+        return enabled ? System.nanoTime() : -1;
+    }
+
+    public void processStarted(String processId) {
+        if (enabled && processId != null) {
+            getOrCreateProcessMetrics(processId).processStarted();
+        }
+    }
+
+    public void processCompleted(String processId) {
+        if (enabled && processId != null) {
+            getOrCreateProcessMetrics(processId).processCompleted();
+        }
+    }
+
+    public void processAborted(String processId) {
+        if (enabled && processId != null) {
+            getOrCreateProcessMetrics(processId).processAborted();
+        }
+    }
+
+    /**
+     * Must be called before a node is triggered when metrics are enabled, and must always be
+     * followed by {@link #afterNodeTriggered(long, String, Class)} (in a finally block).
+     *
+     * @return the start time of the node, or -1 when this trigger is not sampled
+     */
+    public long beforeNodeTriggered() {
+        NodeTimer timer = nodeTimers.get();
+        if (timer.depth == 0) {
+            timer.sampled = ++timer.triggers >= samplingRate;
+            if (timer.sampled) {
+                timer.triggers = 0;
+            }
+        }
+        timer.push();
+        return timer.sampled ? System.nanoTime() : -1;
+    }
+
+    public void afterNodeTriggered(long start, String processId, Class<?> nodeType) {
+        NodeTimer timer = nodeTimers.get();
+        long childTime = timer.pop();
+        if (start >= 0) {
+            long time = System.nanoTime() - start;
+            timer.addChildTime(time);
+            if (processId != null) {
+                getOrCreateProcessMetrics(processId).recordNodeTime(nodeType, time - childTime);
+            }
+        }
+    }
+
+    public void recordSignal(long start) {
+        if (start >= 0) {
+            signalTimes.record(System.nanoTime() - start);
+        }
+    }
+
+    public void recordMarshal(long start, int size) {
+        if (start >= 0) {
+            marshalTimes.record(System.nanoTime() - start);
+            marshalSizes.record(size);
+        }
+    }
+
+    public void recordUnmarshal(long start, int size) {
+        if (start >= 0) {
+            unmarshalTimes.record(System.nanoTime() - start);
+            unmarshalSizes.record(size);
+        }
+    }
+
+    public void addTimerManager(TimerManager timerManager) {
+        timerManagers.put(timerManager, Boolean.TRUE);
+    }
+
+    public void removeTimerManager(TimerManager timerManager) {
+        timerManagers.remove(timerManager);
+    }
+
+    /**
+     * Records the delay of the given timer, which must be called before its last triggered
+     * date is updated.
+     */
+    public void timerTriggered(TimerInstance timer) {
+        if (enabled) {
+            timerTriggered.incrementAndGet();
+            long scheduled = getScheduledTime(timer);
+            if (scheduled >= 0) {
+                timerDelays.record(Math.max(0, System.currentTimeMillis() - scheduled));
+            }
+        }
+    }
+
+    private static long getScheduledTime(TimerInstance timer) {
+        Date lastTriggered = timer.getLastTriggered();
+        if (lastTriggered != null) {
+            return lastTriggered.getTime() + timer.getPeriod();
+        }
+        Date activated = timer.getActivated();
+        return activated == null ? -1 : activated.getTime() + timer.getDelay();
+    }
+
+    // EngineMetricsMXBean
+
+    public long getSignalCount() {
+        return signalTimes.getCount();
+    }
+
+    public double getSignalMeanTime() {
+        return signalTimes.getMean();
+    }
+
+    public long getSignalMaxTime() {
+        return signalTimes.getMax();
+    }
+
+    public long getMarshalCount() {
+        return marshalTimes.getCount();
+    }
+
+    public double getMarshalMeanTime() {
+        return marshalTimes.getMean();
+    }
+
+    public double getMarshalMeanSize() {
+        return marshalSizes.getMean();
+    }
+
+    public long getMarshalMaxSize() {
+        return marshalSizes.getMax();
+    }
+
+    public long getUnmarshalCount() {
+        return unmarshalTimes.getCount();
+    }
+
+    public double getUnmarshalMeanTime() {
+        return unmarshalTimes.getMean();
+    }
+
+    public double getUnmarshalMeanSize() {
+        return unmarshalSizes.getMean();
+    }
+
+    public long getTimerTriggeredCount() {
+        return timerTriggered.get();
+    }
+
+    public double getTimerMeanDelay() {
+        return timerDelays.getMean();
+    }
+
+    public long getTimerMaxDelay() {
+        return timerDelays.getMax();
+    }
+
+    public int getActiveTimerCount() {
+        int count = 0;
+        for (TimerManager timerManager: getTimerManagers()) {
+            count += timerManager.getTimers().size();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of timers of which the scheduled time (according to the system
+     * clock) has passed, but that have not been triggered yet
+     */
+    public int getOverdueTimerCount() {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (TimerManager timerManager: getTimerManagers()) {
+            for (TimerInstance timer: timerManager.getTimers()) {
+                long scheduled = getScheduledTime(timer);
+                if (scheduled >= 0 && scheduled < now) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private List<TimerManager> getTimerManagers() {
+        synchronized (timerManagers) {
+            return new ArrayList<TimerManager>(timerManagers.keySet());
+        }
+    }
+
+    public void reset() {
+        for (ProcessMetrics metrics: processes.values()) {
+            metrics.reset();
+        }
+        signalTimes.reset();
+        marshalTimes.reset();
+        marshalSizes.reset();
+        unmarshalTimes.reset();
+        unmarshalSizes.reset();
+        timerDelays.reset();
+        timerTriggered.set(0);
+    }
+
+    // JMX
+
+    private synchronized void registerMBeans() {
+        if (mbeansRegistered) {
+            return;
+        }
+        mbeansRegistered = true;
+        registerMBean(this, OBJECT_NAME);
+        for (ProcessMetrics metrics: processes.values()) {
+            registerMBean(metrics, PROCESS_OBJECT_NAME + ObjectName.quote(metrics.getProcessId()));
+        }
+    }
+
+    private static void registerMBean(Object mbean, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(mbean, objectName);
+            }
+        } catch (JMException e) {
+            System.err.println("Could not register metrics MBean " + name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Per-thread stack of the time spent in the nodes triggered by the nodes that are being
+     * triggered.
+     */
+    private static final class NodeTimer {
+
+        private long[] childTimes = new long[16];
+        private int depth;
+        private boolean sampled;
+        private int triggers;
+
+        void push() {
+            if (depth == childTimes.length) {
+                long[] newChildTimes = new long[depth * 2];
+                System.arraycopy(childTimes, 0, newChildTimes, 0, depth);
+                childTimes = newChildTimes;
+            }
+            childTimes[depth++] = 0;
+        }
+
+        long pop() {
+            return childTimes[--depth];
+        }
+
+        void addChildTime(long time) {
+            if (depth > 0) {
+                childTimes[depth - 1] += time;
+            }
+        }
+
+    }
+
+}
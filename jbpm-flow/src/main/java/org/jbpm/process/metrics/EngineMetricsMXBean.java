@@ -0,0 +1,67 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jbpm.process.metrics;
+
+/**
+ * Management interface of the {@link EngineMetrics}, registered as
+ * <code>org.jbpm:type=EngineMetrics</code>. Times are in nanoseconds, timer delays (the time
+ * between the scheduled and actual trigger time) in milliseconds and sizes in bytes.
+ */
+public interface EngineMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    int getSamplingRate();
+
+    void setSamplingRate(int samplingRate);
+
+    long getSignalCount();
+
+    double getSignalMeanTime();
+
+    long getSignalMaxTime();
+
+    long getMarshalCount();
+
+    double getMarshalMeanTime();
+
+    double getMarshalMeanSize();
+
+    long getMarshalMaxSize();
+
+    long getUnmarshalCount();
+
+    double getUnmarshalMeanTime();
+
+    double getUnmarshalMeanSize();
+
+    long getTimerTriggeredCount();
+
+    double getTimerMeanDelay();
+
+    long getTimerMaxDelay();
+
+    int getActiveTimerCount();
+
+    int getOverdueTimerCount();
+
+    void reset();
+
+}
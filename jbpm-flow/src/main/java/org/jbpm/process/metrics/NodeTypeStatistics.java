@@ -0,0 +1,79 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jbpm.process.metrics;
+
+/**
+ * Snapshot of the execution time statistics of one node type of a process, as exposed by
+ * {@link ProcessMetricsMXBean}. Times are the time spent in the nodes themselves, excluding
+ * the nodes they trigger, in nanoseconds.
+ */
+public class NodeTypeStatistics {
+
+    private final String nodeType;
+    private final long sampledCount;
+    private final long estimatedCount;
+    private final long totalTime;
+    private final long maxTime;
+
+    public NodeTypeStatistics(String nodeType, long sampledCount, long estimatedCount,
+                              long totalTime, long maxTime) {
+        this.nodeType = nodeType;
+        this.sampledCount = sampledCount;
+        this.estimatedCount = estimatedCount;
+        this.totalTime = totalTime;
+        this.maxTime = maxTime;
+    }
+
+    /**
+     * @return the simple class name of the node, e.g. <code>WorkItemNode</code>
+     */
+    public String getNodeType() {
+        return nodeType;
+    }
+
+    /**
+     * @return the number of timed executions
+     */
+    public long getSampledCount() {
+        return sampledCount;
+    }
+
+    /**
+     * @return the number of timed executions multiplied by the sampling rate
+     */
+    public long getEstimatedCount() {
+        return estimatedCount;
+    }
+
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    public double getMeanTime() {
+        return sampledCount == 0 ? 0 : (double) totalTime / sampledCount;
+    }
+
+    public String toString() {
+        return nodeType + "[count=" + sampledCount + ", mean=" + getMeanTime() + "ns, max=" + maxTime + "ns]";
+    }
+
+}
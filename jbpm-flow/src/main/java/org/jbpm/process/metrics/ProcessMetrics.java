@@ -0,0 +1,114 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jbpm.process.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The metrics of one process definition: the number of started, completed and aborted process
+ * instances, and the (sampled) execution time of its nodes, per node type.
+ */
+public class ProcessMetrics implements ProcessMetricsMXBean {
+
+    private final String processId;
+    private final EngineMetrics engineMetrics;
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong aborted = new AtomicLong();
+    private final ConcurrentMap<Class<?>, Statistic> nodeTimes = new ConcurrentHashMap<Class<?>, Statistic>();
+
+    ProcessMetrics(String processId, EngineMetrics engineMetrics) {
+        this.processId = processId;
+        this.engineMetrics = engineMetrics;
+    }
+
+    public String getProcessId() {
+        return processId;
+    }
+
+    public long getStartedCount() {
+        return started.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public long getAbortedCount() {
+        return aborted.get();
+    }
+
+    /**
+     * @return the execution time statistic of the given node class, or null when no node of
+     * that class has been timed yet
+     */
+    public Statistic getNodeTime(Class<?> nodeType) {
+        return nodeTimes.get(nodeType);
+    }
+
+    public List<NodeTypeStatistics> getNodeTypeStatistics() {
+        Map<String, NodeTypeStatistics> result = new TreeMap<String, NodeTypeStatistics>();
+        int samplingRate = engineMetrics.getSamplingRate();
+        for (Map.Entry<Class<?>, Statistic> entry: nodeTimes.entrySet()) {
+            String nodeType = entry.getKey().getSimpleName();
+            Statistic statistic = entry.getValue();
+            long count = statistic.getCount();
+            result.put(nodeType, new NodeTypeStatistics(nodeType, count, count * samplingRate,
+                statistic.getTotal(), statistic.getMax()));
+        }
+        return new ArrayList<NodeTypeStatistics>(result.values());
+    }
+
+    void processStarted() {
+        started.incrementAndGet();
+    }
+
+    void processCompleted() {
+        completed.incrementAndGet();
+    }
+
+    void processAborted() {
+        aborted.incrementAndGet();
+    }
+
+    void recordNodeTime(Class<?> nodeType, long time) {
+        Statistic statistic = nodeTimes.get(nodeType);
+        if (statistic == null) {
+            statistic = new Statistic();
+            Statistic existing = nodeTimes.putIfAbsent(nodeType, statistic);
+            if (existing != null) {
+                statistic = existing;
+            }
+        }
+        statistic.record(time);
+    }
+
+    void reset() {
+        started.set(0);
+        completed.set(0);
+        aborted.set(0);
+        nodeTimes.clear();
+    }
+
+}
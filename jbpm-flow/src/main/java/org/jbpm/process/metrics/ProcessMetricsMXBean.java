@@ -0,0 +1,42 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jbpm.process.metrics;
+
+import java.util.List;
+
+/**
+ * Management interface of the metrics of one process definition, registered as
+ * <code>org.jbpm:type=ProcessMetrics,processId="..."</code>.
+ */
+public interface ProcessMetricsMXBean {
+
+    String getProcessId();
+
+    long getStartedCount();
+
+    long getCompletedCount();
+
+    long getAbortedCount();
+
+    /**
+     * @return the execution time statistics of the node types of this process that have been
+     * executed, ordered by node type
+     */
+    List<NodeTypeStatistics> getNodeTypeStatistics();
+
+}
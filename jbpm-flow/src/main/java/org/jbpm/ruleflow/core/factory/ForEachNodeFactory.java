@@ -76,6 +76,11 @@ public class ForEachNodeFactory extends RuleFlowNodeContainerFactory {
         return this;
     }
 
+    public ForEachNodeFactory maxConcurrency(int maxConcurrency) {
+    	getForEachNode().setMaxConcurrency(maxConcurrency);
+        return this;
+    }
+
     public ForEachNodeFactory linkIncomingConnections(long nodeId) {
     	this.linkedIncomingNodeId = nodeId;
         return this;
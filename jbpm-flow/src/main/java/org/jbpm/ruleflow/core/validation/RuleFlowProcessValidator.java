@@ -74,8 +74,14 @@ public class RuleFlowProcessValidator implements ProcessValidator {
 
     private static RuleFlowProcessValidator instance;
 
-    private boolean startNodeFound;
-    private boolean endNodeFound;
+    /**
+     * The state of the validation of one process, the validator itself is shared
+     * and can be used by multiple threads at the same time.
+     */
+    private static class ValidationState {
+        private boolean startNodeFound;
+        private boolean endNodeFound;
+    }
     
     private RuleFlowProcessValidator() {
     }
@@ -111,15 +117,14 @@ public class RuleFlowProcessValidator implements ProcessValidator {
                 "Process has no start node."));
         }
 
-        startNodeFound = false;
-        endNodeFound = false;
+        final ValidationState state = new ValidationState();
         final Node[] nodes = process.getNodes();
-        validateNodes(nodes, errors, process);
-        if (!startNodeFound && !process.isDynamic()) {
+        validateNodes(nodes, errors, process, state);
+        if (!state.startNodeFound && !process.isDynamic()) {
             errors.add(new ProcessValidationErrorImpl(process,
                 "Process has no start node."));
         }
-        if (!endNodeFound) {
+        if (!state.endNodeFound) {
             errors.add(new ProcessValidationErrorImpl(process,
                 "Process has no end node."));
         }
@@ -136,19 +141,19 @@ public class RuleFlowProcessValidator implements ProcessValidator {
         return errors.toArray(new ProcessValidationError[errors.size()]);
     }
     
-    private void validateNodes(Node[] nodes, List<ProcessValidationError> errors, RuleFlowProcess process) {
+    private void validateNodes(Node[] nodes, List<ProcessValidationError> errors, RuleFlowProcess process, ValidationState state) {
         for ( int i = 0; i < nodes.length; i++ ) {
             final Node node = nodes[i];
             if (node instanceof StartNode) {
                 final StartNode startNode = (StartNode) node;
-                startNodeFound = true;
+                state.startNodeFound = true;
                 if (startNode.getTo() == null) {
                     errors.add(new ProcessValidationErrorImpl(process,
                         "Start node '" + node.getName() + "' [" + node.getId() + "] has no outgoing connection."));
                 }
             } else if (node instanceof EndNode) {
                 final EndNode endNode = (EndNode) node;
-                endNodeFound = true;
+                state.endNodeFound = true;
                 if (endNode.getFrom() == null) {
                     errors.add(new ProcessValidationErrorImpl(process,
                         "End node '" + node.getName() + "' [" + node.getId() + "] has no incoming connection."));
@@ -363,7 +368,7 @@ public class RuleFlowProcessValidator implements ProcessValidator {
 //                    errors.add(new ProcessValidationErrorImpl(process,
 //                        "ForEach node '" + node.getName() + "' [" + node.getId() + "] has no linked end node"));
 //                }
-                validateNodes(forEachNode.getNodes(), errors, process);
+                validateNodes(forEachNode.getNodes(), errors, process, state);
             } else if (node instanceof DynamicNode) {
                 final DynamicNode dynamicNode = (DynamicNode) node;
                 if (dynamicNode.getDefaultIncomingConnections().size() == 0) {
@@ -374,7 +379,7 @@ public class RuleFlowProcessValidator implements ProcessValidator {
                     errors.add(new ProcessValidationErrorImpl(process,
                         "Dynamic node '" + node.getName() + "' [" + node.getId() + "] has no outgoing connection"));
                 }
-                validateNodes(dynamicNode.getNodes(), errors, process);
+                validateNodes(dynamicNode.getNodes(), errors, process, state);
             } else if (node instanceof CompositeNode) {
                 final CompositeNode compositeNode = (CompositeNode) node;
                 for (Map.Entry<String, NodeAndType> inType: compositeNode.getLinkedIncomingNodes().entrySet()) {
@@ -397,7 +402,7 @@ public class RuleFlowProcessValidator implements ProcessValidator {
                             "Composite node '" + node.getName() + "' [" + node.getId() + "] has invalid linked outgoing node for type " + outType.getKey()));
                 	}
                 }
-                validateNodes(compositeNode.getNodes(), errors, process);
+                validateNodes(compositeNode.getNodes(), errors, process, state);
             } else if (node instanceof EventNode) {
                 final EventNode eventNode = (EventNode) node;
                 if (eventNode.getEventFilters().size() == 0) {
@@ -409,7 +414,7 @@ public class RuleFlowProcessValidator implements ProcessValidator {
                         "Event node '" + node.getName() + "' [" + node.getId() + "] has no outgoing connection"));
                 }
             } else if (node instanceof FaultNode) {
-            	endNodeFound = true;
+            	state.endNodeFound = true;
                 final FaultNode faultNode = (FaultNode) node;
             	if (faultNode.getFrom() == null && !acceptsNoIncomingConnections(node)) {
                     errors.add(new ProcessValidationErrorImpl(process,
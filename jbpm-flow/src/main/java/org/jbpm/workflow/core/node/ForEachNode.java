@@ -32,6 +32,10 @@ import org.jbpm.workflow.core.impl.ExtendedNodeImpl;
  * This node activates the contained subflow for each element of a collection.
  * The node continues if all activated the subflow has been completed for each
  * of the elements in the collection.
+ * By default, the subflow is activated for all elements at once.  When a
+ * maximum concurrency is set, only that many subflows are active at the same
+ * time: the next element is only activated when one of the active subflows
+ * has completed (a maximum concurrency of 1 results in sequential execution).
  * 
  * @author <a href="mailto:kris_verlaenen@hotmail.com">Kris Verlaenen</a>
  */
@@ -42,6 +46,7 @@ public class ForEachNode extends CompositeNode {
     private String variableName;
     private String collectionExpression;
     private boolean waitForCompletion = true;
+    private int maxConcurrency = 0;
 
     public ForEachNode() {
         // Split
@@ -192,6 +197,25 @@ public class ForEachNode extends CompositeNode {
         this.waitForCompletion = waitForCompletion;
     }
 
+    /**
+     * @return the maximum number of subflows that can be active at the same time,
+     * or 0 if all subflows are activated at once
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        if (maxConcurrency < 0) {
+            throw new IllegalArgumentException("Maximum concurrency cannot be negative: " + maxConcurrency);
+        }
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public boolean isSequential() {
+        return maxConcurrency == 1;
+    }
+
    public class ForEachSplitNode extends ExtendedNodeImpl {
         private static final long serialVersionUID = 510l;
     }
@@ -37,6 +37,7 @@ import org.jbpm.process.instance.InternalProcessRuntime;
 import org.jbpm.process.instance.ProcessInstance;
 import org.jbpm.process.instance.context.exclusive.ExclusiveGroupInstance;
 import org.jbpm.process.instance.context.variable.VariableScopeInstance;
+import org.jbpm.process.metrics.EngineMetrics;
 import org.jbpm.workflow.core.impl.NodeImpl;
 import org.jbpm.workflow.instance.WorkflowProcessInstance;
 import org.jbpm.workflow.instance.node.CompositeNodeInstance;
@@ -119,7 +120,17 @@ public abstract class NodeInstanceImpl implements org.jbpm.workflow.instance.Nod
     		((InternalProcessRuntime) kruntime.getProcessRuntime())
     			.getProcessEventSupport().fireBeforeNodeTriggered(this, kruntime);
     	}
-        internalTrigger(from, type);
+        EngineMetrics metrics = EngineMetrics.getInstance();
+        if (metrics.isEnabled()) {
+        	long start = metrics.beforeNodeTriggered();
+        	try {
+        		internalTrigger(from, type);
+        	} finally {
+        		metrics.afterNodeTriggered(start, getProcessInstance().getProcessId(), getNode().getClass());
+        	}
+        } else {
+        	internalTrigger(from, type);
+        }
         if (!hidden) {
         	((InternalProcessRuntime) kruntime.getProcessRuntime())
         		.getProcessEventSupport().fireAfterNodeTriggered(this, kruntime);
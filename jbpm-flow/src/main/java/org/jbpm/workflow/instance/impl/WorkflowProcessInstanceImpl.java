@@ -38,6 +38,7 @@ import org.jbpm.process.instance.InternalProcessRuntime;
 import org.jbpm.process.instance.ProcessInstance;
 import org.jbpm.process.instance.context.variable.VariableScopeInstance;
 import org.jbpm.process.instance.impl.ProcessInstanceImpl;
+import org.jbpm.process.metrics.EngineMetrics;
 import org.jbpm.workflow.core.impl.NodeImpl;
 import org.jbpm.workflow.core.node.EventNode;
 import org.jbpm.workflow.core.node.EventNodeInterface;
@@ -260,6 +261,11 @@ public abstract class WorkflowProcessInstanceImpl extends ProcessInstanceImpl
 			removeEventListeners();
 			processRuntime.getProcessInstanceManager().removeProcessInstance(this);
 			processRuntime.getProcessEventSupport().fireAfterProcessCompleted(this, kruntime);
+			if (state == ProcessInstance.STATE_COMPLETED) {
+				EngineMetrics.getInstance().processCompleted(getProcessId());
+			} else {
+				EngineMetrics.getInstance().processAborted(getProcessId());
+			}
 
 			processRuntime.getSignalManager().signalEvent("processInstanceCompleted:" + getId(), this);
 		}
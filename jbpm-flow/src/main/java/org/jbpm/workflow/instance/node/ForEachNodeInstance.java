@@ -42,9 +42,146 @@ public class ForEachNodeInstance extends CompositeNodeInstance {
 
     private static final long serialVersionUID = 510l;
     
+    // only used when the maximum concurrency of the for each node is set,
+    // the items are stored by the marshaller together with the next iteration
+    private int nextIteration = -1;
+    private transient List<?> iterationItems;
+    private transient boolean triggeringIterations;
+    
     public ForEachNode getForEachNode() {
         return (ForEachNode) getNode();
     }
+    
+    /**
+     * @return the index of the next element of the collection for which the subflow
+     * still needs to be activated, or -1 if there are no pending iterations
+     */
+    public int getNextIteration() {
+        return nextIteration;
+    }
+    
+    public void internalSetNextIteration(int nextIteration) {
+        this.nextIteration = nextIteration;
+    }
+    
+    public boolean hasPendingIterations() {
+        return nextIteration >= 0;
+    }
+    
+    /**
+     * @return the elements of the collection for which the subflow still needs to be
+     * activated, as they were when the for each node was triggered
+     */
+    public List<?> getPendingItems() {
+        if (nextIteration < 0) {
+            return Collections.EMPTY_LIST;
+        }
+        ensureIterationItems();
+        if (nextIteration >= iterationItems.size()) {
+            return Collections.EMPTY_LIST;
+        }
+        return new ArrayList<Object>(iterationItems.subList(nextIteration, iterationItems.size()));
+    }
+    
+    public void internalSetPendingItems(List<?> pendingItems) {
+        this.iterationItems = pendingItems;
+        this.nextIteration = pendingItems.isEmpty() ? -1 : 0;
+    }
+    
+    private void ensureIterationItems() {
+        if (iterationItems == null) {
+            // only for process instances marshalled before the pending items were stored
+            iterationItems = new ArrayList<Object>(
+                evaluateCollectionExpression(getForEachNode().getCollectionExpression()));
+        }
+    }
+    
+    /**
+     * Activates the subflow for the pending elements of the collection, until
+     * the maximum concurrency of the for each node has been reached.  Subflows
+     * that complete immediately do not trigger the next iteration recursively,
+     * they are picked up by the loop in here instead.
+     */
+    protected void triggerPendingIterations(org.drools.runtime.process.NodeInstance from) {
+        if (triggeringIterations) {
+            return;
+        }
+        triggeringIterations = true;
+        try {
+            ensureIterationItems();
+            int maxConcurrency = getForEachNode().getMaxConcurrency();
+            while (nextIteration >= 0 && getActiveIterationCount() < maxConcurrency) {
+                if (nextIteration >= iterationItems.size()) {
+                    // the collection has shrunk in the meantime
+                    nextIteration = -1;
+                    iterationItems = null;
+                    break;
+                }
+                Object item = iterationItems.get(nextIteration++);
+                if (nextIteration == iterationItems.size()) {
+                    nextIteration = -1;
+                    iterationItems = null;
+                }
+                createIteration(item).trigger(from, getForEachNode().getForEachSplitNode().getTo().getToType());
+            }
+        } finally {
+            triggeringIterations = false;
+        }
+    }
+    
+    private int getActiveIterationCount() {
+        int count = 0;
+        for (org.drools.runtime.process.NodeInstance nodeInstance: getNodeInstances()) {
+            if (!(nodeInstance instanceof ForEachJoinNodeInstance)
+                    && !(nodeInstance instanceof ForEachSplitNodeInstance)) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    private NodeInstance createIteration(Object item) {
+        ForEachSplitNode split = getForEachNode().getForEachSplitNode();
+        String variableName = getForEachNode().getVariableName();
+        NodeInstance nodeInstance = getNodeInstance(split.getTo().getTo());
+        VariableScopeInstance variableScopeInstance = (VariableScopeInstance)
+            nodeInstance.resolveContextInstance(VariableScope.VARIABLE_SCOPE, variableName);
+        variableScopeInstance.setVariable(variableName, item);
+        return nodeInstance;
+    }
+    
+    protected Collection<?> evaluateCollectionExpression(String collectionExpression) {
+        // TODO: should evaluate this expression using MVEL
+    	Object collection = null;
+        VariableScopeInstance variableScopeInstance = (VariableScopeInstance)
+            resolveContextInstance(VariableScope.VARIABLE_SCOPE, collectionExpression);
+        if (variableScopeInstance != null) {
+        	collection = variableScopeInstance.getVariable(collectionExpression);
+        } else {
+        	try {
+        		collection = MVEL.eval(collectionExpression, new NodeInstanceResolverFactory(this));
+        	} catch (Throwable t) {
+        		throw new IllegalArgumentException(
+                    "Could not find collection " + collectionExpression);
+        	}
+            
+        }
+        if (collection == null) {
+        	return Collections.EMPTY_LIST;
+        }
+        if (collection instanceof Collection<?>) {
+        	return (Collection<?>) collection;
+        }
+        if (collection.getClass().isArray() ) {
+        	List<Object> list = new ArrayList<Object>();
+        	for (Object o: (Object[]) collection) {
+        		list.add(o);
+        	}
+            return list;
+        }
+        throw new IllegalArgumentException(
+    		"Unexpected collection type: " + collection.getClass());
+    }
 
     public NodeInstance getNodeInstance(final Node node) {
         // TODO do this cleaner for split / join of for each?
@@ -82,6 +219,13 @@ public class ForEachNodeInstance extends CompositeNodeInstance {
             ((NodeInstanceContainer) getNodeInstanceContainer()).removeNodeInstance(this);
             if (collection.isEmpty()) {
             	ForEachNodeInstance.this.triggerCompleted(org.jbpm.workflow.core.Node.CONNECTION_DEFAULT_TYPE, true);
+            } else if (getForEachNode().getMaxConcurrency() > 0) {
+            	iterationItems = new ArrayList<Object>(collection);
+            	nextIteration = 0;
+            	triggerPendingIterations(this);
+	            if (!getForEachNode().isWaitForCompletion()) {
+	            	ForEachNodeInstance.this.triggerCompleted(org.jbpm.workflow.core.Node.CONNECTION_DEFAULT_TYPE, false);
+	            }
             } else {
             	List<NodeInstance> nodeInstances = new ArrayList<NodeInstance>();
             	for (Object o: collection) {
@@ -101,39 +245,6 @@ public class ForEachNodeInstance extends CompositeNodeInstance {
 	            }
             }
         }
-
-        private Collection<?> evaluateCollectionExpression(String collectionExpression) {
-            // TODO: should evaluate this expression using MVEL
-        	Object collection = null;
-            VariableScopeInstance variableScopeInstance = (VariableScopeInstance)
-                resolveContextInstance(VariableScope.VARIABLE_SCOPE, collectionExpression);
-            if (variableScopeInstance != null) {
-            	collection = variableScopeInstance.getVariable(collectionExpression);
-            } else {
-            	try {
-            		collection = MVEL.eval(collectionExpression, new NodeInstanceResolverFactory(this));
-            	} catch (Throwable t) {
-            		throw new IllegalArgumentException(
-                        "Could not find collection " + collectionExpression);
-            	}
-                
-            }
-            if (collection == null) {
-            	return Collections.EMPTY_LIST;
-            }
-            if (collection instanceof Collection<?>) {
-            	return (Collection<?>) collection;
-            }
-            if (collection.getClass().isArray() ) {
-            	List<Object> list = new ArrayList<Object>();
-            	for (Object o: (Object[]) collection) {
-            		list.add(o);
-            	}
-                return list;
-            }
-            throw new IllegalArgumentException(
-        		"Unexpected collection type: " + collection.getClass());
-        }
     }
     
     public class ForEachJoinNodeInstance extends NodeInstanceImpl {
@@ -145,7 +256,10 @@ public class ForEachNodeInstance extends CompositeNodeInstance {
         }
 
         public void internalTrigger(org.drools.runtime.process.NodeInstance from, String type) {
-            if (getNodeInstanceContainer().getNodeInstances().size() == 1) {
+            if (hasPendingIterations()) {
+                triggerPendingIterations(this);
+            }
+            if (!hasPendingIterations() && getNodeInstanceContainer().getNodeInstances().size() == 1) {
             	((NodeInstanceContainer) getNodeInstanceContainer()).removeNodeInstance(this);
                 if (getForEachNode().isWaitForCompletion()) {
                 	triggerConnection(getForEachJoinNode().getTo());
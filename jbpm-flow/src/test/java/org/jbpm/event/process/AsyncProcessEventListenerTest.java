@@ -0,0 +1,248 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jbpm.event.process;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.drools.KnowledgeBase;
+import org.drools.KnowledgeBaseFactory;
+import org.drools.common.AbstractRuleBase;
+import org.drools.event.process.DefaultProcessEventListener;
+import org.drools.event.process.ProcessCompletedEvent;
+import org.drools.event.process.ProcessNodeTriggeredEvent;
+import org.drools.event.process.ProcessStartedEvent;
+import org.drools.impl.InternalKnowledgeBase;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.ProcessInstance;
+import org.jbpm.JbpmTestCase;
+import org.jbpm.process.instance.event.AsyncProcessEventListener;
+import org.jbpm.ruleflow.core.RuleFlowProcess;
+import org.jbpm.ruleflow.core.RuleFlowProcessFactory;
+
+public class AsyncProcessEventListenerTest extends JbpmTestCase {
+
+    private static final String PROCESS_ID = "org.jbpm.async.events";
+
+    private StatefulKnowledgeSession ksession;
+    private AsyncProcessEventListener listener;
+
+    protected void setUp() throws Exception {
+        RuleFlowProcessFactory factory = RuleFlowProcessFactory.createProcess(PROCESS_ID);
+        factory
+            .name("Async events").packageName("org.jbpm")
+            .startNode(1).name("Start").done()
+            .endNode(2).name("End").done()
+            .connection(1, 2);
+        RuleFlowProcess process = factory.validate().getProcess();
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        ((AbstractRuleBase) ((InternalKnowledgeBase) kbase).getRuleBase()).addProcess(process);
+        ksession = kbase.newStatefulKnowledgeSession();
+    }
+
+    protected void tearDown() throws Exception {
+        if (listener != null) {
+            listener.dispose();
+        }
+        ksession.dispose();
+    }
+
+    public void testEventsOrderedPerProcessInstance() throws Exception {
+        final Map<Long, List<String>> events = Collections.synchronizedMap(new HashMap<Long, List<String>>());
+        listener = new AsyncProcessEventListener(16, 3, new DefaultProcessEventListener() {
+            public void beforeProcessStarted(ProcessStartedEvent event) {
+                record(event.getProcessInstance().getId(), "started");
+            }
+            public void beforeNodeTriggered(ProcessNodeTriggeredEvent event) {
+                record(event.getProcessInstance().getId(), event.getNodeInstance().getNodeName());
+            }
+            public void afterProcessCompleted(ProcessCompletedEvent event) {
+                record(event.getProcessInstance().getId(), "completed");
+            }
+            private void record(long processInstanceId, String event) {
+                List<String> list = events.get(processInstanceId);
+                if (list == null) {
+                    list = new ArrayList<String>();
+                    events.put(processInstanceId, list);
+                }
+                list.add(event);
+                Thread.yield();
+            }
+        });
+        ksession.addEventListener(listener);
+        for (int i = 0; i < 100; i++) {
+            ksession.startProcess(PROCESS_ID);
+        }
+        assertTrue(listener.flush(10000));
+        assertEquals(100, events.size());
+        for (List<String> list: events.values()) {
+            assertEquals(4, list.size());
+            assertEquals("started", list.get(0));
+            assertEquals("Start", list.get(1));
+            assertEquals("End", list.get(2));
+            assertEquals("completed", list.get(3));
+        }
+        assertEquals(0, listener.getDroppedCount());
+        assertEquals(0, listener.getPendingCount());
+    }
+
+    public void testEventMask() throws Exception {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        listener = new AsyncProcessEventListener(16, 1, new DefaultProcessEventListener() {
+            public void beforeProcessStarted(ProcessStartedEvent event) {
+                events.add("started");
+            }
+            public void beforeNodeTriggered(ProcessNodeTriggeredEvent event) {
+                events.add(event.getNodeInstance().getNodeName());
+            }
+        });
+        listener.setEventMask(AsyncProcessEventListener.PROCESS_EVENTS);
+        ksession.addEventListener(listener);
+        ksession.startProcess(PROCESS_ID);
+        assertTrue(listener.flush(10000));
+        assertEquals(1, events.size());
+        assertEquals("started", events.get(0));
+        // before and after process started and completed
+        assertEquals(4, listener.getDispatchedCount());
+    }
+
+    public void testEventsAreCopied() throws Exception {
+        final CountDownLatch completed = new CountDownLatch(1);
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        listener = new AsyncProcessEventListener(16, 1, new DefaultProcessEventListener() {
+            public void beforeProcessStarted(ProcessStartedEvent event) {
+                try {
+                    // the process instance is completed and disconnected before its events are dispatched
+                    completed.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                events.add(event.getProcessInstance().getProcessId() + ":" + event.getProcessInstance().getId());
+            }
+            public void beforeNodeTriggered(ProcessNodeTriggeredEvent event) {
+                events.add(event.getNodeInstance().getNodeName() + ":" + event.getNodeInstance().getNode().getId());
+            }
+            public void afterProcessCompleted(ProcessCompletedEvent event) {
+                events.add(event.getProcessInstance().getProcessName() + ":" + event.getProcessInstance().getState());
+                try {
+                    event.getProcessInstance().signalEvent("test", null);
+                    events.add("signalled");
+                } catch (UnsupportedOperationException e) {
+                    // expected
+                }
+            }
+        });
+        ksession.addEventListener(listener);
+        long processInstanceId = ksession.startProcess(PROCESS_ID).getId();
+        completed.countDown();
+        assertTrue(listener.flush(10000));
+        assertEquals(4, events.size());
+        assertEquals(PROCESS_ID + ":" + processInstanceId, events.get(0));
+        assertEquals("Start:1", events.get(1));
+        assertEquals("End:2", events.get(2));
+        assertEquals("Async events:" + ProcessInstance.STATE_COMPLETED, events.get(3));
+    }
+
+    public void testListenerErrorsAreCounted() throws Exception {
+        listener = new AsyncProcessEventListener(16, 1, new DefaultProcessEventListener() {
+            public void beforeProcessStarted(ProcessStartedEvent event) {
+                throw new AssertionError("Listener failed");
+            }
+        });
+        listener.setEventMask(AsyncProcessEventListener.BEFORE_PROCESS_STARTED);
+        ksession.addEventListener(listener);
+        ksession.startProcess(PROCESS_ID);
+        ksession.startProcess(PROCESS_ID);
+        assertTrue(listener.flush(10000));
+        assertEquals(2, listener.getErrorCount());
+        assertEquals(2, listener.getDispatchedCount());
+    }
+
+    public void testDropWhenFull() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        listener = new AsyncProcessEventListener(4, 1, new DefaultProcessEventListener() {
+            public void beforeProcessStarted(ProcessStartedEvent event) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        listener.setEventMask(AsyncProcessEventListener.BEFORE_PROCESS_STARTED);
+        listener.setDropWhenFull(true);
+        ksession.addEventListener(listener);
+        for (int i = 0; i < 10; i++) {
+            ksession.startProcess(PROCESS_ID);
+        }
+        assertTrue(listener.getDroppedCount() > 0);
+        blocked.countDown();
+        assertTrue(listener.flush(10000));
+        assertEquals(10, listener.getDispatchedCount() + listener.getDroppedCount());
+    }
+
+    public void testWaitWhenFull() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        listener = new AsyncProcessEventListener(4, 1, new DefaultProcessEventListener() {
+            public void beforeProcessStarted(ProcessStartedEvent event) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        listener.setEventMask(AsyncProcessEventListener.BEFORE_PROCESS_STARTED);
+        ksession.addEventListener(listener);
+        Thread engine = new Thread() {
+            public void run() {
+                for (int i = 0; i < 10; i++) {
+                    ksession.startProcess(PROCESS_ID);
+                }
+            }
+        };
+        engine.start();
+        engine.join(500);
+        // the engine thread waits for a free slot
+        assertTrue(engine.isAlive());
+        blocked.countDown();
+        engine.join(10000);
+        assertFalse(engine.isAlive());
+        assertTrue(listener.flush(10000));
+        assertEquals(10, listener.getDispatchedCount());
+        assertEquals(0, listener.getDroppedCount());
+    }
+
+    public void testEventsAfterDisposeAreDropped() throws Exception {
+        listener = new AsyncProcessEventListener(16, 1, new DefaultProcessEventListener());
+        listener.setEventMask(AsyncProcessEventListener.BEFORE_PROCESS_STARTED);
+        ksession.addEventListener(listener);
+        ksession.startProcess(PROCESS_ID);
+        listener.dispose();
+        assertEquals(1, listener.getDispatchedCount());
+
+        ksession.startProcess(PROCESS_ID);
+        assertEquals(1, listener.getDispatchedCount());
+        assertEquals(1, listener.getDroppedCount());
+    }
+
+}
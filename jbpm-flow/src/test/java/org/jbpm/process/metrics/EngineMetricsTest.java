@@ -0,0 +1,146 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jbpm.process.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+import org.drools.KnowledgeBase;
+import org.drools.KnowledgeBaseFactory;
+import org.drools.common.AbstractRuleBase;
+import org.drools.impl.InternalKnowledgeBase;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.ProcessInstance;
+import org.drools.runtime.process.WorkItem;
+import org.drools.runtime.process.WorkItemHandler;
+import org.drools.runtime.process.WorkItemManager;
+import org.jbpm.JbpmTestCase;
+import org.jbpm.ruleflow.core.RuleFlowProcess;
+import org.jbpm.ruleflow.core.RuleFlowProcessFactory;
+
+public class EngineMetricsTest extends JbpmTestCase {
+
+    private static final String PROCESS_ID = "org.jbpm.metrics";
+
+    private EngineMetrics metrics = EngineMetrics.getInstance();
+    private StatefulKnowledgeSession ksession;
+    private Map<Long, WorkItem> workItems = new HashMap<Long, WorkItem>();
+
+    protected void setUp() throws Exception {
+        metrics.setEnabled(true);
+        metrics.setSamplingRate(1);
+        metrics.reset();
+        RuleFlowProcessFactory factory = RuleFlowProcessFactory.createProcess(PROCESS_ID);
+        factory
+            .name("Metrics").packageName("org.jbpm")
+            .startNode(1).name("Start").done()
+            .workItemNode(2).name("Task").workName("Human Task").done()
+            .endNode(3).name("End").done()
+            .connection(1, 2)
+            .connection(2, 3);
+        RuleFlowProcess process = factory.validate().getProcess();
+        KnowledgeBase kbase = KnowledgeBaseFactory.newKnowledgeBase();
+        ((AbstractRuleBase) ((InternalKnowledgeBase) kbase).getRuleBase()).addProcess(process);
+        ksession = kbase.newStatefulKnowledgeSession();
+        ksession.getWorkItemManager().registerWorkItemHandler("Human Task", new WorkItemHandler() {
+            public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
+                workItems.put(workItem.getId(), workItem);
+            }
+            public void abortWorkItem(WorkItem workItem, WorkItemManager manager) {
+                workItems.remove(workItem.getId());
+            }
+        });
+    }
+
+    protected void tearDown() throws Exception {
+        ksession.dispose();
+        metrics.setSamplingRate(1);
+        metrics.setEnabled(false);
+    }
+
+    public void testProcessAndNodeMetrics() throws Exception {
+        ProcessInstance completed = ksession.startProcess(PROCESS_ID);
+        ProcessInstance aborted = ksession.startProcess(PROCESS_ID);
+        assertEquals(2, workItems.size());
+        for (WorkItem workItem: workItems.values()) {
+            if (workItem.getProcessInstanceId() == completed.getId()) {
+                ksession.getWorkItemManager().completeWorkItem(workItem.getId(), null);
+            }
+        }
+        ksession.abortProcessInstance(aborted.getId());
+        ksession.signalEvent("unknown", null);
+
+        ProcessMetrics processMetrics = metrics.getProcessMetrics(PROCESS_ID);
+        assertNotNull(processMetrics);
+        assertEquals(2, processMetrics.getStartedCount());
+        assertEquals(1, processMetrics.getCompletedCount());
+        assertEquals(1, processMetrics.getAbortedCount());
+
+        List<NodeTypeStatistics> statistics = processMetrics.getNodeTypeStatistics();
+        assertEquals(3, statistics.size());
+        assertEquals("EndNode", statistics.get(0).getNodeType());
+        assertEquals(1, statistics.get(0).getSampledCount());
+        assertEquals("StartNode", statistics.get(1).getNodeType());
+        assertEquals(2, statistics.get(1).getSampledCount());
+        assertEquals("WorkItemNode", statistics.get(2).getNodeType());
+        assertEquals(2, statistics.get(2).getSampledCount());
+        for (NodeTypeStatistics statistic: statistics) {
+            assertTrue(statistic.getMaxTime() >= 0);
+            assertTrue(statistic.getTotalTime() >= statistic.getMaxTime());
+        }
+
+        assertEquals(1, metrics.getSignalCount());
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(
+            new ObjectName(EngineMetrics.OBJECT_NAME)));
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(
+            new ObjectName(EngineMetrics.PROCESS_OBJECT_NAME + ObjectName.quote(PROCESS_ID))));
+    }
+
+    public void testSampling() {
+        metrics.setSamplingRate(4);
+        for (int i = 0; i < 8; i++) {
+            ksession.startProcess(PROCESS_ID);
+        }
+        ProcessMetrics processMetrics = metrics.getProcessMetrics(PROCESS_ID);
+        assertEquals(8, processMetrics.getStartedCount());
+        List<NodeTypeStatistics> statistics = processMetrics.getNodeTypeStatistics();
+        assertEquals("StartNode", statistics.get(0).getNodeType());
+        assertEquals(2, statistics.get(0).getSampledCount());
+        assertEquals(8, statistics.get(0).getEstimatedCount());
+        // the work item node is triggered by the start node, and timed together with it
+        assertEquals("WorkItemNode", statistics.get(1).getNodeType());
+        assertEquals(2, statistics.get(1).getSampledCount());
+    }
+
+    public void testDisabled() {
+        metrics.setEnabled(false);
+        ksession.startProcess(PROCESS_ID);
+        ksession.signalEvent("unknown", null);
+        ProcessMetrics processMetrics = metrics.getProcessMetrics(PROCESS_ID);
+        if (processMetrics != null) {
+            assertEquals(0, processMetrics.getStartedCount());
+            assertTrue(processMetrics.getNodeTypeStatistics().isEmpty());
+        }
+        assertEquals(0, metrics.getSignalCount());
+    }
+
+}
@@ -56,6 +56,10 @@ public class CommandDelegate {
         return StatefulKnowledgeSessionUtil.getStatefulKnowledgeSession();
     }
     
+    private static SessionManager getSessionManager() { 
+        return StatefulKnowledgeSessionUtil.getSessionManager();
+    }
+    
     public static List<Process> getProcesses() {
         List<Process> result = new ArrayList<Process>();
         KnowledgeBase kbase = getSession().getKnowledgeBase();
@@ -110,19 +114,34 @@ public class CommandDelegate {
     }
     
     public static ProcessInstanceLog startProcess(String processId, Map<String, Object> parameters) {
-        long processInstanceId = getSession().startProcess(processId, parameters).getId();
+        SessionManager sessionManager = getSessionManager();
+        StatefulKnowledgeSession session = sessionManager.getSessionForNewProcessInstance();
+        sessionManager.acquire(session);
+        long processInstanceId;
+        try {
+            ProcessInstance processInstance = session.startProcess(processId, parameters);
+            sessionManager.registerProcessInstance(processInstance, session);
+            processInstanceId = processInstance.getId();
+        } finally {
+            sessionManager.release(session);
+        }
         return JPAProcessInstanceDbLog.findProcessInstance(processInstanceId);
     }
     
     public static void abortProcessInstance(String processInstanceIdString) {
-        StatefulKnowledgeSession session = getSession();
         Long processInstanceId = new Long(processInstanceIdString);
-        if ( session.getProcessInstance(processInstanceId) != null) {
-            session.abortProcessInstance(processInstanceId);
-        } else {
-            throw new IllegalArgumentException("Could not find process instance " + processInstanceId);
+        SessionManager sessionManager = getSessionManager();
+        StatefulKnowledgeSession session = sessionManager.getSession(processInstanceId);
+        sessionManager.acquire(session);
+        try {
+            if ( session.getProcessInstance(processInstanceId) != null) {
+                session.abortProcessInstance(processInstanceId);
+            } else {
+                throw new IllegalArgumentException("Could not find process instance " + processInstanceId);
+            }
+        } finally {
+            sessionManager.release(session);
         }
-        
     }
     
     /**
@@ -132,7 +151,15 @@ public class CommandDelegate {
      * @return
      */
     public static Map<String, Object> getProcessInstanceVariables(String processInstanceId) {
-        ProcessInstance processInstance = getSession().getProcessInstance(new Long(processInstanceId));
+        SessionManager sessionManager = getSessionManager();
+        StatefulKnowledgeSession session = sessionManager.getSession(new Long(processInstanceId));
+        ProcessInstance processInstance;
+        sessionManager.acquire(session);
+        try {
+            processInstance = session.getProcessInstance(new Long(processInstanceId));
+        } finally {
+            sessionManager.release(session);
+        }
         if (processInstance != null) {
             Map<String, Object> variables = ((WorkflowProcessInstanceImpl) processInstance).getVariables();
             if (variables == null) {
@@ -189,13 +216,27 @@ public class CommandDelegate {
          * 1. within a transaction and 
          * 2. use the persistence logic of the SingleSessionCommandService. 
          */
-        ((CommandBasedStatefulKnowledgeSession) getSession())
-            .getCommandService()
-            .execute(setProcInstVariablesCommand);
+        SessionManager sessionManager = getSessionManager();
+        StatefulKnowledgeSession session = sessionManager.getSession(new Long(processInstanceId));
+        sessionManager.acquire(session);
+        try {
+            ((CommandBasedStatefulKnowledgeSession) session)
+                .getCommandService()
+                .execute(setProcInstVariablesCommand);
+        } finally {
+            sessionManager.release(session);
+        }
     }   
     
     public static void signalExecution(String executionId, String signal) {
-        getSession().getProcessInstance(new Long(executionId)).signalEvent("signal", signal);
+        SessionManager sessionManager = getSessionManager();
+        StatefulKnowledgeSession session = sessionManager.getSession(new Long(executionId));
+        sessionManager.acquire(session);
+        try {
+            session.getProcessInstance(new Long(executionId)).signalEvent("signal", signal);
+        } finally {
+            sessionManager.release(session);
+        }
     }
 
 }
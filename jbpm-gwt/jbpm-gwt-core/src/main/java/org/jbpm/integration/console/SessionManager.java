@@ -0,0 +1,188 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.integration.console;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.drools.event.process.DefaultProcessEventListener;
+import org.drools.event.process.ProcessCompletedEvent;
+import org.drools.event.process.ProcessNodeTriggeredEvent;
+import org.drools.event.process.ProcessStartedEvent;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.ProcessInstance;
+
+/**
+ * This class keeps a pool of (persistent) stateful knowledge sessions for the {@link CommandDelegate}.
+ * </p>
+ * Commands on one session are executed one at a time, so using a single session means the console
+ * can only execute one engine command at a time. With a pool, every process instance is owned by one
+ * of the sessions: commands for an existing process instance are routed to the session that owns it
+ * (so that the same process instance is never used in two sessions at the same time), while new process
+ * instances are started on the least loaded session.
+ * </p>
+ * Process instances that are started or continued by the engine itself (subprocesses, timers and signals)
+ * become owned by the session executing them, as timers are bound to the session that created them.
+ * Process instances that have not been used since a restart are assigned to a session based on their id.
+ * This is possible because the process instances themselves are stored in the database, so any session
+ * can load them.
+ * </p>
+ * Callers should {@link #acquire(StatefulKnowledgeSession)} a session before using it and
+ * {@link #release(StatefulKnowledgeSession)} it afterwards, so that the load of each session is known.
+ */
+public class SessionManager {
+
+    private final List<StatefulKnowledgeSession> sessions;
+    private final AtomicInteger[] activeCommands;
+    private final AtomicInteger[] ownedProcessInstances;
+    private final ConcurrentMap<Long, Integer> owners = new ConcurrentHashMap<Long, Integer>();
+
+    public SessionManager(List<StatefulKnowledgeSession> sessions) {
+        if (sessions.isEmpty()) {
+            throw new IllegalArgumentException("At least one session is needed");
+        }
+        this.sessions = Collections.unmodifiableList(new ArrayList<StatefulKnowledgeSession>(sessions));
+        this.activeCommands = new AtomicInteger[sessions.size()];
+        this.ownedProcessInstances = new AtomicInteger[sessions.size()];
+        for (int i = 0; i < sessions.size(); i++) {
+            activeCommands[i] = new AtomicInteger();
+            ownedProcessInstances[i] = new AtomicInteger();
+            final int index = i;
+            sessions.get(i).addEventListener(new DefaultProcessEventListener() {
+                public void beforeProcessStarted(ProcessStartedEvent event) {
+                    pinProcessInstance(event.getProcessInstance().getId(), index);
+                }
+                public void beforeNodeTriggered(ProcessNodeTriggeredEvent event) {
+                    pinProcessInstance(event.getProcessInstance().getId(), index);
+                }
+                public void afterProcessCompleted(ProcessCompletedEvent event) {
+                    unregisterProcessInstance(event.getProcessInstance().getId());
+                }
+            });
+        }
+    }
+
+    public List<StatefulKnowledgeSession> getSessions() {
+        return sessions;
+    }
+
+    /**
+     * @return the first session of the pool, which is used for operations that are not
+     * related to a specific process instance (like retrieving the knowledge base).
+     */
+    public StatefulKnowledgeSession getDefaultSession() {
+        return sessions.get(0);
+    }
+
+    /**
+     * @return the session that owns the process instance with the given id.
+     */
+    public StatefulKnowledgeSession getSession(long processInstanceId) {
+        Integer owner = owners.get(processInstanceId);
+        if (owner == null) {
+            owner = (int) (processInstanceId % sessions.size());
+        }
+        return sessions.get(owner);
+    }
+
+    /**
+     * @return the session that currently executes the least commands (and, if there are several of those,
+     * owns the least process instances), which should be used to start a new process instance.
+     */
+    public StatefulKnowledgeSession getSessionForNewProcessInstance() {
+        int result = 0;
+        for (int i = 1; i < sessions.size(); i++) {
+            int commands = activeCommands[i].get();
+            int resultCommands = activeCommands[result].get();
+            if (commands < resultCommands
+                    || (commands == resultCommands && ownedProcessInstances[i].get() < ownedProcessInstances[result].get())) {
+                result = i;
+            }
+        }
+        return sessions.get(result);
+    }
+
+    /**
+     * Makes the given session the owner of the given process instance, if the process instance is still active.
+     * Process instances are unregistered automatically when they complete.
+     */
+    public void registerProcessInstance(ProcessInstance processInstance, StatefulKnowledgeSession session) {
+        if (processInstance.getState() != ProcessInstance.STATE_ACTIVE) {
+            return;
+        }
+        int index = indexOf(session);
+        Integer previous = owners.put(processInstance.getId(), index);
+        if (previous == null || previous != index) {
+            ownedProcessInstances[index].incrementAndGet();
+            if (previous != null) {
+                ownedProcessInstances[previous].decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Makes the given session the owner of the given process instance, unless it already has an owner.
+     */
+    private void pinProcessInstance(long processInstanceId, int index) {
+        if (!owners.containsKey(processInstanceId) && owners.putIfAbsent(processInstanceId, index) == null) {
+            ownedProcessInstances[index].incrementAndGet();
+        }
+    }
+
+    private void unregisterProcessInstance(long processInstanceId) {
+        Integer owner = owners.remove(processInstanceId);
+        if (owner != null) {
+            ownedProcessInstances[owner].decrementAndGet();
+        }
+    }
+
+    public void acquire(StatefulKnowledgeSession session) {
+        activeCommands[indexOf(session)].incrementAndGet();
+    }
+
+    public void release(StatefulKnowledgeSession session) {
+        activeCommands[indexOf(session)].decrementAndGet();
+    }
+
+    public int getActiveCommandCount(StatefulKnowledgeSession session) {
+        return activeCommands[indexOf(session)].get();
+    }
+
+    public int getProcessInstanceCount(StatefulKnowledgeSession session) {
+        return ownedProcessInstances[indexOf(session)].get();
+    }
+
+    private int indexOf(StatefulKnowledgeSession session) {
+        for (int i = 0; i < sessions.size(); i++) {
+            if (sessions.get(i) == session) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Session " + session.getId() + " is not managed by this session manager");
+    }
+
+    public void dispose() {
+        for (StatefulKnowledgeSession session: sessions) {
+            session.dispose();
+        }
+        owners.clear();
+    }
+
+}
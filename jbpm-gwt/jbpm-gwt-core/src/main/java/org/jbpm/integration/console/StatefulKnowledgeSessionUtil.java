@@ -19,6 +19,8 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import javax.persistence.EntityManagerFactory;
@@ -32,10 +34,12 @@ import org.drools.agent.KnowledgeAgentConfiguration;
 import org.drools.agent.KnowledgeAgentFactory;
 import org.drools.builder.KnowledgeBuilder;
 import org.drools.builder.KnowledgeBuilderFactory;
-import org.drools.builder.ResourceType;
+import org.drools.builder.impl.KnowledgeBuilderImpl;
 import org.drools.command.impl.CommandBasedStatefulKnowledgeSession;
 import org.drools.command.impl.KnowledgeCommandContext;
 import org.drools.compiler.BPMN2ProcessFactory;
+import org.drools.compiler.DroolsError;
+import org.drools.compiler.PackageBuilder;
 import org.drools.compiler.ProcessBuilderFactory;
 import org.drools.core.util.StringUtils;
 import org.drools.event.ActivationCancelledEvent;
@@ -48,15 +52,18 @@ import org.drools.event.RuleFlowGroupActivatedEvent;
 import org.drools.event.RuleFlowGroupDeactivatedEvent;
 import org.drools.impl.StatefulKnowledgeSessionImpl;
 import org.drools.io.ResourceChangeScannerConfiguration;
+import org.drools.io.Resource;
 import org.drools.io.ResourceFactory;
 import org.drools.marshalling.impl.ProcessMarshallerFactory;
 import org.drools.persistence.jpa.JPAKnowledgeService;
 import org.drools.runtime.Environment;
 import org.drools.runtime.EnvironmentName;
+import org.drools.runtime.KnowledgeRuntime;
 import org.drools.runtime.KnowledgeSessionConfiguration;
 import org.drools.runtime.StatefulKnowledgeSession;
 import org.drools.runtime.process.ProcessRuntimeFactory;
 import org.jbpm.bpmn2.BPMN2ProcessProviderImpl;
+import org.jbpm.compiler.ProcessBuilderImpl;
 import org.jbpm.integration.console.shared.GuvnorConnectionUtils;
 import org.jbpm.marshalling.impl.ProcessMarshallerFactoryServiceImpl;
 import org.jbpm.process.audit.JPAWorkingMemoryDbLogger;
@@ -64,6 +71,7 @@ import org.jbpm.process.builder.ProcessBuilderFactoryServiceImpl;
 import org.jbpm.process.instance.ProcessRuntimeFactoryServiceImpl;
 import org.jbpm.process.workitem.wsht.CommandBasedWSHumanTaskHandler;
 import org.jbpm.process.workitem.wsht.SyncWSHumanTaskHandler;
+import org.jbpm.task.Task;
 import org.jbpm.task.service.TaskService;
 import org.jbpm.task.service.local.LocalTaskService;
 import org.slf4j.Logger;
@@ -78,12 +86,18 @@ import org.slf4j.LoggerFactory;
  * Lastly, parts of the drools/jbpm infrastructure need a Session instance to exist in order for certain
  * things, like timer job events, to be able to occur. (This may/hopefully will change in the future). This is
  * why we keep one static instance of a ksession open and available all the time. 
+ * </p>
+ * When the <code>jbpm.console.sessions</code> property is larger than 1, a pool of sessions is created
+ * (see {@link SessionManager}), so that commands for different process instances can be executed concurrently.
  */
 public class StatefulKnowledgeSessionUtil {
 
     private static final Logger logger = LoggerFactory.getLogger(StatefulKnowledgeSessionUtil.class);
     
-    private static int ksessionId = 0;
+    public static final String SESSION_POOL_SIZE_PROPERTY = "jbpm.console.sessions";
+
+    private static List<Integer> ksessionIds = new ArrayList<Integer>();
+    private static EntityManagerFactory emf;
     private static Properties _jbpmConsoleProperties = new Properties();
    
     protected StatefulKnowledgeSessionUtil() {
@@ -95,8 +109,9 @@ public class StatefulKnowledgeSessionUtil {
     }
     
     protected void dispose() { 
-       SessionHolder.statefulKnowledgeSession.dispose(); 
+       SessionHolder.sessionManager.dispose(); 
        _jbpmConsoleProperties = null;
+       SessionHolder.sessionManager = null;
        SessionHolder.statefulKnowledgeSession = null;
     }
    
@@ -113,40 +128,70 @@ public class StatefulKnowledgeSessionUtil {
      * See pp. 346-349 of "Java Concurrency in Practice" (B. Goetz) for more info. 
      */
     private static class SessionHolder { 
-        public static StatefulKnowledgeSession statefulKnowledgeSession = initializeStatefulKnowledgeSession();
+        public static SessionManager sessionManager = initializeSessionManager();
+        public static StatefulKnowledgeSession statefulKnowledgeSession = sessionManager.getDefaultSession();
     }
     
+    /**
+     * @return the first session of the session pool.
+     */
     public static StatefulKnowledgeSession getStatefulKnowledgeSession() { 
         return SessionHolder.statefulKnowledgeSession;
     }
     
+    public static SessionManager getSessionManager() { 
+        return SessionHolder.sessionManager;
+    }
+    
     /**
      * This method is meant to run within <b>1</b> thread (as is all logic in this class). 
      * </p>
      * @return
      */
-    protected static StatefulKnowledgeSession initializeStatefulKnowledgeSession() {
+    protected static SessionManager initializeSessionManager() {
         try {
-            // Prepare knowledge base to create the knowledge session
+            // Prepare knowledge base to create the knowledge sessions
             Properties jbpmConsoleProperties = getJbpmConsoleProperties();
 
             KnowledgeBase localKBase = loadKnowledgeBase();
             addProcessesFromConsoleDirectory(localKBase, jbpmConsoleProperties);
 
-            // Create knowledge session
-            StatefulKnowledgeSession localKSession = createOrLoadStatefulKnowledgeSession(localKBase);
+            int poolSize = getSessionPoolSize(jbpmConsoleProperties);
+            List<StatefulKnowledgeSession> localKSessions = new ArrayList<StatefulKnowledgeSession>(poolSize);
+            for (int i = 0; i < poolSize; i++) {
+                // Create knowledge session
+                StatefulKnowledgeSession localKSession = createOrLoadStatefulKnowledgeSession(localKBase, i);
 
-            // Additional necessary modifications to the knowledge session
-            new JPAWorkingMemoryDbLogger(localKSession);
-            registerWorkItemHandler(localKSession, jbpmConsoleProperties);
-            addAgendaEventListener(localKSession);
+                // Additional necessary modifications to the knowledge session
+                new JPAWorkingMemoryDbLogger(localKSession);
+                addAgendaEventListener(localKSession);
 
-            return localKSession;
+                localKSessions.add(localKSession);
+            }
+
+            SessionManager localSessionManager = new SessionManager(localKSessions);
+            for (int i = 0; i < poolSize; i++) {
+                // Only one handler completes the work items of finished tasks (in the session owning the process instance)
+                registerWorkItemHandler(localKSessions.get(i), localSessionManager, jbpmConsoleProperties, i == 0);
+            }
+            return localSessionManager;
         } catch (Throwable t) {
             throw new RuntimeException( "Could not initialize stateful knowledge session: " + t.getMessage(), t);
         }
     }
 
+    private static int getSessionPoolSize(Properties consoleProperties) {
+        String poolSize = System.getProperty(SESSION_POOL_SIZE_PROPERTY) == null ? consoleProperties.getProperty(SESSION_POOL_SIZE_PROPERTY) : System.getProperty(SESSION_POOL_SIZE_PROPERTY);
+        if (poolSize == null || poolSize.trim().length() < 1) {
+            return 1;
+        }
+        int result = Integer.parseInt(poolSize.trim());
+        if (result < 1) {
+            throw new IllegalArgumentException(SESSION_POOL_SIZE_PROPERTY + " should be larger than 0: " + result);
+        }
+        return result;
+    }
+
     /**
      * This method loads the jbpm console properties, if they haven't been loaded already. 
      */
@@ -218,12 +263,20 @@ public class StatefulKnowledgeSessionUtil {
             ProcessRuntimeFactory.setProcessRuntimeFactoryService(new ProcessRuntimeFactoryServiceImpl());
             BPMN2ProcessFactory.setBPMN2ProcessProvider(new BPMN2ProcessProviderImpl());
             KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+            PackageBuilder packageBuilder = ((KnowledgeBuilderImpl) kbuilder).getPackageBuilder();
+            BPMN2ProcessFactory.configurePackageBuilder(packageBuilder);
+            List<Resource> resources = new ArrayList<Resource>();
             for (File subfile: file.listFiles(new FilenameFilter() {
                 public boolean accept(File dir, String name) {
                     return name.endsWith(".bpmn") || name.endsWith("bpmn2");
                 }})) {
                 logger.info("Loading process from file system: " + subfile.getName());
-                kbuilder.add(ResourceFactory.newFileResource(subfile), ResourceType.BPMN2);
+                resources.add(ResourceFactory.newFileResource(subfile));
+            }
+            // read and validate all processes in parallel, and compile them at once
+            List<DroolsError> errors = new ProcessBuilderImpl(packageBuilder).addProcessesFromXml(resources);
+            for (DroolsError error: errors) {
+                logger.error("Error loading process from file system: " + error.getMessage());
             }
             kbase.addKnowledgePackages(kbuilder.getKnowledgePackages());
         }
@@ -231,19 +284,23 @@ public class StatefulKnowledgeSessionUtil {
 
     /**
      * This method will try to create a new stateful knowledge session or otherwise load it, depending
-     * on the values of the {@link StatefulKnowledgeSessionUtil#ksessionId} value and whether or not
-     * loading the session succeeds. 
+     * on the values of the {@link StatefulKnowledgeSessionUtil#ksessionIds} value for the given index
+     * in the session pool and whether or not loading the session succeeds. 
      * </p>
      * This method has <i>purposefully</i> been made static <i>and</i> synchronized, because it modifies
-     * the static (volatile) int ksessionId. Making the method static synchronized ensures that no 
-     * race conditions will occur when checking or modifying the ksessionId value. 
+     * the static ksessionIds list. Making the method static synchronized ensures that no 
+     * race conditions will occur when checking or modifying the ksessionIds values. 
      * 
      * @param kbase The knowledge base used to load the stateful knowledge session.
+     * @param index The index of the session in the session pool.
      * @return The stateful knowledge session. 
      */
-    private static synchronized StatefulKnowledgeSession createOrLoadStatefulKnowledgeSession(KnowledgeBase kbase) { 
-        // Set up persistence
-        EntityManagerFactory emf = Persistence.createEntityManagerFactory("org.jbpm.persistence.jpa");
+    private static synchronized StatefulKnowledgeSession createOrLoadStatefulKnowledgeSession(KnowledgeBase kbase, int index) { 
+        // Set up persistence, all sessions of the pool share the same entity manager factory
+        if (emf == null) {
+            emf = Persistence.createEntityManagerFactory("org.jbpm.persistence.jpa");
+        }
+        int ksessionId = index < ksessionIds.size() ? ksessionIds.get(index) : 0;
         Environment env = KnowledgeBaseFactory.newEnvironment();
         env.set(EnvironmentName.ENTITY_MANAGER_FACTORY, emf);
         
@@ -292,6 +349,11 @@ public class StatefulKnowledgeSessionUtil {
             env.set(EnvironmentName.ENTITY_MANAGER_FACTORY, emf);
             ksession = JPAKnowledgeService.newStatefulKnowledgeSession(kbase, config, env);
             ksessionId = ksession.getId();
+            if (index < ksessionIds.size()) {
+                ksessionIds.set(index, ksessionId);
+            } else {
+                ksessionIds.add(ksessionId);
+            }
             logger.debug("Created new knowledge session with id " + ksessionId); 
         }
 
@@ -300,11 +362,22 @@ public class StatefulKnowledgeSessionUtil {
     
     /**
      * This method registers a work item handler in the work item manager attached to the given knowledge session .
+     * </p>
+     * All sessions of the pool share the same task service, so only one of the handlers should listen for
+     * completed tasks: that handler completes the work item in the session that owns the process instance of the task.
      * @param ksession The (stateful) knowledge session .
+     * @param sessionManager The session manager of the session pool.
+     * @param listenForTaskEvents Whether the handler should complete the work items of finished tasks.
      */
-    private static void registerWorkItemHandler( StatefulKnowledgeSession ksession, Properties consoleProperties ) { 
+    private static void registerWorkItemHandler( StatefulKnowledgeSession ksession, final SessionManager sessionManager, 
+            Properties consoleProperties, boolean listenForTaskEvents ) { 
         if ("Mina".equals(TaskManagement.TASK_SERVICE_STRATEGY)) {
-            CommandBasedWSHumanTaskHandler handler = new CommandBasedWSHumanTaskHandler(ksession);
+            CommandBasedWSHumanTaskHandler handler = new CommandBasedWSHumanTaskHandler(ksession) {
+                protected KnowledgeRuntime getSession(Task task) {
+                    return sessionManager.getSession(task.getTaskData().getProcessInstanceId());
+                }
+            };
+            handler.setListenForTaskEvents(listenForTaskEvents);
             handler.setConnection(
                     consoleProperties.getProperty("jbpm.console.task.service.host").trim(),
                     new Integer(consoleProperties.getProperty("jbpm.console.task.service.port").trim()));
@@ -312,10 +385,22 @@ public class StatefulKnowledgeSessionUtil {
             handler.connect();
         } else if ("Local".equals(TaskManagement.TASK_SERVICE_STRATEGY)) {
             TaskService taskService = HumanTaskService.getService();
-            SyncWSHumanTaskHandler handler = new SyncWSHumanTaskHandler(new LocalTaskService(taskService), ksession);
-            ksession.getWorkItemManager().registerWorkItemHandler("Human Task", handler);
+            registerLocalWorkItemHandler(ksession, sessionManager, new LocalTaskService(taskService), listenForTaskEvents);
         }
     }
+
+    static void registerLocalWorkItemHandler( StatefulKnowledgeSession ksession, final SessionManager sessionManager, 
+            org.jbpm.task.TaskService client, boolean listenForTaskEvents ) { 
+        SyncWSHumanTaskHandler handler = new SyncWSHumanTaskHandler(client, ksession) {
+            protected KnowledgeRuntime getSession(Task task) {
+                return sessionManager.getSession(task.getTaskData().getProcessInstanceId());
+            }
+        };
+        handler.setListenForTaskEvents(listenForTaskEvents);
+        ksession.getWorkItemManager().registerWorkItemHandler("Human Task", handler);
+        // listen for finished tasks right away, not only once this session created a task
+        handler.connect();
+    }
     
     /**
      * This method attaches an agenda event listener to the given knowledge session .
@@ -0,0 +1,107 @@
+package org.jbpm.integration.console;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.drools.KnowledgeBase;
+import org.drools.KnowledgeBaseFactory;
+import org.drools.builder.KnowledgeBuilder;
+import org.drools.builder.KnowledgeBuilderFactory;
+import org.drools.builder.ResourceType;
+import org.drools.io.ResourceFactory;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.ProcessInstance;
+import org.jbpm.process.instance.impl.demo.DoNothingWorkItemHandler;
+import org.jbpm.ruleflow.instance.RuleFlowProcessInstance;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SessionManagerTest {
+
+    private SessionManager sessionManager;
+    private List<StatefulKnowledgeSession> sessions;
+
+    @Before
+    public void setUp() {
+        KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+        kbuilder.add(ResourceFactory.newClassPathResource("BPMN2-UserTask.bpmn2"), ResourceType.BPMN2);
+        KnowledgeBase kbase = kbuilder.newKnowledgeBase();
+        sessions = new ArrayList<StatefulKnowledgeSession>();
+        for (int i = 0; i < 3; i++) {
+            StatefulKnowledgeSession session = kbase.newStatefulKnowledgeSession();
+            session.getWorkItemManager().registerWorkItemHandler("Human Task", new DoNothingWorkItemHandler());
+            sessions.add(session);
+        }
+        sessionManager = new SessionManager(sessions);
+    }
+
+    @After
+    public void tearDown() {
+        sessionManager.dispose();
+    }
+
+    private ProcessInstance createProcessInstance(long id, int state) {
+        RuleFlowProcessInstance processInstance = new RuleFlowProcessInstance();
+        processInstance.setId(id);
+        processInstance.setState(state);
+        return processInstance;
+    }
+
+    @Test
+    public void testRouteToOwner() {
+        sessionManager.registerProcessInstance(createProcessInstance(10, ProcessInstance.STATE_ACTIVE), sessions.get(2));
+        assertSame(sessions.get(2), sessionManager.getSession(10));
+        assertEquals(1, sessionManager.getProcessInstanceCount(sessions.get(2)));
+        // unknown process instances are assigned based on their id
+        assertSame(sessions.get(11 % 3), sessionManager.getSession(11));
+    }
+
+    @Test
+    public void testInactiveProcessInstanceNotRegistered() {
+        sessionManager.registerProcessInstance(createProcessInstance(10, ProcessInstance.STATE_PENDING), sessions.get(2));
+        assertSame(sessions.get(10 % 3), sessionManager.getSession(10));
+        assertEquals(0, sessionManager.getProcessInstanceCount(sessions.get(2)));
+    }
+
+    @Test
+    public void testStartOnLeastLoadedSession() {
+        assertSame(sessions.get(0), sessionManager.getSessionForNewProcessInstance());
+
+        sessionManager.acquire(sessions.get(0));
+        sessionManager.acquire(sessions.get(1));
+        assertSame(sessions.get(2), sessionManager.getSessionForNewProcessInstance());
+
+        sessionManager.release(sessions.get(0));
+        assertSame(sessions.get(0), sessionManager.getSessionForNewProcessInstance());
+
+        // with the same number of active commands, the session owning the least process instances is used
+        sessionManager.registerProcessInstance(createProcessInstance(1, ProcessInstance.STATE_ACTIVE), sessions.get(0));
+        assertSame(sessions.get(2), sessionManager.getSessionForNewProcessInstance());
+        assertEquals(1, sessionManager.getActiveCommandCount(sessions.get(1)));
+    }
+
+    @Test
+    public void testProcessInstanceStartedByEngineIsPinned() {
+        // like a subprocess or a process started by a timer or signal in that session
+        ProcessInstance processInstance = sessions.get(2).startProcess("UserTask");
+        assertTrue(processInstance.getId() % 3 != 2);
+        assertSame(sessions.get(2), sessionManager.getSession(processInstance.getId()));
+        assertEquals(1, sessionManager.getProcessInstanceCount(sessions.get(2)));
+
+        // registering it again does not change the owner or the counts
+        sessionManager.registerProcessInstance(processInstance, sessions.get(2));
+        assertEquals(1, sessionManager.getProcessInstanceCount(sessions.get(2)));
+
+        sessions.get(2).abortProcessInstance(processInstance.getId());
+        assertEquals(0, sessionManager.getProcessInstanceCount(sessions.get(2)));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testUnknownSession() {
+        sessionManager.acquire(KnowledgeBaseFactory.newKnowledgeBase().newStatefulKnowledgeSession());
+    }
+
+}
@@ -1,7 +1,30 @@
 package org.jbpm.integration.console;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.Persistence;
+
+import org.drools.KnowledgeBase;
+import org.drools.SystemEventListenerFactory;
+import org.drools.builder.KnowledgeBuilder;
+import org.drools.builder.KnowledgeBuilderFactory;
+import org.drools.builder.ResourceType;
+import org.drools.io.ResourceFactory;
 import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.ProcessInstance;
+import org.drools.runtime.process.WorkItemManager;
+import org.drools.runtime.process.WorkflowProcessInstance;
 import org.jbpm.integration.JbpmTestCase;
+import org.jbpm.task.Task;
+import org.jbpm.task.service.TaskService;
+import org.jbpm.task.service.local.LocalTaskService;
+import org.jbpm.workflow.instance.node.WorkItemNodeInstance;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -20,6 +43,75 @@ public class StatefulKnowledgeSessionUtilTest extends JbpmTestCase {
         // test that origKsession has been disposed?
     }
     
+    @Test
+    public void testTaskCompletedOnceWithSessionPool() throws Exception {
+        KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+        kbuilder.add(ResourceFactory.newClassPathResource("BPMN2-UserTask.bpmn2"), ResourceType.BPMN2);
+        KnowledgeBase kbase = kbuilder.newKnowledgeBase();
+        AtomicInteger completions = new AtomicInteger();
+        List<StatefulKnowledgeSession> sessions = new ArrayList<StatefulKnowledgeSession>();
+        for (int i = 0; i < 3; i++) {
+            sessions.add(countCompletions(kbase.newStatefulKnowledgeSession(), completions));
+        }
+        SessionManager sessionManager = new SessionManager(sessions);
+        TaskService taskService = new TaskService(Persistence.createEntityManagerFactory("org.jbpm.task"), 
+            SystemEventListenerFactory.getSystemEventListener());
+        LocalTaskService client = new LocalTaskService(taskService);
+        for (int i = 0; i < sessions.size(); i++) {
+            StatefulKnowledgeSessionUtil.registerLocalWorkItemHandler(sessions.get(i), sessionManager, 
+                new LocalTaskService(taskService), i == 0);
+        }
+
+        // started in another session than the one of the handler that listens for task events
+        ProcessInstance processInstance = sessions.get(2).startProcess("UserTask");
+        WorkItemNodeInstance nodeInstance = (WorkItemNodeInstance) 
+            ((WorkflowProcessInstance) processInstance).getNodeInstances().iterator().next();
+        Task task = client.getTaskByWorkItemId(nodeInstance.getWorkItem().getId());
+        client.start(task.getId(), "john");
+        client.complete(task.getId(), "john", null);
+
+        // the work item is completed asynchronously
+        for (int i = 0; i < 50 && processInstance.getState() == ProcessInstance.STATE_ACTIVE; i++) {
+            Thread.sleep(100);
+        }
+        Thread.sleep(500);
+        assertEquals(ProcessInstance.STATE_COMPLETED, processInstance.getState());
+        assertEquals(1, completions.get());
+        sessionManager.dispose();
+    }
+
+    /**
+     * @return a session that counts the work items completed through its work item manager.
+     */
+    private static StatefulKnowledgeSession countCompletions(final StatefulKnowledgeSession session, final AtomicInteger completions) {
+        final WorkItemManager workItemManager = (WorkItemManager) Proxy.newProxyInstance(
+            WorkItemManager.class.getClassLoader(), new Class[] { WorkItemManager.class }, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if ("completeWorkItem".equals(method.getName())) {
+                        completions.incrementAndGet();
+                    }
+                    return delegate(session.getWorkItemManager(), method, args);
+                }
+            });
+        return (StatefulKnowledgeSession) Proxy.newProxyInstance(
+            StatefulKnowledgeSession.class.getClassLoader(), new Class[] { StatefulKnowledgeSession.class }, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if ("getWorkItemManager".equals(method.getName())) {
+                        return workItemManager;
+                    }
+                    return delegate(session, method, args);
+                }
+            });
+    }
+
+    private static Object delegate(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
     @Test
     @Ignore
     public void multiThreadedCommandDelegateTest() { 
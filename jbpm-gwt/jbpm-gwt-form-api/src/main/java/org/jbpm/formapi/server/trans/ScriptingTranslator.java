@@ -20,7 +20,10 @@ import java.io.IOException;
 import java.io.StringWriter;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.commons.io.FileUtils;
@@ -32,11 +35,22 @@ import org.apache.velocity.runtime.resource.loader.URLResourceLoader;
 import org.jbpm.formapi.shared.api.FBScript;
 import org.jbpm.formapi.shared.api.FormItemRepresentation;
 import org.jbpm.formapi.shared.api.FormRepresentation;
+import org.jbpm.formapi.shared.form.FormEncodingFactory;
+import org.jbpm.formapi.shared.form.FormRepresentationEncoder;
 
 public class ScriptingTranslator implements Translator {
 
+    private static final int MAX_CACHED_TRANSLATIONS = 64;
+
     private final VelocityEngine engine = new VelocityEngine();
     private final Map<URL, Template> templates = new HashMap<URL, Template>();
+    private final Map<String, String> translations = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_CACHED_TRANSLATIONS;
+        }
+    });
 
     private final String language;
     private final String folderLocation;
@@ -62,9 +76,31 @@ public class ScriptingTranslator implements Translator {
         return runVelocityScript(item, item.getTypeId());
     }
 
+    /**
+     * Writes the translation of the form to a new temporary file, which is owned by the caller.
+     */
     @Override
     public URL translateForm(FormRepresentation form) throws TranslatorException {
-        return saveToURL(runVelocityScript(form, "form"));
+        return saveToURL(translateFormToString(form));
+    }
+
+    /**
+     * Translations are cached in memory by a hash of the encoded form, so previewing
+     * or exporting the same form again does not run the velocity scripts again.
+     */
+    public String translateFormToString(FormRepresentation form) throws TranslatorException {
+        String key = getTranslationKey(form);
+        if (key != null) {
+            String translation = translations.get(key);
+            if (translation != null) {
+                return translation;
+            }
+        }
+        String translation = runVelocityScript(form, "form");
+        if (key != null) {
+            translations.put(key, translation);
+        }
+        return translation;
     }
     
     /*
@@ -91,6 +127,27 @@ public class ScriptingTranslator implements Translator {
         return writer.toString();
     }
     
+    /**
+     * @return a hash of the encoded form, or <code>null</code> if the form cannot be encoded
+     */
+    private String getTranslationKey(FormRepresentation form) {
+        FormRepresentationEncoder encoder = FormEncodingFactory.getEncoder();
+        if (encoder == null) {
+            return null;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(encoder.encode(form).getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+                builder.append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     private URL saveToURL(String fileContent) throws TranslatorException {
         try {
             File tmpFile = File.createTempFile("formBuilderTrans", ".ftl");
@@ -18,9 +18,12 @@ package org.jbpm.formbuilder.server;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.UUID;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
@@ -46,6 +49,8 @@ import org.jbpm.formapi.server.form.FormEncodingServerFactory;
 import org.jbpm.formapi.server.render.Renderer;
 import org.jbpm.formapi.server.render.RendererException;
 import org.jbpm.formapi.server.render.RendererFactory;
+import org.jbpm.formapi.server.render.TemplateRenderer;
+import org.jbpm.formapi.server.trans.ScriptingTranslator;
 import org.jbpm.formapi.server.trans.Translator;
 import org.jbpm.formapi.server.trans.TranslatorException;
 import org.jbpm.formapi.server.trans.TranslatorFactory;
@@ -63,6 +68,21 @@ import org.jbpm.formbuilder.shared.form.FormServiceException;
 @Path("/form")
 public class RESTFormService extends RESTBaseService {
 
+    private static final String EXPORT_TEMPLATE_PREFIX = "formTemplate-";
+    private static final int MAX_EXPORT_TEMPLATES = 64;
+
+    /**
+     * Translated forms of {@link #getFormTemplate}, kept in memory until they are exported
+     * with {@link #getExportTemplate}, keyed by the name returned to the client
+     */
+    private static final Map<String, String> exportTemplates = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_EXPORT_TEMPLATES;
+        }
+    });
+
     private FormDefinitionService formService = null;
     
     public void setContext(@Context ServletContext context) {
@@ -196,13 +216,23 @@ public class RESTFormService extends RESTBaseService {
             @Context ServletContext context, @Context HttpServletRequest request) {
         setContext(context);
         try {
-            URL url = createTemplate(language, dto);
+            FormRepresentation form = decodeForm(dto);
+            Translator translator = getTranslator(language);
+            // forms of the scripting languages are translated (and cached) in memory
+            String template = translator instanceof ScriptingTranslator ? 
+                    ((ScriptingTranslator) translator).translateFormToString(form) : null;
+            URL url = template == null ? translator.translateForm(form) : null;
             Map<String, Object> inputs = dto.getInputsAsMap();
             Renderer renderer = getRenderer(language);
             inputs.put(Renderer.BASE_CONTEXT_PATH, context.getContextPath());
             Locale locale = request.getLocale();
             inputs.put(Renderer.BASE_LOCALE, locale == null ? "default" : locale.getDisplayName(locale));
-            Object html = renderer.render(url, inputs);
+            Object html;
+            if (template != null && renderer instanceof TemplateRenderer) {
+                html = ((TemplateRenderer) renderer).render(template, inputs);
+            } else {
+                html = renderer.render(url == null ? translator.translateForm(form) : url, inputs);
+            }
             String htmlUrl = createHtmlTemplate(html, language, context);
             return Response.ok(htmlUrl, MediaType.TEXT_PLAIN).build();
         } catch (FormEncodingException e) {
@@ -220,8 +250,15 @@ public class RESTFormService extends RESTBaseService {
     public Response getFormTemplate(FormPreviewDTO dto, @PathParam("language") String language, @Context ServletContext context) {
         setContext(context);
         try {
-            URL url = createTemplate(language, dto);
-            String fileName = url.getFile();
+            FormRepresentation form = decodeForm(dto);
+            Translator translator = getTranslator(language);
+            String fileName;
+            if (translator instanceof ScriptingTranslator) {
+                fileName = EXPORT_TEMPLATE_PREFIX + UUID.randomUUID().toString();
+                exportTemplates.put(fileName, ((ScriptingTranslator) translator).translateFormToString(form));
+            } else {
+                fileName = translator.translateForm(form).getFile();
+            }
             return Response.ok("<fileName>"+fileName+"</fileName>", MediaType.APPLICATION_XML).build();
         } catch (FormEncodingException e) {
             return error("Problem encoding form for templating", e);
@@ -283,14 +320,12 @@ public class RESTFormService extends RESTBaseService {
     }
     
     
-    private URL createTemplate(String language, FormPreviewDTO dto) throws FormEncodingException, TranslatorException {
+    private FormRepresentation decodeForm(FormPreviewDTO dto) throws FormEncodingException {
         FormRepresentationDecoder decoder = FormEncodingFactory.getDecoder();
         String json = dto.getRepresentation();
         FormRepresentation form = decoder.decode(json);
         dto.setForm(form);
-        Translator translator = getTranslator(language);
-        URL url = translator.translateForm(form);
-        return url;
+        return form;
     }
     
     @GET @Path("/template/lang/{language}")
@@ -298,12 +333,13 @@ public class RESTFormService extends RESTBaseService {
             @QueryParam("formName") String formName,
             @PathParam("language") String language, @Context ServletContext context) {
         setContext(context);
-        File file = new File(fileName);
+        String template = exportTemplates.get(fileName);
         String headerValue = new StringBuilder("attachment; filename=\"").
             append(formName).append('.').append(language).
             append("\"").toString();
         try {
-            return Response.ok(FileUtils.readFileToByteArray(file), 
+            byte[] content = template != null ? template.getBytes() : FileUtils.readFileToByteArray(new File(fileName));
+            return Response.ok(content, 
                 MediaType.APPLICATION_OCTET_STREAM).
                 header("Content-Disposition", headerValue).build();
         } catch (IOException e) {
@@ -17,13 +17,18 @@ package org.jbpm.formbuilder.server.render.xsl;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.lang.reflect.Field;
 import java.net.URL;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
@@ -32,55 +37,120 @@ import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
 import org.apache.commons.beanutils.PropertyUtils;
+import org.apache.commons.io.IOUtils;
 import org.jbpm.formapi.server.render.RendererException;
+import org.jbpm.formapi.server.render.TemplateRenderer;
 
-public class Renderer implements org.jbpm.formapi.server.render.Renderer {
+public class Renderer implements TemplateRenderer {
+
+    private static final int MAX_CACHED_TEMPLATES = 64;
+
+    /**
+     * Name of the root element of the input document the stylesheets are applied to,
+     * each input is a child element of it
+     */
+    public static final String INPUTS_ELEMENT = "inputs";
 
     private final TransformerFactory factory = TransformerFactory.newInstance();
     
+    /**
+     * Compiled stylesheets, keyed by the stylesheet source
+     */
+    private final Map<String, Templates> templates = Collections.synchronizedMap(new LinkedHashMap<String, Templates>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Templates> eldest) {
+            return size() > MAX_CACHED_TEMPLATES;
+        }
+    });
+    
+    /**
+     * Renders the translated form at the given URL, which is a temporary file
+     * that is deleted afterwards.
+     */
     @Override
     public Object render(URL url, Map<String, Object> inputData) throws RendererException {
+        String stylesheet;
         try {
-            StreamSource template = new StreamSource(url.openStream());
-            Transformer transformer = factory.newTransformer(template);
+            InputStream input = url.openStream();
+            try {
+                stylesheet = IOUtils.toString(input);
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            throw new RendererException("I/O problem rendering " + url, e);
+        } finally {
+            new File(url.getFile()).delete();
+        }
+        return render(stylesheet, inputData);
+    }
+
+    /**
+     * Renders a translated form that is kept in memory.
+     */
+    @Override
+    public Object render(String stylesheet, Map<String, Object> inputData) throws RendererException {
+        try {
+            Transformer transformer = getTemplates(stylesheet).newTransformer();
             StringWriter writer = new StringWriter();
             StreamResult result = new StreamResult(writer);
-            StreamSource inputSource = new StreamSource(toInputString(inputData));
+            StreamSource inputSource = new StreamSource(new StringReader(toInputString(inputData)));
             transformer.transform(inputSource, result);
             return writer.toString();
-        } catch (IOException e) {
-            throw new RendererException("I/O problem rendering " + url, e);
         } catch (TransformerConfigurationException e) {
-            throw new RendererException("transformer configuration problem rendering " + url, e);
+            throw new RendererException("transformer configuration problem rendering stylesheet", e);
         } catch (TransformerException e) {
-            throw new RendererException("transformer problem rendering " + url, e);
-        } finally {
-            new File(url.getFile()).delete();
+            throw new RendererException("transformer problem rendering stylesheet", e);
+        }
+    }
+    
+    private Templates getTemplates(String stylesheet) throws TransformerConfigurationException {
+        Templates result = templates.get(stylesheet);
+        if (result == null) {
+            synchronized (factory) {
+                result = factory.newTemplates(new StreamSource(new StringReader(stylesheet)));
+            }
+            templates.put(stylesheet, result);
         }
+        return result;
     }
     
     protected String toInputString(Map<String, Object> inputData) {
         StringBuilder builder = new StringBuilder("<?xml version=\"1.0\"?>\n");
+        builder.append("<").append(INPUTS_ELEMENT).append(">\n");
+        appendInput(builder, inputData);
+        builder.append("</").append(INPUTS_ELEMENT).append(">\n");
+        return builder.toString();
+    }
+    
+    protected String toString(Object value) {
+        StringBuilder builder = new StringBuilder();
+        appendValue(builder, value);
+        return builder.toString();
+    }
+    
+    private void appendInput(StringBuilder builder, Map<String, Object> inputData) {
         if (inputData != null) {
             for (Map.Entry<String, Object> entry : inputData.entrySet()) {
-                builder.append("<").append(entry.getKey()).append(">").
-                    append(toString(entry.getValue())).
-                append("</").append(entry.getKey()).append(">\n");
+                builder.append("<").append(entry.getKey()).append(">");
+                appendValue(builder, entry.getValue());
+                builder.append("</").append(entry.getKey()).append(">\n");
             }
         }
-        return builder.toString();
     }
     
     @SuppressWarnings("unchecked")
-    protected String toString(Object value) {
-        StringBuilder builder = new StringBuilder();
-        if (value instanceof String || value instanceof Number) {
-            builder.append(value);
+    private void appendValue(StringBuilder builder, Object value) {
+        if (value == null) {
+            return;
+        } else if (value instanceof String || value instanceof Number) {
+            appendText(builder, value.toString());
         } else if (value instanceof Map) {
-            builder.append(toInputString((Map<String, Object>) value));
+            appendInput(builder, (Map<String, Object>) value);
         } else if (value instanceof Collection) {
             for (Object obj : (Collection<?>) value) {
-                builder.append(toString(obj));
+                appendValue(builder, obj);
             }
         } else {
             Map<String, Object> metaMap = new HashMap<String, Object>();
@@ -91,9 +161,20 @@ public class Renderer implements org.jbpm.formapi.server.render.Renderer {
                     metaMap.put(field.getName(), "");
                 }
             }
-            builder.append(toInputString(metaMap));
+            appendInput(builder, metaMap);
+        }
+    }
+
+    private void appendText(StringBuilder builder, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<': builder.append("&lt;"); break;
+                case '>': builder.append("&gt;"); break;
+                case '&': builder.append("&amp;"); break;
+                default: builder.append(c);
+            }
         }
-        return builder.toString();
     }
 
 }
@@ -15,6 +15,7 @@
  */
 package org.jbpm.formbuilder.server;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -25,11 +26,13 @@ import java.util.Set;
 
 import junit.framework.TestCase;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.jbpm.formapi.server.form.FormEncodingServerFactory;
 import org.jbpm.formapi.server.render.Renderer;
 import org.jbpm.formapi.server.render.RendererException;
 import org.jbpm.formapi.server.render.RendererFactory;
+import org.jbpm.formapi.server.trans.ScriptingTranslator;
 import org.jbpm.formapi.server.trans.Translator;
 import org.jbpm.formapi.server.trans.TranslatorException;
 import org.jbpm.formapi.server.trans.TranslatorFactory;
@@ -42,6 +45,12 @@ import com.google.gwt.event.shared.UmbrellaException;
 
 public class RendererAndTranslatorTest extends TestCase {
 
+    private static final String HELLO_STYLESHEET =
+        "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+        + "<xsl:output method=\"text\"/>"
+        + "<xsl:template match=\"/\">Hello <xsl:value-of select=\"inputs/name\"/></xsl:template>"
+        + "</xsl:stylesheet>";
+
     private GuvnorMenuService service;
     
     @Override
@@ -85,6 +94,56 @@ public class RendererAndTranslatorTest extends TestCase {
         }
     }
 
+    public void testTranslationIsReused() throws Exception {
+        FormRepresentation form = FormEncodingFactory.getDecoder().decode(getFormTestJsonRepresentation());
+        ScriptingTranslator translator = (ScriptingTranslator) TranslatorFactory.getInstance().getTranslator("ftl");
+        String translation = translator.translateFormToString(form);
+        assertSame(translation, translator.translateFormToString(form));
+        URL url = translator.translateForm(form);
+        File file = new File(url.getFile());
+        try {
+            assertEquals(translation, FileUtils.readFileToString(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testXslRenderReusesStylesheet() throws Exception {
+        org.jbpm.formbuilder.server.render.xsl.Renderer renderer = new org.jbpm.formbuilder.server.render.xsl.Renderer();
+        Map<String, Object> inputs = new HashMap<String, Object>();
+        inputs.put("name", "John");
+        for (int i = 0; i < 10; i++) {
+            assertEquals("Hello John", renderer.render(HELLO_STYLESHEET, inputs));
+        }
+    }
+
+    public void testXslRenderInputIsWellFormed() throws Exception {
+        String stylesheet = "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+            + "<xsl:output method=\"text\"/>"
+            + "<xsl:template match=\"/\">"
+            + "<xsl:value-of select=\"count(inputs/*)\"/>|<xsl:value-of select=\"inputs/name\"/>|"
+            + "<xsl:value-of select=\"inputs/address/city\"/>|<xsl:value-of select=\"inputs/address/zip\"/>"
+            + "</xsl:template></xsl:stylesheet>";
+        org.jbpm.formbuilder.server.render.xsl.Renderer renderer = new org.jbpm.formbuilder.server.render.xsl.Renderer();
+        Map<String, Object> address = new HashMap<String, Object>();
+        address.put("city", "Brno & <Co>");
+        address.put("zip", 60200);
+        Map<String, Object> inputs = basicInputs();
+        inputs.put("name", "John");
+        inputs.put("address", address);
+        assertEquals("4|John|Brno & <Co>|60200", renderer.render(stylesheet, inputs));
+    }
+
+    public void testXslRenderDeletesTranslation() throws Exception {
+        File stylesheet = File.createTempFile("formBuilderTest", ".xsl");
+        FileUtils.writeStringToFile(stylesheet, HELLO_STYLESHEET);
+        Renderer renderer = new org.jbpm.formbuilder.server.render.xsl.Renderer();
+        Map<String, Object> inputs = new HashMap<String, Object>();
+        inputs.put("name", "John");
+        assertEquals("Hello John", renderer.render(stylesheet.toURI().toURL(), inputs));
+        assertFalse("the translated form should be deleted", stylesheet.exists());
+    }
+
     private Map<String, Object> basicInputs() {
         Map<String, Object> inputs = new HashMap<String, Object>();
         inputs.put(Renderer.BASE_CONTEXT_PATH, "/");
@@ -17,35 +17,53 @@ package org.jbpm.formbuilder.server.render.ftl;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.net.URL;
 import java.util.Map;
 
 import org.jbpm.formapi.server.render.RendererException;
+import org.jbpm.formapi.server.render.TemplateRenderer;
 
 import freemarker.template.Configuration;
 import freemarker.template.DefaultObjectWrapper;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
 
-public class Renderer implements org.jbpm.formapi.server.render.Renderer {
+public class Renderer implements TemplateRenderer {
 
     @Override
     public Object render(URL url, Map<String, Object> inputData) throws RendererException {
         try {
             //return FileUtils.readFileToString(new File(url.getFile()));
-            Configuration cfg = new Configuration();
-            cfg.setObjectWrapper(new DefaultObjectWrapper());
-            cfg.setTemplateUpdateDelay(0);
-            String name = "formBuilderRender";
-            StringWriter out = new StringWriter();
-            Template temp = new Template(name, new InputStreamReader(url.openStream()), cfg);
-            temp.process(inputData, out);
-            return out.toString();
+            return render(new InputStreamReader(url.openStream()), inputData);
         } catch (IOException e) {
             throw new RendererException("I/O problem rendering " + url, e);
         } catch (TemplateException e) {
             throw new RendererException("Template problem rendering " + url, e);
         }
     }
+
+    @Override
+    public Object render(String template, Map<String, Object> inputData) throws RendererException {
+        try {
+            return render(new StringReader(template), inputData);
+        } catch (IOException e) {
+            throw new RendererException("I/O problem rendering template", e);
+        } catch (TemplateException e) {
+            throw new RendererException("Template problem rendering template", e);
+        }
+    }
+
+    private String render(Reader reader, Map<String, Object> inputData) throws IOException, TemplateException {
+        Configuration cfg = new Configuration();
+        cfg.setObjectWrapper(new DefaultObjectWrapper());
+        cfg.setTemplateUpdateDelay(0);
+        String name = "formBuilderRender";
+        StringWriter out = new StringWriter();
+        Template temp = new Template(name, reader, cfg);
+        temp.process(inputData, out);
+        return out.toString();
+    }
 }
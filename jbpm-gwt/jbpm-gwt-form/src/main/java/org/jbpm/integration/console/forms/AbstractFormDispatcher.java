@@ -18,12 +18,12 @@ package org.jbpm.integration.console.forms;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -33,10 +33,8 @@ import java.util.Properties;
 import javax.activation.DataHandler;
 import javax.activation.DataSource;
 
-import org.apache.commons.io.IOUtils;
 import org.jboss.bpm.console.server.plugin.FormAuthorityRef;
 import org.jboss.bpm.console.server.plugin.FormDispatcherPlugin;
-import org.jbpm.integration.console.shared.GuvnorConnectionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,6 +48,14 @@ import freemarker.template.TemplateException;
 public abstract class AbstractFormDispatcher implements FormDispatcherPlugin {
 
 	private static final Logger logger = LoggerFactory.getLogger(AbstractFormDispatcher.class);
+
+	/**
+	 * The minimum number of seconds between checks whether a cached template has changed.
+	 */
+	public static final int TEMPLATE_UPDATE_DELAY = 5;
+
+	private static final FormTemplateLoader templateLoader = new FormTemplateLoader();
+	private static final freemarker.template.Configuration configuration = createConfiguration();
 	
 	public URL getDispatchUrl(FormAuthorityRef ref) {
 		StringBuffer sb = new StringBuffer();
@@ -85,68 +91,120 @@ public abstract class AbstractFormDispatcher implements FormDispatcherPlugin {
 			"Unknown form authority type: " + ref.getType());
 	}
 	
+	/**
+	 * @return the source of the template with the given name, or <code>null</code> if it cannot be found
+	 */
 	public InputStream getTemplate(String name) {
-            // try to find on classpath
-	    InputStream nameTaskformResult = AbstractFormDispatcher.class.getResourceAsStream("/" + name + "-taskform.ftl");
-            if (nameTaskformResult != null) {
-                return nameTaskformResult;
-            } else {
-                InputStream nameResult = AbstractFormDispatcher.class.getResourceAsStream("/" + name + ".ftl");
-                if (nameResult != null) {
-                    return nameResult;
-                }
-            }
-            // try to find in guvnor repository
-            GuvnorConnectionUtils guvnorUtils = new GuvnorConnectionUtils();
-            if(guvnorUtils.guvnorExists()) {
-        	try {
-                    String templateName;
-                    if(guvnorUtils.templateExistsInRepo(name + "-taskform")) {
-                        templateName = name + "-taskform";
-                    } else if(guvnorUtils.templateExistsInRepo(name)) {
-                        templateName = name;
-                    } else {
-                        return null;
-                    }
-                    return guvnorUtils.getFormTemplateFromGuvnor(templateName);
-                } catch (Throwable t) {
-                    logger.error("Could not load process template from Guvnor: " + t.getMessage());
-                    return null;
-                }
-            } else {
-                logger.warn("Could not connect to Guvnor.");
-                return null;
-            }
+		try {
+			Object source = templateLoader.findTemplateSource(name);
+			return source == null ? null : templateLoader.getInputStream(source);
+		} catch (IOException e) {
+			logger.error("Could not load template " + name + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the parsed template with the given name. Templates are cached and only parsed again
+	 * when their source has changed, which is checked at most every {@link #TEMPLATE_UPDATE_DELAY} seconds.
+	 *
+	 * @return the template, or <code>null</code> if it cannot be found
+	 */
+	protected Template findTemplate(String name) {
+		if (name == null) {
+			return null;
+		}
+		try {
+			return configuration.getTemplate(name);
+		} catch (FileNotFoundException e) {
+			return null;
+		} catch (IOException e) {
+			throw new RuntimeException("Could not load form template " + name, e);
+		}
 	}
 
 	protected DataHandler processTemplate(final String name, InputStream src, Map<String, Object> renderContext) {
-            DataHandler merged = null;
-            try {
-                freemarker.template.Configuration cfg = new freemarker.template.Configuration();
-                cfg.setObjectWrapper(new DefaultObjectWrapper());
-                cfg.setTemplateUpdateDelay(0);
-                Template temp = new Template(name, new InputStreamReader(src), cfg);
-                final ByteArrayOutputStream bout = new ByteArrayOutputStream();
-                Writer out = new OutputStreamWriter(bout);
-                temp.process(renderContext, out);
-                out.flush();
-                merged = new DataHandler(new DataSource() {
-                    public InputStream getInputStream() throws IOException {
-                        return new ByteArrayInputStream(bout.toByteArray());
-                    }
-                    public OutputStream getOutputStream() throws IOException {
-                        return bout;
-                    }
-                    public String getContentType() {
-                        return "*/*";
-                    }
-                    public String getName() {
-                        return name + "_DataSource";
-                    }
-                });
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to process form template", e);
-            }
-            return merged;
-        }
+		try {
+			return processTemplate(new Template(name, new InputStreamReader(src), configuration), renderContext);
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to process form template", e);
+		}
+	}
+
+	/**
+	 * The template is rendered when the result is used: directly into the output stream
+	 * when {@link DataHandler#writeTo(OutputStream)} is used, or into a buffer when the
+	 * input stream of the data source is requested.
+	 */
+	protected DataHandler processTemplate(Template template, Map<String, Object> renderContext) {
+		return new TemplateDataHandler(new TemplateDataSource(template, renderContext));
+	}
+
+	private static freemarker.template.Configuration createConfiguration() {
+		freemarker.template.Configuration cfg = new freemarker.template.Configuration();
+		cfg.setObjectWrapper(new DefaultObjectWrapper());
+		cfg.setTemplateLoader(templateLoader);
+		cfg.setLocalizedLookup(false);
+		cfg.setTemplateUpdateDelay(TEMPLATE_UPDATE_DELAY);
+		return cfg;
+	}
+
+	private static class TemplateDataSource implements DataSource {
+
+		private final Template template;
+		private final Map<String, Object> renderContext;
+		private byte[] rendered;
+
+		TemplateDataSource(Template template, Map<String, Object> renderContext) {
+			this.template = template;
+			this.renderContext = renderContext;
+		}
+
+		void render(OutputStream os) throws IOException {
+			Writer out = new OutputStreamWriter(os);
+			try {
+				template.process(renderContext, out);
+			} catch (TemplateException e) {
+				IOException exception = new IOException("Failed to process form template " + template.getName());
+				exception.initCause(e);
+				throw exception;
+			}
+			out.flush();
+		}
+
+		public synchronized InputStream getInputStream() throws IOException {
+			if (rendered == null) {
+				ByteArrayOutputStream bout = new ByteArrayOutputStream();
+				render(bout);
+				rendered = bout.toByteArray();
+			}
+			return new ByteArrayInputStream(rendered);
+		}
+
+		public OutputStream getOutputStream() throws IOException {
+			throw new IOException("Form data source is read-only");
+		}
+
+		public String getContentType() {
+			return "*/*";
+		}
+
+		public String getName() {
+			return template.getName() + "_DataSource";
+		}
+	}
+
+	private static class TemplateDataHandler extends DataHandler {
+
+		private final TemplateDataSource dataSource;
+
+		TemplateDataHandler(TemplateDataSource dataSource) {
+			super(dataSource);
+			this.dataSource = dataSource;
+		}
+
+		public void writeTo(OutputStream os) throws IOException {
+			dataSource.render(os);
+		}
+	}
 }
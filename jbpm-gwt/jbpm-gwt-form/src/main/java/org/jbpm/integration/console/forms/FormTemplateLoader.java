@@ -0,0 +1,181 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.integration.console.forms;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.apache.commons.io.IOUtils;
+import org.jbpm.integration.console.shared.GuvnorConnectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import freemarker.cache.TemplateLoader;
+
+/**
+ * Loads form templates for FreeMarker, looking for <code>name-taskform.ftl</code> and
+ * <code>name.ftl</code> on the classpath, in the <code>jbpm.console.directory</code>
+ * and in the Guvnor repository (in that order).
+ * </p>
+ * The last modified time of a template is used by FreeMarker to decide whether a cached
+ * template must be parsed again. For templates in Guvnor, a hash of the content is used instead.
+ */
+public class FormTemplateLoader implements TemplateLoader {
+
+	private static final Logger logger = LoggerFactory.getLogger(FormTemplateLoader.class);
+
+	private final File directory;
+
+	public FormTemplateLoader() {
+		this(getConsoleDirectory());
+	}
+
+	public FormTemplateLoader(File directory) {
+		this.directory = directory;
+	}
+
+	private static File getConsoleDirectory() {
+		String directory = System.getProperty("jbpm.console.directory");
+		if (directory == null) {
+			Properties properties = new Properties();
+			try {
+				properties.load(FormTemplateLoader.class.getResourceAsStream("/jbpm.console.properties"));
+			} catch (IOException e) {
+				throw new RuntimeException("Could not load jbpm.console.properties", e);
+			}
+			directory = properties.getProperty("jbpm.console.directory");
+		}
+		if (directory == null || directory.trim().length() == 0) {
+			return null;
+		}
+		return new File(directory.trim());
+	}
+
+	public Object findTemplateSource(String name) throws IOException {
+		// try to find on classpath
+		URL url = FormTemplateLoader.class.getResource("/" + name + "-taskform.ftl");
+		if (url == null) {
+			url = FormTemplateLoader.class.getResource("/" + name + ".ftl");
+		}
+		if (url != null) {
+			return url;
+		}
+		// try to find in the console directory
+		if (directory != null) {
+			File file = new File(directory, name + "-taskform.ftl");
+			if (!file.isFile()) {
+				file = new File(directory, name + ".ftl");
+			}
+			if (file.isFile()) {
+				return file;
+			}
+		}
+		// try to find in guvnor repository
+		GuvnorConnectionUtils guvnorUtils = new GuvnorConnectionUtils();
+		if (guvnorUtils.guvnorExists()) {
+			try {
+				String templateName;
+				if (guvnorUtils.templateExistsInRepo(name + "-taskform")) {
+					templateName = name + "-taskform";
+				} else if (guvnorUtils.templateExistsInRepo(name)) {
+					templateName = name;
+				} else {
+					return null;
+				}
+				InputStream in = guvnorUtils.getFormTemplateFromGuvnor(templateName);
+				return in == null ? null : new GuvnorTemplateSource(IOUtils.toByteArray(in));
+			} catch (Throwable t) {
+				logger.error("Could not load process template from Guvnor: " + t.getMessage());
+				return null;
+			}
+		} else {
+			logger.warn("Could not connect to Guvnor.");
+			return null;
+		}
+	}
+
+	public long getLastModified(Object templateSource) {
+		if (templateSource instanceof URL) {
+			try {
+				URLConnection connection = ((URL) templateSource).openConnection();
+				connection.setUseCaches(false);
+				long lastModified = connection.getLastModified();
+				connection.getInputStream().close();
+				return lastModified == 0 ? -1 : lastModified;
+			} catch (IOException e) {
+				return -1;
+			}
+		}
+		if (templateSource instanceof File) {
+			return ((File) templateSource).lastModified();
+		}
+		return ((GuvnorTemplateSource) templateSource).getVersion();
+	}
+
+	public Reader getReader(Object templateSource, String encoding) throws IOException {
+		return new InputStreamReader(getInputStream(templateSource), encoding);
+	}
+
+	public InputStream getInputStream(Object templateSource) throws IOException {
+		if (templateSource instanceof URL) {
+			return ((URL) templateSource).openStream();
+		}
+		if (templateSource instanceof File) {
+			return new FileInputStream((File) templateSource);
+		}
+		return new ByteArrayInputStream(((GuvnorTemplateSource) templateSource).getContent());
+	}
+
+	public void closeTemplateSource(Object templateSource) {
+		// the readers are closed by FreeMarker
+	}
+
+	private static class GuvnorTemplateSource {
+
+		private final byte[] content;
+
+		GuvnorTemplateSource(byte[] content) {
+			this.content = content;
+		}
+
+		byte[] getContent() {
+			return content;
+		}
+
+		long getVersion() {
+			return Arrays.hashCode(content);
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof GuvnorTemplateSource && Arrays.equals(content, ((GuvnorTemplateSource) o).content);
+		}
+
+		public int hashCode() {
+			return Arrays.hashCode(content);
+		}
+	}
+
+}
@@ -16,7 +16,6 @@
 
 package org.jbpm.integration.console.forms;
 
-import java.io.InputStream;
 import java.net.URL;
 import java.util.HashMap;
 
@@ -24,22 +23,23 @@ import javax.activation.DataHandler;
 
 import org.jboss.bpm.console.server.plugin.FormAuthorityRef;
 
+import freemarker.template.Template;
+
 public class ProcessFormDispatcher extends AbstractFormDispatcher {
 	
 	public URL getDispatchUrl(FormAuthorityRef ref) {
-	    InputStream template = getTemplate(ref.getReferenceId());
-		if (template == null) {
+		if (findTemplate(ref.getReferenceId()) == null) {
 			return null;
 		}
 		return super.getDispatchUrl(ref);
 	}
 
 	public DataHandler provideForm(FormAuthorityRef ref) {
-        InputStream template = getTemplate(ref.getReferenceId());
+		Template template = findTemplate(ref.getReferenceId());
 		if (template == null) {
 			return null;
 		}
-		return processTemplate(ref.getReferenceId(), template, new HashMap<String, Object>());
+		return processTemplate(template, new HashMap<String, Object>());
 	}
 
 }
@@ -18,7 +18,6 @@ package org.jbpm.integration.console.forms;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.util.HashMap;
 import java.util.List;
@@ -38,6 +37,8 @@ import org.jbpm.task.service.mina.MinaTaskClientHandler;
 import org.jbpm.task.service.responsehandlers.BlockingGetContentResponseHandler;
 import org.jbpm.task.service.responsehandlers.BlockingGetTaskResponseHandler;
 
+import freemarker.template.Template;
+
 /**
  * @author Kris Verlaenen
  */
@@ -99,9 +100,9 @@ public class TaskFormDispatcher extends AbstractFormDispatcher {
 				name = text.getText();
 			}
 		}
-		InputStream template = getTemplate(name);
+		Template template = findTemplate(name);
 		if (template == null) {
-			template = TaskFormDispatcher.class.getResourceAsStream("/DefaultTask.ftl");
+			template = findTemplate("DefaultTask");
 		}
 
 		// merge template with process variables
@@ -116,7 +117,7 @@ public class TaskFormDispatcher extends AbstractFormDispatcher {
 				}
 			}
 		}
-		return processTemplate(name, template, renderContext);
+		return processTemplate(template, renderContext);
 	}
 
 }
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.integration.console.graph;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.drools.definition.process.Node;
+import org.drools.definition.process.NodeContainer;
+import org.drools.definition.process.Process;
+import org.drools.definition.process.WorkflowProcess;
+import org.jboss.bpm.console.client.model.DiagramInfo;
+import org.jboss.bpm.console.client.model.DiagramNodeInfo;
+
+/**
+ * Cache of the diagram information and images of processes, shared by all instances of the
+ * {@link GraphViewerPluginImpl}.
+ * </p>
+ * Entries are validated against the process definition they were created for: when a process
+ * is updated in the knowledge base (a new version, or a new process object with the same version),
+ * the entry is recreated.
+ */
+public class DiagramCache {
+
+    private static final DiagramCache INSTANCE = new DiagramCache();
+
+    private final Map<String, CachedDiagram> diagrams = new ConcurrentHashMap<String, CachedDiagram>();
+    private final Map<String, CachedImage> images = new ConcurrentHashMap<String, CachedImage>();
+
+    public static DiagramCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the diagram of the given process, created when it is not cached yet
+     */
+    public CachedDiagram getDiagram(Process process) {
+        CachedDiagram diagram = diagrams.get(process.getId());
+        if (diagram == null || !diagram.isFor(process)) {
+            diagram = new CachedDiagram(process);
+            diagrams.put(process.getId(), diagram);
+        }
+        return diagram;
+    }
+
+    /**
+     * @param process the process definition the image is for, can be <code>null</code>
+     * @return the cached image, or <code>null</code> if it is not cached, the process has changed
+     * or the process is not (or no longer) deployed
+     */
+    public CachedImage getImage(String processId, Process process) {
+        CachedImage image = images.get(processId);
+        if (image != null && (process == null || !image.isFor(process))) {
+            images.remove(processId);
+            return null;
+        }
+        return image;
+    }
+
+    /**
+     * Caches the image of the given process. Images of processes that are not deployed
+     * (<code>process</code> is <code>null</code>) are not cached, as there is no process
+     * definition to validate them against.
+     */
+    public CachedImage putImage(String processId, Process process, byte[] bytes) {
+        CachedImage image = new CachedImage(process, bytes);
+        if (process != null) {
+            images.put(processId, image);
+        }
+        return image;
+    }
+
+    public void invalidate(String processId) {
+        diagrams.remove(processId);
+        images.remove(processId);
+    }
+
+    public void clear() {
+        diagrams.clear();
+        images.clear();
+    }
+
+    private static boolean isSameProcess(Process process, String version, Process otherProcess) {
+        if (process != otherProcess) {
+            return false;
+        }
+        return version == null ? otherProcess == null || otherProcess.getVersion() == null
+                               : version.equals(otherProcess.getVersion());
+    }
+
+    public static class CachedDiagram {
+
+        private final Process process;
+        private final String version;
+        private final DiagramInfo diagramInfo;
+        private final Map<String, DiagramNodeInfo> nodeInfos = new HashMap<String, DiagramNodeInfo>();
+
+        private CachedDiagram(Process process) {
+            this.process = process;
+            this.version = process.getVersion();
+            DiagramInfo result = new DiagramInfo();
+            // TODO: diagram width and height?
+            result.setWidth(932);
+            result.setHeight(541);
+            List<DiagramNodeInfo> nodeList = new ArrayList<DiagramNodeInfo>();
+            if (process instanceof WorkflowProcess) {
+                addNodesInfo(nodeList, ((WorkflowProcess) process).getNodes(), "id=");
+            }
+            result.setNodeList(nodeList);
+            this.diagramInfo = result;
+            for (DiagramNodeInfo nodeInfo: nodeList) {
+                if (!nodeInfos.containsKey(nodeInfo.getName())) {
+                    nodeInfos.put(nodeInfo.getName(), nodeInfo);
+                }
+            }
+        }
+
+        private void addNodesInfo(List<DiagramNodeInfo> nodeInfos, Node[] nodes, String prefix) {
+            for (Node node: nodes) {
+                nodeInfos.add(new DiagramNodeInfo(
+                    prefix + node.getId(),
+                    (Integer) node.getMetaData().get("x"),
+                    (Integer) node.getMetaData().get("y"),
+                    (Integer) node.getMetaData().get("width"),
+                    (Integer) node.getMetaData().get("height")));
+                if (node instanceof NodeContainer) {
+                    addNodesInfo(nodeInfos, ((NodeContainer) node).getNodes(), prefix + node.getId() + ":");
+                }
+            }
+        }
+
+        private boolean isFor(Process process) {
+            return isSameProcess(this.process, version, process);
+        }
+
+        public DiagramInfo getDiagramInfo() {
+            return diagramInfo;
+        }
+
+        /**
+         * @param name the name of the node info, e.g. <code>id=3</code>
+         */
+        public DiagramNodeInfo getNodeInfo(String name) {
+            return nodeInfos.get(name);
+        }
+    }
+
+    public static class CachedImage {
+
+        private final Process process;
+        private final String version;
+        private final byte[] bytes;
+        private final String etag;
+
+        private CachedImage(Process process, byte[] bytes) {
+            this.process = process;
+            this.version = process == null ? null : process.getVersion();
+            this.bytes = bytes;
+            this.etag = createETag(bytes);
+        }
+
+        private boolean isFor(Process process) {
+            return isSameProcess(this.process, version, process);
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return an entity tag for the image, that changes when the image changes
+         */
+        public String getETag() {
+            return etag;
+        }
+
+        private static String createETag(byte[] bytes) {
+            try {
+                byte[] digest = MessageDigest.getInstance("MD5").digest(bytes);
+                StringBuilder result = new StringBuilder(digest.length * 2 + 2);
+                result.append('"');
+                for (byte b: digest) {
+                    result.append(Character.forDigit((b >> 4) & 0xF, 16));
+                    result.append(Character.forDigit(b & 0xF, 16));
+                }
+                result.append('"');
+                return result.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+}
@@ -17,8 +17,6 @@
 package org.jbpm.integration.console.graph;
 
 import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -28,34 +26,18 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.drools.KnowledgeBase;
-import org.drools.KnowledgeBaseFactory;
-import org.drools.agent.KnowledgeAgent;
-import org.drools.agent.KnowledgeAgentFactory;
-import org.drools.builder.KnowledgeBuilder;
-import org.drools.builder.KnowledgeBuilderFactory;
-import org.drools.builder.ResourceType;
-import org.drools.compiler.BPMN2ProcessFactory;
-import org.drools.compiler.ProcessBuilderFactory;
-import org.drools.definition.process.Node;
-import org.drools.definition.process.NodeContainer;
 import org.drools.definition.process.Process;
-import org.drools.definition.process.WorkflowProcess;
-import org.drools.io.ResourceFactory;
-import org.drools.marshalling.impl.ProcessMarshallerFactory;
-import org.drools.runtime.process.ProcessRuntimeFactory;
 import org.jboss.bpm.console.client.model.ActiveNodeInfo;
 import org.jboss.bpm.console.client.model.DiagramInfo;
 import org.jboss.bpm.console.client.model.DiagramNodeInfo;
 import org.jboss.bpm.console.server.plugin.GraphViewerPlugin;
-import org.jbpm.bpmn2.BPMN2ProcessProviderImpl;
+import org.jbpm.integration.console.StatefulKnowledgeSessionUtil;
+import org.jbpm.integration.console.graph.DiagramCache.CachedDiagram;
+import org.jbpm.integration.console.graph.DiagramCache.CachedImage;
 import org.jbpm.integration.console.shared.GuvnorConnectionUtils;
-import org.jbpm.marshalling.impl.ProcessMarshallerFactoryServiceImpl;
 import org.jbpm.process.audit.JPAProcessInstanceDbLog;
 import org.jbpm.process.audit.NodeInstanceLog;
 import org.jbpm.process.audit.ProcessInstanceLog;
-import org.jbpm.process.builder.ProcessBuilderFactoryServiceImpl;
-import org.jbpm.process.instance.ProcessRuntimeFactoryServiceImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,7 +46,6 @@ import org.slf4j.LoggerFactory;
  */
 public class GraphViewerPluginImpl implements GraphViewerPlugin {
 	private static final Logger logger = LoggerFactory.getLogger(GraphViewerPluginImpl.class);
-	private KnowledgeBase kbase;
 
 	public List<ActiveNodeInfo> getActiveNodeInfo(String instanceId) {
 		ProcessInstanceLog processInstance = JPAProcessInstanceDbLog.findProcessInstance(new Long(instanceId));
@@ -81,20 +62,15 @@ public class GraphViewerPluginImpl implements GraphViewerPlugin {
 		}
 		if (!nodeInstances.isEmpty()) {
 			List<ActiveNodeInfo> result = new ArrayList<ActiveNodeInfo>();
+			CachedDiagram diagram = getDiagram(processInstance.getProcessId());
 			for (NodeInstanceLog nodeInstance: nodeInstances.values()) {
-				boolean found = false;
-				DiagramInfo diagramInfo = getDiagramInfo(processInstance.getProcessId());
-				for (DiagramNodeInfo nodeInfo: diagramInfo.getNodeList()) {
-					if (nodeInfo.getName().equals("id=" + nodeInstance.getNodeId())) {
-						result.add(new ActiveNodeInfo(diagramInfo.getWidth(), diagramInfo.getHeight(), nodeInfo));
-						found = true;
-						break;
-					}
-				}
-				if (!found) {
+				DiagramNodeInfo nodeInfo = diagram == null ? null : diagram.getNodeInfo("id=" + nodeInstance.getNodeId());
+				if (nodeInfo == null) {
 					throw new IllegalArgumentException("Could not find info for node "
 						+ nodeInstance.getNodeId() + " of process " + processInstance.getProcessId());
 				}
+				DiagramInfo diagramInfo = diagram.getDiagramInfo();
+				result.add(new ActiveNodeInfo(diagramInfo.getWidth(), diagramInfo.getHeight(), nodeInfo));
 			}
 			return result;
 		}
@@ -102,80 +78,53 @@ public class GraphViewerPluginImpl implements GraphViewerPlugin {
 	}
 
 	public DiagramInfo getDiagramInfo(String processId) {
-		if (kbase == null) {
-			    GuvnorConnectionUtils guvnorUtils = new GuvnorConnectionUtils();
-			    if(guvnorUtils.guvnorExists()) {
-			    	try {
-						KnowledgeAgent kagent = KnowledgeAgentFactory.newKnowledgeAgent("Guvnor default");
-						kagent.applyChangeSet(ResourceFactory.newReaderResource(guvnorUtils.createChangeSet()));
-						kagent.monitorResourceChangeEvents(false);
-						kbase = kagent.getKnowledgeBase();
-					} catch (Throwable t) {
-						logger.error("Could not build kbase from Guvnor assets: " + t.getMessage());
-					}
-			    } else {
-			    	logger.warn("Could not connect to Guvnor.");
-			    }
-			if (kbase == null) {
-				kbase = KnowledgeBaseFactory.newKnowledgeBase();
-			}
-			String directory = System.getProperty("jbpm.console.directory");
-			if (directory == null) {
-				logger.error("jbpm.console.directory property not found");
-			} else {
-				File file = new File(directory);
-				if (!file.exists()) {
-					throw new IllegalArgumentException("Could not find " + directory);
-				}
-				if (!file.isDirectory()) {
-					throw new IllegalArgumentException(directory + " is not a directory");
-				}
-				ProcessBuilderFactory.setProcessBuilderFactoryService(new ProcessBuilderFactoryServiceImpl());
-				ProcessMarshallerFactory.setProcessMarshallerFactoryService(new ProcessMarshallerFactoryServiceImpl());
-				ProcessRuntimeFactory.setProcessRuntimeFactoryService(new ProcessRuntimeFactoryServiceImpl());
-				BPMN2ProcessFactory.setBPMN2ProcessProvider(new BPMN2ProcessProviderImpl());
-				KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
-				for (File subfile: file.listFiles(new FilenameFilter() {
-						public boolean accept(File dir, String name) {
-							return name.endsWith(".bpmn") || name.endsWith("bpmn2");
-						}})) {
-					kbuilder.add(ResourceFactory.newFileResource(subfile), ResourceType.BPMN2);
-				}
-				kbase.addKnowledgePackages(kbuilder.getKnowledgePackages());
-			}
-		}
-		Process process = kbase.getProcess(processId);
+		CachedDiagram diagram = getDiagram(processId);
+		return diagram == null ? null : diagram.getDiagramInfo();
+	}
+
+	/**
+	 * The diagram information is created from the process definitions of the knowledge base
+	 * used by the console runtime, and cached until the process definition changes.
+	 */
+	private CachedDiagram getDiagram(String processId) {
+		Process process = getProcess(processId);
 		if (process == null) {
 			return null;
 		}
+		return DiagramCache.getInstance().getDiagram(process);
+	}
 
-		DiagramInfo result = new DiagramInfo();
-		// TODO: diagram width and height?
-		result.setWidth(932);
-		result.setHeight(541);
-		List<DiagramNodeInfo> nodeList = new ArrayList<DiagramNodeInfo>();
-		if (process instanceof WorkflowProcess) {
-			addNodesInfo(nodeList, ((WorkflowProcess) process).getNodes(), "id=");
-		}
-		result.setNodeList(nodeList);
-		return result;
+	private Process getProcess(String processId) {
+		return StatefulKnowledgeSessionUtil.getStatefulKnowledgeSession().getKnowledgeBase().getProcess(processId);
 	}
-	
-	private void addNodesInfo(List<DiagramNodeInfo> nodeInfos, Node[] nodes, String prefix) {
-		for (Node node: nodes) {
-			nodeInfos.add(new DiagramNodeInfo(
-				prefix + node.getId(),
-				(Integer) node.getMetaData().get("x"),
-				(Integer) node.getMetaData().get("y"),
-				(Integer) node.getMetaData().get("width"),
-				(Integer) node.getMetaData().get("height")));
-			if (node instanceof NodeContainer) {
-				addNodesInfo(nodeInfos, ((NodeContainer) node).getNodes(), prefix + node.getId() + ":");
+
+	public byte[] getProcessImage(String processId) {
+		CachedImage image = getImage(processId);
+		return image == null ? null : image.getBytes();
+	}
+
+	/**
+	 * @return the entity tag of the image of the given process, which can be used to
+	 * check whether a client already has the latest version of the image
+	 */
+	public String getProcessImageETag(String processId) {
+		CachedImage image = getImage(processId);
+		return image == null ? null : image.getETag();
+	}
+
+	private CachedImage getImage(String processId) {
+		Process process = getProcess(processId);
+		CachedImage image = DiagramCache.getInstance().getImage(processId, process);
+		if (image == null) {
+			byte[] bytes = loadProcessImage(processId);
+			if (bytes != null) {
+				image = DiagramCache.getInstance().putImage(processId, process, bytes);
 			}
 		}
+		return image;
 	}
 
-	public byte[] getProcessImage(String processId) {
+	private byte[] loadProcessImage(String processId) {
 		InputStream is = GraphViewerPluginImpl.class.getResourceAsStream("/" + processId + ".png");
 		if (is != null) {
 			ByteArrayOutputStream os = new ByteArrayOutputStream();
@@ -17,16 +17,18 @@ package org.jbpm.integration.console.shared;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Scanner;
 import java.util.regex.Matcher;
@@ -51,11 +53,15 @@ public class GuvnorConnectionUtils {
     public static final String GUVNOR_SUBDOMAIN_KEY = "guvnor.subdomain";
     public static final String GUVNOR_CONNECTTIMEOUT_KEY = "guvnor.connect.timeout";
     public static final String GUVNOR_READTIMEOUT_KEY = "guvnor.read.timeout";
+    public static final String GUVNOR_CACHE_SIZE_KEY = "guvnor.cache.size";
+    public static final String GUVNOR_CACHE_TTL_KEY = "guvnor.cache.ttl";
+    public static final String GUVNOR_CACHE_DIR_KEY = "guvnor.cache.dir";
     public static final String EXT_BPMN = "bpmn";
     public static final String EXT_BPMN2 = "bpmn2";
     
     private static final Logger logger = LoggerFactory.getLogger(GuvnorConnectionUtils.class);
     private static Properties properties = new Properties();
+    private static GuvnorHttpCache cache;
     
     static {
     	try {
@@ -63,6 +69,22 @@ public class GuvnorConnectionUtils {
     	} catch (IOException e) {
             throw new RuntimeException("Could not load jbpm.console.properties", e);
         }
+    	String dir = getCacheProperty(GUVNOR_CACHE_DIR_KEY, "");
+    	cache = new GuvnorHttpCache(Integer.parseInt(getCacheProperty(GUVNOR_CACHE_SIZE_KEY, "256")),
+    			Long.parseLong(getCacheProperty(GUVNOR_CACHE_TTL_KEY, "5000")),
+    			dir.length() == 0 ? null : new File(dir));
+    }
+    
+    private static String getCacheProperty(String key, String defaultValue) {
+    	String value = properties.getProperty(key);
+    	return value == null || value.trim().length() == 0 ? defaultValue : value.trim();
+    }
+    
+    /**
+     * @return the cache used for all requests to Guvnor
+     */
+    public static GuvnorHttpCache getCache() {
+        return cache;
     }
     
     public String getProcessImageURLFromGuvnor(String processId) {
@@ -118,15 +140,9 @@ public class GuvnorConnectionUtils {
                 + "/assets/"
                 + URLEncoder.encode(templateName, "UTF-8");
                 
-                URL checkURL = new URL(templateURL);
-                HttpURLConnection checkConnection = (HttpURLConnection) checkURL.openConnection();
-                checkConnection.setRequestMethod("GET");
-                checkConnection.setRequestProperty("Accept", "application/atom+xml");
-                checkConnection.setConnectTimeout(Integer.parseInt(getGuvnorConnectTimeout()));
-                checkConnection.setReadTimeout(Integer.parseInt(getGuvnorReadTimeout()));
-                applyAuth(checkConnection);
-                checkConnection.connect();
-                if(checkConnection.getResponseCode() == 200) {
+                GuvnorHttpCache.Response response = getResponse(templateURL, "application/atom+xml",
+                        Integer.parseInt(getGuvnorConnectTimeout()));
+                if(response.isOk()) {
                     
                     String toReturnURL = getGuvnorProtocol()
                     + "://"
@@ -154,7 +170,7 @@ public class GuvnorConnectionUtils {
         String formTemplateURL = getFormTemplateURLFromGuvnor(templateName);
         if(formTemplateURL != null) {
             try {
-                return getInputStreamForURL(formTemplateURL, "GET");
+                return getInputStreamForURL(formTemplateURL);
             } catch (Exception e) {
                 logger.error("Exception getting input stream for form template url: " + formTemplateURL);
                 return null;
@@ -169,12 +185,7 @@ public class GuvnorConnectionUtils {
         String processImageURL = getProcessImageURLFromGuvnor(processId);
         if(processImageURL != null) {
             try {
-                InputStream is = getInputStreamForImageURL(processImageURL, "GET");
-                if (is != null) {
-                    return IOUtils.toByteArray(is);
-                } else {
-                    return null;
-                }
+                return getBytesForURL(processImageURL);
             } catch (Exception e) {
                logger.error("Exception reading process image: " + e.getMessage());
                throw new RuntimeException("Could not read process image: " + e.getMessage());
@@ -195,7 +206,7 @@ public class GuvnorConnectionUtils {
                 + "/source/";
 
         try {
-            InputStream in = getInputStreamForURL(assetSourceURL, "GET");
+            InputStream in = getInputStreamForURL(assetSourceURL);
             StringWriter writer = new StringWriter();
             IOUtils.copy(in, writer);
             return writer.toString();
@@ -218,7 +229,7 @@ public class GuvnorConnectionUtils {
         
         try {
             XMLInputFactory factory = XMLInputFactory.newInstance();
-            XMLStreamReader reader = factory.createXMLStreamReader(getInputStreamForURL(assetsURL, "GET"));
+            XMLStreamReader reader = factory.createXMLStreamReader(getInputStreamForURL(assetsURL));
 
             String format = "";
             String title = ""; 
@@ -340,7 +351,7 @@ public class GuvnorConnectionUtils {
         try {
             XMLInputFactory factory = XMLInputFactory.newInstance();
             XMLStreamReader reader = factory
-                    .createXMLStreamReader(getInputStreamForURL(packagesURL, "GET"));
+                    .createXMLStreamReader(getInputStreamForURL(packagesURL));
             while (reader.hasNext()) {
                 if (reader.next() == XMLStreamReader.START_ELEMENT) {
                     if ("title".equals(reader.getLocalName())) {
@@ -372,15 +383,9 @@ public class GuvnorConnectionUtils {
                 + "/assets/"
                 + URLEncoder.encode(templateName, "UTF-8");
                 
-                URL checkURL = new URL(templateURL);
-                HttpURLConnection checkConnection = (HttpURLConnection) checkURL.openConnection();
-                checkConnection.setRequestMethod("GET");
-                checkConnection.setRequestProperty("Accept", "application/atom+xml");
-                checkConnection.setConnectTimeout(Integer.parseInt(getGuvnorConnectTimeout()));
-                checkConnection.setReadTimeout(Integer.parseInt(getGuvnorReadTimeout()));
-                applyAuth(checkConnection);
-                checkConnection.connect();
-                if(checkConnection.getResponseCode() == 200) {
+                GuvnorHttpCache.Response response = getResponse(templateURL, "application/atom+xml",
+                        Integer.parseInt(getGuvnorConnectTimeout()));
+                if(response.isOk()) {
                     return true;
                 }
             }
@@ -398,44 +403,30 @@ public class GuvnorConnectionUtils {
                 + Base64.encodeBase64String(auth.getBytes()));
     }
 
-    private InputStream getInputStreamForImageURL(String urlLocation, String requestMethod) throws Exception {
-        URL url = new URL(urlLocation);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-
-        connection.setRequestMethod(requestMethod);
-        connection
-        .setRequestProperty(
-                "User-Agent",
+    private GuvnorHttpCache.Response getResponse(String urlLocation, String accept, int connectTimeout) throws IOException {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("User-Agent",
                 "Mozilla/5.0 (Macintosh; U; Intel Mac OS X 10.6; en-US; rv:1.9.2.16) Gecko/20110319 Firefox/3.6.16");
-        connection.setRequestProperty("Accept", "text/plain,text/html,application/xhtml+xml,application/xml");
-        connection.setRequestProperty("charset", "UTF-8");
-        connection.setConnectTimeout(Integer.parseInt(getGuvnorConnectTimeout()));
-        connection.setReadTimeout(Integer.parseInt(getGuvnorReadTimeout()));
-        applyAuth(connection);
-
-        connection.connect();
-        return connection.getInputStream();
+        headers.put("Accept", accept);
+        headers.put("charset", "UTF-8");
+        String auth = getGuvnorUsr() + ":" + getGuvnorPwd();
+        headers.put("Authorization", "Basic " + Base64.encodeBase64String(auth.getBytes()));
+        return cache.get(urlLocation, headers, connectTimeout, Integer.parseInt(getGuvnorReadTimeout()));
     }
     
-    private InputStream getInputStreamForURL(String urlLocation,
-            String requestMethod) throws Exception {
-        URL url = new URL(urlLocation);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-
-        connection.setRequestMethod(requestMethod);
-        connection
-        .setRequestProperty(
-                "User-Agent",
-                "Mozilla/5.0 (Macintosh; U; Intel Mac OS X 10.6; en-US; rv:1.9.2.16) Gecko/20110319 Firefox/3.6.16");
-        connection.setRequestProperty("Accept", "text/plain,text/html,application/xhtml+xml,application/xml");
-        connection.setRequestProperty("charset", "UTF-8");
-        connection.setConnectTimeout(Integer.parseInt(getGuvnorConnectTimeout()));
-        connection.setReadTimeout(Integer.parseInt(getGuvnorReadTimeout()));
-        applyAuth(connection);
-        connection.connect();
-
+    private byte[] getBytesForURL(String urlLocation) throws IOException {
+        GuvnorHttpCache.Response response = getResponse(urlLocation,
+                "text/plain,text/html,application/xhtml+xml,application/xml",
+                Integer.parseInt(getGuvnorConnectTimeout()));
+        if (!response.isOk()) {
+            throw new IOException("Server returned HTTP response code: " + response.getStatus() + " for URL: " + urlLocation);
+        }
+        return response.getBody();
+    }
+    
+    InputStream getInputStreamForURL(String urlLocation) throws IOException {
         BufferedReader sreader = new BufferedReader(new InputStreamReader(
-                connection.getInputStream(), "UTF-8"));
+                new ByteArrayInputStream(getBytesForURL(urlLocation)), "UTF-8"));
         StringBuilder stringBuilder = new StringBuilder();
 
         String line = null;
@@ -482,14 +473,7 @@ public class GuvnorConnectionUtils {
                 + "/rest/packages/";
     	
     	try {
-			URL checkURL = new URL(checkURLStr);
-			HttpURLConnection checkConnection = (HttpURLConnection) checkURL.openConnection();
-			checkConnection.setRequestMethod("GET");
-			checkConnection.setRequestProperty("Accept", "application/atom+xml");
-			checkConnection.setConnectTimeout(4000);
-			applyAuth(checkConnection);
-			checkConnection.connect();
-			return (checkConnection.getResponseCode() == 200);
+			return getResponse(checkURLStr, "application/atom+xml", 4000).isOk();
 		} catch (Exception e) {
 			logger.error("Error checking guvnor existence: " + e.getMessage());
 			return false;
@@ -1,11 +1,8 @@
 package org.jbpm.integration.console.shared;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.Properties;
 
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,7 +51,7 @@ public class GuvnorFormUtils {
 				String formTemplateURL = getFormDefinitionURLFromGuvnor(templateName);
 				if (formTemplateURL != null) {
 					try {
-						return getStringForURL(formTemplateURL, "GET");
+						return getStringForURL(formTemplateURL);
 					} catch (Exception e) {
 						logger.error("Exception getting input stream for form template url: " + formTemplateURL);
 						return null;
@@ -74,31 +71,8 @@ public class GuvnorFormUtils {
 		return null;
 	}
 	
-    private String getStringForURL(String urlLocation, String requestMethod) throws Exception {
-        URL url = new URL(urlLocation);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-
-        connection.setRequestMethod(requestMethod);
-        connection
-        .setRequestProperty(
-                "User-Agent",
-                "Mozilla/5.0 (Macintosh; U; Intel Mac OS X 10.6; en-US; rv:1.9.2.16) Gecko/20110319 Firefox/3.6.16");
-        connection.setRequestProperty("Accept", "text/plain,text/html,application/xhtml+xml,application/xml");
-        connection.setRequestProperty("charset", "UTF-8");
-        connection.setConnectTimeout(Integer.parseInt(utils.getGuvnorConnectTimeout()));
-        connection.setReadTimeout(Integer.parseInt(utils.getGuvnorReadTimeout()));
-        utils.applyAuth(connection);
-        connection.connect();
-
-        BufferedReader sreader = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"));
-        StringBuilder stringBuilder = new StringBuilder();
-
-        String line = null;
-        while ((line = sreader.readLine()) != null) {
-            stringBuilder.append(line + "\n");
-        }
-        
-        return stringBuilder.toString();
+    private String getStringForURL(String urlLocation) throws Exception {
+        return IOUtils.toString(utils.getInputStreamForURL(urlLocation), "UTF-8");
     }
 
 	
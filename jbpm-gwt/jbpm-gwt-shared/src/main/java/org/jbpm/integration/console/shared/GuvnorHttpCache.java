@@ -0,0 +1,374 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.integration.console.shared;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caching HTTP client used by the {@link GuvnorConnectionUtils} to access Guvnor.
+ * </p>
+ * Responses are kept in an in-memory LRU cache and, if a directory is configured, on disk.
+ * A cached response is used as is while it is younger than the time to live, after that it is
+ * revalidated using the <code>ETag</code> and <code>Last-Modified</code> headers returned by Guvnor.
+ * Missing resources (<code>404</code>) are cached as well, so checking for a template that does
+ * not exist does not cost a round trip for every form that is rendered.
+ * </p>
+ * Concurrent requests for the same resource are coalesced into a single request, and response
+ * bodies are always read completely so the underlying connections can be reused (keep-alive).
+ */
+public class GuvnorHttpCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(GuvnorHttpCache.class);
+
+    private static final String CACHE_FILE_EXTENSION = ".guvnor";
+
+    private final int maxEntries;
+    private final long timeToLive;
+    private final File directory;
+
+    private final Map<String, Response> entries;
+    private final ConcurrentMap<String, FutureTask<Response>> pending = new ConcurrentHashMap<String, FutureTask<Response>>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxEntries the maximum number of responses kept in memory
+     * @param timeToLive the time (in milliseconds) a response is used without revalidating it
+     * @param directory the directory the responses are stored in, or <code>null</code> to only cache in memory
+     */
+    public GuvnorHttpCache(final int maxEntries, long timeToLive, File directory) {
+        if (directory != null && !directory.exists() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Could not create cache directory " + directory);
+        }
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive;
+        this.directory = directory;
+        this.entries = new LinkedHashMap<String, Response>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            protected boolean removeEldestEntry(Map.Entry<String, Response> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the response for the given URL, from the cache if possible.
+     *
+     * @param url the URL to get
+     * @param headers the request headers, the cache key is based on the URL and the <code>Accept</code> header
+     * @param connectTimeout the connect timeout in milliseconds
+     * @param readTimeout the read timeout in milliseconds
+     * @throws IOException if Guvnor could not be reached
+     */
+    public Response get(final String url, final Map<String, String> headers,
+            final int connectTimeout, final int readTimeout) throws IOException {
+        final String key = headers.get("Accept") + " " + url;
+        Response cached = getCached(key);
+        if (cached != null && cached.isFresh(timeToLive)) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        final Response stale = cached;
+        FutureTask<Response> task = new FutureTask<Response>(new Callable<Response>() {
+            public Response call() throws Exception {
+                return fetch(key, url, headers, connectTimeout, readTimeout, stale);
+            }
+        });
+        FutureTask<Response> existing = pending.putIfAbsent(key, task);
+        if (existing == null) {
+            try {
+                task.run();
+            } finally {
+                pending.remove(key, task);
+            }
+        } else {
+            // another thread is already requesting the same resource
+            hits.incrementAndGet();
+            task = existing;
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + url);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException("Could not get " + url, e.getCause());
+        }
+    }
+
+    private Response fetch(String key, String url, Map<String, String> headers,
+            int connectTimeout, int readTimeout, Response stale) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("GET");
+        for (Map.Entry<String, String> header: headers.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        if (stale != null) {
+            if (stale.getETag() != null) {
+                connection.setRequestProperty("If-None-Match", stale.getETag());
+            }
+            if (stale.getLastModified() != 0) {
+                connection.setIfModifiedSince(stale.getLastModified());
+            }
+        }
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.connect();
+
+        int status = connection.getResponseCode();
+        byte[] body = readBody(connection, status);
+        Response response;
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED && stale != null) {
+            revalidations.incrementAndGet();
+            response = new Response(stale.getStatus(), stale.getBody(), stale.getETag(),
+                stale.getLastModified(), System.currentTimeMillis());
+        } else {
+            misses.incrementAndGet();
+            response = new Response(status, body, connection.getHeaderField("ETag"),
+                connection.getLastModified(), System.currentTimeMillis());
+        }
+        if (response.isCacheable()) {
+            synchronized (entries) {
+                entries.put(key, response);
+            }
+            store(key, response);
+        }
+        return response;
+    }
+
+    private byte[] readBody(HttpURLConnection connection, int status) throws IOException {
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (in == null) {
+            return new byte[0];
+        }
+        try {
+            return IOUtils.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private Response getCached(String key) {
+        Response response;
+        synchronized (entries) {
+            response = entries.get(key);
+        }
+        if (response == null && directory != null) {
+            response = load(key);
+            if (response != null) {
+                synchronized (entries) {
+                    entries.put(key, response);
+                }
+            }
+        }
+        return response;
+    }
+
+    private Response load(String key) {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                int status = in.readInt();
+                String etag = in.readBoolean() ? in.readUTF() : null;
+                long lastModified = in.readLong();
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                // always revalidate a response that was stored by a previous run
+                return new Response(status, body, etag, lastModified, 0);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            file.delete();
+            return null;
+        }
+    }
+
+    private void store(String key, Response response) {
+        if (directory == null || (response.getETag() == null && response.getLastModified() == 0)) {
+            return;
+        }
+        File file = getFile(key);
+        File tempFile = new File(directory, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(tempFile));
+            try {
+                out.writeInt(response.getStatus());
+                out.writeBoolean(response.getETag() != null);
+                if (response.getETag() != null) {
+                    out.writeUTF(response.getETag());
+                }
+                out.writeLong(response.getLastModified());
+                out.writeInt(response.getBody().length);
+                out.write(response.getBody());
+            } finally {
+                out.close();
+            }
+            file.delete();
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            logger.warn("Could not store Guvnor response in " + file + ": " + e.getMessage());
+        }
+    }
+
+    private File getFile(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b: digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16));
+                name.append(Character.forDigit(b & 0xF, 16));
+            }
+            return new File(directory, name.append(CACHE_FILE_EXTENSION).toString());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        if (directory != null) {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file: files) {
+                    if (file.getName().endsWith(CACHE_FILE_EXTENSION)) {
+                        file.delete();
+                    }
+                }
+            }
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return the number of requests that were answered from the cache without contacting Guvnor
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of requests for which Guvnor confirmed the cached response is still valid
+     */
+    public long getRevalidationCount() {
+        return revalidations.get();
+    }
+
+    /**
+     * @return the number of requests for which the response had to be downloaded from Guvnor
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the fraction of the requests for which no response had to be downloaded
+     */
+    public double getHitRate() {
+        long hits = getHitCount() + getRevalidationCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public static class Response {
+
+        private final int status;
+        private final byte[] body;
+        private final String etag;
+        private final long lastModified;
+        private final long fetched;
+
+        Response(int status, byte[] body, String etag, long lastModified, long fetched) {
+            this.status = status;
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.fetched = fetched;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public boolean isOk() {
+            return status == HttpURLConnection.HTTP_OK;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(body);
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        boolean isCacheable() {
+            return status == HttpURLConnection.HTTP_OK || status == HttpURLConnection.HTTP_NOT_FOUND;
+        }
+
+        boolean isFresh(long timeToLive) {
+            return System.currentTimeMillis() - fetched < timeToLive;
+        }
+    }
+
+}
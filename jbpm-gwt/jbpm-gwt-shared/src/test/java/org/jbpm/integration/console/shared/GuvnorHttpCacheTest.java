@@ -0,0 +1,174 @@
+package org.jbpm.integration.console.shared;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class GuvnorHttpCacheTest {
+
+    private HttpServer server;
+    private String baseURL;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile String content = "template";
+    private volatile long delay;
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                if (delay > 0) {
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+                if (exchange.getRequestURI().getPath().startsWith("/missing")) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    String etag = "\"" + content.hashCode() + "\"";
+                    exchange.getResponseHeaders().set("ETag", etag);
+                    if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                        exchange.sendResponseHeaders(304, -1);
+                    } else {
+                        byte[] body = content.getBytes("UTF-8");
+                        exchange.sendResponseHeaders(200, body.length);
+                        OutputStream out = exchange.getResponseBody();
+                        out.write(body);
+                        out.close();
+                    }
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        baseURL = "http://localhost:" + server.getAddress().getPort();
+        directory = File.createTempFile("guvnor-cache", "");
+        directory.delete();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        new GuvnorHttpCache(1, 0, directory).clear();
+        directory.delete();
+    }
+
+    private GuvnorHttpCache.Response get(GuvnorHttpCache cache, String path) throws IOException {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Accept", "text/plain");
+        return cache.get(baseURL + path, headers, 1000, 1000);
+    }
+
+    @Test
+    public void testFreshResponseIsCached() throws Exception {
+        GuvnorHttpCache cache = new GuvnorHttpCache(10, 60000, null);
+        assertEquals("template", new String(get(cache, "/template").getBody(), "UTF-8"));
+        assertEquals("template", new String(get(cache, "/template").getBody(), "UTF-8"));
+        assertEquals(1, requests.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate(), 0.001);
+    }
+
+    @Test
+    public void testRevalidation() throws Exception {
+        GuvnorHttpCache cache = new GuvnorHttpCache(10, 0, null);
+        get(cache, "/template");
+        GuvnorHttpCache.Response response = get(cache, "/template");
+        assertTrue(response.isOk());
+        assertEquals("template", new String(response.getBody(), "UTF-8"));
+        assertEquals(2, requests.get());
+        assertEquals(1, cache.getRevalidationCount());
+
+        content = "changed";
+        assertEquals("changed", new String(get(cache, "/template").getBody(), "UTF-8"));
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testMissingResourceIsCached() throws Exception {
+        GuvnorHttpCache cache = new GuvnorHttpCache(10, 60000, null);
+        assertEquals(404, get(cache, "/missing").getStatus());
+        assertFalse(get(cache, "/missing").isOk());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+        GuvnorHttpCache cache = new GuvnorHttpCache(2, 60000, null);
+        get(cache, "/a");
+        get(cache, "/b");
+        get(cache, "/a");
+        get(cache, "/c");
+        assertEquals(3, requests.get());
+        get(cache, "/a");
+        assertEquals(3, requests.get());
+        get(cache, "/b");
+        assertEquals(4, requests.get());
+    }
+
+    @Test
+    public void testResponsesAreStoredOnDisk() throws Exception {
+        get(new GuvnorHttpCache(10, 60000, directory), "/template");
+        assertEquals(1, directory.listFiles().length);
+
+        GuvnorHttpCache cache = new GuvnorHttpCache(10, 60000, directory);
+        assertEquals("template", new String(get(cache, "/template").getBody(), "UTF-8"));
+        assertEquals(2, requests.get());
+        assertEquals(1, cache.getRevalidationCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void testConcurrentRequestsAreCoalesced() throws Exception {
+        final GuvnorHttpCache cache = new GuvnorHttpCache(10, 60000, null);
+        delay = 500;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 5; i++) {
+            Thread thread = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        assertTrue(get(cache, "/template").isOk());
+                    } catch (Throwable t) {
+                        synchronized (errors) {
+                            errors.add(t);
+                        }
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(1, requests.get());
+    }
+
+}
@@ -28,7 +28,7 @@ public class EventKeys {
         keys = new HashMap<EventKey, List<EventTriggerTransport>>();
     }
     
-    public void register(EventKey key, EventTriggerTransport target) {
+    public synchronized void register(EventKey key, EventTriggerTransport target) {
         List<EventTriggerTransport> list = keys.get( key);
         if ( list == null ) {
             list = new ArrayList<EventTriggerTransport>();
@@ -37,18 +37,18 @@ public class EventKeys {
         list.add( target );
     }
     
-    public void unregister(EventKey key, EventTriggerTransport target) {
+    public synchronized void unregister(EventKey key, EventTriggerTransport target) {
         List<EventTriggerTransport> list = keys.get( key);
         if ( list != null ) {
             list.remove( target );
         }
     }
     
-    public List<EventTriggerTransport> getTargets(EventKey key) {
+    public synchronized List<EventTriggerTransport> getTargets(EventKey key) {
         return keys.get(  key  );
     }
     
-    public List<EventTriggerTransport> removeKey(EventKey key) {
+    public synchronized List<EventTriggerTransport> removeKey(EventKey key) {
         return keys.remove( key );
     }    
     
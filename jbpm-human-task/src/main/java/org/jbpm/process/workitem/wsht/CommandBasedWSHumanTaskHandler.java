@@ -65,11 +65,31 @@ public class CommandBasedWSHumanTaskHandler implements WorkItemHandler {
 	private int port = 9123;
 	private TaskClient client;
 	private KnowledgeRuntime session;
+	private boolean listenForTaskEvents = true;
 	
 	public CommandBasedWSHumanTaskHandler(KnowledgeRuntime session) {
 		this.session = session;
 	}
 
+	/**
+	 * Sets whether this handler completes (or aborts) the work items of tasks that are completed,
+	 * failed or skipped. When several handlers share one task server (one per session of a pool),
+	 * only one of them should listen, otherwise every task is completed once per handler.
+	 * Must be called before {@link #connect()}.
+	 */
+	public void setListenForTaskEvents(boolean listenForTaskEvents) {
+		this.listenForTaskEvents = listenForTaskEvents;
+	}
+
+	/**
+	 * Returns the session in which the work item of the given task is completed or aborted.
+	 * This is the session of this handler, subclasses can override this to route the work items
+	 * to the session that owns the process instance of the task.
+	 */
+	protected KnowledgeRuntime getSession(Task task) {
+		return session;
+	}
+
 	public void setConnection(String ipAddress, int port) {
 		this.ipAddress = ipAddress;
 		this.port = port;
@@ -83,6 +103,9 @@ public class CommandBasedWSHumanTaskHandler implements WorkItemHandler {
 			if (!connected) {
 				throw new IllegalArgumentException("Could not connect task client");
 			}
+			if (!listenForTaskEvents) {
+				return;
+			}
 			TaskEventKey key = new TaskEventKey(TaskCompletedEvent.class, -1);           
 			TaskCompletedHandler eventResponseHandler = new TaskCompletedHandler();
 			client.registerForEvent(key, false, eventResponseHandler);
@@ -257,10 +280,10 @@ public class CommandBasedWSHumanTaskHandler implements WorkItemHandler {
 						new GetResultContentResponseHandler(task, results);
 					client.getContent(contentId, getContentResponseHandler);
 				} else {
-					session.getWorkItemManager().completeWorkItem(workItemId, results);
+					getSession(task).getWorkItemManager().completeWorkItem(workItemId, results);
 				}
 			} else {
-				session.getWorkItemManager().abortWorkItem(workItemId);
+				getSession(task).getWorkItemManager().abortWorkItem(workItemId);
 			}
 		}
     }
@@ -291,7 +314,7 @@ public class CommandBasedWSHumanTaskHandler implements WorkItemHandler {
 						}
 					}
 				}
-				session.getWorkItemManager().completeWorkItem(task.getTaskData().getWorkItemId(), results);
+				getSession(task).getWorkItemManager().completeWorkItem(task.getTaskData().getWorkItemId(), results);
 			} catch (IOException e) {
 				e.printStackTrace();
 			} catch (ClassNotFoundException e) {
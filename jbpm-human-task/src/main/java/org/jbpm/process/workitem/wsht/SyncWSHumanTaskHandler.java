@@ -45,13 +45,16 @@ import org.jbpm.task.Task;
 import org.jbpm.task.TaskData;
 import org.jbpm.task.TaskService;
 import org.jbpm.task.User;
+import org.jbpm.task.event.DefaultTaskEventListener;
 import org.jbpm.task.event.TaskCompletedEvent;
 import org.jbpm.task.event.TaskEvent;
 import org.jbpm.task.event.TaskEventKey;
+import org.jbpm.task.event.TaskEventListener;
 import org.jbpm.task.event.TaskFailedEvent;
 import org.jbpm.task.event.TaskSkippedEvent;
 import org.jbpm.task.service.ContentData;
 import org.jbpm.task.service.PermissionDeniedException;
+import org.jbpm.task.service.local.LocalTaskService;
 import org.jbpm.task.service.responsehandlers.AbstractBaseResponseHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,6 +67,8 @@ public class SyncWSHumanTaskHandler implements WorkItemHandler {
     private WorkItemManager manager = null;
     private KnowledgeRuntime session;
     private boolean local = false;
+    private boolean listenForTaskEvents = true;
+    private TaskEventListener taskEventListener;
     
     private static final Logger logger = LoggerFactory.getLogger(SyncWSHumanTaskHandler.class);
 	private boolean initialized = false;
@@ -109,8 +114,41 @@ public class SyncWSHumanTaskHandler implements WorkItemHandler {
     	this.local = local;
     }
 
+    /**
+     * Sets whether this handler completes (or aborts) the work items of tasks that are completed,
+     * failed or skipped. When several handlers share one task service (one per session of a pool),
+     * only one of them should listen, otherwise every task is completed once per handler.
+     * Must be called before {@link #connect()}.
+     */
+    public void setListenForTaskEvents(boolean listenForTaskEvents) {
+    	this.listenForTaskEvents = listenForTaskEvents;
+    }
+
+    /**
+     * Returns the session in which the work item of the given task is completed or aborted.
+     * This is the session of this handler, subclasses can override this to route the work items
+     * to the session that owns the process instance of the task.
+     */
+    protected KnowledgeRuntime getSession(Task task) {
+    	return session;
+    }
+
+    private WorkItemManager getWorkItemManager(Task task) {
+    	KnowledgeRuntime session = getSession(task);
+    	return session != null ? session.getWorkItemManager() : manager;
+    }
+
     private void registerTaskEvents() {
+		if (!listenForTaskEvents) {
+			return;
+		}
 		TaskCompletedHandler eventResponseHandler = new TaskCompletedHandler();
+		if (local && client instanceof LocalTaskService) {
+			// notified directly by the task service, without going through the event keys
+			taskEventListener = new LocalTaskEventListener(eventResponseHandler);
+			((LocalTaskService) client).addEventListener(taskEventListener);
+			return;
+		}
         TaskEventKey key = new TaskEventKey(TaskCompletedEvent.class, -1);
         client.registerForEvent(key, false, eventResponseHandler);
         key = new TaskEventKey(TaskFailedEvent.class, -1);
@@ -244,6 +282,10 @@ public class SyncWSHumanTaskHandler implements WorkItemHandler {
     }
 
     public void dispose() throws Exception {
+        if (taskEventListener != null) {
+            ((LocalTaskService) client).removeEventListener(taskEventListener);
+            taskEventListener = null;
+        }
         if (client != null) {
             client.disconnect();
         }
@@ -289,7 +331,12 @@ public class SyncWSHumanTaskHandler implements WorkItemHandler {
 				Map<String, Object> results = new HashMap<String, Object>();
 				results.put("ActorId", userId);
 				long contentId = task.getTaskData().getOutputContentId();
-				if (contentId != -1) {
+				Object resultByReference = client instanceof LocalTaskService ?
+					((LocalTaskService) client).getResults(taskId) : null;
+				if (resultByReference != null) {
+					addResult(results, resultByReference);
+					getWorkItemManager(task).completeWorkItem(workItemId, results);
+				} else if (contentId != -1) {
 					Content content = client.getContent(contentId);
 					ByteArrayInputStream bis = new ByteArrayInputStream(content.getContent());
 					ObjectInputStream in;
@@ -297,40 +344,53 @@ public class SyncWSHumanTaskHandler implements WorkItemHandler {
 						in = new ObjectInputStream(bis);
 						Object result = in.readObject();
 						in.close();
-						results.put("Result", result);
-						if (result instanceof Map) {
-							Map<?, ?> map = (Map) result;
-							for (Map.Entry<?, ?> entry: map.entrySet()) {
-								if (entry.getKey() instanceof String) {
-									results.put((String) entry.getKey(), entry.getValue());
-								}
-							}
-						}
-						if (session != null) {
-							session.getWorkItemManager().completeWorkItem(task.getTaskData().getWorkItemId(), results);
-						} else {
-							manager.completeWorkItem(task.getTaskData().getWorkItemId(), results);
-						}
+						addResult(results, result);
+						getWorkItemManager(task).completeWorkItem(task.getTaskData().getWorkItemId(), results);
 					} catch (IOException e) {
 						e.printStackTrace();
 					} catch (ClassNotFoundException e) {
 						e.printStackTrace();
 					}
 				} else {
-					if (session != null) {
-						session.getWorkItemManager().completeWorkItem(workItemId, results);
-					} else {
-						manager.completeWorkItem(workItemId, results);
-					}
+					getWorkItemManager(task).completeWorkItem(workItemId, results);
 				}
 			} else {
-				if (session != null) {
-					session.getWorkItemManager().abortWorkItem(workItemId);
-				} else {
-					manager.abortWorkItem(workItemId);
-				}
+				getWorkItemManager(task).abortWorkItem(workItemId);
 			}
 
         }
     }
+
+    private static void addResult(Map<String, Object> results, Object result) {
+        results.put("Result", result);
+        if (result instanceof Map) {
+            Map<?, ?> map = (Map) result;
+            for (Map.Entry<?, ?> entry: map.entrySet()) {
+                if (entry.getKey() instanceof String) {
+                    results.put((String) entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    private class LocalTaskEventListener extends DefaultTaskEventListener {
+
+        private final TaskCompletedHandler handler;
+
+        LocalTaskEventListener(TaskCompletedHandler handler) {
+            this.handler = handler;
+        }
+
+        public void taskCompleted(TaskCompletedEvent event) {
+            handler.handleCompletedTask(event.getTaskId());
+        }
+
+        public void taskFailed(TaskFailedEvent event) {
+            handler.handleCompletedTask(event.getTaskId());
+        }
+
+        public void taskSkipped(TaskSkippedEvent event) {
+            handler.handleCompletedTask(event.getTaskId());
+        }
+    }
 }
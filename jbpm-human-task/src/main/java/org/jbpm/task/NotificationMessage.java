@@ -0,0 +1,203 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task;
+
+import java.util.Date;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+
+/**
+ * Email notification waiting to be delivered by the
+ * {@link org.jbpm.task.service.NotificationDispatcher}. It is written in the same transaction as
+ * the task operation that caused it, so it is only delivered if that operation is committed.
+ */
+@Entity
+@Table(name = "task_notification_message")
+public class NotificationMessage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private long id;
+
+    private String recipient;
+
+    private String sender;
+
+    private String replyTo;
+
+    private String subject;
+
+    @Lob
+    private String body;
+
+    private String contentType;
+
+    private String attachmentName;
+
+    @Lob
+    private String attachment;
+
+    private String attachmentType;
+
+    private Date createdOn;
+
+    private Date nextAttempt;
+
+    private int attempts;
+
+    private boolean failed;
+
+    @Lob
+    private String lastError;
+
+    public NotificationMessage() {
+    }
+
+    public NotificationMessage(String recipient, String sender, String replyTo, String subject,
+                               String body, String contentType) {
+        this.recipient = recipient;
+        this.sender = sender;
+        this.replyTo = replyTo;
+        this.subject = subject;
+        this.body = body;
+        this.contentType = contentType;
+        this.createdOn = new Date();
+        this.nextAttempt = createdOn;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public void setRecipient(String recipient) {
+        this.recipient = recipient;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public void setSender(String sender) {
+        this.sender = sender;
+    }
+
+    public String getReplyTo() {
+        return replyTo;
+    }
+
+    public void setReplyTo(String replyTo) {
+        this.replyTo = replyTo;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getAttachmentName() {
+        return attachmentName;
+    }
+
+    public String getAttachment() {
+        return attachment;
+    }
+
+    public String getAttachmentType() {
+        return attachmentType;
+    }
+
+    public void setAttachment(String attachmentName, String attachment, String attachmentType) {
+        this.attachmentName = attachmentName;
+        this.attachment = attachment;
+        this.attachmentType = attachmentType;
+    }
+
+    public Date getCreatedOn() {
+        return createdOn;
+    }
+
+    public void setCreatedOn(Date createdOn) {
+        this.createdOn = createdOn;
+    }
+
+    public Date getNextAttempt() {
+        return nextAttempt;
+    }
+
+    public void setNextAttempt(Date nextAttempt) {
+        this.nextAttempt = nextAttempt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    /**
+     * @return whether delivery has been given up, after the maximum number of attempts
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    public void setFailed(boolean failed) {
+        this.failed = failed;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+}
@@ -27,8 +27,8 @@ import javax.persistence.EntityManagerFactory;
 import org.drools.runtime.process.WorkItem;
 import org.drools.runtime.process.WorkItemHandler;
 import org.drools.runtime.process.WorkItemManager;
+import org.jbpm.task.service.MVELExpressionCache;
 import org.mvel2.MVEL;
-import org.mvel2.compiler.ExpressionCompiler;
 
 //TODO: DELETE ME -- this class doesn't seem to be used
 
@@ -55,8 +55,7 @@ public class WorkItemNotification {
             content = em.find( Content.class,
                                taskData.getDocumentContentId() );
         }
-        ExpressionCompiler compiler = new ExpressionCompiler( new String( content.getContent() ) );
-        Serializable expr = compiler.compile();
+        Serializable expr = MVELExpressionCache.getInstance().compile( new String( content.getContent() ) );
         Object object = MVEL.executeExpression( expr );
         
         Map<String, Object> vars = new HashMap<String, Object>();
@@ -16,6 +16,7 @@
 
 package org.jbpm.task.event;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -33,109 +34,52 @@ public class MessagingTaskEventListener implements TaskEventListener {
     }
     
     public void taskClaimed(TaskClaimedEvent event) {        
-        EventKey key = new TaskEventKey(TaskClaimedEvent.class, event.getTaskId() );
-        List<EventTriggerTransport> targets = keys.getTargets( key );
-        if ( targets == null ){
-            return;
-        }
-        Payload payload = new EventPayload( event );
-        for ( Iterator<EventTriggerTransport> it = targets.iterator(); it.hasNext(); ) {
-            EventTriggerTransport target = it.next();
-            target.trigger( payload );
-            if ( target.isRemove() ) {
-                it.remove();
-            }
-        }
-        if ( targets.isEmpty() ) {
-            keys.removeKey( key );
-        }
+        trigger( event, new TaskEventKey(TaskClaimedEvent.class, event.getTaskId() ) );
     }
 
     public void taskCompleted(TaskCompletedEvent event) {
-        EventKey key = new TaskEventKey(TaskCompletedEvent.class, event.getTaskId() );
-        List<EventTriggerTransport> targets = keys.getTargets( key );
-        if ( targets == null ){
-        	key = new TaskEventKey(TaskCompletedEvent.class, -1);
-        	targets = keys.getTargets( key );
-        	if (targets == null) {
-        		return;
-        	}
-        } else {
-        	key = new TaskEventKey(TaskCompletedEvent.class, -1);
-        	List<EventTriggerTransport> additionalTargets = keys.getTargets( key );
-        	if (additionalTargets != null) {
-        		targets.addAll(additionalTargets);
-        	}
-        }
-        Payload payload = new EventPayload( event );
-        for ( Iterator<EventTriggerTransport> it = targets.iterator(); it.hasNext(); ) {
-            EventTriggerTransport target = it.next();
-            target.trigger( payload );
-            if ( target.isRemove() ) {
-                it.remove();
-            }
-        }
-        if ( targets.isEmpty() ) {
-            keys.removeKey( key );
-        }   
+        trigger( event, new TaskEventKey(TaskCompletedEvent.class, event.getTaskId() ),
+                 new TaskEventKey(TaskCompletedEvent.class, -1) );
     }
 
-	public void taskFailed(TaskFailedEvent event) {
-        EventKey key = new TaskEventKey(TaskFailedEvent.class, event.getTaskId() );
-        List<EventTriggerTransport> targets = keys.getTargets( key );
-        if ( targets == null ){
-        	key = new TaskEventKey(TaskFailedEvent.class, -1);
-        	targets = keys.getTargets( key );
-        	if (targets == null) {
-        		return;
-        	}
-        } else {
-        	key = new TaskEventKey(TaskFailedEvent.class, -1);
-        	List<EventTriggerTransport> additionalTargets = keys.getTargets( key );
-        	if (additionalTargets != null) {
-        		targets.addAll(additionalTargets);
-        	}
-        }
-        Payload payload = new EventPayload( event );
-        for ( Iterator<EventTriggerTransport> it = targets.iterator(); it.hasNext(); ) {
-            EventTriggerTransport target = it.next();
-            target.trigger( payload );
-            if ( target.isRemove() ) {
-                it.remove();
+    public void taskFailed(TaskFailedEvent event) {
+        trigger( event, new TaskEventKey(TaskFailedEvent.class, event.getTaskId() ),
+                 new TaskEventKey(TaskFailedEvent.class, -1) );
+    }
+
+    public void taskSkipped(TaskSkippedEvent event) {
+        trigger( event, new TaskEventKey(TaskSkippedEvent.class, event.getTaskId() ),
+                 new TaskEventKey(TaskSkippedEvent.class, -1) );
+    }
+
+    private void trigger(TaskEvent event, EventKey... eventKeys) {
+        List<EventTriggerTransport> targets = new ArrayList<EventTriggerTransport>();
+        // the targets are collected and the one-shot ones unregistered under the lock,
+        // but they are triggered after releasing it, as triggering sends to the clients
+        synchronized ( keys ) {
+            for ( EventKey key : eventKeys ) {
+                List<EventTriggerTransport> registered = keys.getTargets( key );
+                if ( registered == null ) {
+                    continue;
+                }
+                targets.addAll( registered );
+                for ( Iterator<EventTriggerTransport> it = registered.iterator(); it.hasNext(); ) {
+                    if ( it.next().isRemove() ) {
+                        it.remove();
+                    }
+                }
+                if ( registered.isEmpty() ) {
+                    keys.removeKey( key );
+                }
             }
         }
         if ( targets.isEmpty() ) {
-            keys.removeKey( key );
-        }
-	}
-
-	public void taskSkipped(TaskSkippedEvent event) {
-        EventKey key = new TaskEventKey(TaskSkippedEvent.class, event.getTaskId() );
-        List<EventTriggerTransport> targets = keys.getTargets( key );
-        if ( targets == null ){
-        	key = new TaskEventKey(TaskSkippedEvent.class, -1);
-        	targets = keys.getTargets( key );
-        	if (targets == null) {
-        		return;
-        	}
-        } else {
-        	key = new TaskEventKey(TaskSkippedEvent.class, -1);
-        	List<EventTriggerTransport> additionalTargets = keys.getTargets( key );
-        	if (additionalTargets != null) {
-        		targets.addAll(additionalTargets);
-        	}
+            return;
         }
         Payload payload = new EventPayload( event );
-        for ( Iterator<EventTriggerTransport> it = targets.iterator(); it.hasNext(); ) {
-            EventTriggerTransport target = it.next();
+        for ( EventTriggerTransport target : targets ) {
             target.trigger( payload );
-            if ( target.isRemove() ) {
-                it.remove();
-            }
         }
-        if ( targets.isEmpty() ) {
-            keys.removeKey( key );
-        }
-	}
+    }
 
 }
@@ -39,6 +39,7 @@ import org.jbpm.task.EmailNotificationHeader;
 import org.jbpm.task.Escalation;
 import org.jbpm.task.Group;
 import org.jbpm.task.Notification;
+import org.jbpm.task.NotificationMessage;
 import org.jbpm.task.NotificationType;
 import org.jbpm.task.OrganizationalEntity;
 import org.jbpm.task.Reassignment;
@@ -134,7 +135,7 @@ public class DefaultEscalatedDeadlineHandler
             
             for ( Notification notification : escalation.getNotifications() ) {
                 if ( notification.getNotificationType() == NotificationType.Email) {
-                    executeEmailNotification( (EmailNotification) notification, task, content );
+                    executeEmailNotification( (EmailNotification) notification, task, content, service.getNotificationDispatcher() );
                 }        
             }
 
@@ -154,6 +155,20 @@ public class DefaultEscalatedDeadlineHandler
     public void executeEmailNotification(EmailNotification notification,
                                          Task task,
                                          Content content) {
+        executeEmailNotification( notification,
+                                  task,
+                                  content,
+                                  null );
+    }
+
+    /**
+     * @param dispatcher the dispatcher to queue the emails to, one per recipient, or null to
+     *        send them immediately
+     */
+    public void executeEmailNotification(EmailNotification notification,
+                                         Task task,
+                                         Content content,
+                                         NotificationDispatcher dispatcher) {
         Map<String, EmailNotificationHeader> headers = notification.getEmailHeaders();
 
         // group users into languages
@@ -232,6 +247,18 @@ public class DefaultEscalatedDeadlineHandler
             email.put( "Body",
                        body );
 
+            if ( dispatcher != null ) {
+                for ( User user : entry.getValue() ) {
+                    dispatcher.enqueue( new NotificationMessage( userInfo.getEmailForEntity( user ),
+                                                                 (String) email.get( "From" ),
+                                                                 (String) email.get( "Reply-To" ),
+                                                                 subject,
+                                                                 body,
+                                                                 "text/html" ) );
+                }
+                continue;
+            }
+
             WorkItemImpl workItem = new WorkItemImpl();
             workItem.setParameters( email );
 
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.service;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mvel2.MVEL;
+import org.mvel2.ParserConfiguration;
+import org.mvel2.ParserContext;
+
+/**
+ * Cache of the MVEL expressions compiled for the task service DSL (see {@link TaskService#eval(String, Map)}).
+ * </p>
+ * All expressions are compiled against one shared parser configuration containing the imports of the
+ * task model. Compiled expressions are kept in an LRU cache, of which the size can be configured using
+ * the <code>jbpm.task.mvel.cache.size</code> system property (default 1000, 0 disables caching).
+ * </p>
+ * MVEL updates the parser configuration while compiling (when resolving package imports), so compilation
+ * itself is serialized. Executing compiled expressions is done concurrently.
+ */
+public class MVELExpressionCache {
+
+    public static final String CACHE_SIZE_PROPERTY = "jbpm.task.mvel.cache.size";
+
+    private static final MVELExpressionCache INSTANCE = new MVELExpressionCache(
+        Integer.getInteger(CACHE_SIZE_PROPERTY, 1000));
+
+    private final ParserConfiguration configuration;
+    private final Map<String, Serializable> expressions;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public MVELExpressionCache(final int maxSize) {
+        configuration = new ParserConfiguration();
+        configuration.addPackageImport("org.jbpm.task");
+        configuration.addPackageImport("org.jbpm.task.service");
+        configuration.addPackageImport("org.jbpm.task.query");
+        configuration.addPackageImport("java.util");
+        for (Map.Entry<String, Class> entry: TaskService.getInputs().entrySet()) {
+            configuration.addImport(entry.getKey(), entry.getValue());
+        }
+        expressions = new LinkedHashMap<String, Serializable>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            protected boolean removeEldestEntry(Map.Entry<String, Serializable> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public static MVELExpressionCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the compiled expression, from the cache if it has been compiled before
+     */
+    public Serializable compile(String expression) {
+        String key = expression.trim();
+        Serializable compiled;
+        synchronized (expressions) {
+            compiled = expressions.get(key);
+        }
+        if (compiled != null) {
+            hits.incrementAndGet();
+            return compiled;
+        }
+        misses.incrementAndGet();
+        synchronized (configuration) {
+            compiled = MVEL.compileExpression(key, new ParserContext(configuration));
+        }
+        synchronized (expressions) {
+            expressions.put(key, compiled);
+        }
+        return compiled;
+    }
+
+    public Object eval(String expression, Map vars) {
+        Serializable compiled = compile(expression);
+        if (vars != null) {
+            return MVEL.executeExpression(compiled, vars);
+        } else {
+            return MVEL.executeExpression(compiled);
+        }
+    }
+
+    public void clear() {
+        synchronized (expressions) {
+            expressions.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+}
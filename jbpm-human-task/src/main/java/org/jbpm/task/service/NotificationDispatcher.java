@@ -0,0 +1,378 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.activation.DataHandler;
+import javax.mail.BodyPart;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+import javax.mail.util.ByteArrayDataSource;
+import javax.persistence.EntityManagerFactory;
+
+import org.jbpm.task.NotificationMessage;
+import org.jbpm.task.service.persistence.TaskPersistenceManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers the email notifications of the task service (icals sent when a task is claimed, and
+ * escalation emails) in the background, instead of in the task operation that causes them.
+ * </p>
+ * Notifications are {@link #enqueue(NotificationMessage) queued} by the thread executing the task
+ * operation, and written to the outbox ({@link NotificationMessage}s) in the transaction of that
+ * operation by the {@link org.jbpm.task.service.persistence.TaskServiceSession}. The dispatcher
+ * periodically reads the outbox and sends the messages over a single SMTP connection, which is kept
+ * open between runs. Messages for the same recipient are sent together; when a recipient is refused,
+ * its remaining messages are retried in a later run. A message that cannot be delivered is retried
+ * with an exponential backoff, until the maximum number of attempts has been reached.
+ * </p>
+ * A dispatcher is used by setting it on the task service
+ * (see {@link TaskService#setNotificationDispatcher(NotificationDispatcher)}) and starting it.
+ */
+public class NotificationDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    private final EntityManagerFactory emf;
+    private final Session session;
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+
+    private int batchSize = 100;
+    private int maxAttempts = 5;
+    private long retryDelay = 60 * 1000;
+
+    private final ThreadLocal<List<NotificationMessage>> pending = new ThreadLocal<List<NotificationMessage>>();
+
+    private Transport transport;
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong deliveryDelay = new AtomicLong();
+
+    /**
+     * @param connection the SMTP connection properties: "mail.smtp.host", "mail.smtp.port" and
+     *        optionally "mail.smtp.user" and "mail.smtp.password"
+     */
+    public NotificationDispatcher(EntityManagerFactory emf, Properties connection) {
+        this.emf = emf;
+        this.host = connection.getProperty("mail.smtp.host", "localhost");
+        this.port = Integer.parseInt(connection.getProperty("mail.smtp.port", "25"));
+        this.username = connection.getProperty("mail.smtp.user");
+        this.password = connection.getProperty("mail.smtp.password");
+        Properties properties = new Properties();
+        properties.putAll(connection);
+        properties.setProperty("mail.transport.protocol", "smtp");
+        if (username != null) {
+            properties.setProperty("mail.smtp.auth", "true");
+        }
+        this.session = Session.getInstance(properties, null);
+    }
+
+    /**
+     * @param batchSize the maximum number of messages sent in a single run
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param maxAttempts the number of attempts after which delivery of a message is given up
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @param retryDelay the delay before the first retry of a message, in milliseconds, which is
+     *        doubled for every following retry
+     */
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * Queues a message, to be written to the outbox in the current task operation.
+     */
+    public void enqueue(NotificationMessage message) {
+        List<NotificationMessage> messages = pending.get();
+        if (messages == null) {
+            messages = new ArrayList<NotificationMessage>();
+            pending.set(messages);
+        }
+        messages.add(message);
+    }
+
+    /**
+     * Removes the messages queued by the current thread.
+     *
+     * @return the messages queued since the last call
+     */
+    public List<NotificationMessage> drainPending() {
+        List<NotificationMessage> messages = pending.get();
+        if (messages == null) {
+            return Collections.emptyList();
+        }
+        pending.remove();
+        return messages;
+    }
+
+    /**
+     * Starts delivering the messages in the outbox periodically.
+     *
+     * @param interval the delivery interval, in milliseconds
+     */
+    public synchronized void start(long interval) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Dispatcher already started");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "NotificationDispatcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    dispatch();
+                } catch (Throwable t) {
+                    logger.error("Could not deliver notifications: " + t.getMessage(), t);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops delivering messages, and closes the SMTP connection.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdown();
+                scheduler = null;
+            }
+        }
+        closeTransport();
+    }
+
+    /**
+     * Delivers the messages in the outbox that are due.
+     *
+     * @return the number of messages delivered
+     */
+    public int dispatch() {
+        Date now = new Date();
+        TaskPersistenceManager tpm = new TaskPersistenceManager(emf);
+        List<NotificationMessage> messages;
+        try {
+            messages = tpm.getPendingNotificationMessages(now, batchSize);
+        } finally {
+            tpm.endPersistenceContext();
+        }
+        if (messages.isEmpty()) {
+            return 0;
+        }
+
+        // the messages are ordered by recipient
+        Map<String, List<NotificationMessage>> recipients = new LinkedHashMap<String, List<NotificationMessage>>();
+        for (NotificationMessage message : messages) {
+            List<NotificationMessage> list = recipients.get(message.getRecipient());
+            if (list == null) {
+                list = new ArrayList<NotificationMessage>();
+                recipients.put(message.getRecipient(), list);
+            }
+            list.add(message);
+        }
+
+        List<NotificationMessage> sent = new ArrayList<NotificationMessage>();
+        List<NotificationMessage> unsent = new ArrayList<NotificationMessage>();
+        synchronized (this) {
+            for (List<NotificationMessage> list : recipients.values()) {
+                send(list, sent, unsent);
+            }
+        }
+
+        tpm = new TaskPersistenceManager(emf);
+        try {
+            tpm.updateNotificationMessages(sent, unsent);
+        } finally {
+            tpm.endPersistenceContext();
+        }
+        return sent.size();
+    }
+
+    private void send(List<NotificationMessage> messages, List<NotificationMessage> sent,
+                      List<NotificationMessage> unsent) {
+        for (int i = 0; i < messages.size(); i++) {
+            NotificationMessage message = messages.get(i);
+            try {
+                MimeMessage mimeMessage = createMimeMessage(message);
+                getTransport().sendMessage(mimeMessage, mimeMessage.getAllRecipients());
+                sent.add(message);
+                delivered.incrementAndGet();
+                deliveryDelay.addAndGet(System.currentTimeMillis() - message.getCreatedOn().getTime());
+            } catch (MessagingException e) {
+                if (!(e instanceof SendFailedException)) {
+                    // the connection may be broken, so do not reuse it
+                    closeTransport();
+                }
+                logger.warn("Could not deliver notification to " + message.getRecipient() + ": " + e.getMessage());
+                // retry the remaining messages for this recipient in a later run
+                for (int j = i; j < messages.size(); j++) {
+                    unsent.add(retry(messages.get(j), e));
+                }
+                return;
+            }
+        }
+    }
+
+    private NotificationMessage retry(NotificationMessage message, Exception error) {
+        int attempts = message.getAttempts() + 1;
+        message.setAttempts(attempts);
+        message.setLastError(error.getMessage());
+        if (attempts >= maxAttempts) {
+            message.setFailed(true);
+            failed.incrementAndGet();
+            logger.error("Giving up delivery of notification " + message.getId() + " to "
+                + message.getRecipient() + " after " + attempts + " attempts");
+        } else {
+            message.setNextAttempt(new Date(System.currentTimeMillis() + (retryDelay << (attempts - 1))));
+            retried.incrementAndGet();
+        }
+        return message;
+    }
+
+    private Transport getTransport() throws MessagingException {
+        if (transport == null || !transport.isConnected()) {
+            closeTransport();
+            transport = session.getTransport("smtp");
+            transport.connect(host, port, username, password);
+        }
+        return transport;
+    }
+
+    private synchronized void closeTransport() {
+        if (transport != null) {
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                // ignore, the connection is not used anymore
+            }
+            transport = null;
+        }
+    }
+
+    private MimeMessage createMimeMessage(NotificationMessage message) throws MessagingException {
+        MimeMessage mimeMessage = new MimeMessage(session);
+        if (message.getSender() != null) {
+            mimeMessage.setFrom(new InternetAddress(message.getSender()));
+        } else {
+            mimeMessage.setFrom();
+        }
+        if (message.getReplyTo() != null) {
+            mimeMessage.setReplyTo(new InternetAddress[] { new InternetAddress(message.getReplyTo()) });
+        }
+        mimeMessage.addRecipient(Message.RecipientType.TO, new InternetAddress(message.getRecipient()));
+        mimeMessage.setSubject(message.getSubject());
+        mimeMessage.setSentDate(new Date());
+        if (message.getAttachment() == null) {
+            mimeMessage.setDataHandler(new DataHandler(createDataSource(message.getBody(), message.getContentType())));
+        } else {
+            // an ical, see SendIcal
+            mimeMessage.setHeader("Content-Class", "urn:content-classes:calendarmessage");
+            mimeMessage.setHeader("Content-ID", "calendar_message");
+            Multipart multipart = new MimeMultipart("alternative");
+            BodyPart bodyPart = new MimeBodyPart();
+            bodyPart.setDataHandler(new DataHandler(createDataSource(message.getBody(), message.getContentType())));
+            multipart.addBodyPart(bodyPart);
+            bodyPart = new MimeBodyPart();
+            bodyPart.setFileName(message.getAttachmentName());
+            bodyPart.setHeader("Content-Class", "urn:content-classes:calendarmessage");
+            bodyPart.setHeader("Content-ID", "calendar_message");
+            bodyPart.setDataHandler(new DataHandler(createDataSource(message.getAttachment(), message.getAttachmentType())));
+            multipart.addBodyPart(bodyPart);
+            mimeMessage.setContent(multipart);
+        }
+        mimeMessage.saveChanges();
+        return mimeMessage;
+    }
+
+    private static ByteArrayDataSource createDataSource(String data, String type) throws MessagingException {
+        try {
+            return new ByteArrayDataSource(data == null ? "" : data, type);
+        } catch (IOException e) {
+            throw new MessagingException("Could not create message content", e);
+        }
+    }
+
+    /**
+     * @return the number of messages that have been delivered
+     */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /**
+     * @return the number of failed delivery attempts that will be retried
+     */
+    public long getRetriedCount() {
+        return retried.get();
+    }
+
+    /**
+     * @return the number of messages whose delivery has been given up
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * @return the average time between queuing and delivering a message, in milliseconds
+     */
+    public double getAverageDeliveryDelay() {
+        long count = delivered.get();
+        return count == 0 ? 0 : (double) deliveryDelay.get() / count;
+    }
+
+}
@@ -41,6 +41,7 @@ import org.drools.util.ChainedProperties;
 import org.drools.util.ClassLoaderUtil;
 import org.jbpm.task.Deadline;
 import org.jbpm.task.I18NText;
+import org.jbpm.task.NotificationMessage;
 import org.jbpm.task.Task;
 import org.jbpm.task.TaskData;
 import org.jbpm.task.User;
@@ -135,6 +136,17 @@ public class SendIcal {
 
     public void sendIcalForTask(Task task,
                                 UserInfo userInfo) {
+        sendIcalForTask( task,
+                         userInfo,
+                         null );
+    }
+
+    /**
+     * @param dispatcher the dispatcher to queue the icals to, or null to send them immediately
+     */
+    public void sendIcalForTask(Task task,
+                                UserInfo userInfo,
+                                NotificationDispatcher dispatcher) {
     	if (userInfo == null) {
     		return;
     	}
@@ -177,7 +189,18 @@ public class SendIcal {
                                                     language,
                                                     defaultLanguage );
         // send ical for start
-        if ( start != null ) {
+        if ( start != null && dispatcher != null ) {
+            dispatcher.enqueue( createIcalMessage( task.getId(),
+                                                   name,
+                                                   summary,
+                                                   description,
+                                                   task.getPriority(),
+                                                   start.getDate(),
+                                                   owner,
+                                                   creator,
+                                                   userInfo,
+                                                   "Start" ) );
+        } else if ( start != null ) {
             try {
                 sendIcal( task.getId(),
                           name,
@@ -196,7 +219,18 @@ public class SendIcal {
         }
 
         // send ical for end
-        if ( end != null ) {
+        if ( end != null && dispatcher != null ) {
+            dispatcher.enqueue( createIcalMessage( task.getId(),
+                                                   name,
+                                                   summary,
+                                                   description,
+                                                   task.getPriority(),
+                                                   end.getDate(),
+                                                   owner,
+                                                   creator,
+                                                   userInfo,
+                                                   "End" ) );
+        } else if ( end != null ) {
             try {
                 sendIcal( task.getId(),
                           name,
@@ -288,6 +322,41 @@ public class SendIcal {
         Transport.send( message );
     }
 
+    /**
+     * Creates the same ical as {@link #sendIcal}, as a message to be delivered by the
+     * {@link NotificationDispatcher}.
+     */
+    public NotificationMessage createIcalMessage(long taskId,
+                                                 String name,
+                                                 String summary,
+                                                 String description,
+                                                 int priority,
+                                                 Date startDate,
+                                                 User owner,
+                                                 User creator,
+                                                 UserInfo userInfo,
+                                                 String type) {
+        String creatorEmail = userInfo.getEmailForEntity( creator );
+        String text = "Summary\n-------\n\n" + summary + "\n\nDescription\n-----------\n\n" + description;
+        NotificationMessage message = new NotificationMessage( userInfo.getEmailForEntity( owner ),
+                                                               creatorEmail,
+                                                               creatorEmail,
+                                                               "Task Assignment " + type + " Event: " + name,
+                                                               text,
+                                                               "text/plain; charset=UTF8;" );
+        String icalStr = getIcal( summary,
+                                  description,
+                                  startDate,
+                                  priority,
+                                  userInfo.getDisplayName( creator ),
+                                  creatorEmail,
+                                  type );
+        message.setAttachment( "ical-" + type + "-" + taskId + ".ics",
+                               icalStr,
+                               "text/calendar; charset=UTF8; " );
+        return message;
+    }
+
     private String getIcal(String summary,
                            String description,
                            Date date,
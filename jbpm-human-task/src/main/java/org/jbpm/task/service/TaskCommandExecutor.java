@@ -0,0 +1,249 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.task.service;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jbpm.task.event.TaskEventKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes the commands received by a task server on a fixed number of worker threads.
+ * </p>
+ * Every command has an ordering key (see {@link #getOrderingKey(Object, String)}), and all commands
+ * with the same key are executed by the same worker, in the order they were submitted. Commands on
+ * the same task are therefore never executed concurrently, while commands on different tasks are.
+ * </p>
+ * Every worker has a bounded queue: when it is full, {@link #execute(Object, Runnable)} blocks,
+ * so a server that receives more commands than it can handle stops reading new ones, while
+ * {@link #tryExecute(Object, Runnable)} rejects the command.
+ */
+public class TaskCommandExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskCommandExecutor.class);
+
+    private static final Runnable STOP = new Runnable() {
+        public void run() {
+        }
+    };
+
+    private final Worker[] workers;
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong serviceTime = new AtomicLong();
+    private final AtomicLong maxServiceTime = new AtomicLong();
+
+    /**
+     * @param name the name of the worker threads
+     * @param concurrency the number of worker threads
+     * @param queueCapacity the maximum number of commands waiting for every worker
+     */
+    public TaskCommandExecutor(String name, int concurrency, int queueCapacity) {
+        if (concurrency < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Concurrency and queue capacity must be positive");
+        }
+        workers = new Worker[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            workers[i] = new Worker(name + "-" + i, queueCapacity);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Queues the command for execution, waiting if the queue of its worker is full.
+     *
+     * @param key the ordering key of the command
+     */
+    public void execute(Object key, Runnable command) throws InterruptedException {
+        getWorker(key).queue.put(command);
+    }
+
+    /**
+     * Queues the command for execution, unless the queue of its worker is full.
+     *
+     * @param key the ordering key of the command
+     * @return whether the command has been queued
+     */
+    public boolean tryExecute(Object key, Runnable command) {
+        if (getWorker(key).queue.offer(command)) {
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    private Worker getWorker(Object key) {
+        int hash = key == null ? 0 : key.hashCode();
+        // spread the hash, so sequential task ids are distributed evenly
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return workers[(hash & 0x7fffffff) % workers.length];
+    }
+
+    /**
+     * Returns the key that determines the order in which the given message is executed: the id
+     * of the task for commands on a single task (including registrations for the events of a task),
+     * the id of the client for all other commands.
+     */
+    public static Object getOrderingKey(Object message, String clientId) {
+        if (message instanceof Command) {
+            Command command = (Command) message;
+            List<?> arguments = command.getArguments();
+            switch (command.getName()) {
+                case OperationRequest:
+                    return arguments.get(1);
+                case GetTaskRequest:
+                case AddCommentRequest:
+                case DeleteCommentRequest:
+                case AddAttachmentRequest:
+                case DeleteAttachmentRequest:
+                case SetDocumentContentRequest:
+                case NominateTaskRequest:
+                case SetOutputRequest:
+                case DeleteOutputRequest:
+                case SetFaultRequest:
+                case DeleteFaultRequest:
+                case SetPriorityRequest:
+                    return arguments.get(0);
+                case RegisterForEventRequest:
+                    // registrations must not be overtaken by the commands that trigger the event
+                    if (arguments.get(0) instanceof TaskEventKey) {
+                        long taskId = ((TaskEventKey) arguments.get(0)).getTaskId();
+                        if (taskId >= 0) {
+                            return taskId;
+                        }
+                    }
+                    break;
+                default:
+                    // fall through
+            }
+        }
+        return clientId;
+    }
+
+    /**
+     * @return the number of commands waiting to be executed
+     */
+    public int getQueuedCount() {
+        int result = 0;
+        for (Worker worker: workers) {
+            result += worker.queue.size();
+        }
+        return result;
+    }
+
+    /**
+     * @return the largest number of commands waiting for a single worker
+     */
+    public int getMaxQueuedCount() {
+        int result = 0;
+        for (Worker worker: workers) {
+            result = Math.max(result, worker.queue.size());
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of commands that have been executed
+     */
+    public long getExecutedCount() {
+        return executed.get();
+    }
+
+    /**
+     * @return the number of commands that have been rejected because the queue of their worker was full
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return the average time spent executing a command, in milliseconds
+     */
+    public double getAverageServiceTime() {
+        long count = executed.get();
+        return count == 0 ? 0 : serviceTime.get() / 1000000.0 / count;
+    }
+
+    /**
+     * @return the longest time spent executing a command, in milliseconds
+     */
+    public double getMaxServiceTime() {
+        return maxServiceTime.get() / 1000000.0;
+    }
+
+    /**
+     * Stops the workers after the commands that have already been queued have been executed.
+     *
+     * @param timeout the maximum time to wait for the workers to stop, in milliseconds
+     */
+    public void shutdown(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        for (Worker worker: workers) {
+            if (!worker.queue.offer(STOP, Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                worker.interrupt();
+            }
+        }
+        for (Worker worker: workers) {
+            worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            if (worker.isAlive()) {
+                worker.interrupt();
+            }
+        }
+    }
+
+    private class Worker extends Thread {
+
+        private final BlockingQueue<Runnable> queue;
+
+        Worker(String name, int queueCapacity) {
+            super(name);
+            setDaemon(true);
+            queue = new ArrayBlockingQueue<Runnable>(queueCapacity);
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    Runnable command = queue.take();
+                    if (command == STOP) {
+                        return;
+                    }
+                    long start = System.nanoTime();
+                    try {
+                        command.run();
+                    } catch (Throwable t) {
+                        logger.error("Error executing task command: " + t.getMessage(), t);
+                    }
+                    long time = System.nanoTime() - start;
+                    serviceTime.addAndGet(time);
+                    for (long max = maxServiceTime.get(); time > max && !maxServiceTime.compareAndSet(max, time); ) {
+                        max = maxServiceTime.get();
+                    }
+                    executed.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                logger.debug(getName() + " interrupted");
+            }
+        }
+    }
+
+}
@@ -19,9 +19,9 @@ package org.jbpm.task.service;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.drools.SystemEventListener;
 import org.jbpm.eventmessaging.EventKey;
@@ -45,7 +45,7 @@ public class TaskServerHandler {
 
     public TaskServerHandler(TaskService service, SystemEventListener systemEventListener) {
         this.service = service;
-        this.clients = new HashMap<String, SessionWriter>();
+        this.clients = new ConcurrentHashMap<String, SessionWriter>();
         this.systemEventListener = systemEventListener;
     }
 
@@ -53,6 +53,46 @@ public class TaskServerHandler {
         systemEventListener.exception("Uncaught exception on Server", cause);
     }
 
+    /**
+     * Answers the given message with an error, without executing it.
+     */
+    public void reject(SessionWriter session, Object message, RuntimeException error) throws Exception {
+        Command cmd = (Command) message;
+        systemEventListener.debug("Message rejected on server : " + cmd.getName());
+        List<Object> list = new ArrayList<Object>(1);
+        list.add(error);
+        session.write(new Command(cmd.getId(), getResponseName(cmd.getName()), list));
+    }
+
+    private static CommandName getResponseName(CommandName request) {
+        switch (request) {
+            case GetTaskRequest: return CommandName.GetTaskResponse;
+            case AddTaskRequest: return CommandName.AddTaskResponse;
+            case AddCommentRequest: return CommandName.AddCommentResponse;
+            case DeleteCommentRequest: return CommandName.DeleteCommentResponse;
+            case AddAttachmentRequest: return CommandName.AddAttachmentResponse;
+            case DeleteAttachmentRequest: return CommandName.DeleteAttachmentResponse;
+            case SetDocumentContentRequest: return CommandName.SetDocumentContentResponse;
+            case GetContentRequest: return CommandName.GetContentResponse;
+            case QueryTaskByWorkItemId: return CommandName.QueryTaskByWorkItemIdResponse;
+            case QueryTasksOwned:
+            case QueryTasksAssignedAsBusinessAdministrator:
+            case QueryTasksAssignedAsPotentialOwner:
+            case QueryTasksAssignedAsPotentialOwnerWithGroup:
+            case QueryTasksAssignedAsPotentialOwnerByGroup:
+            case QuerySubTasksAssignedAsPotentialOwner:
+            case QueryGetSubTasksByParentTaskId:
+            case QueryTasksAssignedAsTaskInitiator:
+            case QueryTasksAssignedAsExcludedOwner:
+            case QueryTasksAssignedAsRecipient:
+            case QueryTasksAssignedAsTaskStakeholder: return CommandName.QueryTaskSummaryResponse;
+            case RegisterForEventRequest: return CommandName.EventTriggerResponse;
+            case RegisterClient: return CommandName.RegisterClient;
+            case QueryGenericRequest: return CommandName.QueryGenericResponse;
+            default: return CommandName.OperationResponse;
+        }
+    }
+
     public void messageReceived(SessionWriter session, Object message) throws Exception {
         Command cmd = (Command) message;
         TaskServiceSession taskSession = service.createSession();
@@ -20,7 +20,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -40,9 +39,6 @@ import org.jbpm.task.query.DeadlineSummary;
 import org.jbpm.task.query.TaskSummary;
 import org.jbpm.task.service.persistence.TaskPersistenceManager;
 import org.jbpm.task.service.persistence.TaskServiceSession;
-import org.mvel2.MVEL;
-import org.mvel2.ParserConfiguration;
-import org.mvel2.ParserContext;
 
 public class TaskService {
 
@@ -54,6 +50,8 @@ public class TaskService {
 
     private UserInfo userInfo;
 
+    private NotificationDispatcher notificationDispatcher;
+
     private TaskEventSupport eventSupport;
     private EventKeys eventKeys;
 
@@ -161,6 +159,18 @@ public class TaskService {
         this.userInfo = userInfo;
     }
 
+    public NotificationDispatcher getNotificationDispatcher() {
+        return notificationDispatcher;
+    }
+
+    /**
+     * Sets the dispatcher used to deliver email notifications in the background. When it is not
+     * set, notifications are sent by the task operation that causes them.
+     */
+    public void setNotificationDispatcher(NotificationDispatcher notificationDispatcher) {
+        this.notificationDispatcher = notificationDispatcher;
+    }
+
     public void setEscalatedDeadlineHandler(EscalatedDeadlineHandler escalatedDeadlineHandler) {
         this.escalatedDeadlineHandler = escalatedDeadlineHandler;
     }
@@ -250,23 +260,7 @@ public class TaskService {
     }
     
     public static Object eval(String str, Map vars) {
-    	ParserConfiguration pconf = new ParserConfiguration();
-    	pconf.addPackageImport("org.jbpm.task");
-    	pconf.addPackageImport("org.jbpm.task.service");
-    	pconf.addPackageImport("org.jbpm.task.query");
-    	pconf.addPackageImport("java.util");
-    	for(String entry : getInputs().keySet()){
-    		pconf.addImport(entry, getInputs().get(entry));
-        }
-    	ParserContext context = new ParserContext(pconf);
-        Serializable s = MVEL.compileExpression(str.trim(), context);
-
-        if( vars != null ) { 
-        return MVEL.executeExpression(s, vars);
-    }
-        else { 
-            return MVEL.executeExpression(s);
-        }
+        return MVELExpressionCache.getInstance().eval(str, vars);
     }
 
     public static class ScheduledTaskDeadline
@@ -21,7 +21,9 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.TransportConfiguration;
@@ -38,6 +40,7 @@ import org.hornetq.core.remoting.impl.netty.NettyConnectorFactory;
 import org.hornetq.core.remoting.impl.netty.TransportConstants;
 import org.hornetq.core.server.HornetQServer;
 import org.hornetq.core.server.HornetQServers;
+import org.jbpm.task.service.TaskCommandExecutor;
 import org.jbpm.task.service.TaskServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,9 +61,17 @@ public abstract class BaseHornetQTaskServer extends TaskServer {
 	volatile boolean  embeddedServerRunning;
 	private boolean running;
 
+	private ClientSessionFactory factory;
 	private ClientSession session;
 	private ClientConsumer consumer;
 
+	private int concurrency = 1;
+	private int queueCapacity = 100;
+	private int ackBatchSize = 64 * 1024;
+	private TaskCommandExecutor executor;
+	private final ThreadLocal<ClientSession> workerSession = new ThreadLocal<ClientSession>();
+	private final List<ClientSession> workerSessions = new CopyOnWriteArrayList<ClientSession>();
+
 	public BaseHornetQTaskServer(HornetQTaskServerHandler handler, int port, boolean standalone) {
 		this.handler = handler;
 		this.port = port;
@@ -74,15 +85,52 @@ public abstract class BaseHornetQTaskServer extends TaskServer {
 		this.standalone = standalone;
 	}
 
+	/**
+	 * Sets the number of threads that execute commands. By default (1), all commands are executed
+	 * by the thread that receives them. With more threads, commands are executed concurrently, except
+	 * commands on the same task (see {@link TaskCommandExecutor}). Must be set before the server is started.
+	 */
+	public void setConcurrency(int concurrency) {
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Sets the number of commands that can wait for every worker thread, before the server stops
+	 * receiving messages.
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Sets the number of bytes of messages that are acknowledged at once when using worker threads.
+	 */
+	public void setAckBatchSize(int ackBatchSize) {
+		this.ackBatchSize = ackBatchSize;
+	}
+
 	public void run() {
 		try {
 			start();
 			while (running) {
 				ClientMessage clientMessage = consumer.receive();
 				if (clientMessage!=null) {
-					Object object = readMessage(clientMessage);
-					String clientId = clientMessage.getStringProperty("producerId");
-					handler.messageReceived(session, object, clientId);
+					final Object object = readMessage(clientMessage);
+					final String clientId = clientMessage.getStringProperty("producerId");
+					if (executor == null) {
+						handler.messageReceived(session, object, clientId);
+					} else {
+						executor.execute(TaskCommandExecutor.getOrderingKey(object, clientId), new Runnable() {
+							public void run() {
+								try {
+									handler.messageReceived(getWorkerSession(), object, clientId);
+								} catch (Exception e) {
+									throw new RuntimeException("Error handling message from " + clientId, e);
+								}
+							}
+						});
+						clientMessage.acknowledge();
+					}
 				}
 			}
 		}
@@ -96,11 +144,28 @@ public abstract class BaseHornetQTaskServer extends TaskServer {
  				break;
 			}
 		}
+		catch (InterruptedException e) {
+			logger.info("Interrupted while waiting for a worker thread");
+		}
 		catch (Exception e) {
 			throw new RuntimeException("Server Exception with class " + getClass() + " using port " + port, e);
 		}
 	}
 
+	/**
+	 * Responses are written using a session for every worker thread, as sessions are not thread safe.
+	 */
+	private ClientSession getWorkerSession() throws HornetQException {
+		ClientSession result = workerSession.get();
+		if (result == null) {
+			result = factory.createSession();
+			result.start();
+			workerSessions.add(result);
+			workerSession.set(result);
+		}
+		return result;
+	}
+
 	private Object readMessage(ClientMessage msgReceived) throws IOException {
 		int bodySize = msgReceived.getBodySize();
 		byte[] message = new byte[bodySize];
@@ -143,8 +208,14 @@ public abstract class BaseHornetQTaskServer extends TaskServer {
 
 		TransportConfiguration transportConfiguration = new TransportConfiguration(NettyConnectorFactory.class.getCanonicalName(), connectionParams);
 		serverLocator = HornetQClient.createServerLocatorWithoutHA(transportConfiguration);
-		ClientSessionFactory factory = serverLocator.createSessionFactory(transportConfiguration);
-		session = factory.createSession();
+		factory = serverLocator.createSessionFactory(transportConfiguration);
+		if (concurrency > 1) {
+			// messages are acknowledged once they are queued for a worker, in batches
+			session = factory.createSession(true, true, ackBatchSize);
+			executor = new TaskCommandExecutor("HornetQTaskServer", concurrency, queueCapacity);
+		} else {
+			session = factory.createSession();
+		}
 		try {
 			session.createQueue(SERVER_TASK_COMMANDS_QUEUE, SERVER_TASK_COMMANDS_QUEUE, true);
 		}
@@ -164,6 +235,16 @@ public abstract class BaseHornetQTaskServer extends TaskServer {
 			running = false;
 			closeAll();
 		}
+		if (executor != null) {
+			executor.shutdown(10000);
+			executor = null;
+			for (ClientSession clientSession: workerSessions) {
+				if (!clientSession.isClosed()) {
+					clientSession.close();
+				}
+			}
+			workerSessions.clear();
+		}
 		if (embeddedServerRunning) {
 			embeddedServerRunning = false;
 			closeAll();
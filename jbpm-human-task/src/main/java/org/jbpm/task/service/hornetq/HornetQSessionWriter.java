@@ -42,9 +42,12 @@ public class HornetQSessionWriter implements SessionWriter {
 		try {
 			oout = new ObjectOutputStream(baos);
 			oout.writeObject(message);
-			ClientMessage clientMessage = session.createMessage(true);
-			clientMessage.getBodyBuffer().writeBytes(baos.toByteArray());
-			producer.send(clientMessage);
+			// sessions are not thread safe, and events can be written from any thread
+			synchronized (session) {
+				ClientMessage clientMessage = session.createMessage(true);
+				clientMessage.getBodyBuffer().writeBytes(baos.toByteArray());
+				producer.send(clientMessage);
+			}
 		} catch (IOException e) {
 			throw new IOException("Error creating message");
 		} catch (HornetQException e) {
@@ -28,18 +28,27 @@ import org.jbpm.task.service.TaskService;
 public class HornetQTaskServerHandler {
 	
 	private TaskServerHandler handler;
-	private Map<String, ClientProducer> producers;
+	private Map<ClientSession, Map<String, ClientProducer>> producers;
 	
     public HornetQTaskServerHandler(TaskService service, SystemEventListener systemEventListener) {
         this.handler = new TaskServerHandler(service, systemEventListener);
-        this.producers = new HashMap<String, ClientProducer>();
+        this.producers = new HashMap<ClientSession, Map<String, ClientProducer>>();
     }
 
     public void messageReceived(ClientSession session, Object message, String destination) throws Exception {
-    	ClientProducer producer = producers.get(destination);
-    	if (producer==null) {
-    		producer = session.createProducer(destination);
-    		producers.put(destination, producer);
+    	ClientProducer producer;
+    	// producers belong to a session, the server may use a session for every worker thread
+    	synchronized (producers) {
+    		Map<String, ClientProducer> sessionProducers = producers.get(session);
+    		if (sessionProducers==null) {
+    			sessionProducers = new HashMap<String, ClientProducer>();
+    			producers.put(session, sessionProducers);
+    		}
+    		producer = sessionProducers.get(destination);
+    		if (producer==null) {
+    			producer = session.createProducer(destination);
+    			sessionProducers.put(destination, producer);
+    		}
     	}
 		handler.messageReceived(new HornetQSessionWriter(session, producer), message);
     }
@@ -1,7 +1,9 @@
 package org.jbpm.task.service.jms;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.jms.JMSException;
 import javax.jms.Message;
@@ -15,6 +17,7 @@ import javax.jms.Session;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 
+import org.jbpm.task.service.TaskCommandExecutor;
 import org.jbpm.task.service.TaskServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +26,11 @@ public abstract class BaseJMSTaskServer extends TaskServer {
 
 	private static final Logger logger = LoggerFactory.getLogger(BaseJMSTaskServer.class);
 	
+	/**
+	 * When no message is received for this long, the messages received so far are acknowledged.
+	 */
+	private static final long RECEIVE_TIMEOUT = 1000;
+	
 	private JMSTaskServerHandler handler;
 	
 	private Properties connectionProperties;
@@ -36,6 +44,15 @@ public abstract class BaseJMSTaskServer extends TaskServer {
 	private QueueSession session;
 	private MessageConsumer consumer;
 	
+	private boolean transacted;
+	private int ackMode;
+	private int ackBatchSize;
+	private Message lastUnacknowledged;
+	private int unacknowledged;
+	private TaskCommandExecutor executor;
+	private final ThreadLocal<QueueSession> workerSession = new ThreadLocal<QueueSession>();
+	private final List<QueueSession> workerSessions = new CopyOnWriteArrayList<QueueSession>();
+	
 	public BaseJMSTaskServer(JMSTaskServerHandler handler, Properties properties, Context context) {
 		this.handler = handler;
 		this.connectionProperties = properties;
@@ -46,13 +63,32 @@ public abstract class BaseJMSTaskServer extends TaskServer {
 		try {
 			start();
 			while (this.running) {
-				Message clientMessage = this.consumer.receive();
-				if (clientMessage != null) {
-					Object object = readMessage(clientMessage);
-					String selector = readSelector(clientMessage);
-					this.handler.messageReceived(this.session, object, this.responseQueue, selector);
+				Message clientMessage = this.executor == null ? this.consumer.receive() : this.consumer.receive(RECEIVE_TIMEOUT);
+				if (clientMessage == null) {
+					// nothing more to read for now (or the consumer was closed), do not keep a partial batch waiting
+					acknowledgePending();
+				} else {
+					final Object object = readMessage(clientMessage);
+					final String selector = readSelector(clientMessage);
+					if (this.executor == null) {
+						this.handler.messageReceived(this.session, object, this.responseQueue, selector);
+					} else {
+						this.executor.execute(TaskCommandExecutor.getOrderingKey(object, selector), new Runnable() {
+							public void run() {
+								try {
+									handler.messageReceived(getWorkerSession(), object, responseQueue, selector);
+								} catch (Exception e) {
+									throw new RuntimeException("Error handling message from " + selector, e);
+								}
+							}
+						});
+						// messages are acknowledged once they are queued for a worker, in batches
+						received(clientMessage);
+					}
 				}
 			}
+		} catch (InterruptedException e) {
+			logger.info("Interrupted while waiting for a worker thread");
 		} catch (JMSException e) {
 			if ("102".equals(e.getErrorCode())) {
 				logger.info(e.getMessage());
@@ -64,6 +100,42 @@ public abstract class BaseJMSTaskServer extends TaskServer {
 		}
 	}
 
+	private synchronized void received(Message message) throws JMSException {
+		this.lastUnacknowledged = message;
+		if (++this.unacknowledged >= this.ackBatchSize) {
+			acknowledgePending();
+		}
+	}
+
+	/**
+	 * Acknowledges (or commits) the messages that have been queued for a worker so far.
+	 */
+	private synchronized void acknowledgePending() throws JMSException {
+		if (this.lastUnacknowledged == null) {
+			return;
+		}
+		if (this.transacted) {
+			this.session.commit();
+		} else if (this.ackMode == Session.CLIENT_ACKNOWLEDGE) {
+			this.lastUnacknowledged.acknowledge();
+		}
+		this.lastUnacknowledged = null;
+		this.unacknowledged = 0;
+	}
+
+	/**
+	 * Responses are written using a session for every worker thread, as sessions are not thread safe.
+	 */
+	private QueueSession getWorkerSession() throws JMSException {
+		QueueSession result = this.workerSession.get();
+		if (result == null) {
+			result = this.connection.createQueueSession(this.transacted, this.ackMode);
+			this.workerSessions.add(result);
+			this.workerSession.set(result);
+		}
+		return result;
+	}
+
 	private Object readMessage(Message msgReceived) throws IOException {
 		ObjectMessage strmMsgReceived = (ObjectMessage) msgReceived;
 		try {
@@ -83,20 +155,23 @@ public abstract class BaseJMSTaskServer extends TaskServer {
 			ctx = new InitialContext();
 		}
 		String connFactoryName = this.connectionProperties.getProperty(TaskServiceConstants.TASK_SERVER_CONNECTION_FACTORY_NAME);
-		boolean transacted = Boolean.valueOf(this.connectionProperties.getProperty(TaskServiceConstants.TASK_SERVER_TRANSACTED_NAME));
+		this.transacted = Boolean.valueOf(this.connectionProperties.getProperty(TaskServiceConstants.TASK_SERVER_TRANSACTED_NAME));
 		String ackModeString = this.connectionProperties.getProperty(TaskServiceConstants.TASK_SERVER_ACKNOWLEDGE_MODE_NAME);
 		String queueName = this.connectionProperties.getProperty(TaskServiceConstants.TASK_SERVER_QUEUE_NAME_NAME);
 		String responseQueueName = this.connectionProperties.getProperty(TaskServiceConstants.TASK_SERVER_RESPONSE_QUEUE_NAME_NAME);
-		int ackMode = Session.DUPS_OK_ACKNOWLEDGE; //default
+		this.ackMode = Session.DUPS_OK_ACKNOWLEDGE; //default
 		if ("AUTO_ACKNOWLEDGE".equals(ackModeString)) {
-			ackMode = Session.AUTO_ACKNOWLEDGE;
+			this.ackMode = Session.AUTO_ACKNOWLEDGE;
 		} else if ("CLIENT_ACKNOWLEDGE".equals(ackModeString)) {
-			ackMode = Session.CLIENT_ACKNOWLEDGE;
+			this.ackMode = Session.CLIENT_ACKNOWLEDGE;
 		}
+		int concurrency = Integer.parseInt(this.connectionProperties.getProperty(TaskServiceConstants.TASK_SERVER_CONCURRENCY_NAME, "1"));
+		int queueCapacity = Integer.parseInt(this.connectionProperties.getProperty(TaskServiceConstants.TASK_SERVER_QUEUE_CAPACITY_NAME, "100"));
+		this.ackBatchSize = Integer.parseInt(this.connectionProperties.getProperty(TaskServiceConstants.TASK_SERVER_ACKNOWLEDGE_BATCH_SIZE_NAME, "50"));
 		QueueConnectionFactory factory = (QueueConnectionFactory) ctx.lookup(connFactoryName);
 		try {
 			this.connection = factory.createQueueConnection();
-			this.session = connection.createQueueSession(transacted, ackMode);
+			this.session = connection.createQueueSession(this.transacted, this.ackMode);
 			this.queue = this.session.createQueue(queueName);
 			this.responseQueue = this.session.createQueue(responseQueueName);
 			this.consumer = this.session.createConsumer(this.queue);
@@ -104,6 +179,9 @@ public abstract class BaseJMSTaskServer extends TaskServer {
 		} catch (JMSException e) {
 			throw new RuntimeException("No se pudo levantar la cola servidora del JMSTaskServer", e);
 		}
+		if (concurrency > 1) {
+			this.executor = new TaskCommandExecutor("JMSTaskServer", concurrency, queueCapacity);
+		}
 		this.running = true;
 	}
 
@@ -114,8 +192,17 @@ public abstract class BaseJMSTaskServer extends TaskServer {
 		}
 	}
 
-	private void closeAll() throws JMSException {
+	private void closeAll() throws Exception {
 		this.consumer.close();
+		if (this.executor != null) {
+			this.executor.shutdown(10000);
+			this.executor = null;
+			acknowledgePending();
+			for (QueueSession queueSession: this.workerSessions) {
+				queueSession.close();
+			}
+			this.workerSessions.clear();
+		}
 		this.session.close();
 		this.connection.close();
 	}
@@ -22,21 +22,24 @@ public class JMSSessionWriter implements SessionWriter {
 	}
 
 	public void write(Object message) throws IOException {
-		try {
-			ObjectMessage clientMessage = this.session.createObjectMessage();
-			clientMessage.setObject((Serializable) message);
-			
-			clientMessage.setStringProperty(TaskServiceConstants.SELECTOR_NAME, this.selector);
-			this.producer.send(clientMessage);
-		} catch (JMSException e) {
-			throw new IOException("Unable to create message: " + e.getMessage());
-		} finally {
+		// sessions are not thread safe, and events can be written from any thread
+		synchronized (this.session) {
 			try {
-				if(this.session.getTransacted()) {
-					this.session.commit();
-				}
+				ObjectMessage clientMessage = this.session.createObjectMessage();
+				clientMessage.setObject((Serializable) message);
+				
+				clientMessage.setStringProperty(TaskServiceConstants.SELECTOR_NAME, this.selector);
+				this.producer.send(clientMessage);
 			} catch (JMSException e) {
-				throw new IOException("Unable to commit message: " + e.getMessage());
+				throw new IOException("Unable to create message: " + e.getMessage());
+			} finally {
+				try {
+					if(this.session.getTransacted()) {
+						this.session.commit();
+					}
+				} catch (JMSException e) {
+					throw new IOException("Unable to commit message: " + e.getMessage());
+				}
 			}
 		}
 	}
@@ -16,11 +16,11 @@ import org.jbpm.task.service.TaskService;
 public class JMSTaskServerHandler {
 	
 	private TaskServerHandler handler;
-	private Map<String, MessageProducer> producers;
+	private Map<QueueSession, Map<String, MessageProducer>> producers;
 
 	public JMSTaskServerHandler(TaskService service, SystemEventListener systemEventListener) {
 		this.handler = new TaskServerHandler(service, systemEventListener);
-		this.producers = new HashMap<String, MessageProducer>();
+		this.producers = new HashMap<QueueSession, Map<String, MessageProducer>>();
 	}
 
 	public void messageReceived(QueueSession session, Object message, Destination destination, String selector) throws Exception {
@@ -30,10 +30,19 @@ public class JMSTaskServerHandler {
 		} else if (destination instanceof Topic) {
 			name = ((Topic) destination).getTopicName();
 		}
-		MessageProducer producer = (MessageProducer) this.producers.get(name);
-		if (producer == null) {
-			producer = session.createProducer(destination);
-			this.producers.put(name, producer);
+		MessageProducer producer;
+		// producers belong to a session, the server may use a session for every worker thread
+		synchronized (this.producers) {
+			Map<String, MessageProducer> sessionProducers = this.producers.get(session);
+			if (sessionProducers == null) {
+				sessionProducers = new HashMap<String, MessageProducer>();
+				this.producers.put(session, sessionProducers);
+			}
+			producer = sessionProducers.get(name);
+			if (producer == null) {
+				producer = session.createProducer(destination);
+				sessionProducers.put(name, producer);
+			}
 		}
 		this.handler.messageReceived(new JMSSessionWriter(session, producer, selector), message);
 	}
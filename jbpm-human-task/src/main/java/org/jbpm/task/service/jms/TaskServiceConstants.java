@@ -9,6 +9,9 @@ public interface TaskServiceConstants {
 	String TASK_SERVER_ACKNOWLEDGE_MODE_NAME = "JMSTaskServer.acknowledgeMode";
 	String TASK_SERVER_TRANSACTED_NAME = "JMSTaskServer.transacted";
 	String TASK_SERVER_CONNECTION_FACTORY_NAME = "JMSTaskServer.connectionFactory";
+	String TASK_SERVER_CONCURRENCY_NAME = "JMSTaskServer.concurrency";
+	String TASK_SERVER_QUEUE_CAPACITY_NAME = "JMSTaskServer.queueCapacity";
+	String TASK_SERVER_ACKNOWLEDGE_BATCH_SIZE_NAME = "JMSTaskServer.acknowledgeBatchSize";
 	
 	String TASK_CLIENT_RESPONSE_QUEUE_NAME_NAME = "JMSTaskClient.responseQueueName";
 	String TASK_CLIENT_QUEUE_NAME_NAME = "JMSTaskClient.queueName";
@@ -19,6 +19,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.jbpm.eventmessaging.EventKey;
 import org.jbpm.eventmessaging.EventResponseHandler;
@@ -31,6 +33,7 @@ import org.jbpm.task.Content;
 import org.jbpm.task.OrganizationalEntity;
 import org.jbpm.task.Task;
 import org.jbpm.task.TaskService;
+import org.jbpm.task.event.TaskEventListener;
 import org.jbpm.task.query.TaskSummary;
 import org.jbpm.task.service.ContentData;
 import org.jbpm.task.service.FaultData;
@@ -38,19 +41,95 @@ import org.jbpm.task.service.Operation;
 import org.jbpm.task.service.persistence.TaskServiceSession;
 
 /**
- *
- * *
+ * {@link TaskService} that executes all operations directly on a task service in the same JVM.
+ * </p>
+ * By default, every operation uses a new {@link TaskServiceSession}. When sessions are reused,
+ * every thread uses a single session (and so a single persistence context), which is cleared
+ * before every operation executed outside of a transaction, so that operations never read stale
+ * state. Sessions that are reused must be disposed by the thread using them (see {@link #dispose()}).
+ * </p>
+ * When results are passed by reference, {@link #completeWithResults(long, String, Object)} does
+ * not serialize the results into the output of the task, but makes them available to the listeners
+ * notified of the completion of the task (see {@link #getResults(long)}), which is how
+ * {@link org.jbpm.process.workitem.wsht.SyncWSHumanTaskHandler} completes the work item in local mode.
  */
 public class LocalTaskService implements TaskService {
 
     private org.jbpm.task.service.TaskService service;
+    private final boolean reuseSessions;
+    private final ThreadLocal<TaskServiceSession> sessions = new ThreadLocal<TaskServiceSession>();
+    private volatile boolean passResultsByReference;
+    private final ConcurrentMap<Long, Object> results = new ConcurrentHashMap<Long, Object>();
 
     public LocalTaskService(org.jbpm.task.service.TaskService taskService) {
+        this(taskService, false);
+    }
+
+    /**
+     * @param reuseSessions whether every thread should reuse a single session
+     */
+    public LocalTaskService(org.jbpm.task.service.TaskService taskService, boolean reuseSessions) {
         this.service = taskService;
+        this.reuseSessions = reuseSessions;
     }
 
     private TaskServiceSession getSession() { 
-        return service.createSession();
+        if (!reuseSessions) {
+            return service.createSession();
+        }
+        TaskServiceSession session = sessions.get();
+        if (session == null || !session.getTaskPersistenceManager().isPersistenceContextOpen()) {
+            session = service.createSession();
+            sessions.set(session);
+        } else {
+            session.getTaskPersistenceManager().clearPersistenceContext();
+        }
+        return session;
+    }
+
+    /**
+     * Disposes the session used by the current thread, if sessions are reused.
+     */
+    public void dispose() {
+        TaskServiceSession session = sessions.get();
+        if (session != null) {
+            sessions.remove();
+            session.dispose();
+        }
+    }
+
+    /**
+     * Sets whether the results given to {@link #completeWithResults(long, String, Object)} are
+     * passed by reference instead of being serialized into the output of the task. In that case,
+     * the results are not stored, and are only available using {@link #getResults(long)} while
+     * the completion of the task is notified.
+     */
+    public void setPassResultsByReference(boolean passResultsByReference) {
+        this.passResultsByReference = passResultsByReference;
+    }
+
+    public boolean isPassResultsByReference() {
+        return passResultsByReference;
+    }
+
+    /**
+     * @return the results passed by reference to the completion of the given task that is being
+     *         notified, or null if there are none
+     */
+    public Object getResults(long taskId) {
+        return results.get(taskId);
+    }
+
+    /**
+     * Registers a listener that is notified of task events directly, in the thread executing
+     * the operation, instead of through the event keys used by {@link #registerForEvent}.
+     */
+    public void addEventListener(TaskEventListener listener) {
+        service.addEventListener(listener);
+    }
+
+    public void removeEventListener(TaskEventListener listener) {
+        service.removeEventListener(listener);
     }
     
     public void activate(long taskId, String userId) {
@@ -82,6 +161,15 @@ public class LocalTaskService implements TaskService {
     }
 
     public void completeWithResults(long taskId, String userId, Object results) {
+        if (passResultsByReference && results != null) {
+            this.results.put(taskId, results);
+            try {
+                complete(taskId, userId, null);
+            } finally {
+                this.results.remove(taskId);
+            }
+            return;
+        }
         ContentData contentData = null;
         if (results != null) {
             ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -131,7 +219,7 @@ public class LocalTaskService implements TaskService {
     }
 
     public void disconnect() throws Exception {
-        // do nothing 
+        dispose();
     }
 
     public void fail(long taskId, String userId, FaultData faultData) {
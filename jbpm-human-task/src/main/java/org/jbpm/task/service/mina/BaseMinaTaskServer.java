@@ -26,6 +26,7 @@ import org.apache.mina.filter.codec.ProtocolCodecFilter;
 import org.apache.mina.filter.codec.serialization.ObjectSerializationCodecFactory;
 import org.apache.mina.filter.logging.LoggingFilter;
 import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+import org.jbpm.task.service.TaskCommandExecutor;
 import org.jbpm.task.service.TaskServer;
 
 public class BaseMinaTaskServer extends TaskServer {
@@ -41,6 +42,11 @@ public class BaseMinaTaskServer extends TaskServer {
     // interfaces, use 0.0.0.0
     String localInterface;
 
+    private int concurrency;
+    private int queueCapacity = 100;
+    private boolean rejectWhenBusy;
+    private TaskCommandExecutor executor;
+
     public BaseMinaTaskServer(IoHandlerAdapter handler,
                           int port) {
         this(handler, port, "127.0.0.1");
@@ -53,6 +59,39 @@ public class BaseMinaTaskServer extends TaskServer {
 		this.localInterface = localInterface;
 	}
 
+    /**
+     * Sets the number of threads that execute commands. By default (0), commands are executed on the
+     * Mina I/O processor threads, so a slow command delays all sessions served by the same processor.
+     * Otherwise, commands are executed by a {@link TaskCommandExecutor}, which executes commands on the
+     * same task in order. Must be set before the server is started, and requires a {@link MinaTaskServerHandler}.
+     */
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Sets the number of commands that can wait for every worker thread.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Sets whether commands are answered with an error when the queue of their worker thread is full.
+     * By default, the I/O processor thread waits until there is room.
+     */
+    public void setRejectWhenBusy(boolean rejectWhenBusy) {
+        this.rejectWhenBusy = rejectWhenBusy;
+    }
+
+    /**
+     * @return the executor of the commands (which provides the queue depth and service time), or
+     * <code>null</code> if commands are executed on the I/O processor threads
+     */
+    public TaskCommandExecutor getCommandExecutor() {
+        return executor;
+    }
+
     public void run() {
         try {
             start();
@@ -72,6 +111,11 @@ public class BaseMinaTaskServer extends TaskServer {
         
         acceptor = new NioSocketAcceptor();
 
+        if (concurrency > 0 && handler instanceof MinaTaskServerHandler) {
+            executor = new TaskCommandExecutor("MinaTaskServer", concurrency, queueCapacity);
+            ((MinaTaskServerHandler) handler).setExecutor(executor, rejectWhenBusy);
+        }
+
         acceptor.getFilterChain().addLast( "logger",
                                            new LoggingFilter() );
         acceptor.getFilterChain().addLast( "codec",
@@ -91,6 +135,15 @@ public class BaseMinaTaskServer extends TaskServer {
     public void stop() {
     	running = false;
         acceptor.dispose();
+        if (executor != null) {
+            ((MinaTaskServerHandler) handler).setExecutor(null, false);
+            try {
+                executor.shutdown(10000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
     }
     
     public boolean isRunning() {
@@ -20,25 +20,64 @@ import org.apache.mina.core.service.IoHandlerAdapter;
 import org.apache.mina.core.session.IdleStatus;
 import org.apache.mina.core.session.IoSession;
 import org.drools.SystemEventListener;
+import org.jbpm.task.service.TaskCommandExecutor;
 import org.jbpm.task.service.TaskServerHandler;
 import org.jbpm.task.service.TaskService;
 
 public class MinaTaskServerHandler extends IoHandlerAdapter {
 	
     private TaskServerHandler handler;
+    private volatile TaskCommandExecutor executor;
+    private volatile boolean rejectWhenBusy;
 
     public MinaTaskServerHandler(TaskService service, SystemEventListener systemEventListener) {
         this.handler = new TaskServerHandler(service, systemEventListener);
     }
 
+    /**
+     * Executes the received commands using the given executor, instead of on the I/O processor
+     * thread that decoded them.
+     *
+     * @param executor the executor, or <code>null</code> to execute the commands on the I/O processor thread
+     * @param rejectWhenBusy whether to answer commands with an error when the executor is full, instead of
+     * waiting (which blocks the I/O processor thread, and so all sessions it serves)
+     */
+    public void setExecutor(TaskCommandExecutor executor, boolean rejectWhenBusy) {
+        this.executor = executor;
+        this.rejectWhenBusy = rejectWhenBusy;
+    }
+
+    public TaskCommandExecutor getExecutor() {
+        return executor;
+    }
+
     @Override
     public void exceptionCaught(IoSession session, Throwable cause) throws Exception {
     	handler.exceptionCaught(new MinaSessionWriter(session), cause);
     }
 
     @Override
-    public void messageReceived(IoSession session, Object message) throws Exception {
-        handler.messageReceived(new MinaSessionWriter(session), message);
+    public void messageReceived(IoSession session, final Object message) throws Exception {
+        final MinaSessionWriter writer = new MinaSessionWriter(session);
+        if (executor == null) {
+            handler.messageReceived(writer, message);
+            return;
+        }
+        Object key = TaskCommandExecutor.getOrderingKey(message, Long.toString(session.getId()));
+        Runnable command = new Runnable() {
+            public void run() {
+                try {
+                    handler.messageReceived(writer, message);
+                } catch (Exception e) {
+                    throw new RuntimeException("Error handling message " + message, e);
+                }
+            }
+        };
+        if (!rejectWhenBusy) {
+            executor.execute(key, command);
+        } else if (!executor.tryExecute(key, command)) {
+            handler.reject(writer, message, new RuntimeException("Task server is busy, please try again later"));
+        }
     }
 
     @Override
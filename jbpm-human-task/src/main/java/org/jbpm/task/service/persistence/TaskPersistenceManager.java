@@ -1,5 +1,6 @@
 package org.jbpm.task.service.persistence;
 
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 
@@ -7,6 +8,7 @@ import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Query;
 
+import org.jbpm.task.NotificationMessage;
 import org.jbpm.task.Status;
 import org.jbpm.task.Task;
 import org.jbpm.task.User;
@@ -126,6 +128,26 @@ public class TaskPersistenceManager {
         
     }
     
+    /**
+     * @return whether the persistence context can still be used (it has not been ended)
+     */
+    public boolean isPersistenceContextOpen() { 
+        return em != null && em.isOpen();
+    }
+    
+    /**
+     * Detaches all entities from the persistence context, so that the next operations read the
+     * current state from the database instead of the state cached by earlier operations. 
+     * </p>
+     * This does nothing while a transaction is active, as the entities may still be used in it: 
+     * within a transaction, the entities are shared by all operations. 
+     */
+    public void clearPersistenceContext() { 
+        if( isPersistenceContextOpen() && ttxm.ownsTransaction(em) ) { 
+            em.clear();
+        }
+    }
+    
     public void endPersistenceContext() { 
         if( em == null ) { 
             ttxm = null;
@@ -166,6 +188,46 @@ public class TaskPersistenceManager {
         return resultList;
     }
 
+    /**
+     * Special onetime method
+     * @param now the current date
+     * @param max the maximum number of messages to return
+     * @return the notification messages that should be delivered now, ordered by recipient
+     */
+    @SuppressWarnings("unchecked")
+    public List<NotificationMessage> getPendingNotificationMessages(Date now, int max) { 
+        boolean txOwner = beginTransaction();
+        
+        Query query = em.createNamedQuery("PendingNotificationMessages");
+        query.setParameter("now", now);
+        query.setMaxResults(max);
+        List<NotificationMessage> resultList = query.getResultList();
+        
+        endTransaction(txOwner);
+        return resultList;
+    }
+
+    /**
+     * Special onetime method
+     * @param delivered the notification messages to delete, as they have been delivered
+     * @param undelivered the notification messages to update, as their delivery failed
+     */
+    public void updateNotificationMessages(List<NotificationMessage> delivered, List<NotificationMessage> undelivered) { 
+        boolean txOwner = beginTransaction();
+        
+        for (NotificationMessage message : delivered) { 
+            Object entity = em.find(NotificationMessage.class, message.getId());
+            if( entity != null ) { 
+                em.remove(entity);
+            }
+        }
+        for (NotificationMessage message : undelivered) { 
+            em.merge(message);
+        }
+        
+        endTransaction(txOwner);
+    }
+
     /**
      *  Special onetime method
      * @param taskId
@@ -37,6 +37,7 @@ import org.jbpm.task.Deadlines;
 import org.jbpm.task.Escalation;
 import org.jbpm.task.Group;
 import org.jbpm.task.Notification;
+import org.jbpm.task.NotificationMessage;
 import org.jbpm.task.OrganizationalEntity;
 import org.jbpm.task.PeopleAssignments;
 import org.jbpm.task.Reassignment;
@@ -51,6 +52,7 @@ import org.jbpm.task.service.CannotAddTaskException;
 import org.jbpm.task.service.ContentData;
 import org.jbpm.task.service.EscalatedDeadlineHandler;
 import org.jbpm.task.service.FaultData;
+import org.jbpm.task.service.NotificationDispatcher;
 import org.jbpm.task.service.Operation;
 import org.jbpm.task.service.OperationCommand;
 import org.jbpm.task.service.PermissionDeniedException;
@@ -174,6 +176,7 @@ public class TaskServiceSession {
             currentStatus = taskData.assignOwnerAndStatus(potentialOwners);
         }
         
+        final boolean reserved = currentStatus == Status.Reserved;
         doOperationInTransaction(new TransactedOperation() {
             public void doOperation() {
                 tpm.saveEntity(task);
@@ -184,6 +187,12 @@ public class TaskServiceSession {
 
                     task.getTaskData().setDocument(content.getId(), contentData);
                 }
+
+                if (reserved && service.getNotificationDispatcher() != null) {
+                    // Task was reserved so owner should get icals, written to the outbox with the task
+                    sendIcalForTask(task);
+                    saveNotificationMessages();
+                }
             }
         });
 
@@ -192,9 +201,11 @@ public class TaskServiceSession {
             scheduleTask(task);
         }
 
-        if (currentStatus == Status.Reserved) {
-            // Task was reserved so owner should get icals
-            SendIcal.getInstance().sendIcalForTask(task, service.getUserinfo());
+        if (reserved) {
+            if (service.getNotificationDispatcher() == null) {
+                // Task was reserved so owner should get icals
+                sendIcalForTask(task);
+            }
 
             // trigger event support
             service.getEventSupport().fireTaskClaimed(task.getId(), task.getTaskData().getActualOwner().getId());
@@ -361,7 +372,7 @@ public class TaskServiceSession {
                 case Claim: {
                     taskData.setActualOwner((User) targetEntity);
                     // Task was reserved so owner should get icals
-                    SendIcal.getInstance().sendIcalForTask(task, service.getUserinfo());
+                    sendIcalForTask(task);
 
                     // trigger event support
                     service.getEventSupport().fireTaskClaimed(task.getId(),
@@ -422,12 +433,14 @@ public class TaskServiceSession {
                 }
             }
             
+            saveNotificationMessages();
             tpm.endTransaction(transactionOwner);
             
         } catch (RuntimeException re) {
             
             // DBG
             re.printStackTrace();
+            discardNotificationMessages();
             
             // We may not be the tx owner -- but something has gone wrong.
             // ..which is why we make ourselves owner, and roll the tx back. 
@@ -465,7 +478,34 @@ public class TaskServiceSession {
 
     private void taskClaimOperation(final Task task) {
         // Task was reserved so owner should get icals
-        SendIcal.getInstance().sendIcalForTask(task, service.getUserinfo());
+        sendIcalForTask(task);
+    }
+
+    /**
+     * Sends the icals for the task, or queues them to the notification dispatcher if the service
+     * has one, in which case they are written to the outbox by {@link #saveNotificationMessages()}.
+     */
+    private void sendIcalForTask(final Task task) {
+        SendIcal.getInstance().sendIcalForTask(task, service.getUserinfo(), service.getNotificationDispatcher());
+    }
+
+    /**
+     * Writes the notifications queued by the current operation to the outbox, in its transaction.
+     */
+    private void saveNotificationMessages() {
+        NotificationDispatcher dispatcher = service.getNotificationDispatcher();
+        if (dispatcher != null) {
+            for (NotificationMessage message : dispatcher.drainPending()) {
+                tpm.saveEntity(message);
+            }
+        }
+    }
+
+    private void discardNotificationMessages() {
+        NotificationDispatcher dispatcher = service.getNotificationDispatcher();
+        if (dispatcher != null) {
+            dispatcher.drainPending();
+        }
     }
     
     private void postTaskClaimOperation(final Task task) {
@@ -956,8 +996,10 @@ public class TaskServiceSession {
                     content,
                     service);     
 
+            saveNotificationMessages();
             tpm.endTransaction(txOwner);
         } catch(Exception e) {
+            discardNotificationMessages();
             tpm.rollBackTransaction(txOwner);
 
             String message; 
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jbpm.process.workitem.wsht.local.sync;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.drools.process.instance.impl.WorkItemImpl;
+import org.drools.runtime.process.WorkItemHandler;
+import org.drools.runtime.process.WorkItemManager;
+import org.jbpm.process.workitem.wsht.SyncWSHumanTaskHandler;
+import org.jbpm.process.workitem.wsht.sync.WSHumanTaskHandlerBaseSyncTest;
+import org.jbpm.task.query.TaskSummary;
+import org.jbpm.task.service.local.LocalTaskService;
+
+/**
+ * Runs the handler tests with a local task service that reuses its sessions and passes results
+ * by reference, and a handler that is notified by the task service directly.
+ */
+public class WSHumanTaskHandlerLocalInProcessSyncTest extends WSHumanTaskHandlerBaseSyncTest {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        LocalTaskService client = new LocalTaskService(taskService, true);
+        client.setPassResultsByReference(true);
+        setClient(client);
+
+        SyncWSHumanTaskHandler handler = new SyncWSHumanTaskHandler(getClient(), ksession);
+        handler.setLocal(true);
+        setHandler(handler);
+    }
+
+    protected void tearDown() throws Exception {
+        ((SyncWSHumanTaskHandler) getHandler()).dispose();
+        getClient().disconnect();
+        super.tearDown();
+    }
+
+    public void testCompleteWithResultsByReference() throws Exception {
+        final Map<String, Object> completed = new HashMap<String, Object>();
+        WorkItemManager manager = new WorkItemManager() {
+            public void completeWorkItem(long id, Map<String, Object> results) {
+                completed.putAll(results);
+            }
+            public void abortWorkItem(long id) {
+            }
+            public void registerWorkItemHandler(String workItemName, WorkItemHandler handler) {
+            }
+        };
+        ksession.setWorkItemManager(manager);
+        WorkItemImpl workItem = new WorkItemImpl();
+        workItem.setName("Human Task");
+        workItem.setParameter("TaskName", "TaskName");
+        workItem.setParameter("ActorId", "Darth Vader");
+        getHandler().executeWorkItem(workItem, manager);
+
+        List<TaskSummary> tasks = getClient().getTasksAssignedAsPotentialOwner("Darth Vader", "en-UK");
+        assertEquals(1, tasks.size());
+        long taskId = tasks.get(0).getId();
+        getClient().start(taskId, "Darth Vader");
+
+        // not serializable, so it can only be passed by reference
+        Object result = new Object();
+        Map<String, Object> results = new HashMap<String, Object>();
+        results.put("Output", result);
+        getClient().completeWithResults(taskId, "Darth Vader", results);
+
+        assertEquals("Darth Vader", completed.get("ActorId"));
+        assertSame(results, completed.get("Result"));
+        assertSame(result, completed.get("Output"));
+        assertNull(((LocalTaskService) getClient()).getResults(taskId));
+        assertEquals(-1, getClient().getTask(taskId).getTaskData().getOutputContentId());
+    }
+}
@@ -0,0 +1,38 @@
+package org.jbpm.task.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.jbpm.task.Status;
+import org.jbpm.task.User;
+
+public class MVELExpressionCacheTest extends TestCase {
+
+    public void testCompiledExpressionIsReused() {
+        MVELExpressionCache cache = new MVELExpressionCache(10);
+        Map<String, Object> vars = new HashMap<String, Object>();
+        vars.put("id", "Darth Vader");
+        User user = (User) cache.eval("new User( id )", vars);
+        assertEquals("Darth Vader", user.getId());
+
+        vars.put("id", "Bobba Fet");
+        user = (User) cache.eval(" new User( id ) ", vars);
+        assertEquals("Bobba Fet", user.getId());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+
+        assertEquals(Status.Ready, cache.eval("Status.Ready", null));
+    }
+
+    public void testLeastRecentlyUsedExpressionIsEvicted() {
+        MVELExpressionCache cache = new MVELExpressionCache(1);
+        assertEquals(2, cache.eval("1 + 1", null));
+        assertEquals(3, cache.eval("1 + 2", null));
+        assertEquals(2, cache.eval("1 + 1", null));
+        assertEquals(3, cache.getMissCount());
+        assertSame(cache.compile("1 + 1"), cache.compile("1 + 1"));
+    }
+
+}
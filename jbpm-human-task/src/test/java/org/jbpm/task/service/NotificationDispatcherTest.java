@@ -0,0 +1,109 @@
+package org.jbpm.task.service;
+
+import java.io.StringReader;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.mail.internet.MimeMessage;
+
+import org.jbpm.task.BaseTest;
+import org.jbpm.task.MockUserInfo;
+import org.jbpm.task.Task;
+import org.subethamail.wiser.Wiser;
+
+public class NotificationDispatcherTest extends BaseTest {
+
+    private Wiser wiser;
+    private NotificationDispatcher dispatcher;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        Properties connection = new Properties();
+        connection.setProperty("mail.smtp.host", "localhost");
+        connection.setProperty("mail.smtp.port", "2345");
+        dispatcher = new NotificationDispatcher(emf, connection);
+        dispatcher.setRetryDelay(0);
+        taskService.setNotificationDispatcher(dispatcher);
+
+        MockUserInfo userInfo = new MockUserInfo();
+        userInfo.getEmails().put(users.get("tony"), "tony@domain.com");
+        userInfo.getEmails().put(users.get("steve"), "steve@domain.com");
+        userInfo.getLanguages().put(users.get("tony"), "en-UK");
+        userInfo.getLanguages().put(users.get("steve"), "en-UK");
+        taskService.setUserinfo(userInfo);
+
+        wiser = new Wiser();
+        wiser.setHostname("localhost");
+        wiser.setPort(2345);
+    }
+
+    protected void tearDown() throws Exception {
+        dispatcher.stop();
+        wiser.stop();
+        super.tearDown();
+    }
+
+    public void testIcalsAreDeliveredByDispatcher() throws Exception {
+        wiser.start();
+        long taskId = addTask();
+        taskSession.taskOperation(Operation.Claim, taskId, users.get("steve").getId(), null, null, null);
+
+        // the icals have only been written to the outbox
+        assertEquals(0, wiser.getMessages().size());
+
+        assertEquals(2, dispatcher.dispatch());
+        assertEquals(2, wiser.getMessages().size());
+        assertEquals("steve@domain.com", wiser.getMessages().get(0).getEnvelopeReceiver());
+        MimeMessage message = wiser.getMessages().get(0).getMimeMessage();
+        assertEquals("Task Assignment Start Event: This is my task name", message.getSubject());
+        assertEquals(2, dispatcher.getDeliveredCount());
+        assertEquals(0, dispatcher.getRetriedCount());
+
+        // delivered messages are removed from the outbox
+        assertEquals(0, dispatcher.dispatch());
+    }
+
+    public void testUndeliveredMessagesAreRetried() throws Exception {
+        long taskId = addTask();
+        taskSession.taskOperation(Operation.Claim, taskId, users.get("steve").getId(), null, null, null);
+
+        // the server is not running yet
+        assertEquals(0, dispatcher.dispatch());
+        assertEquals(2, dispatcher.getRetriedCount());
+
+        wiser.start();
+        assertEquals(2, dispatcher.dispatch());
+        assertEquals(2, wiser.getMessages().size());
+        assertEquals(0, dispatcher.getFailedCount());
+    }
+
+    public void testDeliveryIsGivenUpAfterMaxAttempts() throws Exception {
+        dispatcher.setMaxAttempts(1);
+        long taskId = addTask();
+        taskSession.taskOperation(Operation.Claim, taskId, users.get("steve").getId(), null, null, null);
+
+        assertEquals(0, dispatcher.dispatch());
+        assertEquals(2, dispatcher.getFailedCount());
+
+        wiser.start();
+        assertEquals(0, dispatcher.dispatch());
+        assertEquals(0, wiser.getMessages().size());
+    }
+
+    private long addTask() {
+        Map<String, Object> vars = fillVariables();
+        String str = "(with (new Task()) { priority = 55, taskData = (with( new TaskData()) { createdOn = now, createdBy = users['tony'], activationTime = now}), ";
+        str += "peopleAssignments = (with ( new PeopleAssignments() ) {potentialOwners = [users['steve' ], users['tony' ]]}), ";
+        str += "names = [ new I18NText( 'en-UK', 'This is my task name')],";
+        str += "subjects = [ new I18NText( 'en-UK', 'This is my task subject')],";
+        str += "descriptions = [ new I18NText( 'en-UK', 'This is my task description')],";
+        str += "deadlines = (with (new Deadlines() ) {";
+        str += "    startDeadlines = [ (with (new Deadline()) { date = now } ) ],";
+        str += "    endDeadlines = [ (with (new Deadline()) { date = new Date( now.time + ( 1000 * 60 * 60 * 24 ) ) } ) ]";
+        str += "} ) })";
+        Task task = (Task) eval(new StringReader(str), vars);
+        taskSession.addTask(task, null);
+        return task.getId();
+    }
+
+}
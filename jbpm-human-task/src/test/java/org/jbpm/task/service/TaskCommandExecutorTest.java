@@ -0,0 +1,169 @@
+package org.jbpm.task.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+import org.jbpm.task.event.TaskCompletedEvent;
+import org.jbpm.task.event.TaskEventKey;
+
+public class TaskCommandExecutorTest extends TestCase {
+
+    public void testCommandsWithTheSameKeyAreExecutedInOrder() throws Exception {
+        TaskCommandExecutor executor = new TaskCommandExecutor("test", 4, 10);
+        final List<List<Integer>> results = new ArrayList<List<Integer>>();
+        for (int key = 0; key < 8; key++) {
+            results.add(Collections.synchronizedList(new ArrayList<Integer>()));
+        }
+        for (int i = 0; i < 100; i++) {
+            for (int key = 0; key < 8; key++) {
+                final List<Integer> result = results.get(key);
+                final int value = i;
+                executor.execute(Long.valueOf(key), new Runnable() {
+                    public void run() {
+                        result.add(value);
+                    }
+                });
+            }
+        }
+        executor.shutdown(5000);
+        assertEquals(800, executor.getExecutedCount());
+        for (List<Integer> result: results) {
+            assertEquals(100, result.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, result.get(i).intValue());
+            }
+        }
+    }
+
+    public void testCommandsWithDifferentKeysAreExecutedConcurrently() throws Exception {
+        TaskCommandExecutor executor = new TaskCommandExecutor("test", 4, 10);
+        // find two keys that are handled by different workers
+        final Map<Long, String> threads = new ConcurrentHashMap<Long, String>();
+        for (long key = 0; key < 16; key++) {
+            final Long k = key;
+            executor.execute(k, new Runnable() {
+                public void run() {
+                    threads.put(k, Thread.currentThread().getName());
+                }
+            });
+        }
+        executor.shutdown(5000);
+        long other = 1;
+        while (threads.get(other).equals(threads.get(0L))) {
+            other++;
+        }
+
+        executor = new TaskCommandExecutor("test", 4, 10);
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocking = new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        executor.execute(0L, blocking);
+        executor.execute(other, blocking);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        executor.shutdown(5000);
+    }
+
+    public void testFullQueueBlocksSubmitter() throws Exception {
+        final TaskCommandExecutor executor = new TaskCommandExecutor("test", 1, 2);
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean submitted = new AtomicBoolean();
+        Runnable blocking = new Runnable() {
+            public void run() {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        // one command is executing, two are queued
+        executor.execute("key", blocking);
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        executor.execute("key", blocking);
+        executor.execute("key", blocking);
+        Thread submitter = new Thread() {
+            public void run() {
+                try {
+                    executor.execute("key", new Runnable() {
+                        public void run() {
+                        }
+                    });
+                    submitted.set(true);
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        submitter.start();
+        submitter.join(200);
+        assertFalse(submitted.get());
+        release.countDown();
+        submitter.join(5000);
+        assertTrue(submitted.get());
+        executor.shutdown(5000);
+        assertEquals(4, executor.getExecutedCount());
+    }
+
+    public void testFullQueueRejectsCommand() throws Exception {
+        TaskCommandExecutor executor = new TaskCommandExecutor("test", 1, 1);
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocking = new Runnable() {
+            public void run() {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        assertTrue(executor.tryExecute("key", blocking));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertTrue(executor.tryExecute("key", blocking));
+        assertEquals(1, executor.getQueuedCount());
+        assertEquals(1, executor.getMaxQueuedCount());
+        assertFalse(executor.tryExecute("key", blocking));
+        assertEquals(1, executor.getRejectedCount());
+        Thread.sleep(20);
+        release.countDown();
+        executor.shutdown(5000);
+        assertEquals(2, executor.getExecutedCount());
+        assertTrue(executor.getMaxServiceTime() >= 20);
+        assertTrue(executor.getAverageServiceTime() > 0);
+    }
+
+    public void testOrderingKey() {
+        Command operation = new Command(1, CommandName.OperationRequest,
+            Arrays.asList(new Object[] { Operation.Claim, 5L, "bobba" }));
+        assertEquals(5L, TaskCommandExecutor.getOrderingKey(operation, "client"));
+        Command getTask = new Command(2, CommandName.GetTaskRequest, Arrays.asList(new Object[] { 7L }));
+        assertEquals(7L, TaskCommandExecutor.getOrderingKey(getTask, "client"));
+        Command query = new Command(3, CommandName.QueryTasksOwned, Arrays.asList(new Object[] { "bobba", "en-UK" }));
+        assertEquals("client", TaskCommandExecutor.getOrderingKey(query, "client"));
+        Command register = new Command(4, CommandName.RegisterForEventRequest,
+            Arrays.asList(new Object[] { new TaskEventKey(TaskCompletedEvent.class, 9L), true, "client" }));
+        assertEquals(9L, TaskCommandExecutor.getOrderingKey(register, "client"));
+    }
+
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.task.service.hornetq.sync;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.drools.SystemEventListenerFactory;
+import org.jbpm.task.BaseTest;
+import org.jbpm.task.Status;
+import org.jbpm.task.Task;
+import org.jbpm.task.TaskService;
+import org.jbpm.task.query.TaskSummary;
+import org.jbpm.task.service.AsyncTaskServiceWrapper;
+import org.jbpm.task.service.TaskClient;
+import org.jbpm.task.service.hornetq.HornetQTaskClientConnector;
+import org.jbpm.task.service.hornetq.HornetQTaskClientHandler;
+import org.jbpm.task.service.hornetq.HornetQTaskServer;
+
+/**
+ * Sends commands to the HornetQ task server (using an embedded broker) from several clients at
+ * once, executing them on one thread and on a pool of worker threads, and checks that every
+ * command has been executed exactly once.
+ */
+public class HornetQTaskServerWorkerPoolTest extends BaseTest {
+
+    private static final int CLIENTS = 8;
+    private static final int TASKS_PER_CLIENT = 25;
+
+    public void testConcurrentClientsSingleThread() throws Exception {
+        runConcurrentClients(1);
+    }
+
+    public void testConcurrentClientsWorkerPool() throws Exception {
+        runConcurrentClients(4);
+    }
+
+    private void runConcurrentClients(int concurrency) throws Exception {
+        HornetQTaskServer server = new HornetQTaskServer(taskService, 5446);
+        server.setConcurrency(concurrency);
+        new Thread(server).start();
+        while (!server.isRunning()) {
+            Thread.sleep(50);
+        }
+        try {
+            final List<TaskService> clients = new ArrayList<TaskService>();
+            final List<List<Task>> tasks = new ArrayList<List<Task>>();
+            Map<String, Object> vars = fillVariables();
+            String str = "(with (new Task()) { priority = 55, taskData = (with( new TaskData()) { } ), ";
+            str += "peopleAssignments = (with ( new PeopleAssignments() ) { potentialOwners = [users['bobba' ] ], }),";
+            str += "names = [ new I18NText( 'en-UK', 'This is my task name')] })";
+            for (int i = 0; i < CLIENTS; i++) {
+                TaskService client = new AsyncTaskServiceWrapper(new TaskClient(new HornetQTaskClientConnector("client " + i,
+                    new HornetQTaskClientHandler(SystemEventListenerFactory.getSystemEventListener()))));
+                client.connect("127.0.0.1", 5446);
+                clients.add(client);
+                List<Task> clientTasks = new ArrayList<Task>();
+                for (int j = 0; j < TASKS_PER_CLIENT; j++) {
+                    clientTasks.add((Task) eval(new StringReader(str), vars));
+                }
+                tasks.add(clientTasks);
+            }
+
+            final List<Long> reserved = Collections.synchronizedList(new ArrayList<Long>());
+            final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int i = 0; i < CLIENTS; i++) {
+                final TaskService client = clients.get(i);
+                final List<Task> clientTasks = tasks.get(i);
+                Thread thread = new Thread() {
+                    public void run() {
+                        try {
+                            for (Task task: clientTasks) {
+                                client.addTask(task, null);
+                                // the task must have been added before the next command of this client runs
+                                Task result = client.getTask(task.getId());
+                                if (result.getTaskData().getStatus() == Status.Reserved) {
+                                    reserved.add(result.getId());
+                                }
+                            }
+                        } catch (Throwable t) {
+                            errors.add(t);
+                        }
+                    }
+                };
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread: threads) {
+                thread.join();
+            }
+            assertEquals(Collections.emptyList(), errors);
+            assertEquals(CLIENTS * TASKS_PER_CLIENT, reserved.size());
+            assertEquals(CLIENTS * TASKS_PER_CLIENT, new HashSet<Long>(reserved).size());
+
+            // every task has been stored once
+            List<TaskSummary> summaries = clients.get(0).getTasksAssignedAsPotentialOwner(users.get("bobba").getId(), "en-UK");
+            Set<Long> stored = new HashSet<Long>();
+            for (TaskSummary summary: summaries) {
+                stored.add(summary.getId());
+            }
+            assertEquals(CLIENTS * TASKS_PER_CLIENT, summaries.size());
+            assertEquals(new HashSet<Long>(reserved), stored);
+
+            for (TaskService client: clients) {
+                client.disconnect();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+}
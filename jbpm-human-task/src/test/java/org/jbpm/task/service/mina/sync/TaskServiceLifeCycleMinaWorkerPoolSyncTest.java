@@ -0,0 +1,66 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.task.service.mina.sync;
+
+import org.drools.SystemEventListenerFactory;
+import org.jbpm.task.service.AsyncTaskServiceWrapper;
+import org.jbpm.task.service.TaskClient;
+import org.jbpm.task.service.base.sync.TaskServiceLifeCycleBaseSyncTest;
+import org.jbpm.task.service.mina.MinaTaskClientConnector;
+import org.jbpm.task.service.mina.MinaTaskClientHandler;
+import org.jbpm.task.service.mina.MinaTaskServer;
+
+public class TaskServiceLifeCycleMinaWorkerPoolSyncTest extends TaskServiceLifeCycleBaseSyncTest {
+
+	private MinaTaskServer server;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = new MinaTaskServer(taskService);
+        // execute the commands on 4 worker threads instead of the I/O processor threads
+        server.setConcurrency(4);
+        Thread thread = new Thread(server);
+        thread.start();
+        System.out.println("Waiting for the MinaTask Server to come up");
+        while (!server.isRunning()) {
+        	System.out.print(".");
+        	Thread.sleep( 50 );
+        }
+
+        client = new AsyncTaskServiceWrapper(new TaskClient(new MinaTaskClientConnector("client 1",
+                                     new MinaTaskClientHandler(SystemEventListenerFactory.getSystemEventListener()))));
+        client.connect("127.0.0.1", 9123);
+    }
+
+    public void testCommandsAreExecutedByWorkers() throws Exception {
+        client.getTasksOwned("Darth Vader", "en-UK");
+        // the response is written before the worker records the execution
+        for (int i = 0; i < 100 && server.getCommandExecutor().getExecutedCount() == 0; i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(server.getCommandExecutor().getExecutedCount() > 0);
+        assertTrue(server.getCommandExecutor().getAverageServiceTime() > 0);
+    }
+
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        client.disconnect();
+        server.stop();
+    }
+    
+}
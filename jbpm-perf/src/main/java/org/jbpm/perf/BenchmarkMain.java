@@ -0,0 +1,65 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks, accepting the usual JMH command line options (for example a regular
+ * expression selecting the benchmarks to run, or -p size=10 to only run one process size).
+ * </p>
+ * Unless given otherwise using -rf and -rff, the results are written as CSV to
+ * jbpm-perf-&lt;timestamp&gt;.csv, which can be compared to the results of an earlier run using
+ * {@link CompareResults}:
+ * <pre>
+ * mvn -Dperf install
+ * java -jar jbpm-perf/target/benchmarks.jar ProcessStart
+ * java -cp jbpm-perf/target/benchmarks.jar org.jbpm.perf.CompareResults baseline.csv jbpm-perf-20120601-1200.csv
+ * </pre>
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if (commandLineOptions.shouldHelp()) {
+            commandLineOptions.showHelp();
+            return;
+        }
+        if (commandLineOptions.shouldList()) {
+            new Runner(commandLineOptions).list();
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions);
+        if (!commandLineOptions.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.CSV);
+        }
+        if (!commandLineOptions.getResult().hasValue()) {
+            ResultFormatType format = commandLineOptions.getResultFormat().orElse(ResultFormatType.CSV);
+            options.result("jbpm-perf-" + new SimpleDateFormat("yyyyMMdd-HHmm").format(new Date())
+                           + "." + format.toString().toLowerCase());
+        }
+        new Runner(options.build()).run();
+    }
+
+}
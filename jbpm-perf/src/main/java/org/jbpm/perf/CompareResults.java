@@ -0,0 +1,142 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two benchmark result files written in the JMH CSV format (see {@link BenchmarkMain}),
+ * and reports the change of every benchmark (and parameter combination) found in both.
+ * </p>
+ * A change is reported as a regression or an improvement when it is larger than the threshold
+ * (10% by default) and larger than the sum of the error margins of both runs. The process exits
+ * with status 1 when there are regressions, so that it can be used to fail a build.
+ * <pre>
+ * java -cp benchmarks.jar org.jbpm.perf.CompareResults &lt;baseline.csv&gt; &lt;current.csv&gt; [threshold %]
+ * </pre>
+ */
+public class CompareResults {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CompareResults <baseline.csv> <current.csv> [threshold %]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) / 100 : 0.1;
+        Map<String, Score> baseline = read(args[0]);
+        Map<String, Score> current = read(args[1]);
+        int regressions = 0;
+        for (Map.Entry<String, Score> entry: current.entrySet()) {
+            Score before = baseline.get(entry.getKey());
+            if (before == null) {
+                continue;
+            }
+            Score after = entry.getValue();
+            double change = (after.score - before.score) / before.score;
+            String verdict = "";
+            if (Math.abs(change) > threshold
+                    && Math.abs(after.score - before.score) > before.error + after.error) {
+                // throughput should go up, all other modes measure time which should go down
+                boolean better = "thrpt".equals(after.mode) ? change > 0 : change < 0;
+                verdict = better ? "improvement" : "REGRESSION";
+                if (!better) {
+                    regressions++;
+                }
+            }
+            System.out.println(String.format("%-80s %14.3f %14.3f %-10s %+7.1f%% %s",
+                entry.getKey(), before.score, after.score, after.unit, change * 100, verdict));
+        }
+        System.out.println(regressions + " regression(s)");
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return the scores of the given file, keyed on the benchmark name, mode and parameters
+     */
+    static Map<String, Score> read(String fileName) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<String, Score>();
+        BufferedReader reader = new BufferedReader(new FileReader(fileName));
+        try {
+            List<String> header = split(reader.readLine());
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().length() == 0) {
+                    continue;
+                }
+                List<String> values = split(line);
+                Score score = new Score();
+                StringBuilder key = new StringBuilder(values.get(0));
+                score.mode = values.get(1);
+                score.score = parse(values.get(4));
+                score.error = parse(values.get(5));
+                score.unit = values.get(6);
+                key.append(" ").append(score.mode);
+                for (int i = 7; i < values.size() && i < header.size(); i++) {
+                    key.append(" ").append(header.get(i).replace("Param: ", "")).append("=").append(values.get(i));
+                }
+                scores.put(key.toString(), score);
+            }
+        } finally {
+            reader.close();
+        }
+        return scores;
+    }
+
+    private static double parse(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            // NaN, for example the error of a single measurement
+            return 0;
+        }
+    }
+
+    private static List<String> split(String line) {
+        List<String> values = new ArrayList<String>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    static class Score {
+        String mode;
+        double score;
+        double error;
+        String unit;
+    }
+
+}
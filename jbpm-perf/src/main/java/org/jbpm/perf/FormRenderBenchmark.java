@@ -0,0 +1,156 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jbpm.formapi.server.form.FormEncodingServerFactory;
+import org.jbpm.formapi.server.render.Renderer;
+import org.jbpm.formapi.shared.api.FormRepresentation;
+import org.jbpm.formapi.shared.api.OutputData;
+import org.jbpm.formapi.shared.api.items.CompleteButtonRepresentation;
+import org.jbpm.formapi.shared.api.items.HeaderRepresentation;
+import org.jbpm.formapi.shared.api.items.LabelRepresentation;
+import org.jbpm.formapi.shared.api.items.TableRepresentation;
+import org.jbpm.formapi.shared.api.items.TextFieldRepresentation;
+import org.jbpm.formapi.shared.form.FormEncodingFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures form previews of the form builder: translating and rendering a freemarker form in memory
+ * compared to going through a temporary file, and rendering an XSL form with its cached stylesheet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormRenderBenchmark {
+
+    private static final String XSL_STYLESHEET =
+        "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+        + "<xsl:output method=\"text\"/>"
+        + "<xsl:template match=\"/\">Hello <xsl:value-of select=\"inputs/name\"/></xsl:template>"
+        + "</xsl:stylesheet>";
+
+    private FormRepresentation form;
+    private Map<String, Object> inputs;
+    private org.jbpm.formbuilder.server.trans.ftl.Translator ftlTranslator;
+    private org.jbpm.formbuilder.server.render.ftl.Renderer ftlRenderer;
+    private org.jbpm.formbuilder.server.render.xsl.Renderer xslRenderer;
+    private File xslFile;
+
+    @Setup
+    public void setUp() throws Exception {
+        FormEncodingFactory.register(FormEncodingServerFactory.getEncoder(), FormEncodingServerFactory.getDecoder());
+        form = createForm("perfForm", "name", "age", "address");
+        inputs = new HashMap<String, Object>();
+        inputs.put(Renderer.BASE_CONTEXT_PATH, "/");
+        inputs.put(Renderer.BASE_LOCALE, "default");
+        inputs.put("name", "John");
+        ftlTranslator = new org.jbpm.formbuilder.server.trans.ftl.Translator();
+        ftlRenderer = new org.jbpm.formbuilder.server.render.ftl.Renderer();
+        xslRenderer = new org.jbpm.formbuilder.server.render.xsl.Renderer();
+        xslFile = File.createTempFile("formRenderBenchmark", ".xsl");
+    }
+
+    @TearDown
+    public void tearDown() {
+        xslFile.delete();
+    }
+
+    @Benchmark
+    public Object ftlInMemory() throws Exception {
+        return ftlRenderer.render(ftlTranslator.translateFormToString(form), inputs);
+    }
+
+    @Benchmark
+    public Object ftlThroughFile() throws Exception {
+        URL url = ftlTranslator.translateForm(form);
+        try {
+            return ftlRenderer.render(url, inputs);
+        } finally {
+            new File(url.getFile()).delete();
+        }
+    }
+
+    @Benchmark
+    public Object xslInMemory() throws Exception {
+        return xslRenderer.render(XSL_STYLESHEET, inputs);
+    }
+
+    @Benchmark
+    public Object xslThroughFile() throws Exception {
+        // the renderer deletes the translated file once it has been read
+        FileWriter writer = new FileWriter(xslFile);
+        try {
+            writer.write(XSL_STYLESHEET);
+        } finally {
+            writer.close();
+        }
+        return xslRenderer.render(xslFile.toURI().toURL(), inputs);
+    }
+
+    private static FormRepresentation createForm(String title, String... params) {
+        FormRepresentation form = new FormRepresentation();
+        HeaderRepresentation header = new HeaderRepresentation();
+        header.setValue(title);
+        form.addFormItem(header);
+
+        TableRepresentation table = new TableRepresentation();
+        table.setRows(params.length);
+        table.setColumns(2);
+        for (int index = 0; index < params.length; index++) {
+            LabelRepresentation label = new LabelRepresentation();
+            label.setValue(params[index]);
+            table.setElement(index, 0, label);
+            TextFieldRepresentation textField = new TextFieldRepresentation();
+            OutputData data = new OutputData();
+            data.setName(params[index]);
+            data.setMimeType("multipart/form-data");
+            textField.setOutput(data);
+            table.setElement(index, 1, textField);
+        }
+        form.addFormItem(table);
+
+        CompleteButtonRepresentation completeButton = new CompleteButtonRepresentation();
+        completeButton.setText("Complete");
+        form.addFormItem(completeButton);
+        form.setAction("complete");
+        form.setEnctype("multipart/form-data");
+        form.setMethod("POST");
+        form.setName(title);
+        return form;
+    }
+
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.drools.process.instance.impl.WorkItemImpl;
+import org.drools.runtime.process.WorkItemHandler;
+import org.drools.runtime.process.WorkItemManager;
+import org.jbpm.process.workitem.java.JavaInvocationWorkItemHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the per-call overhead of the java invocation work item handler, compared to resolving
+ * the method for every call (as the handler used to do) and to calling the method directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JavaInvocationBenchmark {
+
+    private JavaInvocationWorkItemHandler handler;
+    private WorkItemImpl workItem;
+    private ResultManager manager = new ResultManager();
+    private Greeter greeter = new Greeter();
+
+    @Setup
+    public void setUp() {
+        handler = new JavaInvocationWorkItemHandler();
+        handler.setReuseInstances(true);
+        workItem = new WorkItemImpl();
+        workItem.setId(1);
+        workItem.setParameter("Class", Greeter.class.getName());
+        workItem.setParameter("Method", "greet");
+        List<Object> parameters = new ArrayList<Object>();
+        parameters.add("krisv");
+        parameters.add(32);
+        parameters.add("male");
+        workItem.setParameter("Parameters", parameters);
+    }
+
+    @Benchmark
+    public Object direct() {
+        return greeter.greet("krisv", 32, "male");
+    }
+
+    @Benchmark
+    public Object resolvedPerCall() throws Exception {
+        Class<?> c = Class.forName(Greeter.class.getName());
+        for (Method m: c.getMethods()) {
+            if (m.getName().equals("greet") && m.getParameterTypes().length == 3) {
+                return m.invoke(c.newInstance(), "krisv", 32, "male");
+            }
+        }
+        throw new IllegalStateException("Method not found");
+    }
+
+    @Benchmark
+    public Object cachedInvocationPlan() {
+        handler.executeWorkItem(workItem, manager);
+        return manager.result;
+    }
+
+    public static class Greeter {
+
+        public String greet(String name, Integer age, String gender) {
+            return "Hello " + name + ", age " + age + ", gender " + gender;
+        }
+    }
+
+    private static class ResultManager implements WorkItemManager {
+
+        private Object result;
+
+        public void completeWorkItem(long id, Map<String, Object> results) {
+            result = results.get("Result");
+        }
+
+        public void abortWorkItem(long id) {
+            throw new IllegalStateException("Work item " + id + " aborted");
+        }
+
+        public void registerWorkItemHandler(String workItemName, WorkItemHandler handler) {
+        }
+    }
+
+}
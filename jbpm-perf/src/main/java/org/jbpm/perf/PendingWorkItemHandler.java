@@ -0,0 +1,56 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.util.LinkedList;
+
+import org.drools.runtime.process.WorkItem;
+import org.drools.runtime.process.WorkItemHandler;
+import org.drools.runtime.process.WorkItemManager;
+
+/**
+ * Work item handler that leaves all work items pending, and remembers their ids so that the
+ * benchmark can complete them.
+ */
+public class PendingWorkItemHandler implements WorkItemHandler {
+
+    private final LinkedList<Long> pending = new LinkedList<Long>();
+
+    public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
+        pending.add(workItem.getId());
+    }
+
+    public void abortWorkItem(WorkItem workItem, WorkItemManager manager) {
+        pending.remove(workItem.getId());
+    }
+
+    /**
+     * @return the id of the oldest pending work item, or null when there is none
+     */
+    public Long poll() {
+        return pending.poll();
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    public void clear() {
+        pending.clear();
+    }
+
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.drools.KnowledgeBase;
+import org.drools.SystemEventListenerFactory;
+import org.drools.impl.EnvironmentFactory;
+import org.drools.persistence.jpa.JPAKnowledgeService;
+import org.drools.runtime.Environment;
+import org.drools.runtime.EnvironmentName;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.jbpm.task.service.TaskService;
+
+import bitronix.tm.TransactionManagerServices;
+import bitronix.tm.resource.jdbc.PoolingDataSource;
+
+/**
+ * Creates the (optionally persistent) sessions and the task service used by the benchmarks.
+ * </p>
+ * Persistence uses the "org.jbpm.persistence.jpa" persistence unit of jbpm-test, on an in-memory
+ * H2 database, so that the benchmarks measure the engine and the JPA mapping rather than the disk.
+ * The database url can be changed using the "jbpm.perf.url" system property.
+ */
+public class PerfEnvironment {
+
+    private PoolingDataSource ds;
+    private EntityManagerFactory emf;
+
+    /**
+     * @return a new session, stored using JPA when persistent
+     */
+    public StatefulKnowledgeSession newSession(KnowledgeBase kbase, boolean persistent) {
+        if (!persistent) {
+            return kbase.newStatefulKnowledgeSession();
+        }
+        Environment env = EnvironmentFactory.newEnvironment();
+        env.set(EnvironmentName.ENTITY_MANAGER_FACTORY, getEntityManagerFactory());
+        env.set(EnvironmentName.TRANSACTION_MANAGER, TransactionManagerServices.getTransactionManager());
+        return JPAKnowledgeService.newStatefulKnowledgeSession(kbase, null, env);
+    }
+
+    /**
+     * @return a new task service, that adds all users and groups it does not know yet
+     */
+    public TaskService newTaskService() {
+        System.setProperty("jbpm.usergroup.callback", "org.jbpm.task.service.DefaultUserGroupCallbackImpl");
+        return new TaskService(getEntityManagerFactory(), SystemEventListenerFactory.getSystemEventListener());
+    }
+
+    public synchronized EntityManagerFactory getEntityManagerFactory() {
+        if (emf == null) {
+            ds = new PoolingDataSource();
+            ds.setUniqueName("jdbc/jbpm-ds");
+            ds.setClassName("bitronix.tm.resource.jdbc.lrc.LrcXADataSource");
+            ds.setMaxPoolSize(5);
+            ds.setAllowLocalTransactions(true);
+            ds.getDriverProperties().put("user", "sa");
+            ds.getDriverProperties().put("password", "");
+            ds.getDriverProperties().put("url", System.getProperty("jbpm.perf.url", "jdbc:h2:mem:jbpm-perf;DB_CLOSE_DELAY=-1"));
+            ds.getDriverProperties().put("driverClassName", "org.h2.Driver");
+            ds.init();
+            emf = Persistence.createEntityManagerFactory("org.jbpm.persistence.jpa");
+        }
+        return emf;
+    }
+
+    public synchronized void dispose() {
+        if (emf != null) {
+            emf.close();
+            emf = null;
+        }
+        if (ds != null) {
+            ds.close();
+            ds = null;
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import org.drools.KnowledgeBase;
+import org.drools.builder.KnowledgeBuilder;
+import org.drools.builder.KnowledgeBuilderFactory;
+import org.drools.builder.ResourceType;
+import org.drools.io.ResourceFactory;
+
+/**
+ * Generates the BPMN2 processes used by the benchmarks, so that the number of nodes can be
+ * given as a benchmark parameter.
+ */
+public final class PerfProcesses {
+
+    /**
+     * Name of the work items created by the tasks of the generated processes.
+     */
+    public static final String TASK_NAME = "Perf";
+
+    /**
+     * Type of the signal the signal processes wait for.
+     */
+    public static final String SIGNAL = "go";
+
+    private PerfProcesses() {
+    }
+
+    /**
+     * @return a process that executes the given number of script tasks in sequence
+     */
+    public static String scriptChain(String processId, int size) {
+        StringBuilder xml = header(processId);
+        String previous = "Start";
+        xml.append("    <startEvent id=\"Start\" />\n");
+        for (int i = 0; i < size; i++) {
+            String id = "Script" + i;
+            script(xml, id);
+            flow(xml, previous, id);
+            previous = id;
+        }
+        xml.append("    <endEvent id=\"End\" />\n");
+        flow(xml, previous, "End");
+        return footer(xml);
+    }
+
+    /**
+     * @return a process that executes the given number of tasks (work items) in sequence
+     */
+    public static String taskChain(String processId, int size) {
+        StringBuilder xml = header(processId);
+        String previous = "Start";
+        xml.append("    <startEvent id=\"Start\" />\n");
+        for (int i = 0; i < size; i++) {
+            String id = "Task" + i;
+            task(xml, id);
+            flow(xml, previous, id);
+            previous = id;
+        }
+        xml.append("    <endEvent id=\"End\" />\n");
+        flow(xml, previous, "End");
+        return footer(xml);
+    }
+
+    /**
+     * @return a process that executes the given number of tasks (work items) in parallel
+     */
+    public static String parallelTasks(String processId, int size) {
+        StringBuilder xml = header(processId);
+        xml.append("    <startEvent id=\"Start\" />\n");
+        xml.append("    <parallelGateway id=\"Split\" gatewayDirection=\"Diverging\" />\n");
+        xml.append("    <parallelGateway id=\"Join\" gatewayDirection=\"Converging\" />\n");
+        xml.append("    <endEvent id=\"End\" />\n");
+        flow(xml, "Start", "Split");
+        for (int i = 0; i < size; i++) {
+            String id = "Task" + i;
+            task(xml, id);
+            flow(xml, "Split", id);
+            flow(xml, id, "Join");
+        }
+        flow(xml, "Join", "End");
+        return footer(xml);
+    }
+
+    /**
+     * @return a process that waits for the {@link #SIGNAL} signal and then executes the given
+     * number of script tasks in sequence
+     */
+    public static String signalWait(String processId, int size) {
+        StringBuilder xml = header(processId);
+        xml.append("    <startEvent id=\"Start\" />\n");
+        xml.append("    <intermediateCatchEvent id=\"Signal\" name=\"Signal\" >\n");
+        xml.append("      <signalEventDefinition signalRef=\"" + SIGNAL + "\" />\n");
+        xml.append("    </intermediateCatchEvent>\n");
+        flow(xml, "Start", "Signal");
+        String previous = "Signal";
+        for (int i = 0; i < size; i++) {
+            String id = "Script" + i;
+            script(xml, id);
+            flow(xml, previous, id);
+            previous = id;
+        }
+        xml.append("    <endEvent id=\"End\" />\n");
+        flow(xml, previous, "End");
+        return footer(xml);
+    }
+
+    /**
+     * @return a knowledge base containing the given BPMN2 processes
+     */
+    public static KnowledgeBase createKnowledgeBase(String... processes) {
+        KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder();
+        for (String process: processes) {
+            kbuilder.add(ResourceFactory.newByteArrayResource(process.getBytes()), ResourceType.BPMN2);
+        }
+        if (kbuilder.hasErrors()) {
+            throw new IllegalArgumentException("Could not build knowledge base: " + kbuilder.getErrors());
+        }
+        return kbuilder.newKnowledgeBase();
+    }
+
+    private static StringBuilder header(String processId) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<definitions id=\"Definition\" targetNamespace=\"http://www.jboss.org/drools\"\n");
+        xml.append("             typeLanguage=\"http://www.java.com/javaTypes\"\n");
+        xml.append("             expressionLanguage=\"http://www.mvel.org/2.0\"\n");
+        xml.append("             xmlns=\"http://www.omg.org/spec/BPMN/20100524/MODEL\"\n");
+        xml.append("             xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n");
+        xml.append("             xmlns:tns=\"http://www.jboss.org/drools\">\n");
+        xml.append("  <process processType=\"Private\" isExecutable=\"true\" id=\"" + processId
+                   + "\" name=\"" + processId + "\" tns:packageName=\"org.jbpm.perf\" >\n");
+        return xml;
+    }
+
+    private static String footer(StringBuilder xml) {
+        xml.append("  </process>\n");
+        xml.append("</definitions>\n");
+        return xml.toString();
+    }
+
+    private static void script(StringBuilder xml, String id) {
+        xml.append("    <scriptTask id=\"" + id + "\" name=\"" + id
+                   + "\" scriptFormat=\"http://www.java.com/java\" >\n");
+        xml.append("      <script>kcontext.getNodeInstance();</script>\n");
+        xml.append("    </scriptTask>\n");
+    }
+
+    private static void task(StringBuilder xml, String id) {
+        xml.append("    <task id=\"" + id + "\" name=\"" + id + "\" tns:taskName=\"" + TASK_NAME + "\" >\n");
+        xml.append("      <ioSpecification>\n");
+        xml.append("        <inputSet>\n");
+        xml.append("        </inputSet>\n");
+        xml.append("        <outputSet>\n");
+        xml.append("        </outputSet>\n");
+        xml.append("      </ioSpecification>\n");
+        xml.append("    </task>\n");
+    }
+
+    private static void flow(StringBuilder xml, String source, String target) {
+        xml.append("    <sequenceFlow id=\"" + source + "-" + target + "\" sourceRef=\"" + source
+                   + "\" targetRef=\"" + target + "\" />\n");
+    }
+
+}
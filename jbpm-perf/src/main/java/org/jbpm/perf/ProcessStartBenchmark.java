@@ -0,0 +1,75 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.util.concurrent.TimeUnit;
+
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.ProcessInstance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Starts a process that runs to completion through a number of script tasks, in memory or
+ * stored using JPA.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessStartBenchmark {
+
+    @Param({ "1", "10", "100" })
+    public int size;
+
+    @Param({ "false", "true" })
+    public boolean persistent;
+
+    private PerfEnvironment environment;
+    private StatefulKnowledgeSession ksession;
+
+    @Setup
+    public void setUp() {
+        environment = new PerfEnvironment();
+        ksession = environment.newSession(
+            PerfProcesses.createKnowledgeBase(PerfProcesses.scriptChain("start", size)), persistent);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ksession.dispose();
+        environment.dispose();
+    }
+
+    @Benchmark
+    public ProcessInstance startProcess() {
+        return ksession.startProcess("start");
+    }
+
+}
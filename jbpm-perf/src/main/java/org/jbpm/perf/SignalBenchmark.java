@@ -0,0 +1,83 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.util.concurrent.TimeUnit;
+
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Signals an event that a number of process instances are waiting for, so that they all
+ * continue to completion. The instances are started before every invocation, outside of the
+ * measured time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignalBenchmark {
+
+    @Param({ "1", "10", "100" })
+    public int instances;
+
+    @Param({ "false", "true" })
+    public boolean persistent;
+
+    private PerfEnvironment environment;
+    private StatefulKnowledgeSession ksession;
+
+    @Setup
+    public void setUp() {
+        environment = new PerfEnvironment();
+        ksession = environment.newSession(
+            PerfProcesses.createKnowledgeBase(PerfProcesses.signalWait("signal", 1)), persistent);
+    }
+
+    @Setup(Level.Invocation)
+    public void startInstances() {
+        for (int i = 0; i < instances; i++) {
+            ksession.startProcess("signal");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        ksession.dispose();
+        environment.dispose();
+    }
+
+    @Benchmark
+    public void signal() {
+        ksession.signalEvent(PerfProcesses.SIGNAL, null);
+    }
+
+}
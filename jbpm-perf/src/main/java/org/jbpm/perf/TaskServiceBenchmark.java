@@ -0,0 +1,133 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jbpm.task.I18NText;
+import org.jbpm.task.OrganizationalEntity;
+import org.jbpm.task.PeopleAssignments;
+import org.jbpm.task.Task;
+import org.jbpm.task.TaskData;
+import org.jbpm.task.User;
+import org.jbpm.task.query.TaskSummary;
+import org.jbpm.task.service.local.LocalTaskService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Human task operations using the {@link LocalTaskService}: claiming, starting and completing
+ * a task, and querying the inbox of a user for a number of tasks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskServiceBenchmark {
+
+    private static final String WORKER = "worker";
+    private static final String INBOX_OWNER = "inbox";
+
+    @State(Scope.Benchmark)
+    public static class TaskServiceState {
+
+        private PerfEnvironment environment;
+        private LocalTaskService taskService;
+
+        @Setup
+        public void setUp() {
+            environment = new PerfEnvironment();
+            taskService = new LocalTaskService(environment.newTaskService());
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            taskService.disconnect();
+            environment.dispose();
+        }
+
+        long addTask(String userId) {
+            Task task = new Task();
+            List<I18NText> names = new ArrayList<I18NText>();
+            names.add(new I18NText("en-UK", "Perf task"));
+            task.setNames(names);
+            task.setTaskData(new TaskData());
+            PeopleAssignments assignments = new PeopleAssignments();
+            List<OrganizationalEntity> potentialOwners = new ArrayList<OrganizationalEntity>();
+            potentialOwners.add(new User(userId));
+            assignments.setPotentialOwners(potentialOwners);
+            List<OrganizationalEntity> businessAdministrators = new ArrayList<OrganizationalEntity>();
+            businessAdministrators.add(new User("Administrator"));
+            assignments.setBusinessAdministrators(businessAdministrators);
+            task.setPeopleAssignments(assignments);
+            taskService.addTask(task, null);
+            return task.getId();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Inbox {
+
+        @Param({ "10", "100", "1000" })
+        public int inboxSize;
+
+        @Setup
+        public void fill(TaskServiceState state) {
+            for (int i = 0; i < inboxSize; i++) {
+                state.addTask(INBOX_OWNER);
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class NewTask {
+
+        private long taskId;
+
+        @Setup(Level.Invocation)
+        public void addTask(TaskServiceState state) {
+            taskId = state.addTask(WORKER);
+        }
+    }
+
+    @Benchmark
+    public void claimStartComplete(TaskServiceState state, NewTask task) {
+        state.taskService.claim(task.taskId, WORKER);
+        state.taskService.start(task.taskId, WORKER);
+        state.taskService.complete(task.taskId, WORKER, null);
+    }
+
+    @Benchmark
+    public List<TaskSummary> inbox(TaskServiceState state, Inbox inbox) {
+        return state.taskService.getTasksAssignedAsPotentialOwner(INBOX_OWNER, "en-UK");
+    }
+
+}
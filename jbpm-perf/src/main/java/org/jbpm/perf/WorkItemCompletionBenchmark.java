@@ -0,0 +1,92 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.perf;
+
+import java.util.concurrent.TimeUnit;
+
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.WorkItemManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Completes all work items of a process instance that executes a number of tasks in sequence,
+ * so that completing a work item continues the process up to the next one. The process instance
+ * is started before every invocation, outside of the measured time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkItemCompletionBenchmark {
+
+    @Param({ "1", "10" })
+    public int size;
+
+    @Param({ "false", "true" })
+    public boolean persistent;
+
+    private PerfEnvironment environment;
+    private StatefulKnowledgeSession ksession;
+    private PendingWorkItemHandler handler = new PendingWorkItemHandler();
+
+    @Setup
+    public void setUp() {
+        environment = new PerfEnvironment();
+        ksession = environment.newSession(
+            PerfProcesses.createKnowledgeBase(PerfProcesses.taskChain("tasks", size)), persistent);
+        ksession.getWorkItemManager().registerWorkItemHandler(PerfProcesses.TASK_NAME, handler);
+    }
+
+    @Setup(Level.Invocation)
+    public void startInstance() {
+        handler.clear();
+        ksession.startProcess("tasks");
+    }
+
+    @TearDown
+    public void tearDown() {
+        ksession.dispose();
+        environment.dispose();
+    }
+
+    @Benchmark
+    public int completeWorkItems() {
+        WorkItemManager manager = ksession.getWorkItemManager();
+        int completed = 0;
+        Long workItemId;
+        while ((workItemId = handler.poll()) != null) {
+            manager.completeWorkItem(workItemId, null);
+            completed++;
+        }
+        return completed;
+    }
+
+}
@@ -1,5 +1,6 @@
 package org.jbpm.persistence;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.persistence.EntityManager;
@@ -30,13 +31,23 @@ public class JpaProcessPersistenceContext extends JpaPersistenceContext
         getEntityManager().remove( processInstanceInfo );
     }
 
+    /**
+     * Looks up the process instances directly in the (indexed) <code>EventTypes</code> table, 
+     * without joining the <code>ProcessInstanceInfo</code> table.
+     */
     @SuppressWarnings("unchecked")
     public List<Long> getProcessInstancesWaitingForEvent(String type) {
-        Query processInstancesForEvent = getEntityManager().createNamedQuery( "ProcessInstancesWaitingForEvent" );
+        Query processInstancesForEvent = getEntityManager().createNamedQuery( "ProcessInstancesWaitingForEventType" );
         processInstancesForEvent.setFlushMode(FlushModeType.COMMIT);
         processInstancesForEvent.setParameter( "type",
                                                type );
-        return (List<Long>) processInstancesForEvent.getResultList();
+        // the type of a native scalar result depends on the database (Long, BigInteger, BigDecimal, ..)
+        List<Number> ids = (List<Number>) processInstancesForEvent.getResultList();
+        List<Long> processInstanceIds = new ArrayList<Long>( ids.size() );
+        for ( Number id : ids ) {
+            processInstanceIds.add( id.longValue() );
+        }
+        return processInstanceIds;
     }
     
 }
@@ -4,11 +4,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.drools.common.InternalKnowledgeRuntime;
 import org.drools.definition.process.Process;
+import org.drools.persistence.TransactionManager;
+import org.drools.persistence.TransactionSynchronization;
 import org.drools.runtime.EnvironmentName;
 import org.drools.runtime.process.ProcessInstance;
 import org.jbpm.persistence.ProcessPersistenceContext;
@@ -23,6 +26,13 @@ import org.jbpm.process.instance.impl.ProcessInstanceImpl;
  * which is used by multiple threads: each request sent to the jbpm-console is picked up in it's own thread. 
  * </p>
  * This means that multiple threads can be using the same instance of this class. 
+ * </p>
+ * When the <code>jbpm.processinstance.cache.size</code> system property is set, process instances are kept
+ * in a {@link ProcessInstanceCache} after the command has finished, so that the next command using the same
+ * process instance only needs to check the version of the {@link ProcessInstanceInfo} instead of unmarshalling it again.
+ * Process instances are only put in the cache once the transaction that stored them has been committed: a transaction
+ * synchronization is registered with the {@link TransactionManager} of the environment, and when the transaction is
+ * rolled back the process instances it used are removed from the cache instead.
  */
 public class JPAProcessInstanceManager
     implements
@@ -33,12 +43,29 @@ public class JPAProcessInstanceManager
     //   lazy initialization is more costly than eager initialization
     // Added volatile so that if something happens, we can figure out what
     private volatile transient Map<Long, ProcessInstance> processInstances = new ConcurrentHashMap<Long, ProcessInstance>();
-
+    // Only used when the cache is enabled: the process instance infos used in the current command(s)
+    private transient Map<Long, ProcessInstanceInfo> processInstanceInfos = new ConcurrentHashMap<Long, ProcessInstanceInfo>();
+    private ProcessInstanceCache processInstanceCache;
+    // Only used when the cache is enabled: the state of the current transaction, guarded by this
+    private Map<Long, CacheCandidate> cacheCandidates = new HashMap<Long, CacheCandidate>();
+    private boolean synchronizationRegistered;
+    private Integer completedTransactionStatus;
     
     public void setKnowledgeRuntime(InternalKnowledgeRuntime kruntime) {
         this.kruntime = kruntime;
     }
 
+    public void setProcessInstanceCache(ProcessInstanceCache processInstanceCache) {
+        this.processInstanceCache = processInstanceCache;
+    }
+
+    /**
+     * @return the cache of disconnected process instances, or <code>null</code> if caching is disabled
+     */
+    public ProcessInstanceCache getProcessInstanceCache() {
+        return processInstanceCache;
+    }
+
     public void addProcessInstance(ProcessInstance processInstance) {
         ProcessInstanceInfo processInstanceInfo = new ProcessInstanceInfo( processInstance, this.kruntime.getEnvironment() );
         ProcessPersistenceContext context 
@@ -49,6 +76,10 @@ public class JPAProcessInstanceManager
         context.persist( processInstanceInfo );
         ((org.jbpm.process.instance.ProcessInstance) processInstance).setId( processInstanceInfo.getId() );
         processInstanceInfo.updateLastReadDate();
+        if ( processInstanceCache != null ) {
+            registerCacheSynchronization();
+            processInstanceInfos.put( processInstanceInfo.getId(), processInstanceInfo );
+        }
         internalAddProcessInstance(processInstance);
     }
     
@@ -77,9 +108,22 @@ public class JPAProcessInstanceManager
         ProcessPersistenceContext context = ppcm.getProcessPersistenceContext();
         ProcessInstanceInfo processInstanceInfo = context.findProcessInstanceInfo( id );
         if ( processInstanceInfo == null ) {
+            if ( processInstanceCache != null ) {
+                processInstanceCache.remove( id );
+            }
             return null;
         }
         processInstanceInfo.updateLastReadDate();
+        if ( processInstanceCache != null ) {
+            registerCacheSynchronization();
+            // the version check replaces unmarshalling when the row has not changed since the instance was cached
+            ProcessInstance cachedProcessInstance = processInstanceCache.take( id, processInstanceInfo.getVersion(), 
+                kruntime.getKnowledgeBase().getProcess( processInstanceInfo.getProcessId() ) );
+            if ( cachedProcessInstance != null ) {
+                processInstanceInfo.setProcessInstance( cachedProcessInstance );
+            }
+            processInstanceInfos.put( id, processInstanceInfo );
+        }
         processInstance = (org.jbpm.process.instance.ProcessInstance)
         	processInstanceInfo.getProcessInstance(kruntime, this.kruntime.getEnvironment());
         Process process = kruntime.getKnowledgeBase().getProcess( processInstance.getProcessId() );
@@ -105,6 +149,10 @@ public class JPAProcessInstanceManager
         if ( processInstanceInfo != null ) {
             context.remove( processInstanceInfo );
         }
+        if ( processInstanceCache != null ) {
+            processInstanceInfos.remove( processInstance.getId() );
+            processInstanceCache.remove( processInstance.getId() );
+        }
         internalRemoveProcessInstance(processInstance);
     }
 
@@ -113,8 +161,107 @@ public class JPAProcessInstanceManager
     }
     
     public void clearProcessInstances() {
-        for (ProcessInstance processInstance: new ArrayList<ProcessInstance>(processInstances.values())) {
-            ((ProcessInstanceImpl) processInstance).disconnect();
+        if ( processInstanceCache == null ) {
+            for (ProcessInstance processInstance: new ArrayList<ProcessInstance>(processInstances.values())) {
+                ((ProcessInstanceImpl) processInstance).disconnect();
+            }
+            return;
+        }
+        synchronized ( this ) {
+            for (ProcessInstance processInstance: new ArrayList<ProcessInstance>(processInstances.values())) {
+                Process process = ((ProcessInstanceImpl) processInstance).getProcess();
+                ((ProcessInstanceImpl) processInstance).disconnect();
+                if ( synchronizationRegistered ) {
+                    addCacheCandidate( processInstance, process );
+                } else {
+                    processInstanceCache.remove( processInstance.getId() );
+                }
+            }
+            processInstanceInfos.clear();
+            if ( completedTransactionStatus != null ) {
+                // the transaction has already been completed, otherwise the synchronization will do this
+                completeTransaction( completedTransactionStatus );
+            }
+        }
+    }
+
+    /**
+     * Only process instances that have been marshalled by {@link ProcessInstanceInfo#update()} are cached:
+     * their state is known to be equal to the stored byte array. The version of the info is only
+     * known to be the version in the database once the transaction has been committed, so they are
+     * only put in the cache by {@link #completeTransaction(int)}.
+     */
+    private void addCacheCandidate(ProcessInstance processInstance, Process process) {
+        ProcessInstanceInfo processInstanceInfo = processInstanceInfos.remove( processInstance.getId() );
+        if ( processInstanceInfo != null 
+                && processInstanceInfo.isMarshalled()
+                && processInstance.getState() == ProcessInstance.STATE_ACTIVE ) {
+            cacheCandidates.put( processInstance.getId(),
+                                 new CacheCandidate( processInstance, processInstanceInfo.getVersion(), process ) );
+        } else {
+            cacheCandidates.put( processInstance.getId(), new CacheCandidate( processInstance, -1, process ) );
+        }
+    }
+
+    private synchronized void registerCacheSynchronization() {
+        if ( synchronizationRegistered ) {
+            return;
+        }
+        Object txm = kruntime.getEnvironment().get( EnvironmentName.TRANSACTION_MANAGER );
+        if ( !(txm instanceof TransactionManager) ) {
+            // without transaction synchronization nothing is known to be committed, so nothing is cached
+            return;
+        }
+        synchronizationRegistered = true;
+        completedTransactionStatus = null;
+        ((TransactionManager) txm).registerTransactionSynchronization( new TransactionSynchronization() {
+            public void beforeCompletion() {
+            }
+            public void afterCompletion(int status) {
+                synchronized ( JPAProcessInstanceManager.this ) {
+                    if ( cacheCandidates.isEmpty() && !processInstances.isEmpty() ) {
+                        // the process instances have not been cleared yet
+                        completedTransactionStatus = status;
+                    } else {
+                        completeTransaction( status );
+                    }
+                }
+            }
+        } );
+    }
+
+    /**
+     * Caches the process instances of the transaction when it has been committed, and removes
+     * them from the cache when it has been rolled back. Must be called while holding the lock on this.
+     */
+    private void completeTransaction(int status) {
+        for ( CacheCandidate candidate: cacheCandidates.values() ) {
+            if ( status == TransactionManager.STATUS_COMMITTED && candidate.version >= 0 ) {
+                processInstanceCache.put( candidate.processInstance, candidate.version, candidate.process );
+            } else {
+                processInstanceCache.remove( candidate.processInstance.getId() );
+            }
+        }
+        if ( status != TransactionManager.STATUS_COMMITTED ) {
+            for ( Long id: processInstanceInfos.keySet() ) {
+                processInstanceCache.remove( id );
+            }
+        }
+        cacheCandidates.clear();
+        synchronizationRegistered = false;
+        completedTransactionStatus = null;
+    }
+
+    private static class CacheCandidate {
+
+        private final ProcessInstance processInstance;
+        private final int version;
+        private final Process process;
+
+        CacheCandidate(ProcessInstance processInstance, int version, Process process) {
+            this.processInstance = processInstance;
+            this.version = version;
+            this.process = process;
         }
     }
 
@@ -9,6 +9,7 @@ public class JPAProcessInstanceManagerFactory implements ProcessInstanceManagerF
 	public ProcessInstanceManager createProcessInstanceManager(InternalKnowledgeRuntime kruntime) {
 		JPAProcessInstanceManager result = new JPAProcessInstanceManager();
 		result.setKnowledgeRuntime(kruntime);
+		result.setProcessInstanceCache(ProcessInstanceCache.createFromSystemProperties());
 		return result;
 	}
 
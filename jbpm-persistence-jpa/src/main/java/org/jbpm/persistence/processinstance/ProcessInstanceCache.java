@@ -0,0 +1,228 @@
+package org.jbpm.persistence.processinstance;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.drools.definition.process.Process;
+import org.drools.runtime.process.ProcessInstance;
+
+/**
+ * Bounded cache of disconnected (unmarshalled) process instances, used by the
+ * {@link JPAProcessInstanceManager} to avoid unmarshalling the same process instance
+ * again when it is used by consecutive commands.
+ * </p>
+ * Every entry is validated against the <code>OPTLOCK</code> version of the {@link ProcessInstanceInfo}
+ * that was loaded by the command: if another node (or a rolled back transaction) has changed the row
+ * in the meantime, the version will differ and the entry is discarded.
+ * </p>
+ * Entries are checked out by {@link #take(long, int, Process)}: a process instance is never handed
+ * out to two commands at the same time, it is only put back in the cache once the command is finished.
+ */
+public class ProcessInstanceCache {
+
+    public static final String CACHE_SIZE_PROPERTY = "jbpm.processinstance.cache.size";
+    public static final String CACHE_TTL_PROPERTY = "jbpm.processinstance.cache.ttl";
+
+    private static final long DEFAULT_TTL = 60000;
+
+    private final int maxSize;
+    private final long timeToLive;
+    private final Map<Long, CachedProcessInstance> entries;
+    // guarded by entries
+    private long nextEviction;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong staleEntries = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxSize the maximum number of process instances kept in the cache
+     * @param timeToLive the time (in milliseconds) a process instance may stay in the cache
+     */
+    public ProcessInstanceCache(int maxSize, long timeToLive) {
+        if ( maxSize <= 0 ) {
+            throw new IllegalArgumentException( "Cache size should be larger than 0: " + maxSize );
+        }
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<Long, CachedProcessInstance>( 16, 0.75f, true ) {
+            private static final long serialVersionUID = 530l;
+
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedProcessInstance> eldest) {
+                if ( size() > ProcessInstanceCache.this.maxSize ) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Creates a cache based on the <code>jbpm.processinstance.cache.size</code> and
+     * <code>jbpm.processinstance.cache.ttl</code> system properties.
+     *
+     * @return the cache, or <code>null</code> if caching has not been enabled
+     */
+    public static ProcessInstanceCache createFromSystemProperties() {
+        int size = Integer.parseInt( System.getProperty( CACHE_SIZE_PROPERTY, "0" ) );
+        if ( size <= 0 ) {
+            return null;
+        }
+        long ttl = Long.parseLong( System.getProperty( CACHE_TTL_PROPERTY, String.valueOf( DEFAULT_TTL ) ) );
+        return new ProcessInstanceCache( size, ttl );
+    }
+
+    /**
+     * Removes the process instance with the given id from the cache and returns it, if it
+     * is still valid for the given version of the {@link ProcessInstanceInfo} and the given process.
+     */
+    public ProcessInstance take(long processInstanceId, int version, Process process) {
+        CachedProcessInstance entry;
+        synchronized ( entries ) {
+            evictExpiredIfDue( System.currentTimeMillis() );
+            entry = entries.remove( processInstanceId );
+        }
+        if ( entry == null ) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if ( isExpired( entry, System.currentTimeMillis() ) ) {
+            evictions.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        if ( entry.version != version || entry.process != process ) {
+            staleEntries.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.processInstance;
+    }
+
+    /**
+     * Puts a disconnected process instance in the cache.
+     *
+     * @param processInstance the (disconnected) process instance
+     * @param version the version of the {@link ProcessInstanceInfo} the process instance was stored with
+     * @param process the process definition the process instance was using
+     */
+    public void put(ProcessInstance processInstance, int version, Process process) {
+        CachedProcessInstance entry = new CachedProcessInstance( processInstance, version, process );
+        synchronized ( entries ) {
+            evictExpiredIfDue( entry.timestamp );
+            entries.put( processInstance.getId(), entry );
+        }
+    }
+
+    public void remove(long processInstanceId) {
+        synchronized ( entries ) {
+            entries.remove( processInstanceId );
+        }
+    }
+
+    /**
+     * Removes all entries that have been in the cache longer than the time to live. This is
+     * also done by {@link #put(ProcessInstance, int, Process)} and {@link #take(long, int, Process)},
+     * at most once per time to live.
+     */
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        synchronized ( entries ) {
+            doEvictExpired( now );
+        }
+    }
+
+    private void evictExpiredIfDue(long now) {
+        if ( timeToLive > 0 && now >= nextEviction ) {
+            doEvictExpired( now );
+        }
+    }
+
+    private void doEvictExpired(long now) {
+        Iterator<CachedProcessInstance> iterator = entries.values().iterator();
+        while ( iterator.hasNext() ) {
+            if ( isExpired( iterator.next(), now ) ) {
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        nextEviction = now + timeToLive;
+    }
+
+    public void clear() {
+        synchronized ( entries ) {
+            entries.clear();
+        }
+    }
+
+    private boolean isExpired(CachedProcessInstance entry, long now) {
+        return timeToLive > 0 && now - entry.timestamp > timeToLive;
+    }
+
+    public int size() {
+        synchronized ( entries ) {
+            return entries.size();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of entries that were discarded because the process instance
+     * had been updated by someone else (or the process definition had changed)
+     */
+    public long getStaleCount() {
+        return staleEntries.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public double getHitRatio() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public String toString() {
+        return "ProcessInstanceCache [size=" + size() + ", maxSize=" + maxSize
+            + ", hits=" + hits + ", misses=" + misses
+            + ", stale=" + staleEntries + ", evictions=" + evictions + "]";
+    }
+
+    private static class CachedProcessInstance {
+
+        private final ProcessInstance processInstance;
+        private final int version;
+        private final Process process;
+        private final long timestamp;
+
+        CachedProcessInstance(ProcessInstance processInstance, int version, Process process) {
+            this.processInstance = processInstance;
+            this.version = version;
+            this.process = process;
+            this.timestamp = System.currentTimeMillis();
+        }
+    }
+
+}
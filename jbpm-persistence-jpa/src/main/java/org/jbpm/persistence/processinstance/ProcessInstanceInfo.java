@@ -18,6 +18,7 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinTable;
 import javax.persistence.Lob;
+import javax.persistence.NamedNativeQuery;
 import javax.persistence.PrePersist;
 import javax.persistence.PreUpdate;
 import javax.persistence.Transient;
@@ -33,12 +34,16 @@ import org.drools.marshalling.impl.MarshallerWriteContext;
 import org.drools.runtime.Environment;
 import org.drools.runtime.process.ProcessInstance;
 import org.hibernate.annotations.CollectionOfElements;
+import org.hibernate.annotations.Index;
 import org.jbpm.marshalling.impl.ProcessInstanceMarshaller;
 import org.jbpm.marshalling.impl.ProcessMarshallerRegistry;
 import org.jbpm.process.instance.context.variable.VariableScopeInstance;
 import org.jbpm.process.instance.impl.ProcessInstanceImpl;
+import org.jbpm.process.metrics.EngineMetrics;
 
 @Entity
+@NamedNativeQuery(name = "ProcessInstancesWaitingForEventType",
+                  query = "select InstanceId from EventTypes where element = :type")
 public class ProcessInstanceInfo{
 
     @Id
@@ -65,12 +70,16 @@ public class ProcessInstanceInfo{
 //  private Set<EventType>                    eventTypes         = new HashSet<EventType>();    
     @CollectionOfElements
     @JoinTable(name = "EventTypes", joinColumns = @JoinColumn(name = "InstanceId"))
+    @Column(name = "element")
+    @Index(name = "IDX_EventTypes_element")
     private Set<String>                       eventTypes         = new HashSet<String>();
     
     private @Transient
     ProcessInstance                           processInstance;
     private @Transient
     Environment                               env;
+    private @Transient
+    boolean                                   marshalled;
     
     protected ProcessInstanceInfo() {
     }
@@ -123,6 +132,8 @@ public class ProcessInstanceInfo{
                                               Environment env) {
         this.env = env;
         if ( processInstance == null ) {
+            EngineMetrics metrics = EngineMetrics.getInstance();
+            long start = metrics.startTiming();
             try {
                 ByteArrayInputStream bais = new ByteArrayInputStream( processInstanceByteArray );
                 MarshallerReaderContext context = new MarshallerReaderContext( bais,
@@ -135,6 +146,8 @@ public class ProcessInstanceInfo{
                 context.wm = ((StatefulKnowledgeSessionImpl) kruntime).getInternalWorkingMemory();
                 processInstance = marshaller.readProcessInstance(context);
                 context.close();
+                metrics.recordUnmarshal( start,
+                                         processInstanceByteArray.length );
             } catch ( IOException e ) {
                 e.printStackTrace();
                 throw new IllegalArgumentException( "IOException while loading process instance: " + e.getMessage(),
@@ -177,6 +190,8 @@ public class ProcessInstanceInfo{
      */
     @PreUpdate
     public void update() {
+        EngineMetrics metrics = EngineMetrics.getInstance();
+        long start = metrics.startTiming();
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         boolean variablesChanged = false;
         try {
@@ -199,16 +214,34 @@ public class ProcessInstanceInfo{
             throw new IllegalArgumentException( "IOException while storing process instance " + processInstance.getId() + ": " + e.getMessage() );
         }
         byte[] newByteArray = baos.toByteArray();
+        metrics.recordMarshal( start,
+                               newByteArray.length );
+        this.marshalled = true;
         if ( variablesChanged || !Arrays.equals( newByteArray,
                                                  processInstanceByteArray ) ) {
             this.state = processInstance.getState();
             this.lastModificationDate = new Date();
             this.processInstanceByteArray = newByteArray;
-            this.eventTypes.clear();
-            for ( String type : processInstance.getEventTypes() ) {
-                eventTypes.add( type );
+            updateEventTypes();
+        }
+    }
+
+    /**
+     * Only adds and removes the event types that have changed, so that the
+     * <code>EventTypes</code> rows of the other event types are left untouched.
+     */
+    private void updateEventTypes() {
+        Set<String> newEventTypes = new HashSet<String>();
+        String[] processInstanceEventTypes = processInstance.getEventTypes();
+        if ( processInstanceEventTypes != null ) {
+            for ( String type : processInstanceEventTypes ) {
+                newEventTypes.add( type );
             }
         }
+        if ( !eventTypes.equals( newEventTypes ) ) {
+            eventTypes.retainAll( newEventTypes );
+            eventTypes.addAll( newEventTypes );
+        }
     }
 
 
@@ -291,4 +324,21 @@ public class ProcessInstanceInfo{
     public void clearProcessInstance(){
         processInstance = null;
     }
+
+    /**
+     * Sets an already unmarshalled (cached) process instance, so that 
+     * {@link #getProcessInstance(InternalKnowledgeRuntime, Environment)} does not need
+     * to unmarshal the byte array again.
+     */
+    void setProcessInstance(ProcessInstance processInstance) {
+        this.processInstance = processInstance;
+    }
+
+    /**
+     * @return whether the process instance has been marshalled by {@link #update()}, 
+     * meaning that the stored byte array reflects the current state of the process instance.
+     */
+    boolean isMarshalled() {
+        return marshalled;
+    }
 }
@@ -0,0 +1,98 @@
+package org.jbpm.persistence.processinstance;
+
+import static org.junit.Assert.*;
+
+import org.jbpm.ruleflow.core.RuleFlowProcess;
+import org.jbpm.ruleflow.instance.RuleFlowProcessInstance;
+import org.junit.Test;
+
+public class ProcessInstanceCacheTest {
+
+    private RuleFlowProcessInstance createProcessInstance(long id) {
+        RuleFlowProcessInstance processInstance = new RuleFlowProcessInstance();
+        processInstance.setId( id );
+        return processInstance;
+    }
+
+    @Test
+    public void testTakeWithSameVersion() {
+        ProcessInstanceCache cache = new ProcessInstanceCache( 10, 0 );
+        RuleFlowProcess process = new RuleFlowProcess();
+        RuleFlowProcessInstance processInstance = createProcessInstance( 1 );
+        cache.put( processInstance, 3, process );
+
+        assertSame( processInstance, cache.take( 1, 3, process ) );
+        // entries are checked out: a second command does not get the same instance
+        assertNull( cache.take( 1, 3, process ) );
+        assertEquals( 1, cache.getHitCount() );
+        assertEquals( 1, cache.getMissCount() );
+        assertEquals( 0.5, cache.getHitRatio(), 0.0001 );
+    }
+
+    @Test
+    public void testUpdatedByOtherNode() {
+        ProcessInstanceCache cache = new ProcessInstanceCache( 10, 0 );
+        RuleFlowProcess process = new RuleFlowProcess();
+        cache.put( createProcessInstance( 1 ), 3, process );
+
+        assertNull( cache.take( 1, 4, process ) );
+        assertEquals( 1, cache.getStaleCount() );
+        assertEquals( 0, cache.size() );
+    }
+
+    @Test
+    public void testProcessDefinitionChanged() {
+        ProcessInstanceCache cache = new ProcessInstanceCache( 10, 0 );
+        cache.put( createProcessInstance( 1 ), 3, new RuleFlowProcess() );
+
+        assertNull( cache.take( 1, 3, new RuleFlowProcess() ) );
+        assertEquals( 1, cache.getStaleCount() );
+    }
+
+    @Test
+    public void testSizeEviction() {
+        ProcessInstanceCache cache = new ProcessInstanceCache( 2, 0 );
+        RuleFlowProcess process = new RuleFlowProcess();
+        cache.put( createProcessInstance( 1 ), 1, process );
+        cache.put( createProcessInstance( 2 ), 1, process );
+        cache.put( createProcessInstance( 3 ), 1, process );
+
+        assertEquals( 2, cache.size() );
+        assertEquals( 1, cache.getEvictionCount() );
+        assertNull( cache.take( 1, 1, process ) );
+        assertNotNull( cache.take( 3, 1, process ) );
+    }
+
+    @Test
+    public void testTimeToLive() throws Exception {
+        ProcessInstanceCache cache = new ProcessInstanceCache( 10, 10 );
+        RuleFlowProcess process = new RuleFlowProcess();
+        cache.put( createProcessInstance( 1 ), 1, process );
+        cache.put( createProcessInstance( 2 ), 1, process );
+        Thread.sleep( 50 );
+
+        assertNull( cache.take( 1, 1, process ) );
+        cache.evictExpired();
+        assertEquals( 0, cache.size() );
+        assertEquals( 2, cache.getEvictionCount() );
+    }
+
+    @Test
+    public void testExpiredEntriesEvictedByPut() throws Exception {
+        ProcessInstanceCache cache = new ProcessInstanceCache( 10, 10 );
+        RuleFlowProcess process = new RuleFlowProcess();
+        cache.put( createProcessInstance( 1 ), 1, process );
+        Thread.sleep( 50 );
+
+        cache.put( createProcessInstance( 2 ), 1, process );
+        assertEquals( 1, cache.size() );
+        assertEquals( 1, cache.getEvictionCount() );
+        assertNotNull( cache.take( 2, 1, process ) );
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        assertNull( ProcessInstanceCache.createFromSystemProperties() );
+    }
+
+}
@@ -0,0 +1,124 @@
+package org.jbpm.test.load;
+
+/**
+ * Histogram of latencies in nanoseconds, using the bucket layout of an HDR histogram: values
+ * are recorded with a precision of (at least) 2 significant digits over the whole range, using
+ * a fixed amount of memory and constant time per value.
+ * </p>
+ * The range is divided in buckets covering a power of two each, which are divided in 128 sub
+ * buckets (256 for the first bucket), so that a value is recorded in a sub bucket that is at
+ * most 1/128th of its value wide. Values larger than about 18 minutes are recorded as the
+ * maximum trackable value.
+ * </p>
+ * A histogram is not thread-safe: every thread should record into its own histogram, which can
+ * be combined afterwards using {@link #add(LatencyHistogram)}.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_HALF_COUNT_MAGNITUDE = 7;
+	private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_HALF_COUNT_MAGNITUDE;
+	private static final long SUB_BUCKET_MASK = (SUB_BUCKET_HALF_COUNT << 1) - 1;
+	private static final int BUCKET_COUNT = 33;
+
+	/**
+	 * The highest value that can be recorded (about 18 minutes), larger values are recorded as
+	 * this value.
+	 */
+	public static final long MAX_TRACKABLE_VALUE = (SUB_BUCKET_MASK << (BUCKET_COUNT - 1)) | ((1L << (BUCKET_COUNT - 1)) - 1);
+
+	private final long[] counts = new long[(BUCKET_COUNT + 1) * SUB_BUCKET_HALF_COUNT];
+	private long totalCount;
+	private long totalValue;
+	private long min = Long.MAX_VALUE;
+	private long max;
+
+	public void recordValue(long value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Negative latency " + value);
+		}
+		if (value > MAX_TRACKABLE_VALUE) {
+			value = MAX_TRACKABLE_VALUE;
+		}
+		counts[indexOf(value)]++;
+		totalCount++;
+		totalValue += value;
+		if (value < min) {
+			min = value;
+		}
+		if (value > max) {
+			max = value;
+		}
+	}
+
+	/**
+	 * Adds all values recorded by the given histogram to this one.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		totalCount += other.totalCount;
+		totalValue += other.totalValue;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * @return the smallest recorded value, or 0 when no values have been recorded
+	 */
+	public long getMinValue() {
+		return totalCount == 0 ? 0 : min;
+	}
+
+	/**
+	 * @return the largest recorded value
+	 */
+	public long getMaxValue() {
+		return max;
+	}
+
+	/**
+	 * @return the mean of the recorded values, or 0 when no values have been recorded
+	 */
+	public double getMean() {
+		return totalCount == 0 ? 0 : (double) totalValue / totalCount;
+	}
+
+	/**
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the value (rounded up to the end of its sub bucket) that the given percentage of
+	 * the recorded values is smaller than or equal to, or 0 when no values have been recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (totalCount == 0) {
+			return 0;
+		}
+		long countAtPercentile = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100 * totalCount));
+		long count = 0;
+		for (int i = 0; i < counts.length; i++) {
+			count += counts[i];
+			if (count >= countAtPercentile) {
+				return Math.min(highestEquivalentValue(i), max);
+			}
+		}
+		return max;
+	}
+
+	private static int indexOf(long value) {
+		// the first bucket holds all values smaller than 256 with a precision of 1
+		int bucketIndex = 64 - Long.numberOfLeadingZeros(value | SUB_BUCKET_MASK) - (SUB_BUCKET_HALF_COUNT_MAGNITUDE + 1);
+		int subBucketIndex = (int) (value >>> bucketIndex);
+		return (bucketIndex << SUB_BUCKET_HALF_COUNT_MAGNITUDE) + subBucketIndex;
+	}
+
+	private static long highestEquivalentValue(int index) {
+		int bucketIndex = Math.max(0, (index >> SUB_BUCKET_HALF_COUNT_MAGNITUDE) - 1);
+		long subBucketIndex = index - (bucketIndex << SUB_BUCKET_HALF_COUNT_MAGNITUDE);
+		return ((subBucketIndex + 1) << bucketIndex) - 1;
+	}
+
+}
@@ -0,0 +1,172 @@
+package org.jbpm.test.load;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drives a (possibly persistent) session under concurrent load, using a number of virtual users
+ * that each repeat a {@link LoadScenario} in their own thread, and reports the latency
+ * distribution of every operation.
+ * <pre>
+ * LoadDriver driver = new LoadDriver(ksession);
+ * driver.registerWorkItemHandler("Human Task");
+ * driver.setVirtualUsers(20);
+ * driver.setRampUp(10000);
+ * driver.setThinkTime(100, 500);
+ * driver.setDuration(60000);
+ * LoadReport report = driver.run(new LoadScenario() {
+ *     public void execute(VirtualUser user) throws Exception {
+ *         user.startProcess("com.sample.bpmn.hello");
+ *         user.think();
+ *         user.completeWorkItems(null);
+ *     }
+ * });
+ * System.out.println(report);
+ * </pre>
+ * Every virtual user stops after the given number of iterations, or when the duration (which
+ * includes the ramp-up) has passed, whichever comes first.
+ */
+public class LoadDriver {
+
+	/**
+	 * Name of the operation that measures complete iterations of the scenario (without the
+	 * think time between iterations).
+	 */
+	public static final String ITERATION = "iteration";
+
+	private static final Logger logger = LoggerFactory.getLogger(LoadDriver.class);
+
+	private final StatefulKnowledgeSession ksession;
+	private final LoadWorkItemHandler workItemHandler = new LoadWorkItemHandler();
+	private int virtualUsers = 1;
+	private long rampUp = 0;
+	private long minThinkTime = 0;
+	private long maxThinkTime = 0;
+	private long duration = 0;
+	private int iterations = 0;
+
+	public LoadDriver(StatefulKnowledgeSession ksession) {
+		this.ksession = ksession;
+	}
+
+	/**
+	 * Registers the work item handler of this driver, so that virtual users can complete the
+	 * work items with the given name.
+	 */
+	public void registerWorkItemHandler(String workItemName) {
+		ksession.getWorkItemManager().registerWorkItemHandler(workItemName, workItemHandler);
+	}
+
+	public LoadWorkItemHandler getWorkItemHandler() {
+		return workItemHandler;
+	}
+
+	public void setVirtualUsers(int virtualUsers) {
+		this.virtualUsers = virtualUsers;
+	}
+
+	/**
+	 * @param rampUp the time over which the virtual users are started, evenly spread, in milliseconds
+	 */
+	public void setRampUp(long rampUp) {
+		this.rampUp = rampUp;
+	}
+
+	/**
+	 * @param minThinkTime the minimum time a virtual user waits between iterations (and when
+	 * calling {@link VirtualUser#think()}), in milliseconds
+	 * @param maxThinkTime the maximum think time, in milliseconds
+	 */
+	public void setThinkTime(long minThinkTime, long maxThinkTime) {
+		this.minThinkTime = minThinkTime;
+		this.maxThinkTime = maxThinkTime;
+	}
+
+	/**
+	 * @param duration the time after which the virtual users stop, in milliseconds, or 0 to stop
+	 * after the number of iterations
+	 */
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+
+	/**
+	 * @param iterations the number of iterations every virtual user executes, or 0 to run until
+	 * the duration has passed
+	 */
+	public void setIterations(int iterations) {
+		this.iterations = iterations;
+	}
+
+	/**
+	 * Runs the given scenario with all virtual users, and waits until all of them have finished.
+	 */
+	public LoadReport run(final LoadScenario scenario) throws InterruptedException {
+		if (duration <= 0 && iterations <= 0) {
+			throw new IllegalStateException("Either the duration or the number of iterations must be set");
+		}
+		final long start = System.currentTimeMillis();
+		final long end = duration > 0 ? start + duration : Long.MAX_VALUE;
+		List<VirtualUser> users = new ArrayList<VirtualUser>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < virtualUsers; i++) {
+			final VirtualUser user = new VirtualUser(i, ksession, workItemHandler, minThinkTime, maxThinkTime);
+			final long delay = virtualUsers > 1 ? rampUp * i / (virtualUsers - 1) : 0;
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					try {
+						Thread.sleep(delay);
+						runUser(user, scenario, end);
+					} catch (InterruptedException e) {
+						// stop this user
+					}
+				}
+			}, "jbpm-load-user-" + i);
+			thread.setDaemon(true);
+			users.add(user);
+			threads.add(thread);
+		}
+		for (Thread thread: threads) {
+			thread.start();
+		}
+		try {
+			for (Thread thread: threads) {
+				thread.join();
+			}
+		} finally {
+			for (Thread thread: threads) {
+				thread.interrupt();
+			}
+		}
+		LoadReport report = new LoadReport(virtualUsers, System.currentTimeMillis() - start);
+		for (VirtualUser user: users) {
+			report.add(user.getHistograms(), user.getErrors());
+		}
+		return report;
+	}
+
+	private void runUser(VirtualUser user, LoadScenario scenario, long end) throws InterruptedException {
+		while ((iterations <= 0 || user.getIteration() < iterations) && System.currentTimeMillis() < end) {
+			if (user.getIteration() > 0) {
+				user.think();
+			}
+			user.startIteration();
+			long iterationStart = System.nanoTime();
+			try {
+				scenario.execute(user);
+				user.record(ITERATION, System.nanoTime() - iterationStart);
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Throwable e) {
+				// assertion errors of the scenario are failed iterations as well, they must not stop the user
+				user.recordError(ITERATION);
+				logger.debug("Iteration " + user.getIteration() + " of virtual user " + user.getId() + " failed", e);
+			}
+		}
+	}
+
+}
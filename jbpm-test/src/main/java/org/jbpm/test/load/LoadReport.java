@@ -0,0 +1,104 @@
+package org.jbpm.test.load;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The result of a {@link LoadDriver} run: the latency histogram and number of errors of every
+ * operation, combined for all virtual users. {@link #toString()} gives a summary table with the
+ * throughput and the latency percentiles (in milliseconds) of every operation.
+ */
+public class LoadReport {
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	private final int virtualUsers;
+	private final long duration;
+	private final Map<String, LatencyHistogram> histograms = new TreeMap<String, LatencyHistogram>();
+	private final Map<String, Long> errors = new TreeMap<String, Long>();
+
+	LoadReport(int virtualUsers, long duration) {
+		this.virtualUsers = virtualUsers;
+		this.duration = duration;
+	}
+
+	void add(Map<String, LatencyHistogram> userHistograms, Map<String, Long> userErrors) {
+		for (Map.Entry<String, LatencyHistogram> entry: userHistograms.entrySet()) {
+			getOrCreateHistogram(entry.getKey()).add(entry.getValue());
+		}
+		for (Map.Entry<String, Long> entry: userErrors.entrySet()) {
+			getOrCreateHistogram(entry.getKey());
+			errors.put(entry.getKey(), getErrorCount(entry.getKey()) + entry.getValue());
+		}
+	}
+
+	private LatencyHistogram getOrCreateHistogram(String operation) {
+		LatencyHistogram histogram = histograms.get(operation);
+		if (histogram == null) {
+			histogram = new LatencyHistogram();
+			histograms.put(operation, histogram);
+		}
+		return histogram;
+	}
+
+	public int getVirtualUsers() {
+		return virtualUsers;
+	}
+
+	/**
+	 * @return the duration of the run, in milliseconds
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	public Set<String> getOperations() {
+		return histograms.keySet();
+	}
+
+	/**
+	 * @return the latencies (in nanoseconds) of the successful executions of the given operation,
+	 * or null when it has not been executed
+	 */
+	public LatencyHistogram getHistogram(String operation) {
+		return histograms.get(operation);
+	}
+
+	public long getErrorCount(String operation) {
+		Long count = errors.get(operation);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * @return the number of successful executions of the given operation per second
+	 */
+	public double getThroughput(String operation) {
+		LatencyHistogram histogram = histograms.get(operation);
+		if (histogram == null || duration == 0) {
+			return 0;
+		}
+		return histogram.getTotalCount() * 1000.0 / duration;
+	}
+
+	public String toString() {
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%d virtual users, %.1f s%n", virtualUsers, duration / 1000.0));
+		report.append(String.format("%-20s %8s %7s %9s %9s", "operation", "count", "errors", "ops/s", "mean"));
+		for (double percentile: PERCENTILES) {
+			report.append(String.format(" %9s", "p" + (percentile == (long) percentile ? String.valueOf((long) percentile) : String.valueOf(percentile))));
+		}
+		report.append(String.format(" %9s%n", "max"));
+		for (Map.Entry<String, LatencyHistogram> entry: histograms.entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+			report.append(String.format("%-20s %8d %7d %9.1f %9.3f", entry.getKey(), histogram.getTotalCount(),
+				getErrorCount(entry.getKey()), getThroughput(entry.getKey()), histogram.getMean() / 1000000));
+			for (double percentile: PERCENTILES) {
+				report.append(String.format(" %9.3f", histogram.getValueAtPercentile(percentile) / 1000000.0));
+			}
+			report.append(String.format(" %9.3f%n", histogram.getMaxValue() / 1000000.0));
+		}
+		return report.toString();
+	}
+
+}
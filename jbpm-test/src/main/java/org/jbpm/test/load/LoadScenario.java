@@ -0,0 +1,17 @@
+package org.jbpm.test.load;
+
+/**
+ * One iteration of the work done by a virtual user of a {@link LoadDriver}, for example starting
+ * a process and completing its work items. Iterations are repeated by every virtual user, with
+ * the think time of the driver in between.
+ */
+public interface LoadScenario {
+
+	/**
+	 * Executes one iteration. The operations should be executed through the given user, so
+	 * that their latencies are recorded. An exception fails the iteration (it is counted in the
+	 * report) but does not stop the user.
+	 */
+	void execute(VirtualUser user) throws Exception;
+
+}
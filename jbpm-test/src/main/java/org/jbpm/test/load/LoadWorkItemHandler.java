@@ -0,0 +1,53 @@
+package org.jbpm.test.load;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.drools.runtime.process.WorkItem;
+import org.drools.runtime.process.WorkItemManager;
+import org.jbpm.test.JbpmJUnitTestCase.TestWorkItemHandler;
+
+/**
+ * {@link TestWorkItemHandler} that keeps the work items per thread, so that every virtual user
+ * of a {@link LoadDriver} only gets the work items created by its own operations (work items
+ * are executed by the thread that started or continued the process instance).
+ */
+public class LoadWorkItemHandler extends TestWorkItemHandler {
+
+	private final ThreadLocal<List<WorkItem>> workItems = new ThreadLocal<List<WorkItem>>() {
+		protected List<WorkItem> initialValue() {
+			return new ArrayList<WorkItem>();
+		}
+	};
+
+	public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
+		workItems.get().add(workItem);
+	}
+
+	public WorkItem getWorkItem() {
+		List<WorkItem> list = workItems.get();
+		if (list.size() == 0) {
+			return null;
+		}
+		if (list.size() == 1) {
+			return list.remove(0);
+		}
+		throw new IllegalArgumentException("More than one work item active");
+	}
+
+	/**
+	 * @return the oldest work item of the current thread, which is removed, or null when there is none
+	 */
+	public WorkItem poll() {
+		List<WorkItem> list = workItems.get();
+		return list.isEmpty() ? null : list.remove(0);
+	}
+
+	public List<WorkItem> getWorkItems() {
+		List<WorkItem> list = workItems.get();
+		List<WorkItem> result = new ArrayList<WorkItem>(list);
+		list.clear();
+		return result;
+	}
+
+}
@@ -0,0 +1,196 @@
+package org.jbpm.test.load;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.ProcessInstance;
+import org.drools.runtime.process.WorkItem;
+
+/**
+ * A simulated user of a {@link LoadDriver}, running in its own thread. The operations executed
+ * through a virtual user are timed, and their latencies are recorded per operation name.
+ * </p>
+ * The session is shared by all virtual users, and is only used by one of them at a time, as is
+ * the case for a persistent session. The recorded latencies therefore include the time spent
+ * waiting for the session.
+ */
+public class VirtualUser {
+
+	public static final String START_PROCESS = "startProcess";
+	public static final String COMPLETE_WORK_ITEM = "completeWorkItem";
+	public static final String SIGNAL_EVENT = "signalEvent";
+
+	private final int id;
+	private final StatefulKnowledgeSession ksession;
+	private final LoadWorkItemHandler workItemHandler;
+	private final long minThinkTime;
+	private final long maxThinkTime;
+	private final Random random;
+	private final Map<String, LatencyHistogram> histograms = new HashMap<String, LatencyHistogram>();
+	private final Map<String, Long> errors = new HashMap<String, Long>();
+	private int iteration;
+
+	VirtualUser(int id, StatefulKnowledgeSession ksession, LoadWorkItemHandler workItemHandler,
+			long minThinkTime, long maxThinkTime) {
+		this.id = id;
+		this.ksession = ksession;
+		this.workItemHandler = workItemHandler;
+		this.minThinkTime = minThinkTime;
+		this.maxThinkTime = maxThinkTime;
+		this.random = new Random(id);
+	}
+
+	/**
+	 * @return the number of this user, starting from 0
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return the number of the current iteration, starting from 1
+	 */
+	public int getIteration() {
+		return iteration;
+	}
+
+	public StatefulKnowledgeSession getKnowledgeSession() {
+		return ksession;
+	}
+
+	public ProcessInstance startProcess(String processId) {
+		return startProcess(processId, null);
+	}
+
+	public ProcessInstance startProcess(final String processId, final Map<String, Object> parameters) {
+		return timed(START_PROCESS, new Callable<ProcessInstance>() {
+			public ProcessInstance call() {
+				synchronized (ksession) {
+					if (parameters == null) {
+						return ksession.startProcess(processId);
+					}
+					return ksession.startProcess(processId, parameters);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Completes all work items that have been created by the previous operations of this user
+	 * (and have been given to the {@link LoadWorkItemHandler} of the driver), including the
+	 * ones created by completing these work items.
+	 *
+	 * @return the number of completed work items
+	 */
+	public int completeWorkItems(final Map<String, Object> results) {
+		int completed = 0;
+		WorkItem workItem;
+		while ((workItem = workItemHandler.poll()) != null) {
+			final long workItemId = workItem.getId();
+			timed(COMPLETE_WORK_ITEM, new Callable<Object>() {
+				public Object call() {
+					synchronized (ksession) {
+						ksession.getWorkItemManager().completeWorkItem(workItemId, results);
+					}
+					return null;
+				}
+			});
+			completed++;
+		}
+		return completed;
+	}
+
+	public void signalEvent(final String type, final Object event) {
+		timed(SIGNAL_EVENT, new Callable<Object>() {
+			public Object call() {
+				synchronized (ksession) {
+					ksession.signalEvent(type, event);
+				}
+				return null;
+			}
+		});
+	}
+
+	public void signalEvent(final String type, final Object event, final long processInstanceId) {
+		timed(SIGNAL_EVENT, new Callable<Object>() {
+			public Object call() {
+				synchronized (ksession) {
+					ksession.signalEvent(type, event, processInstanceId);
+				}
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Executes and times a custom operation, which should synchronize on the session when
+	 * using it.
+	 */
+	public <T> T execute(String operation, Callable<T> callable) throws Exception {
+		long start = System.nanoTime();
+		try {
+			T result = callable.call();
+			record(operation, System.nanoTime() - start);
+			return result;
+		} catch (Exception e) {
+			recordError(operation);
+			throw e;
+		} catch (Error e) {
+			recordError(operation);
+			throw e;
+		}
+	}
+
+	/**
+	 * Waits for a random think time between the minimum and maximum think time of the driver.
+	 */
+	public void think() throws InterruptedException {
+		long thinkTime = minThinkTime;
+		if (maxThinkTime > minThinkTime) {
+			thinkTime += (long) (random.nextDouble() * (maxThinkTime - minThinkTime));
+		}
+		if (thinkTime > 0) {
+			Thread.sleep(thinkTime);
+		}
+	}
+
+	private <T> T timed(String operation, Callable<T> callable) {
+		try {
+			return execute(operation, callable);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	void startIteration() {
+		iteration++;
+	}
+
+	void record(String operation, long latency) {
+		LatencyHistogram histogram = histograms.get(operation);
+		if (histogram == null) {
+			histogram = new LatencyHistogram();
+			histograms.put(operation, histogram);
+		}
+		histogram.recordValue(latency);
+	}
+
+	void recordError(String operation) {
+		Long count = errors.get(operation);
+		errors.put(operation, count == null ? 1 : count + 1);
+	}
+
+	Map<String, LatencyHistogram> getHistograms() {
+		return histograms;
+	}
+
+	Map<String, Long> getErrors() {
+		return errors;
+	}
+
+}
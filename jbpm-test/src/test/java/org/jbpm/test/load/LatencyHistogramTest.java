@@ -0,0 +1,61 @@
+package org.jbpm.test.load;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testSmallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.recordValue(i);
+		}
+		assertEquals(100, histogram.getTotalCount());
+		assertEquals(1, histogram.getMinValue());
+		assertEquals(100, histogram.getMaxValue());
+		assertEquals(50.5, histogram.getMean(), 0.001);
+		assertEquals(50, histogram.getValueAtPercentile(50));
+		assertEquals(99, histogram.getValueAtPercentile(99));
+		assertEquals(100, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void testLargeValuesHaveTwoSignificantDigits() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1000; value <= 1000000000L; value *= 10) {
+			histogram.recordValue(value);
+		}
+		for (int i = 0; i < 7; i++) {
+			long value = histogram.getValueAtPercentile((i + 0.5) * 100 / 7);
+			long expected = 1000 * (long) Math.pow(10, i);
+			assertTrue(value + " is not close to " + expected, value >= expected && value < expected * 1.01);
+		}
+		histogram.recordValue(Long.MAX_VALUE);
+		assertEquals(LatencyHistogram.MAX_TRACKABLE_VALUE, histogram.getMaxValue());
+	}
+
+	@Test
+	public void testAdd() {
+		LatencyHistogram first = new LatencyHistogram();
+		LatencyHistogram second = new LatencyHistogram();
+		first.recordValue(10);
+		second.recordValue(5000);
+		second.recordValue(20);
+		first.add(second);
+		assertEquals(3, first.getTotalCount());
+		assertEquals(10, first.getMinValue());
+		assertEquals(5000, first.getMaxValue());
+		assertEquals(20, first.getValueAtPercentile(50));
+	}
+
+	@Test
+	public void testEmptyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getMinValue());
+		assertEquals(0, histogram.getValueAtPercentile(99));
+		assertEquals(0, histogram.getMean(), 0);
+	}
+
+}
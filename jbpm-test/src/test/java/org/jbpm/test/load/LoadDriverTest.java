@@ -0,0 +1,75 @@
+package org.jbpm.test.load;
+
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.jbpm.test.JbpmJUnitTestCase;
+import org.junit.Test;
+
+public class LoadDriverTest extends JbpmJUnitTestCase {
+
+	public LoadDriverTest() {
+		super(true);
+		setPersistence(true);
+	}
+
+	@Test
+	public void testVirtualUsersCompleteProcesses() throws Exception {
+		StatefulKnowledgeSession ksession = createKnowledgeSession("humantask.bpmn");
+		LoadDriver driver = new LoadDriver(ksession);
+		driver.registerWorkItemHandler("Human Task");
+		driver.setVirtualUsers(4);
+		driver.setRampUp(100);
+		driver.setThinkTime(0, 10);
+		driver.setIterations(5);
+		LoadReport report = driver.run(new LoadScenario() {
+			public void execute(VirtualUser user) throws Exception {
+				long processInstanceId = user.startProcess("com.sample.bpmn.hello").getId();
+				// both tasks of the process are completed by the same user
+				assertEquals(2, user.completeWorkItems(null));
+				assertNull(user.getKnowledgeSession().getProcessInstance(processInstanceId));
+				user.signalEvent("ping", null);
+			}
+		});
+
+		assertEquals(4, report.getVirtualUsers());
+		assertEquals(20, report.getHistogram(LoadDriver.ITERATION).getTotalCount());
+		assertEquals(0, report.getErrorCount(LoadDriver.ITERATION));
+		assertEquals(20, report.getHistogram(VirtualUser.START_PROCESS).getTotalCount());
+		assertEquals(40, report.getHistogram(VirtualUser.COMPLETE_WORK_ITEM).getTotalCount());
+		assertEquals(20, report.getHistogram(VirtualUser.SIGNAL_EVENT).getTotalCount());
+		assertTrue(report.getThroughput(VirtualUser.START_PROCESS) > 0);
+	}
+
+	@Test
+	public void testFailedIterationsAreReported() throws Exception {
+		StatefulKnowledgeSession ksession = createKnowledgeSession("hello.bpmn");
+		LoadDriver driver = new LoadDriver(ksession);
+		driver.setVirtualUsers(2);
+		driver.setIterations(3);
+		LoadReport report = driver.run(new LoadScenario() {
+			public void execute(VirtualUser user) throws Exception {
+				user.startProcess("com.sample.bpmn.hello");
+				user.startProcess("unknown");
+			}
+		});
+
+		assertEquals(6, report.getHistogram(VirtualUser.START_PROCESS).getTotalCount());
+		assertEquals(6, report.getErrorCount(VirtualUser.START_PROCESS));
+		assertEquals(6, report.getErrorCount(LoadDriver.ITERATION));
+	}
+
+	@Test
+	public void testFailedAssertionsAreReported() throws Exception {
+		StatefulKnowledgeSession ksession = createKnowledgeSession("hello.bpmn");
+		LoadDriver driver = new LoadDriver(ksession);
+		driver.setVirtualUsers(2);
+		driver.setIterations(3);
+		LoadReport report = driver.run(new LoadScenario() {
+			public void execute(VirtualUser user) throws Exception {
+				fail("Iteration " + user.getIteration() + " failed");
+			}
+		});
+
+		assertEquals(6, report.getErrorCount(LoadDriver.ITERATION));
+	}
+
+}
@@ -0,0 +1,479 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.workitem.async;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.drools.persistence.TransactionManager;
+import org.drools.persistence.TransactionSynchronization;
+import org.drools.runtime.Environment;
+import org.drools.runtime.EnvironmentName;
+import org.drools.runtime.StatefulKnowledgeSession;
+import org.drools.runtime.process.WorkItem;
+import org.drools.runtime.process.WorkItemHandler;
+import org.drools.runtime.process.WorkItemManager;
+
+/**
+ * Work item handler that executes another (slow) work item handler asynchronously.
+ * </p>
+ * The work item is recorded by the engine as usual, but {@link #executeWorkItem(WorkItem, WorkItemManager)}
+ * only queues the work item and returns, so that the engine operation (and the transaction, when using
+ * persistence) can finish. The wrapped handler is then executed on a bounded pool of threads and the
+ * work item is completed (or aborted) through the work item manager of the session, which queues the
+ * completion as a new command.
+ * </p>
+ * The work item manager used to complete the work items must be thread-safe, which is the case for
+ * sessions created with <code>JPAKnowledgeService</code>. When the handler is created for such a session,
+ * work items are only queued once the transaction that created them has been committed (and are dropped
+ * when it is rolled back), so the wrapped handler never sees a work item that is not stored yet.
+ * </p>
+ * When the wrapped handler aborts the work item (or throws an exception), execution is retried up to
+ * <code>maxRetries</code> times; a failure to complete (or abort) the work item in the session, for
+ * example because of an optimistic lock exception, is retried the same way. When a timeout is set, work
+ * items that have not been completed within that time are aborted. When the queue is full, the wrapped
+ * handler is executed synchronously, or, for work items queued after a commit, queued again later.
+ */
+public class AsyncWorkItemHandler implements WorkItemHandler {
+
+    private static final Logger logger = Logger.getLogger( AsyncWorkItemHandler.class.getName() );
+
+    private static final boolean TRANSACTIONS_AVAILABLE = isTransactionManagerAvailable();
+
+    private final WorkItemHandler delegate;
+    private final WorkItemManager workItemManager;
+    private final Environment environment;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService scheduler;
+    private final Map<Long, AsyncExecution> executions = new ConcurrentHashMap<Long, AsyncExecution>();
+
+    private int maxRetries = 0;
+    private long retryDelay = 1000;
+    private long timeout = 0;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong aborted = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong executedSynchronously = new AtomicLong();
+
+    /**
+     * @param delegate the handler that will be executed asynchronously
+     * @param ksession the session that will be used to complete the work items
+     * @param concurrency the maximum number of work items executed at the same time
+     * @param queueSize the maximum number of work items waiting to be executed
+     */
+    public AsyncWorkItemHandler(WorkItemHandler delegate, StatefulKnowledgeSession ksession, int concurrency, int queueSize) {
+        this( delegate, ksession.getWorkItemManager(), ksession.getEnvironment(), concurrency, queueSize );
+    }
+
+    /**
+     * Creates a handler that does not know the transactions of the session: work items are queued
+     * immediately.
+     */
+    public AsyncWorkItemHandler(WorkItemHandler delegate, WorkItemManager workItemManager, int concurrency, int queueSize) {
+        this( delegate, workItemManager, null, concurrency, queueSize );
+    }
+
+    private AsyncWorkItemHandler(WorkItemHandler delegate, WorkItemManager workItemManager, Environment environment, int concurrency, int queueSize) {
+        if ( concurrency <= 0 ) {
+            throw new IllegalArgumentException( "Concurrency should be larger than 0: " + concurrency );
+        }
+        this.delegate = delegate;
+        this.workItemManager = workItemManager;
+        this.environment = environment;
+        ThreadFactory threadFactory = new AsyncThreadFactory( delegate.getClass().getSimpleName() );
+        this.executor = new ThreadPoolExecutor( concurrency, concurrency,
+                                                0L, TimeUnit.MILLISECONDS,
+                                                new ArrayBlockingQueue<Runnable>( queueSize ),
+                                                threadFactory );
+        this.scheduler = new ScheduledThreadPoolExecutor( 1, threadFactory );
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * @param timeout the time (in milliseconds) after which a work item that has not been completed
+     * is aborted, 0 (the default) means no timeout
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
+        AsyncExecution execution = new AsyncExecution( workItem );
+        executions.put( workItem.getId(), execution );
+        submitted.incrementAndGet();
+        if ( TRANSACTIONS_AVAILABLE && environment != null
+                && CommitSynchronization.register( environment, execution ) ) {
+            return;
+        }
+        try {
+            execution.submit();
+        } catch ( RejectedExecutionException e ) {
+            // back-pressure: the queue is full, so execute in the engine thread like a regular handler
+            executions.remove( workItem.getId() );
+            executedSynchronously.incrementAndGet();
+            delegate.executeWorkItem( workItem, manager );
+            return;
+        }
+        execution.scheduleTimeout();
+    }
+
+    public void abortWorkItem(WorkItem workItem, WorkItemManager manager) {
+        AsyncExecution execution = executions.remove( workItem.getId() );
+        if ( execution != null ) {
+            execution.cancel();
+        }
+        delegate.abortWorkItem( workItem, manager );
+    }
+
+    /**
+     * Stops the threads of this handler. Work items that have not been executed yet remain active.
+     */
+    public void dispose() {
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public long getAbortedCount() {
+        return aborted.get();
+    }
+
+    public long getRetryCount() {
+        return retried.get();
+    }
+
+    public long getTimeoutCount() {
+        return timedOut.get();
+    }
+
+    public long getExecutedSynchronouslyCount() {
+        return executedSynchronously.get();
+    }
+
+    private class AsyncExecution implements Runnable {
+
+        private final WorkItem workItem;
+        private final AtomicBoolean done = new AtomicBoolean( false );
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final AtomicInteger finishAttempts = new AtomicInteger();
+        private volatile Future<?> future;
+        private volatile ScheduledFuture<?> timeoutFuture;
+
+        AsyncExecution(WorkItem workItem) {
+            this.workItem = workItem;
+        }
+
+        void submit() {
+            future = executor.submit( this );
+        }
+
+        /**
+         * Queues the work item once the transaction that created it has been committed. The engine
+         * thread has moved on, so when the queue is full the work item is queued again later.
+         */
+        void submitAfterCommit() {
+            if ( done.get() ) {
+                return;
+            }
+            try {
+                submit();
+            } catch ( RejectedExecutionException e ) {
+                later( new Runnable() {
+                    public void run() {
+                        submitAfterCommit();
+                    }
+                } );
+                return;
+            }
+            scheduleTimeout();
+        }
+
+        void scheduleTimeout() {
+            if ( timeout > 0 ) {
+                timeoutFuture = scheduler.schedule( new Timeout( this ), timeout, TimeUnit.MILLISECONDS );
+            }
+        }
+
+        public void run() {
+            if ( done.get() ) {
+                return;
+            }
+            attempts.incrementAndGet();
+            try {
+                delegate.executeWorkItem( workItem, new AsyncWorkItemManager( this ) );
+            } catch ( Throwable t ) {
+                logger.log( Level.WARNING, "Execution of work item " + workItem.getId() + " failed", t );
+                failed();
+            }
+        }
+
+        void completed(final Map<String, Object> results) {
+            // claim the work item, so that a timeout cannot abort it while it is being completed
+            if ( !done.compareAndSet( false, true ) ) {
+                return;
+            }
+            try {
+                workItemManager.completeWorkItem( workItem.getId(), results );
+            } catch ( Throwable t ) {
+                logger.log( Level.WARNING, "Completion of work item " + workItem.getId() + " failed", t );
+                done.set( false );
+                if ( finishAttempts.incrementAndGet() <= maxRetries ) {
+                    retried.incrementAndGet();
+                    later( new Runnable() {
+                        public void run() {
+                            completed( results );
+                        }
+                    } );
+                } else {
+                    abort();
+                }
+                return;
+            }
+            finish();
+            completed.incrementAndGet();
+        }
+
+        void failed() {
+            if ( done.get() ) {
+                return;
+            }
+            if ( attempts.get() <= maxRetries ) {
+                retried.incrementAndGet();
+                later( new Runnable() {
+                    public void run() {
+                        try {
+                            submit();
+                        } catch ( RejectedExecutionException e ) {
+                            abort();
+                        }
+                    }
+                } );
+            } else {
+                abort();
+            }
+        }
+
+        void abort() {
+            if ( !done.compareAndSet( false, true ) ) {
+                return;
+            }
+            try {
+                workItemManager.abortWorkItem( workItem.getId() );
+            } catch ( Throwable t ) {
+                if ( finishAttempts.incrementAndGet() <= maxRetries + 1 ) {
+                    logger.log( Level.WARNING, "Aborting work item " + workItem.getId() + " failed", t );
+                    done.set( false );
+                    later( new Runnable() {
+                        public void run() {
+                            abort();
+                        }
+                    } );
+                    return;
+                }
+                logger.log( Level.SEVERE, "Aborting work item " + workItem.getId() + " failed, giving up", t );
+            }
+            finish();
+            aborted.incrementAndGet();
+        }
+
+        void cancel() {
+            done.set( true );
+            executions.remove( workItem.getId() );
+            cancelFutures();
+        }
+
+        private void finish() {
+            executions.remove( workItem.getId() );
+            if ( timeoutFuture != null ) {
+                timeoutFuture.cancel( false );
+            }
+        }
+
+        private void later(Runnable runnable) {
+            try {
+                future = scheduler.schedule( runnable, retryDelay, TimeUnit.MILLISECONDS );
+            } catch ( RejectedExecutionException e ) {
+                // the handler has been disposed, the work item remains active
+            }
+        }
+
+        private void cancelFutures() {
+            if ( future != null ) {
+                future.cancel( true );
+            }
+            if ( timeoutFuture != null ) {
+                timeoutFuture.cancel( false );
+            }
+        }
+    }
+
+    private static boolean isTransactionManagerAvailable() {
+        try {
+            Class.forName( "org.drools.persistence.TransactionSynchronization", false, AsyncWorkItemHandler.class.getClassLoader() );
+            return true;
+        } catch ( ClassNotFoundException e ) {
+            return false;
+        } catch ( LinkageError e ) {
+            return false;
+        }
+    }
+
+    /**
+     * Queues the work item when the transaction that created it is committed, and forgets it when
+     * the transaction is rolled back. Only loaded when drools-persistence-jpa is on the classpath.
+     */
+    private static class CommitSynchronization implements TransactionSynchronization {
+
+        private final AsyncExecution execution;
+
+        CommitSynchronization(AsyncExecution execution) {
+            this.execution = execution;
+        }
+
+        /**
+         * @return false if there is no active transaction, in which case the work item must be queued immediately
+         */
+        static boolean register(Environment environment, AsyncExecution execution) {
+            Object txm = environment.get( EnvironmentName.TRANSACTION_MANAGER );
+            if ( !(txm instanceof TransactionManager)
+                    || ((TransactionManager) txm).getStatus() != TransactionManager.STATUS_ACTIVE ) {
+                return false;
+            }
+            ((TransactionManager) txm).registerTransactionSynchronization( new CommitSynchronization( execution ) );
+            return true;
+        }
+
+        public void beforeCompletion() {
+        }
+
+        public void afterCompletion(int status) {
+            if ( status == TransactionManager.STATUS_COMMITTED ) {
+                execution.submitAfterCommit();
+            } else {
+                execution.cancel();
+            }
+        }
+    }
+
+    private class Timeout implements Runnable {
+
+        private final AsyncExecution execution;
+
+        Timeout(AsyncExecution execution) {
+            this.execution = execution;
+        }
+
+        public void run() {
+            if ( !execution.done.get() ) {
+                timedOut.incrementAndGet();
+                execution.abort();
+                if ( execution.future != null ) {
+                    execution.future.cancel( true );
+                }
+            }
+        }
+    }
+
+    /**
+     * Work item manager passed to the wrapped handler, so that completing or aborting
+     * the work item goes through the retry / timeout logic of this handler.
+     */
+    private class AsyncWorkItemManager implements WorkItemManager {
+
+        private final AsyncExecution execution;
+
+        AsyncWorkItemManager(AsyncExecution execution) {
+            this.execution = execution;
+        }
+
+        public void completeWorkItem(long id, Map<String, Object> results) {
+            if ( id == execution.workItem.getId() ) {
+                execution.completed( results );
+            } else {
+                workItemManager.completeWorkItem( id, results );
+            }
+        }
+
+        public void abortWorkItem(long id) {
+            if ( id == execution.workItem.getId() ) {
+                execution.failed();
+            } else {
+                workItemManager.abortWorkItem( id );
+            }
+        }
+
+        public void registerWorkItemHandler(String workItemName, WorkItemHandler handler) {
+            workItemManager.registerWorkItemHandler( workItemName, handler );
+        }
+    }
+
+    private static class AsyncThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger threadNumber = new AtomicInteger( 1 );
+
+        AsyncThreadFactory(String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread( runnable, "jbpm-async-" + name + "-" + threadNumber.getAndIncrement() );
+            thread.setDaemon( true );
+            return thread;
+        }
+    }
+
+}
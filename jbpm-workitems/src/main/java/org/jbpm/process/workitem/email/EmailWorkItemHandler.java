@@ -16,6 +16,24 @@
 
 package org.jbpm.process.workitem.email;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.mail.SendFailedException;
+import javax.mail.Transport;
+
 import org.drools.process.instance.WorkItemHandler;
 import org.drools.runtime.process.WorkItem;
 import org.drools.runtime.process.WorkItemManager;
@@ -29,15 +47,46 @@ import org.drools.runtime.process.WorkItemManager;
  *                   multiple addresses must be separated using a semi-colon (';') 
  *  - "Subject" (String): the subject of the email
  *  - "Text" (String): the body of the email (using HTML)
- * Is completed immediately and does not return any result parameters.  
+ * Is completed immediately and does not return any result parameters, unless the email is sent
+ * by the senders and cannot be sent (see below).
  * 
  * Sending an email cannot be aborted.
  * 
+ * When a {@link TransportPool} is set, connections to the mail server are kept in the pool and
+ * reused for the following emails (until they have been idle for too long or the handler is disposed),
+ * otherwise every email connects to the mail server. When senders are started (see
+ * {@link #startSenders(int, int)}), emails are sent in the background, several emails using the same
+ * connection being sent over the same transport, and the work item is completed once the email has
+ * been sent (so the work item manager must be thread-safe). An email that cannot be sent is retried
+ * after a delay that doubles with every attempt (see {@link #setMaxAttempts(int)} and
+ * {@link #setRetryDelay(long)}). When the last attempt fails, the failure is logged and the work item
+ * is completed with the error message as its {@link #ERROR_RESULT} result, which the process can check.
+ * 
  * @author <a href="mailto:kris_verlaenen@hotmail.com">Kris Verlaenen</a>
  */	
 public class EmailWorkItemHandler implements WorkItemHandler {
 
+	private static final Logger logger = Logger.getLogger( EmailWorkItemHandler.class.getName() );
+	
+	/**
+	 * The name of the result holding the error message of an email that could not be sent.
+	 */
+	public static final String ERROR_RESULT = "Error";
+	
 	private Connection connection;
+	private TransportPool transportPool;
+	
+	private BlockingQueue<PendingEmail> queue;
+	private List<Thread> senders;
+	private ScheduledExecutorService retries;
+	private int batchSize;
+	private int maxAttempts = 3;
+	private long retryDelay = 1000;
+	private int retrying;
+	private boolean stopped;
+	
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
 	
 	public EmailWorkItemHandler() {
 	}
@@ -58,6 +107,90 @@ public class EmailWorkItemHandler implements WorkItemHandler {
 		return connection;
 	}
 	
+	public TransportPool getTransportPool() {
+		return transportPool;
+	}
+	
+	/**
+	 * @param transportPool the pool of transports to use, which can be shared by several handlers,
+	 *        or null (the default) to connect to the mail server for every email
+	 */
+	public void setTransportPool(TransportPool transportPool) {
+		this.transportPool = transportPool;
+	}
+	
+	/**
+	 * @param maxAttempts the number of times the senders try to send an email before the work item
+	 *        is completed with an error
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+	
+	/**
+	 * @param retryDelay the time to wait before sending an email again after the first failed attempt,
+	 *        in milliseconds (one second by default), doubled after every further failed attempt
+	 */
+	public void setRetryDelay(long retryDelay) {
+		this.retryDelay = retryDelay;
+	}
+	
+	/**
+	 * Starts sending the emails in the background.
+	 * 
+	 * @param count the number of sender threads
+	 * @param batchSize the maximum number of emails a sender takes from the queue at once
+	 */
+	public synchronized void startSenders(int count, int batchSize) {
+		if (senders != null) {
+			throw new IllegalStateException("Senders already started");
+		}
+		this.batchSize = batchSize;
+		this.queue = new LinkedBlockingQueue<PendingEmail>();
+		this.senders = new ArrayList<Thread>();
+		this.retries = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "EmailRetries");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		stopped = false;
+		for (int i = 0; i < count; i++) {
+			Thread sender = new Thread("EmailSender-" + i) {
+				public void run() {
+					send();
+				}
+			};
+			sender.setDaemon(true);
+			sender.start();
+			senders.add(sender);
+		}
+	}
+	
+	/**
+	 * Stops the senders, after the emails that have been queued have been sent (or have failed after
+	 * their last attempt), and closes the idle transports.
+	 */
+	public void dispose() throws InterruptedException {
+		List<Thread> threads;
+		synchronized (this) {
+			threads = senders;
+			senders = null;
+			stopped = true;
+		}
+		if (threads != null) {
+			for (Thread sender : threads) {
+				sender.join();
+			}
+			// no retry is pending once the senders have stopped
+			retries.shutdown();
+		}
+		if (transportPool != null) {
+			transportPool.close();
+		}
+	}
+	
 	public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
 		if (connection == null) {
 			throw new IllegalArgumentException(
@@ -65,9 +198,147 @@ public class EmailWorkItemHandler implements WorkItemHandler {
 		}
 	
 		Email email = createEmail(workItem, connection);
-		SendHtml.sendHtml(email);
+		synchronized (this) {
+			// senders only stop when the queue is empty after this lock has been taken
+			if (queue != null && !stopped) {
+				queue.add(new PendingEmail(workItem.getId(), email, manager));
+				return;
+			}
+		}
+		if (transportPool != null) {
+			SendHtml.sendHtml(email, transportPool);
+		} else {
+			SendHtml.sendHtml(email);
+		}
+		sent.incrementAndGet();
 		manager.completeWorkItem(workItem.getId(), null);
 	}
+	
+	private void send() {
+		List<PendingEmail> batch = new ArrayList<PendingEmail>();
+		while (true) {
+			try {
+				PendingEmail first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					synchronized (this) {
+						if (stopped && queue.isEmpty() && retrying == 0) {
+							return;
+						}
+					}
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, batchSize - 1);
+			} catch (InterruptedException e) {
+				return;
+			}
+			// emails for the same connection are sent over the same transport
+			Map<Connection, List<PendingEmail>> connections = new LinkedHashMap<Connection, List<PendingEmail>>();
+			for (PendingEmail pending : batch) {
+				List<PendingEmail> list = connections.get(pending.email.getConnection());
+				if (list == null) {
+					list = new ArrayList<PendingEmail>();
+					connections.put(pending.email.getConnection(), list);
+				}
+				list.add(pending);
+			}
+			batch.clear();
+			for (Map.Entry<Connection, List<PendingEmail>> entry : connections.entrySet()) {
+				send(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+	
+	private void send(Connection connection, List<PendingEmail> emails) {
+		TransportPool pool = transportPool != null ? transportPool : new TransportPool();
+		Transport transport = null;
+		for (PendingEmail pending : emails) {
+			try {
+				if (transport == null) {
+					transport = pool.borrow(connection);
+				}
+				javax.mail.Message msg = SendHtml.fillMessage(pending.email, pool.getSession(connection));
+				transport.sendMessage(msg, msg.getAllRecipients());
+			} catch (Exception e) {
+				if (transport != null && !(e instanceof SendFailedException)) {
+					// the transport may be broken, the next email uses a new one
+					pool.invalidate(transport);
+					transport = null;
+				}
+				failed(pending, e);
+				continue;
+			}
+			sent.incrementAndGet();
+			try {
+				pending.manager.completeWorkItem(pending.workItemId, null);
+			} catch (RuntimeException e) {
+				logger.log(Level.SEVERE, "Unable to complete work item " + pending.workItemId, e);
+			}
+		}
+		if (transport != null) {
+			if (pool == transportPool) {
+				pool.release(connection, transport);
+			} else {
+				pool.invalidate(transport);
+			}
+		}
+	}
+	
+	private void failed(final PendingEmail pending, Exception e) {
+		// invalid addresses will not be valid the next time
+		pending.attempts++;
+		if (!(e instanceof SendFailedException) && pending.attempts < maxAttempts) {
+			long delay = retryDelay << Math.min(pending.attempts - 1, 16);
+			logger.log(Level.WARNING, "Unable to send email for work item " + pending.workItemId
+				+ ", retrying in " + delay + " ms", e);
+			synchronized (this) {
+				// the senders do not stop while emails are waiting to be retried
+				retrying++;
+				retries.schedule(new Runnable() {
+					public void run() {
+						synchronized (EmailWorkItemHandler.this) {
+							queue.add(pending);
+							retrying--;
+						}
+					}
+				}, delay, TimeUnit.MILLISECONDS);
+			}
+			return;
+		}
+		failed.incrementAndGet();
+		logger.log(Level.SEVERE, "Unable to send email for work item " + pending.workItemId
+			+ " after " + pending.attempts + " attempt(s)", e);
+		Map<String, Object> results = new HashMap<String, Object>();
+		results.put(ERROR_RESULT, e.getMessage() == null ? e.toString() : e.getMessage());
+		try {
+			pending.manager.completeWorkItem(pending.workItemId, results);
+		} catch (RuntimeException re) {
+			logger.log(Level.SEVERE, "Unable to complete work item " + pending.workItemId, re);
+		}
+	}
+	
+	/**
+	 * @return the number of emails that have been sent
+	 */
+	public long getSentCount() {
+		return sent.get();
+	}
+	
+	/**
+	 * @return the number of emails that could not be sent by the senders (the work item is completed
+	 *         with an error)
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+	
+	/**
+	 * @return the number of emails waiting to be sent by the senders
+	 */
+	public int getQueuedCount() {
+		BlockingQueue<PendingEmail> queue = this.queue;
+		return queue == null ? 0 : queue.size();
+	}
 
 	protected static Email createEmail(WorkItem workItem, Connection connection) { 
 	    Email email = new Email();
@@ -131,5 +402,19 @@ public class EmailWorkItemHandler implements WorkItemHandler {
 	public void abortWorkItem(WorkItem arg0, WorkItemManager arg1) {
 		// Do nothing, email cannot be aborted
 	}
+	
+	private static class PendingEmail {
+		
+		private final long workItemId;
+		private final Email email;
+		private final WorkItemManager manager;
+		private int attempts;
+		
+		PendingEmail(long workItemId, Email email, WorkItemManager manager) {
+			this.workItemId = workItemId;
+			this.email = email;
+			this.manager = manager;
+		}
+	}
 
 }
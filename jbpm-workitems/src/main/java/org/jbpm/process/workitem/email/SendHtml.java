@@ -66,7 +66,27 @@ public class SendHtml {
         }
     }
 
-    private static Message fillMessage(Email email, Session session) { 
+    /**
+     * Sends the email using a transport of the given pool, instead of connecting to the mail server.
+     */
+    public static void sendHtml(Email email, TransportPool pool) {
+        Connection connection = email.getConnection();
+        Message msg = fillMessage(email, pool.getSession(connection));
+        try {
+            Transport t = pool.borrow(connection);
+            try {
+                t.sendMessage(msg, msg.getAllRecipients());
+            } catch (MessagingException e) {
+                pool.invalidate(t);
+                throw e;
+            }
+            pool.release(connection, t);
+        } catch ( Exception e ) {
+            throw new RuntimeException( "Unable to send email", e );
+        }
+    }
+
+    static Message fillMessage(Email email, Session session) { 
         org.jbpm.process.workitem.email.Message message = email.getMessage();
 
         String subject = message.getSubject();
@@ -133,7 +153,7 @@ public class SendHtml {
     }
     
     
-    private static Session getSession(Connection connection) {
+    static Session getSession(Connection connection) {
         String username = connection.getUserName();
         String password = connection.getPassword();
 
@@ -0,0 +1,185 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.workitem.email;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+/**
+ * Pool of connected SMTP transports, keyed by {@link Connection}, so that sending an email does not
+ * require connecting (and authenticating) to the mail server every time.
+ * </p>
+ * A transport is taken from the pool using {@link #borrow(Connection)}, and must be given back
+ * using {@link #release(Connection, Transport)} after it has been used successfully, or
+ * {@link #invalidate(Transport)} when it failed. Idle transports are checked before being reused,
+ * and closed when they have been idle for longer than the maximum idle time.
+ */
+public class TransportPool {
+
+    private final Map<Connection, Session> sessions = new HashMap<Connection, Session>();
+    private final Map<Connection, LinkedList<IdleTransport>> idle = new HashMap<Connection, LinkedList<IdleTransport>>();
+
+    private int maxIdle = 4;
+    private long maxIdleTime = 60 * 1000;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    /**
+     * @param maxIdle the maximum number of idle transports kept for every connection
+     */
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @param maxIdleTime the time after which an idle transport is closed, in milliseconds
+     */
+    public void setMaxIdleTime(long maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    /**
+     * @return the session used for all transports of the given connection
+     */
+    public synchronized Session getSession(Connection connection) {
+        Session session = sessions.get(connection);
+        if (session == null) {
+            session = SendHtml.getSession(connection);
+            sessions.put(connection, session);
+        }
+        return session;
+    }
+
+    /**
+     * @return a connected transport for the given connection, either idle or new
+     */
+    public Transport borrow(Connection connection) throws MessagingException {
+        long now = System.currentTimeMillis();
+        while (true) {
+            IdleTransport candidate;
+            synchronized (this) {
+                LinkedList<IdleTransport> transports = idle.get(connection);
+                candidate = transports == null ? null : transports.poll();
+            }
+            if (candidate == null) {
+                break;
+            }
+            // isConnected() sends a NOOP, so stale connections are detected before being used
+            if (now - candidate.since < maxIdleTime && candidate.transport.isConnected()) {
+                reused.incrementAndGet();
+                return candidate.transport;
+            }
+            invalidate(candidate.transport);
+        }
+        Transport transport = getSession(connection).getTransport("smtp");
+        transport.connect(connection.getHost(), Integer.parseInt(connection.getPort()),
+                          connection.getUserName(), connection.getPassword());
+        created.incrementAndGet();
+        return transport;
+    }
+
+    /**
+     * Returns a transport that has been used successfully to the pool, and closes the transports
+     * of the connection that have been idle for longer than the maximum idle time.
+     */
+    public void release(Connection connection, Transport transport) {
+        LinkedList<IdleTransport> expired = new LinkedList<IdleTransport>();
+        boolean pooled = false;
+        synchronized (this) {
+            LinkedList<IdleTransport> transports = idle.get(connection);
+            if (transports == null) {
+                transports = new LinkedList<IdleTransport>();
+                idle.put(connection, transports);
+            }
+            long now = System.currentTimeMillis();
+            while (!transports.isEmpty() && now - transports.getLast().since >= maxIdleTime) {
+                expired.add(transports.removeLast());
+            }
+            if (transports.size() < maxIdle) {
+                // most recently used first, so the least used transports expire
+                transports.addFirst(new IdleTransport(transport));
+                pooled = true;
+            }
+        }
+        for (IdleTransport idleTransport : expired) {
+            invalidate(idleTransport.transport);
+        }
+        if (!pooled) {
+            invalidate(transport);
+        }
+    }
+
+    /**
+     * Closes a transport that should not be used anymore.
+     */
+    public void invalidate(Transport transport) {
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            // ignore, the transport is not used anymore
+        }
+    }
+
+    /**
+     * Closes all idle transports.
+     */
+    public void close() {
+        LinkedList<IdleTransport> transports = new LinkedList<IdleTransport>();
+        synchronized (this) {
+            for (Iterator<LinkedList<IdleTransport>> iterator = idle.values().iterator(); iterator.hasNext(); ) {
+                transports.addAll(iterator.next());
+                iterator.remove();
+            }
+        }
+        for (IdleTransport transport : transports) {
+            invalidate(transport.transport);
+        }
+    }
+
+    /**
+     * @return the number of transports that have been connected
+     */
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * @return the number of times an idle transport has been reused
+     */
+    public long getReusedCount() {
+        return reused.get();
+    }
+
+    private static class IdleTransport {
+
+        private final Transport transport;
+        private final long since = System.currentTimeMillis();
+
+        IdleTransport(Transport transport) {
+            this.transport = transport;
+        }
+    }
+
+}
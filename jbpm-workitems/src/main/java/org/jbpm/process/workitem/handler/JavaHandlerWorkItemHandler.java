@@ -1,6 +1,8 @@
 package org.jbpm.process.workitem.handler;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.drools.runtime.StatefulKnowledgeSession;
 import org.drools.runtime.process.NodeInstance;
@@ -15,17 +17,26 @@ import org.jbpm.workflow.instance.node.WorkItemNodeInstance;
 public class JavaHandlerWorkItemHandler implements WorkItemHandler {
 
 	private StatefulKnowledgeSession ksession;
+	private final ConcurrentMap<String, Class<JavaHandler>> classes = new ConcurrentHashMap<String, Class<JavaHandler>>();
+	private final ConcurrentMap<String, JavaHandler> handlers = new ConcurrentHashMap<String, JavaHandler>();
+	private boolean reuseHandlers = false;
 	
 	public JavaHandlerWorkItemHandler(StatefulKnowledgeSession ksession) {
 		this.ksession = ksession;
 	}
 	
-	@SuppressWarnings("unchecked")
+	/**
+	 * When set, a single instance of every handler class is created and used for all work items,
+	 * instead of creating a new handler every time. Only use this when the handlers are stateless.
+	 */
+	public void setReuseHandlers(boolean reuseHandlers) {
+		this.reuseHandlers = reuseHandlers;
+	}
+	
 	public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
 		String className = (String) workItem.getParameter("Class");
 		try {
-			Class<JavaHandler> c = (Class<JavaHandler>) Class.forName(className);
-			JavaHandler handler = c.newInstance();
+			JavaHandler handler = getHandler(className);
 			ProcessContext kcontext = new ProcessContext(ksession);
 			WorkflowProcessInstance processInstance = (WorkflowProcessInstance) 
 				ksession.getProcessInstance(workItem.getProcessInstanceId());
@@ -45,6 +56,27 @@ public class JavaHandlerWorkItemHandler implements WorkItemHandler {
         manager.abortWorkItem(workItem.getId());
 	}
 	
+	@SuppressWarnings("unchecked")
+	private JavaHandler getHandler(String className) throws ClassNotFoundException, InstantiationException, IllegalAccessException {
+		JavaHandler handler = reuseHandlers ? handlers.get(className) : null;
+		if (handler != null) {
+			return handler;
+		}
+		Class<JavaHandler> c = classes.get(className);
+		if (c == null) {
+			c = (Class<JavaHandler>) Class.forName(className);
+			classes.put(className, c);
+		}
+		handler = c.newInstance();
+		if (reuseHandlers) {
+			JavaHandler previous = handlers.putIfAbsent(className, handler);
+			if (previous != null) {
+				handler = previous;
+			}
+		}
+		return handler;
+	}
+	
 	private WorkItemNodeInstance findNodeInstance(long workItemId, NodeInstanceContainer container) {
 		for (NodeInstance nodeInstance: container.getNodeInstances()) {
 			if (nodeInstance instanceof WorkItemNodeInstance) {
@@ -7,13 +7,35 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.drools.runtime.process.WorkItem;
 import org.drools.runtime.process.WorkItemHandler;
 import org.drools.runtime.process.WorkItemManager;
 
+/**
+ * Invokes a method on a Java class, given by the "Class", "Method", "ParameterTypes", "Parameters"
+ * and "Object" parameters of the work item.
+ * </p>
+ * The class and method are resolved once, and the resulting invocation plan is cached for all
+ * following work items using the same class, method and signature.
+ */
 public class JavaInvocationWorkItemHandler implements WorkItemHandler {
 
+	private final ConcurrentMap<String, InvocationPlan> plans = new ConcurrentHashMap<String, InvocationPlan>();
+	private final ConcurrentMap<Class<?>, Object> instances = new ConcurrentHashMap<Class<?>, Object>();
+	private boolean reuseInstances = false;
+
+	/**
+	 * When set, a single instance of every class is created and used for all invocations of its
+	 * non-static methods without an "Object" parameter, instead of creating a new instance every
+	 * time. Only use this when these classes are stateless and thread-safe.
+	 */
+	public void setReuseInstances(boolean reuseInstances) {
+		this.reuseInstances = reuseInstances;
+	}
+
 	@SuppressWarnings("unchecked")
 	public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
 		String className = (String) workItem.getParameter("Class");
@@ -23,62 +45,122 @@ public class JavaInvocationWorkItemHandler implements WorkItemHandler {
 		List<Object> params = (List<Object>) workItem.getParameter("Parameters");
 		Object result = null;
 		try {
-            Class<?> c = Class.forName(className);
-            Class<?>[] classes = null;
-            Method method = null;
-            if (params == null) {
-            	params = new ArrayList<Object>();
-            }
-            if (paramTypes == null) {
-        		classes = new Class<?>[0];
-        		try {
-        			method = c.getMethod(methodName, classes);
-        		} catch (NoSuchMethodException e) {
-        			for (Method m: c.getMethods()) {
-        				if (m.getName().equals(methodName)
-        						&& (m.getParameterTypes().length == params.size())) {
-        					method = m;
-        					break;
-        				}
-        			}
-        			if (method == null) {
-        				throw new NoSuchMethodException(className + "." + methodName + "(..)");
-        			}
-        		}
-        	} else {
-                List<Class<?>> classesList = new ArrayList<Class<?>>();
-        		for (String paramType: paramTypes) {
-                    classesList.add(Class.forName(paramType));
-                }
-        		classes = classesList.toArray(new Class<?>[classesList.size()]);
-        		method = c.getMethod(methodName, classes);
-    		}            		
-            if (!Modifier.isStatic(method.getModifiers())) {
-            	if (object == null) {
-            		object = c.newInstance();
-            	}
-            }
-            result = method.invoke(object, params.toArray());
-            Map<String, Object> results = new HashMap<String, Object>();
-            results.put("Result", result);
-            manager.completeWorkItem(workItem.getId(), results);
-    		return;
-        } catch (ClassNotFoundException e) {
-            System.err.println(e);
-        } catch (InstantiationException e) {
-            System.err.println(e);
-        } catch (IllegalAccessException e) {
-            System.err.println(e);
-        } catch (NoSuchMethodException e) {
-            System.err.println(e);
-        } catch (InvocationTargetException e) {
-            System.err.println(e);
-        }
-        manager.abortWorkItem(workItem.getId());
+			if (params == null) {
+				params = new ArrayList<Object>();
+			}
+			InvocationPlan plan = getInvocationPlan(className, methodName, paramTypes, params.size());
+			if (!plan.isStatic) {
+				if (object == null) {
+					object = getInstance(plan.c);
+				}
+			}
+			result = plan.method.invoke(object, params.toArray());
+			Map<String, Object> results = new HashMap<String, Object>();
+			results.put("Result", result);
+			manager.completeWorkItem(workItem.getId(), results);
+			return;
+		} catch (ClassNotFoundException e) {
+			System.err.println(e);
+		} catch (InstantiationException e) {
+			System.err.println(e);
+		} catch (IllegalAccessException e) {
+			System.err.println(e);
+		} catch (NoSuchMethodException e) {
+			System.err.println(e);
+		} catch (InvocationTargetException e) {
+			System.err.println(e);
+		}
+		manager.abortWorkItem(workItem.getId());
+	}
+
+	/**
+	 * @return the number of cached invocation plans
+	 */
+	public int getInvocationPlanCount() {
+		return plans.size();
+	}
+
+	private InvocationPlan getInvocationPlan(String className, String methodName,
+			List<String> paramTypes, int paramCount) throws ClassNotFoundException, NoSuchMethodException {
+		// without parameter types, the method is selected on the number of parameters only
+		String key = className + "." + methodName
+			+ (paramTypes == null ? "/" + paramCount : paramTypes.toString());
+		InvocationPlan plan = plans.get(key);
+		if (plan == null) {
+			plan = createInvocationPlan(className, methodName, paramTypes, paramCount);
+			plans.putIfAbsent(key, plan);
+		}
+		return plan;
+	}
+
+	private InvocationPlan createInvocationPlan(String className, String methodName,
+			List<String> paramTypes, int paramCount) throws ClassNotFoundException, NoSuchMethodException {
+		Class<?> c = Class.forName(className);
+		Class<?>[] classes = null;
+		Method method = null;
+		if (paramTypes == null) {
+			classes = new Class<?>[0];
+			try {
+				method = c.getMethod(methodName, classes);
+			} catch (NoSuchMethodException e) {
+				for (Method m: c.getMethods()) {
+					if (m.getName().equals(methodName)
+							&& (m.getParameterTypes().length == paramCount)) {
+						method = m;
+						break;
+					}
+				}
+				if (method == null) {
+					throw new NoSuchMethodException(className + "." + methodName + "(..)");
+				}
+			}
+		} else {
+			List<Class<?>> classesList = new ArrayList<Class<?>>();
+			for (String paramType: paramTypes) {
+				classesList.add(Class.forName(paramType));
+			}
+			classes = classesList.toArray(new Class<?>[classesList.size()]);
+			method = c.getMethod(methodName, classes);
+		}
+		try {
+			// skips the access checks on every invocation
+			method.setAccessible(true);
+		} catch (SecurityException e) {
+			// invoke with access checks
+		}
+		return new InvocationPlan(c, method);
+	}
+
+	private Object getInstance(Class<?> c) throws InstantiationException, IllegalAccessException {
+		if (!reuseInstances) {
+			return c.newInstance();
+		}
+		Object instance = instances.get(c);
+		if (instance == null) {
+			instance = c.newInstance();
+			Object previous = instances.putIfAbsent(c, instance);
+			if (previous != null) {
+				instance = previous;
+			}
+		}
+		return instance;
 	}
 
 	public void abortWorkItem(WorkItem arg0, WorkItemManager arg1) {
 		// Do nothing
 	}
 
+	private static class InvocationPlan {
+
+		private final Class<?> c;
+		private final Method method;
+		private final boolean isStatic;
+
+		InvocationPlan(Class<?> c, Method method) {
+			this.c = c;
+			this.method = method;
+			this.isStatic = Modifier.isStatic(method.getModifiers());
+		}
+	}
+
 }
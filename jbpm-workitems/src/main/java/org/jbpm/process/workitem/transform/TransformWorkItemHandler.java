@@ -19,6 +19,7 @@ package org.jbpm.process.workitem.transform;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.drools.process.instance.WorkItemHandler;
 import org.drools.runtime.process.WorkItem;
@@ -30,16 +31,16 @@ public class TransformWorkItemHandler implements WorkItemHandler {
 	private static String OUTPUT_TYPE_KEY = "OutputType";
 	private static String VARIABLE_OUTPUT_NAME = "OutputObject";
 
-	// Keyed on the return type of the transformer with a second key of the parameter type
-	private Map<Class<?>, Map<Class<?>, Method>> transforms =
-		new HashMap<Class<?>, Map<Class<?>, Method>>();
+	// Keyed on the name of the return type of the transformer with a second key of the parameter type,
+	// so that transforms can be found without loading and instantiating the output type
+	private Map<String, Map<Class<?>, Method>> transforms =
+		new ConcurrentHashMap<String, Map<Class<?>, Method>>();
 
 	public void executeWorkItem(WorkItem inputItem, WorkItemManager itemMgr) {
 		try {
 			Object in = inputItem.getParameter(INPUT_KEY);
 			String outputType = (String) inputItem.getParameter(OUTPUT_TYPE_KEY);
-			Object output = Class.forName(outputType).newInstance();
-			Method txMethod = this.findTransform(output.getClass(), in.getClass());
+			Method txMethod = this.findTransform(outputType, in.getClass());
 
 			if (txMethod != null) {
 				Object out = txMethod.invoke(null, in);
@@ -54,7 +55,7 @@ public class TransformWorkItemHandler implements WorkItemHandler {
 		}
 	}
 
-	public void registerTransformer(Class<?> transformer) {
+	public synchronized void registerTransformer(Class<?> transformer) {
 		Method[] methods = transformer.getMethods();
 		if (methods == null) {
 			return;
@@ -67,17 +68,17 @@ public class TransformWorkItemHandler implements WorkItemHandler {
 			Class<?> returnType = meth.getReturnType();
 			Class<?> paramType = meth.getParameterTypes()[0];
 
-			Map<Class<?>, Method> index = transforms.get(returnType);
+			Map<Class<?>, Method> index = transforms.get(returnType.getName());
 			if (index == null) {
-				index = new HashMap<Class<?>, Method>();
-				transforms.put(returnType, index);
+				index = new ConcurrentHashMap<Class<?>, Method>();
+				transforms.put(returnType.getName(), index);
 			}
 			index.put(paramType, meth);
 		}
 	}
 
-	private Method findTransform(Class<?> returnClass, Class<?> paramClass) {
-		Map<Class<?>, Method> indexedTxForm = transforms.get(returnClass);
+	private Method findTransform(String returnType, Class<?> paramClass) {
+		Map<Class<?>, Method> indexedTxForm = transforms.get(returnType);
 		if (indexedTxForm == null) {
 			return null;
 		}
@@ -0,0 +1,217 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.workitem.async;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.drools.process.instance.impl.WorkItemImpl;
+import org.drools.runtime.process.WorkItem;
+import org.drools.runtime.process.WorkItemHandler;
+import org.drools.runtime.process.WorkItemManager;
+import org.junit.After;
+import org.junit.Test;
+
+public class AsyncWorkItemHandlerTest {
+
+    private static final int WORK_ITEMS = 20;
+    private static final long HANDLER_TIME = 100;
+
+    private AsyncWorkItemHandler handler;
+
+    @After
+    public void tearDown() {
+        if ( handler != null ) {
+            handler.dispose();
+        }
+    }
+
+    @Test
+    public void testThroughputWithSlowHandler() throws Exception {
+        TestWorkItemManager manager = new TestWorkItemManager( WORK_ITEMS );
+        handler = new AsyncWorkItemHandler( new SlowWorkItemHandler( HANDLER_TIME, 0 ), manager, 10, 100 );
+
+        long start = System.currentTimeMillis();
+        for ( int i = 1; i <= WORK_ITEMS; i++ ) {
+            handler.executeWorkItem( createWorkItem( i ), manager );
+        }
+        long submitTime = System.currentTimeMillis() - start;
+        assertTrue( manager.await( 10000 ) );
+        long totalTime = System.currentTimeMillis() - start;
+
+        // the engine thread is not blocked by the handler
+        assertTrue( "Submitting took " + submitTime + "ms", submitTime < HANDLER_TIME );
+        // 20 work items of 100ms on 10 threads should take about 200ms instead of 2000ms
+        assertTrue( "Execution took " + totalTime + "ms", totalTime < WORK_ITEMS * HANDLER_TIME / 2 );
+        assertEquals( WORK_ITEMS, manager.completed.size() );
+        assertEquals( WORK_ITEMS, handler.getCompletedCount() );
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        TestWorkItemManager manager = new TestWorkItemManager( 1 );
+        handler = new AsyncWorkItemHandler( new SlowWorkItemHandler( 0, 2 ), manager, 1, 10 );
+        handler.setMaxRetries( 2 );
+        handler.setRetryDelay( 10 );
+
+        handler.executeWorkItem( createWorkItem( 1 ), manager );
+        assertTrue( manager.await( 5000 ) );
+        assertTrue( manager.completed.contains( 1L ) );
+        assertEquals( 2, handler.getRetryCount() );
+    }
+
+    @Test
+    public void testRetriesExhausted() throws Exception {
+        TestWorkItemManager manager = new TestWorkItemManager( 1 );
+        handler = new AsyncWorkItemHandler( new SlowWorkItemHandler( 0, 5 ), manager, 1, 10 );
+        handler.setMaxRetries( 1 );
+        handler.setRetryDelay( 10 );
+
+        handler.executeWorkItem( createWorkItem( 1 ), manager );
+        assertTrue( manager.await( 5000 ) );
+        assertTrue( manager.aborted.contains( 1L ) );
+        assertEquals( 1, handler.getAbortedCount() );
+    }
+
+    @Test
+    public void testCompletionFailureRetried() throws Exception {
+        TestWorkItemManager manager = new TestWorkItemManager( 1 );
+        manager.completionFailures.set( 1 );
+        handler = new AsyncWorkItemHandler( new SlowWorkItemHandler( 0, 0 ), manager, 1, 10 );
+        handler.setMaxRetries( 1 );
+        handler.setRetryDelay( 10 );
+
+        handler.executeWorkItem( createWorkItem( 1 ), manager );
+        assertTrue( manager.await( 5000 ) );
+        assertTrue( manager.completed.contains( 1L ) );
+        assertEquals( 1, handler.getCompletedCount() );
+        assertEquals( 1, handler.getRetryCount() );
+    }
+
+    @Test
+    public void testCompletionFailureAborts() throws Exception {
+        TestWorkItemManager manager = new TestWorkItemManager( 1 );
+        manager.completionFailures.set( 5 );
+        handler = new AsyncWorkItemHandler( new SlowWorkItemHandler( 0, 0 ), manager, 1, 10 );
+        handler.setRetryDelay( 10 );
+
+        handler.executeWorkItem( createWorkItem( 1 ), manager );
+        assertTrue( manager.await( 5000 ) );
+        assertTrue( manager.aborted.contains( 1L ) );
+        assertEquals( 0, handler.getCompletedCount() );
+        assertEquals( 1, handler.getAbortedCount() );
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        TestWorkItemManager manager = new TestWorkItemManager( 1 );
+        handler = new AsyncWorkItemHandler( new SlowWorkItemHandler( 5000, 0 ), manager, 1, 10 );
+        handler.setTimeout( 100 );
+
+        handler.executeWorkItem( createWorkItem( 1 ), manager );
+        assertTrue( manager.await( 5000 ) );
+        assertTrue( manager.aborted.contains( 1L ) );
+        assertEquals( 1, handler.getTimeoutCount() );
+        assertTrue( manager.completed.isEmpty() );
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+        TestWorkItemManager manager = new TestWorkItemManager( 3 );
+        handler = new AsyncWorkItemHandler( new SlowWorkItemHandler( 200, 0 ), manager, 1, 1 );
+
+        for ( int i = 1; i <= 3; i++ ) {
+            handler.executeWorkItem( createWorkItem( i ), manager );
+        }
+        assertTrue( manager.await( 5000 ) );
+        assertEquals( 1, handler.getExecutedSynchronouslyCount() );
+    }
+
+    private WorkItem createWorkItem(long id) {
+        WorkItemImpl workItem = new WorkItemImpl();
+        workItem.setId( id );
+        workItem.setName( "Slow" );
+        return workItem;
+    }
+
+    private static class SlowWorkItemHandler implements WorkItemHandler {
+
+        private final long time;
+        private final AtomicInteger failures;
+
+        SlowWorkItemHandler(long time, int failures) {
+            this.time = time;
+            this.failures = new AtomicInteger( failures );
+        }
+
+        public void executeWorkItem(WorkItem workItem, WorkItemManager manager) {
+            if ( failures.getAndDecrement() > 0 ) {
+                manager.abortWorkItem( workItem.getId() );
+                return;
+            }
+            try {
+                Thread.sleep( time );
+            } catch ( InterruptedException e ) {
+                return;
+            }
+            manager.completeWorkItem( workItem.getId(), null );
+        }
+
+        public void abortWorkItem(WorkItem workItem, WorkItemManager manager) {
+        }
+    }
+
+    private static class TestWorkItemManager implements WorkItemManager {
+
+        private final Set<Long> completed = Collections.synchronizedSet( new HashSet<Long>() );
+        private final Set<Long> aborted = Collections.synchronizedSet( new HashSet<Long>() );
+        private final AtomicInteger completionFailures = new AtomicInteger();
+        private final CountDownLatch latch;
+
+        TestWorkItemManager(int count) {
+            this.latch = new CountDownLatch( count );
+        }
+
+        boolean await(long time) throws InterruptedException {
+            return latch.await( time, TimeUnit.MILLISECONDS );
+        }
+
+        public void completeWorkItem(long id, Map<String, Object> results) {
+            if ( completionFailures.getAndDecrement() > 0 ) {
+                throw new IllegalStateException( "Optimistic lock" );
+            }
+            completed.add( id );
+            latch.countDown();
+        }
+
+        public void abortWorkItem(long id) {
+            aborted.add( id );
+            latch.countDown();
+        }
+
+        public void registerWorkItemHandler(String workItemName, WorkItemHandler handler) {
+        }
+    }
+
+}
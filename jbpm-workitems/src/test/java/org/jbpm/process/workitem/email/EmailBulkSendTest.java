@@ -0,0 +1,133 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.workitem.email;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.drools.runtime.process.WorkItemHandler;
+import org.drools.runtime.process.WorkItemManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.subethamail.wiser.Wiser;
+import org.subethamail.wiser.WiserMessage;
+
+/**
+ * Sends a series of emails through the email work item handler (using a local stub mail server)
+ * connecting for every email, reusing pooled transports, and sending in the background, and checks
+ * that every email is delivered once and every work item is completed once.
+ */
+public class EmailBulkSendTest {
+
+    private static final int EMAILS = 200;
+
+    private Wiser wiser;
+
+    @Before
+    public void setUp() throws Exception {
+        wiser = new Wiser();
+        wiser.setHostname( "localhost" );
+        wiser.setPort( 2346 );
+        wiser.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        wiser.stop();
+    }
+
+    @Test
+    public void testConnectForEveryEmail() throws Exception {
+        EmailWorkItemHandler handler = new EmailWorkItemHandler( "localhost", "2346", null, null );
+        send( handler );
+        assertEquals( EMAILS, handler.getSentCount() );
+    }
+
+    @Test
+    public void testPooledTransport() throws Exception {
+        EmailWorkItemHandler handler = new EmailWorkItemHandler( "localhost", "2346", null, null );
+        handler.setTransportPool( new TransportPool() );
+        send( handler );
+        assertEquals( 1, handler.getTransportPool().getCreatedCount() );
+        assertEquals( EMAILS - 1, handler.getTransportPool().getReusedCount() );
+    }
+
+    @Test
+    public void testSenders() throws Exception {
+        EmailWorkItemHandler handler = new EmailWorkItemHandler( "localhost", "2346", null, null );
+        handler.setTransportPool( new TransportPool() );
+        handler.startSenders( 2, 50 );
+        send( handler );
+        assertEquals( EMAILS, handler.getSentCount() );
+        assertEquals( 0, handler.getFailedCount() );
+        assertEquals( 0, handler.getQueuedCount() );
+        // every sender borrows at most one transport at a time
+        assertTrue( handler.getTransportPool().getCreatedCount() <= 2 );
+    }
+
+    private void send(EmailWorkItemHandler handler) throws Exception {
+        final CountDownLatch completed = new CountDownLatch( EMAILS );
+        final ConcurrentMap<Long, AtomicInteger> completions = new ConcurrentHashMap<Long, AtomicInteger>();
+        final AtomicInteger errors = new AtomicInteger();
+        WorkItemManager manager = new WorkItemManager() {
+            public void completeWorkItem(long id, Map<String, Object> results) {
+                AtomicInteger count = completions.putIfAbsent( id, new AtomicInteger( 1 ) );
+                if ( count != null ) {
+                    count.incrementAndGet();
+                }
+                if ( results != null && results.containsKey( EmailWorkItemHandler.ERROR_RESULT ) ) {
+                    errors.incrementAndGet();
+                }
+                completed.countDown();
+            }
+            public void abortWorkItem(long id) {
+                errors.incrementAndGet();
+            }
+            public void registerWorkItemHandler(String workItemName, WorkItemHandler handler) {
+            }
+        };
+        for ( int i = 0; i < EMAILS; i++ ) {
+            handler.executeWorkItem( EmailWorkItemHandlerTest.createWorkItem( i ), manager );
+        }
+        assertTrue( completed.await( 60, TimeUnit.SECONDS ) );
+        handler.dispose();
+
+        assertEquals( 0, errors.get() );
+        assertEquals( EMAILS, completions.size() );
+        for ( AtomicInteger count : completions.values() ) {
+            assertEquals( 1, count.get() );
+        }
+        assertEquals( EMAILS, wiser.getMessages().size() );
+        Set<String> receivers = new HashSet<String>();
+        for ( WiserMessage message : wiser.getMessages() ) {
+            receivers.add( message.getEnvelopeReceiver() );
+        }
+        for ( int i = 0; i < EMAILS; i++ ) {
+            assertTrue( receivers.contains( "person" + i + "@domain.com" ) );
+        }
+    }
+
+}
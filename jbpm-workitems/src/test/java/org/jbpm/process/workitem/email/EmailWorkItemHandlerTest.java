@@ -20,6 +20,9 @@ import static org.junit.Assert.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
@@ -27,6 +30,7 @@ import javax.mail.internet.MimeMessage.RecipientType;
 
 import org.drools.process.instance.impl.DefaultWorkItemManager;
 import org.drools.process.instance.impl.WorkItemImpl;
+import org.drools.runtime.process.WorkItemHandler;
 import org.drools.runtime.process.WorkItemManager;
 import org.drools.util.ChainedProperties;
 import org.drools.util.ClassLoaderUtil;
@@ -172,4 +176,125 @@ public class EmailWorkItemHandlerTest {
         assertEquals( workItem.getParameter( "To" ), ((InternetAddress)msg.getRecipients( RecipientType.TO )[0]).getAddress() + "; " + ((InternetAddress)msg.getRecipients( RecipientType.TO )[1]).getAddress() );
         assertEquals( workItem.getParameter( "Cc" ),((InternetAddress)msg.getRecipients( RecipientType.CC )[0]).getAddress()  + "; " +  ((InternetAddress)msg.getRecipients( RecipientType.CC )[1]).getAddress() );       
     }    
+
+    @Test
+    public void testTransportIsReused() throws Exception {
+        EmailWorkItemHandler handler = new EmailWorkItemHandler();
+        handler.setConnection( emailHost, emailPort, null, null );
+        handler.setTransportPool( new TransportPool() );
+        
+        WorkItemManager manager = new DefaultWorkItemManager(null);
+        for( int i = 0; i < 3; ++i ) { 
+            handler.executeWorkItem( createWorkItem( i ), manager );
+        }
+        
+        assertEquals( 3, wiser.getMessages().size() );
+        assertEquals( 1, handler.getTransportPool().getCreatedCount() );
+        assertEquals( 2, handler.getTransportPool().getReusedCount() );
+        handler.dispose();
+    }
+    
+    @Test
+    public void testSendersCompleteWorkItems() throws Exception {
+        EmailWorkItemHandler handler = new EmailWorkItemHandler();
+        handler.setConnection( emailHost, emailPort, null, null );
+        handler.startSenders( 2, 10 );
+        
+        final CountDownLatch completed = new CountDownLatch( 5 );
+        WorkItemManager manager = new WorkItemManager() {
+            public void completeWorkItem(long id, Map<String, Object> results) {
+                completed.countDown();
+            }
+            public void abortWorkItem(long id) {
+            }
+            public void registerWorkItemHandler(String workItemName, WorkItemHandler handler) {
+            }
+        };
+        for( int i = 0; i < 5; ++i ) { 
+            handler.executeWorkItem( createWorkItem( i ), manager );
+        }
+        
+        assertTrue( completed.await( 10, TimeUnit.SECONDS ) );
+        assertEquals( 5, wiser.getMessages().size() );
+        assertEquals( 5, handler.getSentCount() );
+        handler.dispose();
+        assertEquals( 0, handler.getQueuedCount() );
+    }
+    
+    @Test
+    public void testFailedEmailCompletesWorkItemWithError() throws Exception {
+        wiser.stop();
+        wiser = null;
+        EmailWorkItemHandler handler = new EmailWorkItemHandler();
+        handler.setConnection( emailHost, emailPort, null, null );
+        handler.setMaxAttempts( 3 );
+        handler.setRetryDelay( 200 );
+        handler.startSenders( 1, 10 );
+        
+        final CountDownLatch completed = new CountDownLatch( 1 );
+        final List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+        final List<Long> aborted = new ArrayList<Long>();
+        WorkItemManager manager = new WorkItemManager() {
+            public void completeWorkItem(long id, Map<String, Object> result) {
+                results.add( result );
+                completed.countDown();
+            }
+            public void abortWorkItem(long id) {
+                aborted.add( id );
+            }
+            public void registerWorkItemHandler(String workItemName, WorkItemHandler handler) {
+            }
+        };
+        long start = System.currentTimeMillis();
+        handler.executeWorkItem( createWorkItem( 1 ), manager );
+        
+        assertTrue( completed.await( 10, TimeUnit.SECONDS ) );
+        // the attempts are 200 ms and then 400 ms apart
+        assertTrue( System.currentTimeMillis() - start >= 600 );
+        assertEquals( 1, results.size() );
+        assertNotNull( results.get( 0 ).get( EmailWorkItemHandler.ERROR_RESULT ) );
+        assertTrue( aborted.isEmpty() );
+        assertEquals( 1, handler.getFailedCount() );
+        assertEquals( 0, handler.getSentCount() );
+        handler.dispose();
+    }
+    
+    @Test
+    public void testDisposeWaitsForRetries() throws Exception {
+        wiser.stop();
+        wiser = null;
+        EmailWorkItemHandler handler = new EmailWorkItemHandler();
+        handler.setConnection( emailHost, emailPort, null, null );
+        handler.setMaxAttempts( 2 );
+        handler.setRetryDelay( 200 );
+        handler.startSenders( 1, 10 );
+        
+        final CountDownLatch completed = new CountDownLatch( 1 );
+        WorkItemManager manager = new WorkItemManager() {
+            public void completeWorkItem(long id, Map<String, Object> result) {
+                completed.countDown();
+            }
+            public void abortWorkItem(long id) {
+            }
+            public void registerWorkItemHandler(String workItemName, WorkItemHandler handler) {
+            }
+        };
+        handler.executeWorkItem( createWorkItem( 1 ), manager );
+        handler.dispose();
+        
+        // the email has been retried before the senders stopped
+        assertEquals( 0, completed.getCount() );
+        assertEquals( 1, handler.getFailedCount() );
+        assertEquals( 0, handler.getQueuedCount() );
+    }
+    
+    static WorkItemImpl createWorkItem(int i) { 
+        WorkItemImpl workItem = new WorkItemImpl();
+        workItem.setId( i );
+        workItem.setParameter( "To", "person" + i + "@domain.com" );
+        workItem.setParameter( "From", "sender@domain.com" );
+        workItem.setParameter( "Subject", "Subject " + i );
+        workItem.setParameter( "Body", "Body " + i );
+        return workItem;
+    }
 }
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2012 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jbpm.process.workitem.java;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.drools.process.instance.impl.WorkItemImpl;
+import org.drools.runtime.process.WorkItemHandler;
+import org.drools.runtime.process.WorkItemManager;
+import org.junit.Test;
+
+/**
+ * Checks that the java invocation work item handler reuses its invocation plans (the per-call
+ * overhead is measured by JavaInvocationBenchmark in jbpm-perf).
+ */
+public class JavaInvocationPlanTest {
+
+    @Test
+    public void testInvocationPlansAreCached() throws Exception {
+        JavaInvocationWorkItemHandler handler = new JavaInvocationWorkItemHandler();
+        ResultManager manager = new ResultManager();
+        handler.executeWorkItem( createWorkItem( "krisv" ), manager );
+        assertEquals( "Hello krisv, age 32, gender male", manager.result );
+        handler.executeWorkItem( createWorkItem( "mary" ), manager );
+        assertEquals( "Hello mary, age 32, gender male", manager.result );
+        assertEquals( 1, handler.getInvocationPlanCount() );
+
+        // same method with another signature
+        WorkItemImpl workItem = createWorkItem( "krisv" );
+        List<Object> parameters = new ArrayList<Object>();
+        parameters.add( "krisv" );
+        parameters.add( "32" );
+        workItem.setParameter( "Parameters", parameters );
+        List<String> parameterTypes = new ArrayList<String>();
+        parameterTypes.add( "java.lang.String" );
+        parameterTypes.add( "java.lang.String" );
+        workItem.setParameter( "ParameterTypes", parameterTypes );
+        handler.executeWorkItem( workItem, manager );
+        assertEquals( "Hello krisv, age 32", manager.result );
+        assertEquals( 2, handler.getInvocationPlanCount() );
+    }
+
+    @Test
+    public void testReusedInstance() throws Exception {
+        WorkItemImpl workItem = createWorkItem( "krisv" );
+        JavaInvocationWorkItemHandler handler = new JavaInvocationWorkItemHandler();
+        handler.setReuseInstances( true );
+        ResultManager manager = new ResultManager();
+        for ( int i = 0; i < 10; i++ ) {
+            manager.result = null;
+            handler.executeWorkItem( workItem, manager );
+            assertEquals( "Hello krisv, age 32, gender male", manager.result );
+        }
+        assertEquals( 1, handler.getInvocationPlanCount() );
+    }
+
+    private static WorkItemImpl createWorkItem(String name) {
+        WorkItemImpl workItem = new WorkItemImpl();
+        workItem.setId( 1 );
+        workItem.setParameter( "Class", "org.jbpm.process.workitem.java.MyJavaClass" );
+        workItem.setParameter( "Method", "myFirstMethod" );
+        List<Object> parameters = new ArrayList<Object>();
+        parameters.add( name );
+        parameters.add( 32 );
+        parameters.add( "male" );
+        workItem.setParameter( "Parameters", parameters );
+        return workItem;
+    }
+
+    private static class ResultManager implements WorkItemManager {
+
+        private Object result;
+
+        public void completeWorkItem(long id, Map<String, Object> results) {
+            result = results.get( "Result" );
+        }
+        public void abortWorkItem(long id) {
+            fail( "Work item " + id + " aborted" );
+        }
+        public void registerWorkItemHandler(String workItemName, WorkItemHandler handler) {
+        }
+    }
+
+}